@@ -24,11 +24,16 @@ public class BizConfig extends RefreshableConfig {
   private static final int DEFAULT_APPNAMESPACE_CACHE_SCAN_INTERVAL = 1; //1s
   private static final int DEFAULT_ACCESSKEY_CACHE_SCAN_INTERVAL = 1; //1s
   private static final int DEFAULT_ACCESSKEY_CACHE_REBUILD_INTERVAL = 60; //60s
-  private static final int DEFAULT_RELEASE_MESSAGE_CACHE_SCAN_INTERVAL = 1; //1s
   private static final int DEFAULT_RELEASE_MESSAGE_SCAN_INTERVAL_IN_MS = 1000; //1000ms
   private static final int DEFAULT_RELEASE_MESSAGE_NOTIFICATION_BATCH = 100;
   private static final int DEFAULT_RELEASE_MESSAGE_NOTIFICATION_BATCH_INTERVAL_IN_MILLI = 100;//100ms
   private static final int DEFAULT_LONG_POLLING_TIMEOUT = 60; //60s
+  private static final int DEFAULT_LONG_POLLING_MAX_TIMEOUT = 80; //80s
+  private static final int DEFAULT_LONG_POLLING_TIMEOUT_JITTER = 10; //10s
+  private static final int DEFAULT_LONG_POLLING_ADAPTIVE_THRESHOLD = 10000;
+  private static final int DEFAULT_RELEASE_MESSAGE_RELAY_SCANNER_COUNT = 1;
+  private static final int DEFAULT_RELEASE_MESSAGE_RELAY_HEARTBEAT_INTERVAL_IN_MILLI = 2000; //2s
+  private static final int DEFAULT_RELEASE_MESSAGE_RELAY_TIMEOUT_IN_MILLI = 6000; //6s
 
   private static final Gson GSON = new Gson();
 
@@ -67,6 +72,32 @@ public class BizConfig extends RefreshableConfig {
     return 1000 * checkInt(timeout, 1, 90, DEFAULT_LONG_POLLING_TIMEOUT);
   }
 
+  /**
+   * the long polling timeout grows from long.polling.timeout up to this value as the node gets busier
+   */
+  public long longPollingMaxTimeoutInMilli() {
+    int timeout = getIntProperty("long.polling.timeout.max", DEFAULT_LONG_POLLING_MAX_TIMEOUT);
+    // old java clients' long polling timeout is 90 seconds, so server side long polling timeout must be less than 90
+    return 1000 * checkInt(timeout, 1, 90, DEFAULT_LONG_POLLING_MAX_TIMEOUT);
+  }
+
+  /**
+   * each long polling request's timeout is shortened by a random value within this range, so that the
+   * clients connected at the same time won't reconnect at the same time
+   */
+  public long longPollingTimeoutJitterInMilli() {
+    int jitter = getIntProperty("long.polling.timeout.jitter", DEFAULT_LONG_POLLING_TIMEOUT_JITTER);
+    return 1000 * checkInt(jitter, 0, 60, DEFAULT_LONG_POLLING_TIMEOUT_JITTER);
+  }
+
+  /**
+   * the number of pending long polling requests when the long polling timeout reaches long.polling.timeout.max
+   */
+  public int longPollingAdaptiveThreshold() {
+    int threshold = getIntProperty("long.polling.timeout.adaptive.threshold", DEFAULT_LONG_POLLING_ADAPTIVE_THRESHOLD);
+    return checkInt(threshold, 1, Integer.MAX_VALUE, DEFAULT_LONG_POLLING_ADAPTIVE_THRESHOLD);
+  }
+
   public int itemKeyLengthLimit() {
     int limit = getIntProperty("item.key.length.limit", DEFAULT_ITEM_KEY_LENGTH);
     return checkInt(limit, 5, Integer.MAX_VALUE, DEFAULT_ITEM_KEY_LENGTH);
@@ -139,15 +170,6 @@ public class BizConfig extends RefreshableConfig {
     return TimeUnit.SECONDS;
   }
 
-  public int releaseMessageCacheScanInterval() {
-    int interval = getIntProperty("apollo.release-message-cache-scan.interval", DEFAULT_RELEASE_MESSAGE_CACHE_SCAN_INTERVAL);
-    return checkInt(interval, 1, Integer.MAX_VALUE, DEFAULT_RELEASE_MESSAGE_CACHE_SCAN_INTERVAL);
-  }
-
-  public TimeUnit releaseMessageCacheScanIntervalTimeUnit() {
-    return TimeUnit.SECONDS;
-  }
-
   public int releaseMessageScanIntervalInMilli() {
     int interval = getIntProperty("apollo.message-scan.interval", DEFAULT_RELEASE_MESSAGE_SCAN_INTERVAL_IN_MS);
     return checkInt(interval, 100, Integer.MAX_VALUE, DEFAULT_RELEASE_MESSAGE_SCAN_INTERVAL_IN_MS);
@@ -163,6 +185,41 @@ public class BizConfig extends RefreshableConfig {
     return checkInt(interval, 10, Integer.MAX_VALUE, DEFAULT_RELEASE_MESSAGE_NOTIFICATION_BATCH_INTERVAL_IN_MILLI);
   }
 
+  /**
+   * whether only a few config service nodes scan release messages from database and relay them to
+   * the other nodes
+   */
+  public boolean isReleaseMessageRelayEnabled() {
+    return getBooleanProperty("apollo.release-message.relay.enabled", false);
+  }
+
+  public int releaseMessageRelayScannerCount() {
+    int count = getIntProperty("apollo.release-message.relay.scanner-count", DEFAULT_RELEASE_MESSAGE_RELAY_SCANNER_COUNT);
+    return checkInt(count, 1, Integer.MAX_VALUE, DEFAULT_RELEASE_MESSAGE_RELAY_SCANNER_COUNT);
+  }
+
+  public int releaseMessageRelayHeartbeatIntervalInMilli() {
+    int interval = getIntProperty("apollo.release-message.relay.heartbeat.interval", DEFAULT_RELEASE_MESSAGE_RELAY_HEARTBEAT_INTERVAL_IN_MILLI);
+    return checkInt(interval, 100, Integer.MAX_VALUE, DEFAULT_RELEASE_MESSAGE_RELAY_HEARTBEAT_INTERVAL_IN_MILLI);
+  }
+
+  /**
+   * a node falls back to scan the database by itself if no relayed message is received within this
+   * timeout
+   */
+  public int releaseMessageRelayTimeoutInMilli() {
+    int timeout = getIntProperty("apollo.release-message.relay.timeout", DEFAULT_RELEASE_MESSAGE_RELAY_TIMEOUT_IN_MILLI);
+    return checkInt(timeout, 100, Integer.MAX_VALUE, DEFAULT_RELEASE_MESSAGE_RELAY_TIMEOUT_IN_MILLI);
+  }
+
+  /**
+   * the token shared among config service nodes to authenticate the relayed messages, relay is
+   * disabled if it is not configured
+   */
+  public String getReleaseMessageRelayAccessToken() {
+    return getValue("apollo.release-message.relay.access-token");
+  }
+
   public boolean isConfigServiceCacheEnabled() {
     return getBooleanProperty("config-service.cache.enabled", false);
   }
@@ -0,0 +1,16 @@
+package com.ctrip.framework.apollo.biz.message;
+
+import com.ctrip.framework.apollo.biz.entity.ReleaseMessage;
+
+/**
+ * A release message listener which also needs the messages already existing in database when the
+ * scanner starts, e.g. the release message cache
+ */
+public interface ReleaseMessageHistoryListener extends ReleaseMessageListener {
+
+  /**
+   * Handle the message which existed before the scanner started, all history messages are handled
+   * before any new message is passed to {@link #handleMessage(ReleaseMessage, String)}
+   */
+  void handleHistoryMessage(ReleaseMessage message, String channel);
+}
@@ -0,0 +1,24 @@
+package com.ctrip.framework.apollo.biz.message;
+
+import com.ctrip.framework.apollo.biz.entity.ReleaseMessage;
+import java.util.List;
+
+/**
+ * Relays release messages scanned from database to the peer nodes, so that only a few nodes need to
+ * scan the database
+ */
+public interface ReleaseMessageRelay {
+
+  /**
+   * @return whether the current node should scan the database by itself
+   */
+  boolean shouldScanDatabase();
+
+  /**
+   * Relay the messages scanned from database to the peers
+   *
+   * @param startId the largest message id scanned before these messages
+   * @param messages the messages scanned, ordered by id, could be empty which works as a heartbeat
+   */
+  void relay(long startId, List<ReleaseMessage> messages);
+}
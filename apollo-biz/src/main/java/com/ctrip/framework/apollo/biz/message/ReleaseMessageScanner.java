@@ -1,6 +1,9 @@
 package com.ctrip.framework.apollo.biz.message;
 
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
@@ -18,12 +21,23 @@ import com.ctrip.framework.apollo.core.utils.ApolloThreadFactory;
 import com.ctrip.framework.apollo.tracer.Tracer;
 import com.ctrip.framework.apollo.tracer.spi.Transaction;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 
 /**
+ * The only ingestion of release messages in a node, it owns the scanned id watermark and feeds all
+ * the listeners, including the release message cache, from the same query stream.
+ *
+ * <p>As transactions may commit out of order, ids skipped by a scan are remembered as missing and
+ * looked up again in the following scans for a bounded number of times. A node fed by relays
+ * looks up the missing ids itself once before giving them up, as the late committed messages might
+ * never be relayed, e.g. the relay is discarded or fails to reach the node.</p>
+ *
  * @author Jason Song(song_s@ctrip.com)
  */
 public class ReleaseMessageScanner implements InitializingBean {
   private static final Logger logger = LoggerFactory.getLogger(ReleaseMessageScanner.class);
+  private static final int MISSING_RELEASE_MESSAGE_MAX_AGE = 10;
+  private static final int MISSING_RELEASE_MESSAGE_MAX_SIZE = 500;
   @Autowired
   private BizConfig bizConfig;
   @Autowired
@@ -31,10 +45,16 @@ public class ReleaseMessageScanner implements InitializingBean {
   private int databaseScanInterval;
   private List<ReleaseMessageListener> listeners;
   private ScheduledExecutorService executorService;
-  private long maxIdScanned;
+  private volatile long maxIdScanned;
+  private volatile ReleaseMessageRelay messageRelay;
+  /**
+   * missing release message id -> the times it has been looked up
+   */
+  private final Map<Long, Integer> missingReleaseMessages;
 
   public ReleaseMessageScanner() {
     listeners = Lists.newCopyOnWriteArrayList();
+    missingReleaseMessages = Maps.newTreeMap();
     executorService = Executors.newScheduledThreadPool(1, ApolloThreadFactory
         .create("ReleaseMessageScanner", true));
   }
@@ -42,7 +62,7 @@ public class ReleaseMessageScanner implements InitializingBean {
   @Override
   public void afterPropertiesSet() throws Exception {
     databaseScanInterval = bizConfig.releaseMessageScanIntervalInMilli();
-    maxIdScanned = loadLargestMessageId();
+    maxIdScanned = loadHistoryMessages();
     executorService.scheduleWithFixedDelay(() -> {
       Transaction transaction = Tracer.newTransaction("Apollo.ReleaseMessageScanner", "scanMessage");
       try {
@@ -69,9 +89,77 @@ public class ReleaseMessageScanner implements InitializingBean {
   }
 
   /**
-   * Scan messages, continue scanning until there is no more messages
+   * set the relay which shares the messages scanned with peer nodes
+   * @param messageRelay
+   */
+  public void setMessageRelay(ReleaseMessageRelay messageRelay) {
+    this.messageRelay = messageRelay;
+  }
+
+  /**
+   * Accept messages relayed by a peer node which scanned them from database
+   *
+   * @param startId the largest message id the peer had scanned before these messages
+   * @param messages the relayed messages, ordered by id
+   * @return true if the messages are accepted, false if a gap is found and the messages are loaded
+   * from database instead, or the messages are rejected as their ids are beyond the database
+   */
+  public synchronized boolean acceptRelayedMessages(long startId, List<ReleaseMessage> messages) {
+    long relayedMaxId = messages.isEmpty() ? startId
+        : Math.max(startId, messages.get(messages.size() - 1).getId());
+    //only checked when the watermark would advance, so heartbeats don't hit the database
+    if (relayedMaxId > maxIdScanned && relayedMaxId > loadLargestMessageId()) {
+      logger.warn("Relayed release messages rejected, relayed max id {} not found in database",
+          relayedMaxId);
+      Tracer.logEvent("Apollo.ReleaseMessageScanner.RelayRejected", String.valueOf(relayedMaxId));
+      return false;
+    }
+
+    if (startId > maxIdScanned) {
+      //gap found, some messages are missing, so fallback to database
+      logger.warn("Gap found in relayed release messages, local max id: {}, relayed start id: {}",
+          maxIdScanned, startId);
+      Tracer.logEvent("Apollo.ReleaseMessageScanner.RelayGap", String.valueOf(startId));
+      doScanMessages();
+      return false;
+    }
+
+    long lastId = maxIdScanned;
+    List<ReleaseMessage> newMessages = Lists.newArrayList();
+    for (ReleaseMessage message : messages) {
+      if (message.getId() > lastId) {
+        recordMissingReleaseMessages(lastId, message.getId());
+        newMessages.add(message);
+        lastId = message.getId();
+      } else if (missingReleaseMessages.remove(message.getId()) != null) {
+        //committed late, found by the peer
+        newMessages.add(message);
+      }
+    }
+    if (!newMessages.isEmpty()) {
+      fireMessageScanned(newMessages);
+      maxIdScanned = lastId;
+    }
+    return true;
+  }
+
+  /**
+   * Scan messages if not relayed by peers
    */
   private void scanMessages() {
+    ReleaseMessageRelay relay = messageRelay;
+    if (relay != null && !relay.shouldScanDatabase()) {
+      scanExpiredReleaseMessages();
+      return;
+    }
+    doScanMessages();
+  }
+
+  /**
+   * Scan messages, continue scanning until there is no more messages
+   */
+  private synchronized void doScanMessages() {
+    scanMissingReleaseMessages();
     boolean hasMoreMessages = true;
     while (hasMoreMessages && !Thread.currentThread().isInterrupted()) {
       hasMoreMessages = scanAndSendMessages();
@@ -85,17 +173,156 @@ public class ReleaseMessageScanner implements InitializingBean {
    */
   private boolean scanAndSendMessages() {
     //current batch is 500
+    long startId = maxIdScanned;
     List<ReleaseMessage> releaseMessages =
-        releaseMessageRepository.findFirst500ByIdGreaterThanOrderByIdAsc(maxIdScanned);
+        releaseMessageRepository.findFirst500ByIdGreaterThanOrderByIdAsc(startId);
     if (CollectionUtils.isEmpty(releaseMessages)) {
+      relayMessages(startId, Collections.emptyList());
       return false;
     }
+    long lastId = startId;
+    for (ReleaseMessage releaseMessage : releaseMessages) {
+      recordMissingReleaseMessages(lastId, releaseMessage.getId());
+      lastId = releaseMessage.getId();
+    }
     fireMessageScanned(releaseMessages);
     int messageScanned = releaseMessages.size();
     maxIdScanned = releaseMessages.get(messageScanned - 1).getId();
+    relayMessages(startId, releaseMessages);
     return messageScanned == 500;
   }
 
+  /**
+   * remember the ids between the two scanned ids, as their transactions may not be committed yet
+   */
+  private void recordMissingReleaseMessages(long previousId, long currentId) {
+    for (long id = previousId + 1; id < currentId; id++) {
+      if (missingReleaseMessages.size() >= MISSING_RELEASE_MESSAGE_MAX_SIZE) {
+        Tracer.logEvent("Apollo.ReleaseMessageScanner.MissingOverflow", String.valueOf(id));
+        return;
+      }
+      missingReleaseMessages.put(id, 0);
+    }
+  }
+
+  /**
+   * look up the missing messages again, and notify listeners with the ones committed since then
+   */
+  private void scanMissingReleaseMessages() {
+    if (missingReleaseMessages.isEmpty()) {
+      return;
+    }
+    Iterable<ReleaseMessage> found = releaseMessageRepository
+        .findAllById(Lists.newArrayList(missingReleaseMessages.keySet()));
+
+    List<ReleaseMessage> lateMessages = Lists.newArrayList();
+    if (found != null) {
+      for (ReleaseMessage releaseMessage : found) {
+        if (missingReleaseMessages.remove(releaseMessage.getId()) != null) {
+          lateMessages.add(releaseMessage);
+        }
+      }
+    }
+    //just looked up, so the expired ones are given up directly
+    ageMissingReleaseMessages();
+
+    if (!lateMessages.isEmpty()) {
+      lateMessages.sort((m1, m2) -> Long.compare(m1.getId(), m2.getId()));
+      Tracer.logEvent("Apollo.ReleaseMessageScanner.LateMessages",
+          String.valueOf(lateMessages.size()));
+      fireMessageScanned(lateMessages);
+      relayMessages(maxIdScanned, lateMessages);
+    }
+  }
+
+  /**
+   * age the missing messages when fed by relays, and look up the expired ones once before giving
+   * them up, as they are not relayed within the age
+   */
+  private synchronized void scanExpiredReleaseMessages() {
+    List<Long> expiredIds = ageMissingReleaseMessages();
+    if (expiredIds.isEmpty()) {
+      return;
+    }
+    //bounded by the max size of the missing messages
+    Iterable<ReleaseMessage> found = releaseMessageRepository.findAllById(expiredIds);
+    List<ReleaseMessage> lateMessages = found == null ? Collections.emptyList()
+        : Lists.newArrayList(found);
+    if (!lateMessages.isEmpty()) {
+      lateMessages.sort((m1, m2) -> Long.compare(m1.getId(), m2.getId()));
+      Tracer.logEvent("Apollo.ReleaseMessageScanner.LateMessagesNotRelayed",
+          String.valueOf(lateMessages.size()));
+      fireMessageScanned(lateMessages);
+    }
+  }
+
+  /**
+   * give up the missing messages looked up too many times, which are probably rolled back
+   *
+   * @return the ids given up
+   */
+  private synchronized List<Long> ageMissingReleaseMessages() {
+    List<Long> expiredIds = Lists.newArrayList();
+    Iterator<Map.Entry<Long, Integer>> iterator = missingReleaseMessages.entrySet().iterator();
+    while (iterator.hasNext()) {
+      Map.Entry<Long, Integer> entry = iterator.next();
+      if (entry.getValue() + 1 >= MISSING_RELEASE_MESSAGE_MAX_AGE) {
+        iterator.remove();
+        expiredIds.add(entry.getKey());
+      } else {
+        entry.setValue(entry.getValue() + 1);
+      }
+    }
+    return expiredIds;
+  }
+
+  private void relayMessages(long startId, List<ReleaseMessage> messages) {
+    ReleaseMessageRelay relay = messageRelay;
+    if (relay == null) {
+      return;
+    }
+    try {
+      relay.relay(startId, messages);
+    } catch (Throwable ex) {
+      Tracer.logError(ex);
+      logger.error("Failed to relay release messages from {}", startId, ex);
+    }
+  }
+
+  /**
+   * Load the existing messages for the history listeners, or just find the largest message id if
+   * there is no history listener
+   * @return current largest message id as the start point
+   */
+  private long loadHistoryMessages() {
+    List<ReleaseMessageHistoryListener> historyListeners = Lists.newArrayList();
+    for (ReleaseMessageListener listener : listeners) {
+      if (listener instanceof ReleaseMessageHistoryListener) {
+        historyListeners.add((ReleaseMessageHistoryListener) listener);
+      }
+    }
+    if (historyListeners.isEmpty()) {
+      return loadLargestMessageId();
+    }
+
+    long startId = 0;
+    boolean hasMore = true;
+    while (hasMore && !Thread.currentThread().isInterrupted()) {
+      //current batch is 500
+      List<ReleaseMessage> releaseMessages =
+          releaseMessageRepository.findFirst500ByIdGreaterThanOrderByIdAsc(startId);
+      if (CollectionUtils.isEmpty(releaseMessages)) {
+        break;
+      }
+      fireHistoryMessageLoaded(historyListeners, releaseMessages);
+      int loaded = releaseMessages.size();
+      startId = releaseMessages.get(loaded - 1).getId();
+      hasMore = loaded == 500;
+      logger.info("Loaded {} history release messages, max id {}", loaded, startId);
+    }
+    return startId;
+  }
+
   /**
    * find largest message id as the current start point
    * @return current largest message id
@@ -105,6 +332,20 @@ public class ReleaseMessageScanner implements InitializingBean {
     return releaseMessage == null ? 0 : releaseMessage.getId();
   }
 
+  private void fireHistoryMessageLoaded(List<ReleaseMessageHistoryListener> historyListeners,
+      List<ReleaseMessage> messages) {
+    for (ReleaseMessage message : messages) {
+      for (ReleaseMessageHistoryListener listener : historyListeners) {
+        try {
+          listener.handleHistoryMessage(message, Topics.APOLLO_RELEASE_TOPIC);
+        } catch (Throwable ex) {
+          Tracer.logError(ex);
+          logger.error("Failed to invoke history message listener {}", listener.getClass(), ex);
+        }
+      }
+    }
+  }
+
   /**
    * Notify listeners with messages loaded
    * @param messages
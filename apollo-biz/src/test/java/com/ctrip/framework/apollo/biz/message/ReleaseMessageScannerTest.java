@@ -13,9 +13,13 @@ import org.junit.Test;
 import org.mockito.Mock;
 import org.springframework.test.util.ReflectionTestUtils;
 
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 
+import static org.awaitility.Awaitility.await;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.when;
 
 /**
@@ -78,6 +82,90 @@ public class ReleaseMessageScannerTest extends AbstractUnitTest {
 
   }
 
+  @Test
+  public void testScanLateCommittedMessage() throws Exception {
+    List<ReleaseMessage> received = Collections.synchronizedList(Lists.newArrayList());
+    releaseMessageScanner.addMessageListener((message, channel) -> received.add(message));
+
+    ReleaseMessage someReleaseMessage = assembleReleaseMessage(1, "someMessage");
+    ReleaseMessage lateReleaseMessage = assembleReleaseMessage(2, "lateMessage");
+    ReleaseMessage anotherReleaseMessage = assembleReleaseMessage(3, "anotherMessage");
+
+    when(releaseMessageRepository.findAllById(Lists.newArrayList(2L)))
+        .thenReturn(Lists.newArrayList(lateReleaseMessage));
+    //message 2 is not committed when scanned
+    when(releaseMessageRepository.findFirst500ByIdGreaterThanOrderByIdAsc(0L)).thenReturn(
+        Lists.newArrayList(someReleaseMessage, anotherReleaseMessage));
+
+    await().atMost(5000, TimeUnit.MILLISECONDS).until(() -> received.size() == 3);
+
+    assertEquals(Lists.newArrayList(someReleaseMessage, anotherReleaseMessage, lateReleaseMessage),
+        received);
+  }
+
+  @Test
+  public void testLookUpMissingMessageNotRelayed() throws Exception {
+    List<ReleaseMessage> received = Collections.synchronizedList(Lists.newArrayList());
+    releaseMessageScanner.addMessageListener((message, channel) -> received.add(message));
+    releaseMessageScanner.setMessageRelay(new ReleaseMessageRelay() {
+      @Override
+      public boolean shouldScanDatabase() {
+        return false;
+      }
+
+      @Override
+      public void relay(long startId, List<ReleaseMessage> messages) {
+      }
+    });
+
+    ReleaseMessage someReleaseMessage = assembleReleaseMessage(1, "someMessage");
+    ReleaseMessage lateReleaseMessage = assembleReleaseMessage(2, "lateMessage");
+    ReleaseMessage anotherReleaseMessage = assembleReleaseMessage(3, "anotherMessage");
+    when(releaseMessageRepository.findTopByOrderByIdDesc()).thenReturn(anotherReleaseMessage);
+    when(releaseMessageRepository.findAllById(Lists.newArrayList(2L)))
+        .thenReturn(Lists.newArrayList(lateReleaseMessage));
+
+    //message 2 is committed late, and never relayed
+    assertTrue(releaseMessageScanner.acceptRelayedMessages(0,
+        Lists.newArrayList(someReleaseMessage, anotherReleaseMessage)));
+
+    await().atMost(5000, TimeUnit.MILLISECONDS).until(() -> received.size() == 3);
+
+    assertEquals(Lists.newArrayList(someReleaseMessage, anotherReleaseMessage, lateReleaseMessage),
+        received);
+  }
+
+  @Test
+  public void testLoadHistoryMessages() throws Exception {
+    ReleaseMessageScanner anotherScanner = new ReleaseMessageScanner();
+    ReflectionTestUtils
+        .setField(anotherScanner, "releaseMessageRepository", releaseMessageRepository);
+    ReflectionTestUtils.setField(anotherScanner, "bizConfig", bizConfig);
+
+    List<ReleaseMessage> history = Lists.newArrayList();
+    List<ReleaseMessage> received = Lists.newArrayList();
+    anotherScanner.addMessageListener(new ReleaseMessageHistoryListener() {
+      @Override
+      public void handleHistoryMessage(ReleaseMessage message, String channel) {
+        history.add(message);
+      }
+
+      @Override
+      public void handleMessage(ReleaseMessage message, String channel) {
+        received.add(message);
+      }
+    });
+
+    ReleaseMessage someReleaseMessage = assembleReleaseMessage(1, "someMessage");
+    when(releaseMessageRepository.findFirst500ByIdGreaterThanOrderByIdAsc(0L)).thenReturn(
+        Lists.newArrayList(someReleaseMessage));
+
+    anotherScanner.afterPropertiesSet();
+
+    assertEquals(Lists.newArrayList(someReleaseMessage), history);
+    assertTrue(received.isEmpty());
+  }
+
   private ReleaseMessage assembleReleaseMessage(long id, String message) {
     ReleaseMessage releaseMessage = new ReleaseMessage();
     releaseMessage.setId(id);
@@ -65,6 +65,61 @@ public class ConfigService {
     return s_instance.getManager().getConfigFile(namespace, configFileFormat);
   }
 
+  /**
+   * Acquire the config instance for the namespace, which should be released by
+   * {@link #releaseConfig(String)} when it is not used any more.
+   *
+   * <p>Each call counts as one acquisition, once all of them are released, the config instance
+   * stops syncing with the config service and is removed, so the next call creates a new one. The
+   * instances got by {@link #getConfig(String)} are not counted and never removed.</p>
+   *
+   * @param namespace the namespace of the config
+   * @return config instance
+   */
+  public static Config acquireConfig(String namespace) {
+    return s_instance.getManager().acquireConfig(namespace);
+  }
+
+  /**
+   * Acquire the config file instance for the namespace, the same as {@link #acquireConfig(String)}.
+   *
+   * @param namespace        the namespace of the config file
+   * @param configFileFormat the config file format
+   * @return config file instance
+   */
+  public static ConfigFile acquireConfigFile(String namespace, ConfigFileFormat configFileFormat) {
+    return s_instance.getManager().acquireConfigFile(namespace, configFileFormat);
+  }
+
+  /**
+   * Release the config instance acquired by {@link #acquireConfig(String)}.
+   *
+   * @param namespace the namespace of the config
+   */
+  public static void releaseConfig(String namespace) {
+    s_instance.getManager().releaseConfig(namespace);
+  }
+
+  /**
+   * Release the config file instance acquired by
+   * {@link #acquireConfigFile(String, ConfigFileFormat)}.
+   *
+   * @param namespace        the namespace of the config file
+   * @param configFileFormat the config file format
+   */
+  public static void releaseConfigFile(String namespace, ConfigFileFormat configFileFormat) {
+    s_instance.getManager().releaseConfigFile(namespace, configFileFormat);
+  }
+
+  /**
+   * Rebuild the precomputed property views of all the config instances, which should be called
+   * after system properties are changed at runtime when <code>apollo.precomputedPropertyView</code>
+   * is enabled, as the views are only rebuilt automatically when the configs change.
+   */
+  public static void refreshPropertyViews() {
+    s_instance.getManager().refreshPropertyViews();
+  }
+
   static void setConfig(Config config) {
     setConfig(ConfigConsts.NAMESPACE_APPLICATION, config);
   }
@@ -3,36 +3,39 @@ package com.ctrip.framework.apollo.internals;
 import com.ctrip.framework.apollo.Config;
 import com.ctrip.framework.apollo.ConfigChangeListener;
 import com.ctrip.framework.apollo.build.ApolloInjector;
-import com.ctrip.framework.apollo.core.utils.ApolloThreadFactory;
+import com.ctrip.framework.apollo.enums.ConfigSourceType;
 import com.ctrip.framework.apollo.enums.PropertyChangeType;
 import com.ctrip.framework.apollo.exceptions.ApolloConfigException;
 import com.ctrip.framework.apollo.model.ConfigChange;
 import com.ctrip.framework.apollo.model.ConfigChangeEvent;
+import com.ctrip.framework.apollo.monitor.ConfigMetrics;
+import com.ctrip.framework.apollo.monitor.Counter;
+import com.ctrip.framework.apollo.monitor.Gauge;
 import com.ctrip.framework.apollo.tracer.Tracer;
 import com.ctrip.framework.apollo.tracer.spi.Transaction;
 import com.ctrip.framework.apollo.util.ConfigUtil;
 import com.ctrip.framework.apollo.util.factory.PropertiesFactory;
 import com.ctrip.framework.apollo.util.function.Functions;
+import com.ctrip.framework.apollo.util.parser.ParserException;
 import com.ctrip.framework.apollo.util.parser.Parsers;
 import com.google.common.base.Function;
 import com.google.common.base.Objects;
-import com.google.common.cache.Cache;
-import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.lang.ref.WeakReference;
 import java.util.Date;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * @author Jason Song(song_s@ctrip.com)
@@ -40,37 +43,44 @@ import java.util.concurrent.atomic.AtomicLong;
 public abstract class AbstractConfig implements Config {
   private static final Logger logger = LoggerFactory.getLogger(AbstractConfig.class);
 
-  private static final ExecutorService m_executorService;
-
   private final List<ConfigChangeListener> m_listeners = Lists.newCopyOnWriteArrayList();
   private final Map<ConfigChangeListener, Set<String>> m_interestedKeys = Maps.newConcurrentMap();
   private final Map<ConfigChangeListener, Set<String>> m_interestedKeyPrefixes = Maps.newConcurrentMap();
+  //updated with the listeners, guarded by m_listeners
+  private final ConfigChangeListenerIndex<ConfigChangeListener> m_listenerIndex =
+      new ConfigChangeListenerIndex<>();
   private final ConfigUtil m_configUtil;
-  private volatile Cache<String, Integer> m_integerCache;
-  private volatile Cache<String, Long> m_longCache;
-  private volatile Cache<String, Short> m_shortCache;
-  private volatile Cache<String, Float> m_floatCache;
-  private volatile Cache<String, Double> m_doubleCache;
-  private volatile Cache<String, Byte> m_byteCache;
-  private volatile Cache<String, Boolean> m_booleanCache;
-  private volatile Cache<String, Date> m_dateCache;
-  private volatile Cache<String, Long> m_durationCache;
-  private final Map<String, Cache<String, String[]>> m_arrayCache;
-  private final List<Cache> allCaches;
+  private final ConfigChangeDispatcher m_changeDispatcher;
+  private final ConfigChangeEventHandler m_changeEventHandler;
+  private final ConfigMetrics m_metrics;
+  private final String m_metricsNamespace;
+  private final Counter m_typedValueCacheHits;
+  private final Counter m_typedValueCacheMisses;
+  private final AtomicReference<TypedValueSnapshot> m_typedValues;
   private final AtomicLong m_configVersion; //indicate config version
 
   protected PropertiesFactory propertiesFactory;
 
-  static {
-    m_executorService = Executors.newCachedThreadPool(ApolloThreadFactory
-        .create("Config", true));
+  public AbstractConfig() {
+    this(ConfigMetrics.GLOBAL);
   }
 
-  public AbstractConfig() {
+  /**
+   * @param namespace the namespace which the metrics of this config are reported with
+   */
+  protected AbstractConfig(String namespace) {
     m_configUtil = ApolloInjector.getInstance(ConfigUtil.class);
+    m_changeDispatcher = ApolloInjector.getInstance(ConfigChangeDispatcher.class);
+    m_metrics = ApolloInjector.getInstance(ConfigMetrics.class);
+    m_metricsNamespace = namespace;
+    m_changeEventHandler = new ConfigChangeEventHandler(m_metrics);
+    m_typedValueCacheHits = m_metrics.counter(namespace, ConfigMetrics.TYPED_VALUE_CACHE_HITS);
+    m_typedValueCacheMisses = m_metrics.counter(namespace, ConfigMetrics.TYPED_VALUE_CACHE_MISSES);
+    if (!ConfigMetrics.GLOBAL.equals(namespace)) {
+      m_metrics.gauge(namespace, ConfigMetrics.CONFIG_SOURCE_TYPE, new SourceTypeGauge(this));
+    }
     m_configVersion = new AtomicLong();
-    m_arrayCache = Maps.newConcurrentMap();
-    allCaches = Lists.newArrayList();
+    m_typedValues = new AtomicReference<>();
     propertiesFactory = ApolloInjector.getInstance(PropertiesFactory.class);
   }
 
@@ -86,36 +96,38 @@ public abstract class AbstractConfig implements Config {
 
   @Override
   public void addChangeListener(ConfigChangeListener listener, Set<String> interestedKeys, Set<String> interestedKeyPrefixes) {
-    if (!m_listeners.contains(listener)) {
-      m_listeners.add(listener);
-      if (interestedKeys != null && !interestedKeys.isEmpty()) {
-        m_interestedKeys.put(listener, Sets.newHashSet(interestedKeys));
-      }
-      if (interestedKeyPrefixes != null && !interestedKeyPrefixes.isEmpty()) {
-        m_interestedKeyPrefixes.put(listener, Sets.newHashSet(interestedKeyPrefixes));
+    synchronized (m_listeners) {
+      if (!m_listeners.contains(listener)) {
+        m_listeners.add(listener);
+        if (interestedKeys != null && !interestedKeys.isEmpty()) {
+          m_interestedKeys.put(listener, Sets.newHashSet(interestedKeys));
+        }
+        if (interestedKeyPrefixes != null && !interestedKeyPrefixes.isEmpty()) {
+          m_interestedKeyPrefixes.put(listener, Sets.newHashSet(interestedKeyPrefixes));
+        }
+        m_listenerIndex.add(listener, m_interestedKeys.get(listener),
+            m_interestedKeyPrefixes.get(listener));
       }
     }
   }
 
   @Override
   public boolean removeChangeListener(ConfigChangeListener listener) {
-    m_interestedKeys.remove(listener);
-    m_interestedKeyPrefixes.remove(listener);
-    return m_listeners.remove(listener);
+    synchronized (m_listeners) {
+      Set<String> interestedKeys = m_interestedKeys.remove(listener);
+      Set<String> interestedKeyPrefixes = m_interestedKeyPrefixes.remove(listener);
+      boolean removed = m_listeners.remove(listener);
+      if (removed) {
+        m_listenerIndex.remove(listener, interestedKeys, interestedKeyPrefixes);
+      }
+      return removed;
+    }
   }
 
   @Override
   public Integer getIntProperty(String key, Integer defaultValue) {
     try {
-      if (m_integerCache == null) {
-        synchronized (this) {
-          if (m_integerCache == null) {
-            m_integerCache = newCache();
-          }
-        }
-      }
-
-      return getValueFromCache(key, Functions.TO_INT_FUNCTION, m_integerCache, defaultValue);
+      return getValueFromCache(key, Functions.TO_INT_FUNCTION, defaultValue);
     } catch (Throwable ex) {
       Tracer.logError(new ApolloConfigException(
           String.format("getIntProperty for %s failed, return default value %d", key,
@@ -127,15 +139,7 @@ public abstract class AbstractConfig implements Config {
   @Override
   public Long getLongProperty(String key, Long defaultValue) {
     try {
-      if (m_longCache == null) {
-        synchronized (this) {
-          if (m_longCache == null) {
-            m_longCache = newCache();
-          }
-        }
-      }
-
-      return getValueFromCache(key, Functions.TO_LONG_FUNCTION, m_longCache, defaultValue);
+      return getValueFromCache(key, Functions.TO_LONG_FUNCTION, defaultValue);
     } catch (Throwable ex) {
       Tracer.logError(new ApolloConfigException(
           String.format("getLongProperty for %s failed, return default value %d", key,
@@ -147,15 +151,7 @@ public abstract class AbstractConfig implements Config {
   @Override
   public Short getShortProperty(String key, Short defaultValue) {
     try {
-      if (m_shortCache == null) {
-        synchronized (this) {
-          if (m_shortCache == null) {
-            m_shortCache = newCache();
-          }
-        }
-      }
-
-      return getValueFromCache(key, Functions.TO_SHORT_FUNCTION, m_shortCache, defaultValue);
+      return getValueFromCache(key, Functions.TO_SHORT_FUNCTION, defaultValue);
     } catch (Throwable ex) {
       Tracer.logError(new ApolloConfigException(
           String.format("getShortProperty for %s failed, return default value %d", key,
@@ -167,15 +163,7 @@ public abstract class AbstractConfig implements Config {
   @Override
   public Float getFloatProperty(String key, Float defaultValue) {
     try {
-      if (m_floatCache == null) {
-        synchronized (this) {
-          if (m_floatCache == null) {
-            m_floatCache = newCache();
-          }
-        }
-      }
-
-      return getValueFromCache(key, Functions.TO_FLOAT_FUNCTION, m_floatCache, defaultValue);
+      return getValueFromCache(key, Functions.TO_FLOAT_FUNCTION, defaultValue);
     } catch (Throwable ex) {
       Tracer.logError(new ApolloConfigException(
           String.format("getFloatProperty for %s failed, return default value %f", key,
@@ -187,15 +175,7 @@ public abstract class AbstractConfig implements Config {
   @Override
   public Double getDoubleProperty(String key, Double defaultValue) {
     try {
-      if (m_doubleCache == null) {
-        synchronized (this) {
-          if (m_doubleCache == null) {
-            m_doubleCache = newCache();
-          }
-        }
-      }
-
-      return getValueFromCache(key, Functions.TO_DOUBLE_FUNCTION, m_doubleCache, defaultValue);
+      return getValueFromCache(key, Functions.TO_DOUBLE_FUNCTION, defaultValue);
     } catch (Throwable ex) {
       Tracer.logError(new ApolloConfigException(
           String.format("getDoubleProperty for %s failed, return default value %f", key,
@@ -207,15 +187,7 @@ public abstract class AbstractConfig implements Config {
   @Override
   public Byte getByteProperty(String key, Byte defaultValue) {
     try {
-      if (m_byteCache == null) {
-        synchronized (this) {
-          if (m_byteCache == null) {
-            m_byteCache = newCache();
-          }
-        }
-      }
-
-      return getValueFromCache(key, Functions.TO_BYTE_FUNCTION, m_byteCache, defaultValue);
+      return getValueFromCache(key, Functions.TO_BYTE_FUNCTION, defaultValue);
     } catch (Throwable ex) {
       Tracer.logError(new ApolloConfigException(
           String.format("getByteProperty for %s failed, return default value %d", key,
@@ -227,15 +199,7 @@ public abstract class AbstractConfig implements Config {
   @Override
   public Boolean getBooleanProperty(String key, Boolean defaultValue) {
     try {
-      if (m_booleanCache == null) {
-        synchronized (this) {
-          if (m_booleanCache == null) {
-            m_booleanCache = newCache();
-          }
-        }
-      }
-
-      return getValueFromCache(key, Functions.TO_BOOLEAN_FUNCTION, m_booleanCache, defaultValue);
+      return getValueFromCache(key, Functions.TO_BOOLEAN_FUNCTION, defaultValue);
     } catch (Throwable ex) {
       Tracer.logError(new ApolloConfigException(
           String.format("getBooleanProperty for %s failed, return default value %b", key,
@@ -247,18 +211,11 @@ public abstract class AbstractConfig implements Config {
   @Override
   public String[] getArrayProperty(String key, final String delimiter, String[] defaultValue) {
     try {
-      if (!m_arrayCache.containsKey(delimiter)) {
-        synchronized (this) {
-          if (!m_arrayCache.containsKey(delimiter)) {
-            m_arrayCache.put(delimiter, this.<String[]>newCache());
-          }
-        }
-      }
-
-      Cache<String, String[]> cache = m_arrayCache.get(delimiter);
-      String[] result = cache.getIfPresent(key);
+      Map<String, Object> cache = currentTypedValues().arrayValuesOf(delimiter);
+      String[] result = (String[]) cache.get(key);
 
       if (result != null) {
+        m_typedValueCacheHits.increment();
         return result;
       }
 
@@ -276,13 +233,22 @@ public abstract class AbstractConfig implements Config {
   }
 
   @Override
-  public <T extends Enum<T>> T getEnumProperty(String key, Class<T> enumType, T defaultValue) {
+  public <T extends Enum<T>> T getEnumProperty(String key, final Class<T> enumType, T defaultValue) {
     try {
-      String value = getProperty(key, null);
+      Map<String, Object> cache = currentTypedValues().valuesOf(enumType);
+      T result = enumType.cast(cache.get(key));
 
-      if (value != null) {
-        return Enum.valueOf(enumType, value);
+      if (result != null) {
+        m_typedValueCacheHits.increment();
+        return result;
       }
+
+      return getValueAndStoreToCache(key, new Function<String, T>() {
+        @Override
+        public T apply(String input) {
+          return Enum.valueOf(enumType, input);
+        }
+      }, cache, defaultValue);
     } catch (Throwable ex) {
       Tracer.logError(new ApolloConfigException(
           String.format("getEnumProperty for %s failed, return default value %s", key,
@@ -295,15 +261,7 @@ public abstract class AbstractConfig implements Config {
   @Override
   public Date getDateProperty(String key, Date defaultValue) {
     try {
-      if (m_dateCache == null) {
-        synchronized (this) {
-          if (m_dateCache == null) {
-            m_dateCache = newCache();
-          }
-        }
-      }
-
-      return getValueFromCache(key, Functions.TO_DATE_FUNCTION, m_dateCache, defaultValue);
+      return getValueFromCache(key, Functions.TO_DATE_FUNCTION, defaultValue);
     } catch (Throwable ex) {
       Tracer.logError(new ApolloConfigException(
           String.format("getDateProperty for %s failed, return default value %s", key,
@@ -314,13 +272,26 @@ public abstract class AbstractConfig implements Config {
   }
 
   @Override
-  public Date getDateProperty(String key, String format, Date defaultValue) {
+  public Date getDateProperty(String key, final String format, Date defaultValue) {
     try {
-      String value = getProperty(key, null);
+      Map<String, Object> cache = currentTypedValues().dateValuesOf(format, null);
+      Date result = (Date) cache.get(key);
 
-      if (value != null) {
-        return Parsers.forDate().parse(value, format);
+      if (result != null) {
+        m_typedValueCacheHits.increment();
+        return result;
       }
+
+      return getValueAndStoreToCache(key, new Function<String, Date>() {
+        @Override
+        public Date apply(String input) {
+          try {
+            return Parsers.forDate().parse(input, format);
+          } catch (ParserException ex) {
+            throw new IllegalArgumentException(ex);
+          }
+        }
+      }, cache, defaultValue);
     } catch (Throwable ex) {
       Tracer.logError(new ApolloConfigException(
           String.format("getDateProperty for %s failed, return default value %s", key,
@@ -331,13 +302,27 @@ public abstract class AbstractConfig implements Config {
   }
 
   @Override
-  public Date getDateProperty(String key, String format, Locale locale, Date defaultValue) {
+  public Date getDateProperty(String key, final String format, final Locale locale,
+      Date defaultValue) {
     try {
-      String value = getProperty(key, null);
+      Map<String, Object> cache = currentTypedValues().dateValuesOf(format, locale);
+      Date result = (Date) cache.get(key);
 
-      if (value != null) {
-        return Parsers.forDate().parse(value, format, locale);
+      if (result != null) {
+        m_typedValueCacheHits.increment();
+        return result;
       }
+
+      return getValueAndStoreToCache(key, new Function<String, Date>() {
+        @Override
+        public Date apply(String input) {
+          try {
+            return Parsers.forDate().parse(input, format, locale);
+          } catch (ParserException ex) {
+            throw new IllegalArgumentException(ex);
+          }
+        }
+      }, cache, defaultValue);
     } catch (Throwable ex) {
       Tracer.logError(new ApolloConfigException(
           String.format("getDateProperty for %s failed, return default value %s", key,
@@ -350,15 +335,7 @@ public abstract class AbstractConfig implements Config {
   @Override
   public long getDurationProperty(String key, long defaultValue) {
     try {
-      if (m_durationCache == null) {
-        synchronized (this) {
-          if (m_durationCache == null) {
-            m_durationCache = newCache();
-          }
-        }
-      }
-
-      return getValueFromCache(key, Functions.TO_DURATION_FUNCTION, m_durationCache, defaultValue);
+      return getValueFromCache(key, Functions.TO_DURATION_FUNCTION, defaultValue);
     } catch (Throwable ex) {
       Tracer.logError(new ApolloConfigException(
           String.format("getDurationProperty for %s failed, return default value %d", key,
@@ -385,28 +362,36 @@ public abstract class AbstractConfig implements Config {
     return defaultValue;
   }
 
-  private <T> T getValueFromCache(String key, Function<String, T> parser, Cache<String, T> cache, T defaultValue) {
-    T result = cache.getIfPresent(key);
+  @SuppressWarnings("unchecked")
+  private <T> T getValueFromCache(String key, Function<String, T> parser, T defaultValue) {
+    Map<String, Object> cache = currentTypedValues().valuesOf(parser);
+    T result = (T) cache.get(key);
 
     if (result != null) {
+      m_typedValueCacheHits.increment();
       return result;
     }
 
     return getValueAndStoreToCache(key, parser, cache, defaultValue);
   }
 
-  private <T> T getValueAndStoreToCache(String key, Function<String, T> parser, Cache<String, T> cache, T defaultValue) {
-    long currentConfigVersion = m_configVersion.get();
+  private <T> T getValueAndStoreToCache(String key, Function<String, T> parser,
+      Map<String, Object> cache, T defaultValue) {
+    // the cache is obtained before reading the value, so a value read from the previous config
+    // version could only be stored to the previous snapshot, which is never read again
+    m_typedValueCacheMisses.increment();
     String value = getProperty(key, null);
 
     if (value != null) {
       T result = parser.apply(value);
 
       if (result != null) {
-        synchronized (this) {
-          if (m_configVersion.get() == currentConfigVersion) {
-            cache.put(key, result);
+        long maxCacheSize = m_configUtil.getMaxConfigCacheSize();
+        if (maxCacheSize > 0) {
+          if (cache.size() >= maxCacheSize) {
+            cache.clear();
           }
+          cache.put(key, result);
         }
         return result;
       }
@@ -415,124 +400,246 @@ public abstract class AbstractConfig implements Config {
     return defaultValue;
   }
 
-  private <T> Cache<String, T> newCache() {
-    Cache<String, T> cache = CacheBuilder.newBuilder()
-        .maximumSize(m_configUtil.getMaxConfigCacheSize())
-        .expireAfterAccess(m_configUtil.getConfigCacheExpireTime(), m_configUtil.getConfigCacheExpireTimeUnit())
-        .build();
-    allCaches.add(cache);
-    return cache;
+  private TypedValueSnapshot currentTypedValues() {
+    TypedValueSnapshot typedValues = m_typedValues.get();
+    long configVersion = m_configVersion.get();
+
+    if (typedValues != null && typedValues.isValid(configVersion)) {
+      return typedValues;
+    }
+
+    TypedValueSnapshot newTypedValues = new TypedValueSnapshot(configVersion,
+        System.currentTimeMillis() + m_configUtil.getConfigCacheExpireTimeUnit()
+            .toMillis(m_configUtil.getConfigCacheExpireTime()));
+    if (m_typedValues.compareAndSet(typedValues, newTypedValues)) {
+      return newTypedValues;
+    }
+    // rebuilt by others, if it's still stale, the values stored are just dropped
+    return m_typedValues.get();
   }
 
   /**
    * Clear config cache
    */
   protected void clearConfigCache() {
-    synchronized (this) {
-      for (Cache c : allCaches) {
-        if (c != null) {
-          c.invalidateAll();
-        }
+    m_configVersion.incrementAndGet();
+    m_typedValues.set(null);
+  }
+
+  protected void fireConfigChange(ConfigChangeEvent changeEvent) {
+    // find the listeners interested in this change event by the changed keys
+    Set<ConfigChangeListener> interestedListeners =
+        m_listenerIndex.findInterestedListeners(changeEvent.changedKeys());
+    if (interestedListeners.isEmpty()) {
+      return;
+    }
+    for (ConfigChangeListener listener : m_listeners) {
+      if (interestedListeners.contains(listener)) {
+        m_changeDispatcher.dispatch(listener, changeEvent, m_changeEventHandler);
       }
-      m_configVersion.incrementAndGet();
     }
   }
 
-  protected void fireConfigChange(final ConfigChangeEvent changeEvent) {
-    for (final ConfigChangeListener listener : m_listeners) {
-      // check whether the listener is interested in this change event
-      if (!isConfigChangeListenerInterested(listener, changeEvent)) {
-        continue;
-      }
-      m_executorService.submit(new Runnable() {
-        @Override
-        public void run() {
-          String listenerName = listener.getClass().getName();
-          Transaction transaction = Tracer.newTransaction("Apollo.ConfigChangeListener", listenerName);
-          try {
-            listener.onChange(changeEvent);
-            transaction.setStatus(Transaction.SUCCESS);
-          } catch (Throwable ex) {
-            transaction.setStatus(ex);
-            Tracer.logError(ex);
-            logger.error("Failed to invoke config change listener {}", listenerName, ex);
-          } finally {
-            transaction.complete();
-          }
-        }
-      });
+  /**
+   * Stop receiving the changes from the config repository and release it, the config is not used
+   * any more afterwards
+   */
+  void close() {
+    if (ConfigMetrics.GLOBAL.equals(m_metricsNamespace)) {
+      return;
     }
+    m_metrics.remove(m_metricsNamespace, ConfigMetrics.TYPED_VALUE_CACHE_HITS);
+    m_metrics.remove(m_metricsNamespace, ConfigMetrics.TYPED_VALUE_CACHE_MISSES);
+    m_metrics.remove(m_metricsNamespace, ConfigMetrics.CONFIG_SOURCE_TYPE);
+    m_metrics.remove(m_metricsNamespace, ConfigMetrics.LISTENER_LATENCY);
+    m_metrics.remove(m_metricsNamespace, ConfigMetrics.LISTENER_FAILURES);
   }
 
-  private boolean isConfigChangeListenerInterested(ConfigChangeListener configChangeListener, ConfigChangeEvent configChangeEvent) {
-    Set<String> interestedKeys = m_interestedKeys.get(configChangeListener);
-    Set<String> interestedKeyPrefixes = m_interestedKeyPrefixes.get(configChangeListener);
+  List<ConfigChange> calcPropertyChanges(String namespace, Properties previous,
+                                         Properties current) {
+    if (previous == null) {
+      previous = propertiesFactory.getPropertiesInstance();
+    }
 
-    if ((interestedKeys == null || interestedKeys.isEmpty())
-        && (interestedKeyPrefixes == null || interestedKeyPrefixes.isEmpty())) {
-      return true; // no interested keys means interested in all keys
+    if (current == null) {
+      current =  propertiesFactory.getPropertiesInstance();
     }
 
-    if (interestedKeys != null) {
-      for (String interestedKey : interestedKeys) {
-        if (configChangeEvent.isChanged(interestedKey)) {
-          return true;
-        }
+    //walk both properties once instead of materializing their key sets and the set operations,
+    //both of them are fully parsed already, as the current properties are kept as the config anyway
+    List<ConfigChange> addedChanges = Lists.newArrayList();
+    List<ConfigChange> modifiedChanges = Lists.newArrayList();
+    for (Object key : current.keySet()) {
+      if (!(key instanceof String)) {
+        continue;
+      }
+      String currentKey = (String) key;
+      String currentValue = current.getProperty(currentKey);
+      if (currentValue == null) {
+        continue;
+      }
+      String previousValue = previous.getProperty(currentKey);
+      if (previousValue == null) {
+        addedChanges.add(new ConfigChange(namespace, currentKey, null, currentValue,
+            PropertyChangeType.ADDED));
+      } else if (!Objects.equal(previousValue, currentValue)) {
+        modifiedChanges.add(new ConfigChange(namespace, currentKey, previousValue, currentValue,
+            PropertyChangeType.MODIFIED));
       }
     }
 
-    if (interestedKeyPrefixes != null) {
-      for (String prefix : interestedKeyPrefixes) {
-        for (final String changedKey : configChangeEvent.changedKeys()) {
-          if (changedKey.startsWith(prefix)) {
-            return true;
-          }
-        }
+    List<ConfigChange> changes = addedChanges;
+    for (Object key : previous.keySet()) {
+      if (!(key instanceof String)) {
+        continue;
+      }
+      String previousKey = (String) key;
+      String previousValue = previous.getProperty(previousKey);
+      if (previousValue != null && current.getProperty(previousKey) == null) {
+        changes.add(new ConfigChange(namespace, previousKey, previousValue, null,
+            PropertyChangeType.DELETED));
       }
     }
+    changes.addAll(modifiedChanges);
 
-    return false;
+    return changes;
   }
 
-  List<ConfigChange> calcPropertyChanges(String namespace, Properties previous,
-                                         Properties current) {
-    if (previous == null) {
-      previous = propertiesFactory.getPropertiesInstance();
+  private static class SourceTypeGauge extends Gauge<ConfigSourceType> {
+    //not to keep the config alive
+    private final WeakReference<Config> m_configRef;
+
+    SourceTypeGauge(Config config) {
+      m_configRef = new WeakReference<>(config);
     }
 
-    if (current == null) {
-      current =  propertiesFactory.getPropertiesInstance();
+    @Override
+    public ConfigSourceType getValue() {
+      Config config = m_configRef.get();
+      return config == null ? null : config.getSourceType();
+    }
+  }
+
+  private static class ConfigChangeEventHandler implements
+      ConfigChangeDispatcher.EventHandler<ConfigChangeListener, ConfigChangeEvent> {
+    private final ConfigMetrics m_metrics;
+
+    ConfigChangeEventHandler(ConfigMetrics metrics) {
+      m_metrics = metrics;
     }
 
-    Set<String> previousKeys = previous.stringPropertyNames();
-    Set<String> currentKeys = current.stringPropertyNames();
+    @Override
+    public void handle(ConfigChangeListener listener, ConfigChangeEvent changeEvent) {
+      String listenerName = listener.getClass().getName();
+      Transaction transaction = Tracer.newTransaction("Apollo.ConfigChangeListener", listenerName);
+      long start = System.currentTimeMillis();
+      try {
+        listener.onChange(changeEvent);
+        transaction.setStatus(Transaction.SUCCESS);
+      } catch (Throwable ex) {
+        m_metrics.counter(changeEvent.getNamespace(), ConfigMetrics.LISTENER_FAILURES).increment();
+        transaction.setStatus(ex);
+        Tracer.logError(ex);
+        logger.error("Failed to invoke config change listener {}", listenerName, ex);
+      } finally {
+        m_metrics.histogram(changeEvent.getNamespace(), ConfigMetrics.LISTENER_LATENCY)
+            .record(System.currentTimeMillis() - start);
+        transaction.complete();
+      }
+    }
+
+    @Override
+    public ConfigChangeEvent merge(ConfigChangeEvent previous, ConfigChangeEvent next) {
+      if (!Objects.equal(previous.getNamespace(), next.getNamespace())) {
+        return null;
+      }
+      Map<String, ConfigChange> changes = Maps.newLinkedHashMap();
+      for (String key : previous.changedKeys()) {
+        changes.put(key, previous.getChange(key));
+      }
+      for (String key : next.changedKeys()) {
+        ConfigChange previousChange = changes.get(key);
+        ConfigChange nextChange = next.getChange(key);
+        if (previousChange == null) {
+          changes.put(key, nextChange);
+          continue;
+        }
+        String oldValue = previousChange.getOldValue();
+        String newValue = nextChange.getNewValue();
+        if (Objects.equal(oldValue, newValue)) {
+          changes.remove(key);
+          continue;
+        }
+        PropertyChangeType changeType = PropertyChangeType.MODIFIED;
+        if (oldValue == null) {
+          changeType = PropertyChangeType.ADDED;
+        } else if (newValue == null) {
+          changeType = PropertyChangeType.DELETED;
+        }
+        changes.put(key, new ConfigChange(next.getNamespace(), key, oldValue, newValue, changeType));
+      }
+      //the changes are reverted, deliver them as they are
+      if (changes.isEmpty()) {
+        return null;
+      }
+      return new ConfigChangeEvent(next.getNamespace(), changes);
+    }
+  }
 
-    Set<String> commonKeys = Sets.intersection(previousKeys, currentKeys);
-    Set<String> newKeys = Sets.difference(currentKeys, commonKeys);
-    Set<String> removedKeys = Sets.difference(previousKeys, commonKeys);
+  /**
+   * The typed values parsed for one config version, which is dropped as a whole once the config
+   * changes or it expires, so reads never lock and cache hits allocate nothing
+   */
+  private static class TypedValueSnapshot {
+    private final long m_configVersion;
+    private final long m_expireTime;
+    private final ConcurrentMap<Object, Map<String, Object>> m_values = Maps.newConcurrentMap();
+    private final ConcurrentMap<String, Map<String, Object>> m_arrayValues = Maps.newConcurrentMap();
+    private final ConcurrentMap<String, Map<String, Object>> m_dateValues = Maps.newConcurrentMap();
+    private final ConcurrentMap<Locale, ConcurrentMap<String, Map<String, Object>>> m_localizedDateValues =
+        Maps.newConcurrentMap();
+
+    TypedValueSnapshot(long configVersion, long expireTime) {
+      m_configVersion = configVersion;
+      m_expireTime = expireTime;
+    }
 
-    List<ConfigChange> changes = Lists.newArrayList();
+    boolean isValid(long configVersion) {
+      return m_configVersion == configVersion && System.currentTimeMillis() < m_expireTime;
+    }
 
-    for (String newKey : newKeys) {
-      changes.add(new ConfigChange(namespace, newKey, null, current.getProperty(newKey),
-          PropertyChangeType.ADDED));
+    /**
+     * @param type the parser or the enum type
+     */
+    Map<String, Object> valuesOf(Object type) {
+      return valuesOf(m_values, type);
     }
 
-    for (String removedKey : removedKeys) {
-      changes.add(new ConfigChange(namespace, removedKey, previous.getProperty(removedKey), null,
-          PropertyChangeType.DELETED));
+    Map<String, Object> arrayValuesOf(String delimiter) {
+      return valuesOf(m_arrayValues, delimiter);
     }
 
-    for (String commonKey : commonKeys) {
-      String previousValue = previous.getProperty(commonKey);
-      String currentValue = current.getProperty(commonKey);
-      if (Objects.equal(previousValue, currentValue)) {
-        continue;
+    Map<String, Object> dateValuesOf(String format, Locale locale) {
+      if (locale == null) {
+        return valuesOf(m_dateValues, format);
+      }
+      ConcurrentMap<String, Map<String, Object>> dateValues = m_localizedDateValues.get(locale);
+      if (dateValues == null) {
+        m_localizedDateValues.putIfAbsent(locale,
+            Maps.<String, Map<String, Object>>newConcurrentMap());
+        dateValues = m_localizedDateValues.get(locale);
       }
-      changes.add(new ConfigChange(namespace, commonKey, previousValue, currentValue,
-          PropertyChangeType.MODIFIED));
+      return valuesOf(dateValues, format);
     }
 
-    return changes;
+    private static <K> Map<String, Object> valuesOf(ConcurrentMap<K, Map<String, Object>> values,
+        K type) {
+      Map<String, Object> result = values.get(type);
+      if (result == null) {
+        values.putIfAbsent(type, Maps.<String, Object>newConcurrentMap());
+        result = values.get(type);
+      }
+      return result;
+    }
   }
 }
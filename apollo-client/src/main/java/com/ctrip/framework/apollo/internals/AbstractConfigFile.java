@@ -4,9 +4,8 @@ import com.ctrip.framework.apollo.build.ApolloInjector;
 import com.ctrip.framework.apollo.enums.ConfigSourceType;
 import com.ctrip.framework.apollo.util.factory.PropertiesFactory;
 import java.util.List;
+import java.util.Objects;
 import java.util.Properties;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicReference;
 
 import org.slf4j.Logger;
@@ -14,7 +13,6 @@ import org.slf4j.LoggerFactory;
 
 import com.ctrip.framework.apollo.ConfigFile;
 import com.ctrip.framework.apollo.ConfigFileChangeListener;
-import com.ctrip.framework.apollo.core.utils.ApolloThreadFactory;
 import com.ctrip.framework.apollo.enums.PropertyChangeType;
 import com.ctrip.framework.apollo.model.ConfigFileChangeEvent;
 import com.ctrip.framework.apollo.tracer.Tracer;
@@ -27,25 +25,23 @@ import com.google.common.collect.Lists;
  */
 public abstract class AbstractConfigFile implements ConfigFile, RepositoryChangeListener {
   private static final Logger logger = LoggerFactory.getLogger(AbstractConfigFile.class);
-  private static ExecutorService m_executorService;
+  private static final ConfigFileChangeEventHandler CHANGE_EVENT_HANDLER =
+      new ConfigFileChangeEventHandler();
   protected final ConfigRepository m_configRepository;
   protected final String m_namespace;
   protected final AtomicReference<Properties> m_configProperties;
   private final List<ConfigFileChangeListener> m_listeners = Lists.newCopyOnWriteArrayList();
   protected final PropertiesFactory propertiesFactory;
+  private final ConfigChangeDispatcher m_changeDispatcher;
 
   private volatile ConfigSourceType m_sourceType = ConfigSourceType.NONE;
 
-  static {
-    m_executorService = Executors.newCachedThreadPool(ApolloThreadFactory
-        .create("ConfigFile", true));
-  }
-
   public AbstractConfigFile(String namespace, ConfigRepository configRepository) {
     m_configRepository = configRepository;
     m_namespace = namespace;
     m_configProperties = new AtomicReference<>();
     propertiesFactory = ApolloInjector.getInstance(PropertiesFactory.class);
+    m_changeDispatcher = ApolloInjector.getInstance(ConfigChangeDispatcher.class);
     initialize();
   }
 
@@ -76,8 +72,6 @@ public abstract class AbstractConfigFile implements ConfigFile, RepositoryChange
     if (newProperties.equals(m_configProperties.get())) {
       return;
     }
-    Properties newConfigProperties = propertiesFactory.getPropertiesInstance();
-    newConfigProperties.putAll(newProperties);
 
     String oldValue = getContent();
 
@@ -116,25 +110,58 @@ public abstract class AbstractConfigFile implements ConfigFile, RepositoryChange
     return m_sourceType;
   }
 
-  private void fireConfigChange(final ConfigFileChangeEvent changeEvent) {
-    for (final ConfigFileChangeListener listener : m_listeners) {
-      m_executorService.submit(new Runnable() {
-        @Override
-        public void run() {
-          String listenerName = listener.getClass().getName();
-          Transaction transaction = Tracer.newTransaction("Apollo.ConfigFileChangeListener", listenerName);
-          try {
-            listener.onChange(changeEvent);
-            transaction.setStatus(Transaction.SUCCESS);
-          } catch (Throwable ex) {
-            transaction.setStatus(ex);
-            Tracer.logError(ex);
-            logger.error("Failed to invoke config file change listener {}", listenerName, ex);
-          } finally {
-            transaction.complete();
-          }
-        }
-      });
+  private void fireConfigChange(ConfigFileChangeEvent changeEvent) {
+    for (ConfigFileChangeListener listener : m_listeners) {
+      m_changeDispatcher.dispatch(listener, changeEvent, CHANGE_EVENT_HANDLER);
+    }
+  }
+
+  private static class ConfigFileChangeEventHandler implements
+      ConfigChangeDispatcher.EventHandler<ConfigFileChangeListener, ConfigFileChangeEvent> {
+
+    @Override
+    public void handle(ConfigFileChangeListener listener, ConfigFileChangeEvent changeEvent) {
+      String listenerName = listener.getClass().getName();
+      Transaction transaction = Tracer.newTransaction("Apollo.ConfigFileChangeListener", listenerName);
+      try {
+        listener.onChange(changeEvent);
+        transaction.setStatus(Transaction.SUCCESS);
+      } catch (Throwable ex) {
+        transaction.setStatus(ex);
+        Tracer.logError(ex);
+        logger.error("Failed to invoke config file change listener {}", listenerName, ex);
+      } finally {
+        transaction.complete();
+      }
     }
+
+    @Override
+    public ConfigFileChangeEvent merge(ConfigFileChangeEvent previous, ConfigFileChangeEvent next) {
+      if (!Objects.equals(previous.getNamespace(), next.getNamespace())) {
+        return null;
+      }
+      String oldValue = previous.getOldValue();
+      String newValue = next.getNewValue();
+      //the changes are reverted, deliver them as they are
+      if (Objects.equals(oldValue, newValue)) {
+        return null;
+      }
+      PropertyChangeType changeType = PropertyChangeType.MODIFIED;
+      if (oldValue == null) {
+        changeType = PropertyChangeType.ADDED;
+      } else if (newValue == null) {
+        changeType = PropertyChangeType.DELETED;
+      }
+      return new ConfigFileChangeEvent(next.getNamespace(), oldValue, newValue, changeType);
+    }
+  }
+
+  /**
+   * Stop receiving the changes from the config repository and release it, the config file is not
+   * used any more afterwards
+   */
+  void close() {
+    m_configRepository.removeChangeListener(this);
+    AbstractConfigRepository.closeRepository(m_configRepository);
   }
 }
@@ -35,6 +35,18 @@ public abstract class AbstractConfigRepository implements ConfigRepository {
 
   protected abstract void sync();
 
+  /**
+   * Stop syncing and release the resources, the repository is not used any more afterwards
+   */
+  void close() {
+  }
+
+  static void closeRepository(ConfigRepository repository) {
+    if (repository instanceof AbstractConfigRepository) {
+      ((AbstractConfigRepository) repository).close();
+    }
+  }
+
   @Override
   public void addChangeListener(RepositoryChangeListener listener) {
     if (!m_listeners.contains(listener)) {
@@ -0,0 +1,480 @@
+package com.ctrip.framework.apollo.internals;
+
+import com.ctrip.framework.apollo.build.ApolloInjector;
+import com.ctrip.framework.apollo.core.ConfigConsts;
+import com.ctrip.framework.apollo.core.dto.ApolloConfig;
+import com.ctrip.framework.apollo.core.dto.ApolloConfigNotification;
+import com.ctrip.framework.apollo.core.signature.Signature;
+import com.ctrip.framework.apollo.core.utils.ApolloThreadFactory;
+import com.ctrip.framework.apollo.core.utils.StringUtils;
+import com.ctrip.framework.apollo.tracer.Tracer;
+import com.ctrip.framework.apollo.util.ConfigUtil;
+import com.ctrip.framework.apollo.util.ExceptionUtil;
+import com.google.common.base.Strings;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.net.HttpHeaders;
+import com.google.common.reflect.TypeToken;
+import com.google.gson.Gson;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.lang.reflect.Type;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A host level agent which syncs the configs with the config service on behalf of all the
+ * applications on the same host, so that only one set of long polls and config loads is made no
+ * matter how many applications are running.
+ *
+ * <p>The agent listens on localhost only, and the applications attach to it with
+ * {@link ConfigAgentConfigRepository} by setting {@code apollo.configAgent.port} to the agent's
+ * port. The namespaces are synced once requested by any application, with the same app id, cluster
+ * and local cache as a normal client, so the requests of the other app ids or clusters are
+ * rejected. If the app has an access key secret, the requests must be signed with it the same way
+ * as the requests to the config service, so the other processes on the host could not read the
+ * configs protected by the access key. The namespaces not requested for a while are released, and
+ * the number of namespaces synced is capped.</p>
+ *
+ * <p>The release keys are the hashes of the config contents, and the notification ids start from the
+ * time the agent starts, so they stay consistent with the clients across agent restarts.</p>
+ */
+public class ConfigAgent {
+  private static final Logger logger = LoggerFactory.getLogger(ConfigAgent.class);
+  //60 seconds, the same as the config service's long polling timeout
+  private static final long NOTIFICATION_TIMEOUT_IN_MILLS = 60 * 1000;
+  //the same as the config service
+  private static final long SIGNATURE_TIMESTAMP_INTERVAL_IN_MILLS = 60 * 1000;
+  private static final int DEFAULT_MAX_NAMESPACES = 1000;
+  //much longer than the clients' long polling interval, so the namespaces in use are never idle
+  private static final long DEFAULT_NAMESPACE_IDLE_TIME_IN_MILLS = 10 * 60 * 1000;
+  private static final Gson GSON = new Gson();
+  private static final Type NOTIFICATIONS_TYPE = new TypeToken<List<ApolloConfigNotification>>() {
+  }.getType();
+  private final int m_port;
+  private final int m_maxNamespaces;
+  private final long m_namespaceIdleTimeInMills;
+  private final ConcurrentMap<String, AgentNamespace> m_namespaces = Maps.newConcurrentMap();
+  //notified once any namespace changes
+  private final Object m_notificationLock = new Object();
+  //starts from the start time, so the ids are never reused by the restarted agents
+  private final AtomicLong m_nextNotificationId =
+      new AtomicLong(TimeUnit.MILLISECONDS.toMicros(System.currentTimeMillis()));
+  private final ConfigUtil m_configUtil;
+  private HttpServer m_server;
+  private ExecutorService m_executorService;
+  private ScheduledExecutorService m_evictionExecutorService;
+
+  /**
+   * @param port the localhost port to listen on, 0 means any free port
+   */
+  public ConfigAgent(int port) {
+    this(port, DEFAULT_MAX_NAMESPACES, DEFAULT_NAMESPACE_IDLE_TIME_IN_MILLS);
+  }
+
+  ConfigAgent(int port, int maxNamespaces, long namespaceIdleTimeInMills) {
+    m_port = port;
+    m_maxNamespaces = maxNamespaces;
+    m_namespaceIdleTimeInMills = namespaceIdleTimeInMills;
+    m_configUtil = ApolloInjector.getInstance(ConfigUtil.class);
+  }
+
+  public synchronized void start() throws IOException {
+    if (m_server != null) {
+      return;
+    }
+    m_server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), m_port), 0);
+    m_server.createContext("/configs/", new ConfigHandler());
+    m_server.createContext("/notifications", new NotificationHandler());
+    //the notification requests are held until changes happen, so each one needs its own thread
+    m_executorService = Executors.newCachedThreadPool(ApolloThreadFactory.create("ConfigAgent", true));
+    m_server.setExecutor(m_executorService);
+    m_evictionExecutorService = Executors.newSingleThreadScheduledExecutor(
+        ApolloThreadFactory.create("ConfigAgent-Eviction", true));
+    long evictionInterval = Math.max(1, m_namespaceIdleTimeInMills / 2);
+    m_evictionExecutorService.scheduleWithFixedDelay(new Runnable() {
+      @Override
+      public void run() {
+        evictIdleNamespaces();
+      }
+    }, evictionInterval, evictionInterval, TimeUnit.MILLISECONDS);
+    m_server.start();
+    logger.info("Config agent started on port {}", getPort());
+  }
+
+  public synchronized void stop() {
+    if (m_server == null) {
+      return;
+    }
+    m_server.stop(0);
+    m_executorService.shutdownNow();
+    m_evictionExecutorService.shutdownNow();
+    m_server = null;
+    for (String namespace : m_namespaces.keySet()) {
+      AgentNamespace agentNamespace = m_namespaces.remove(namespace);
+      if (agentNamespace != null) {
+        agentNamespace.close();
+      }
+    }
+  }
+
+  /**
+   * @return the port listened on
+   */
+  public synchronized int getPort() {
+    return m_server == null ? m_port : m_server.getAddress().getPort();
+  }
+
+  /**
+   * Create the repository which syncs the namespace with the config service
+   */
+  ConfigRepository createConfigRepository(String namespace) {
+    return new LocalFileConfigRepository(namespace, new RemoteConfigRepository(namespace));
+  }
+
+  /**
+   * @return the namespace, or null if too many namespaces are synced already
+   */
+  private AgentNamespace getNamespace(String namespace) {
+    AgentNamespace agentNamespace = m_namespaces.get(namespace);
+    if (agentNamespace == null) {
+      synchronized (m_namespaces) {
+        agentNamespace = m_namespaces.get(namespace);
+        if (agentNamespace == null) {
+          if (m_namespaces.size() >= m_maxNamespaces) {
+            return null;
+          }
+          agentNamespace = new AgentNamespace(namespace);
+          m_namespaces.put(namespace, agentNamespace);
+        }
+      }
+    }
+    agentNamespace.m_lastAccessTime = System.currentTimeMillis();
+    agentNamespace.initialize();
+    return agentNamespace;
+  }
+
+  /**
+   * Stop syncing the namespaces not requested for a while
+   */
+  void evictIdleNamespaces() {
+    long idleSince = System.currentTimeMillis() - m_namespaceIdleTimeInMills;
+    for (Map.Entry<String, AgentNamespace> entry : m_namespaces.entrySet()) {
+      AgentNamespace agentNamespace = entry.getValue();
+      if (agentNamespace.m_lastAccessTime < idleSince
+          && m_namespaces.remove(entry.getKey(), agentNamespace)) {
+        logger.debug("Namespace {} is not requested for a while, stop syncing it", entry.getKey());
+        agentNamespace.close();
+      }
+    }
+  }
+
+  /**
+   * Check the request is from an application with the same app id and cluster as the agent's, and
+   * signed with the access key secret if any
+   *
+   * @return the status code to reject the request, or 0 if accepted
+   */
+  private int checkRequest(HttpExchange exchange, Map<String, String> params) {
+    if (!Objects.equals(m_configUtil.getAppId(), params.get("appId"))
+        || !Objects.equals(m_configUtil.getCluster(), params.get("cluster"))) {
+      logger.warn("Request of appId: {}, cluster: {} rejected, the agent serves appId: {}, "
+              + "cluster: {} only, uri: {}", params.get("appId"), params.get("cluster"),
+          m_configUtil.getAppId(), m_configUtil.getCluster(), exchange.getRequestURI());
+      return 400;
+    }
+    String secret = m_configUtil.getAccessKeySecret();
+    if (!StringUtils.isBlank(secret) && !isSignatureValid(exchange, secret)) {
+      logger.warn("Unauthorized request rejected, uri: {}", exchange.getRequestURI());
+      return 401;
+    }
+    return 0;
+  }
+
+  private boolean isSignatureValid(HttpExchange exchange, String secret) {
+    String timestamp = exchange.getRequestHeaders().getFirst(Signature.HTTP_HEADER_TIMESTAMP);
+    String authorization = exchange.getRequestHeaders().getFirst(HttpHeaders.AUTHORIZATION);
+    if (timestamp == null || authorization == null) {
+      return false;
+    }
+    try {
+      long skew = System.currentTimeMillis() - Long.parseLong(timestamp);
+      if (Math.abs(skew) > SIGNATURE_TIMESTAMP_INTERVAL_IN_MILLS) {
+        return false;
+      }
+    } catch (NumberFormatException ex) {
+      return false;
+    }
+    //Apollo {appId}:{signature}
+    int separator = authorization.lastIndexOf(':');
+    if (separator < 0) {
+      return false;
+    }
+    String pathWithQuery = exchange.getRequestURI().getRawPath();
+    String query = exchange.getRequestURI().getRawQuery();
+    if (!Strings.isNullOrEmpty(query)) {
+      pathWithQuery += "?" + query;
+    }
+    String expected = Signature.signature(timestamp, pathWithQuery, secret);
+    return MessageDigest.isEqual(expected.getBytes(StandardCharsets.UTF_8),
+        authorization.substring(separator + 1).getBytes(StandardCharsets.UTF_8));
+  }
+
+  /**
+   * @return the notifications of the namespaces whose configs are different from the ones in the
+   * client notifications
+   */
+  private List<ApolloConfigNotification> findChanges(List<ApolloConfigNotification> notifications,
+      List<AgentNamespace> namespaces) {
+    List<ApolloConfigNotification> changes = Lists.newArrayList();
+    for (int i = 0; i < notifications.size(); i++) {
+      long notificationId = namespaces.get(i).m_notificationId;
+      if (notificationId != notifications.get(i).getNotificationId()) {
+        changes.add(new ApolloConfigNotification(notifications.get(i).getNamespaceName(),
+            notificationId));
+      }
+    }
+    return changes;
+  }
+
+  private class ConfigHandler implements HttpHandler {
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+      try {
+        String path = exchange.getRequestURI().getRawPath();
+        String namespace = decode(path.substring(path.indexOf("/configs/") + "/configs/".length()));
+        Map<String, String> params = parseQuery(exchange.getRequestURI().getRawQuery());
+        if (Strings.isNullOrEmpty(namespace)) {
+          respond(exchange, 400, null);
+          return;
+        }
+        int rejectedStatusCode = checkRequest(exchange, params);
+        if (rejectedStatusCode != 0) {
+          respond(exchange, rejectedStatusCode, null);
+          return;
+        }
+        AgentNamespace agentNamespace = getNamespace(namespace);
+        if (agentNamespace == null) {
+          respond(exchange, 503, null);
+          return;
+        }
+        ApolloConfig config = agentNamespace.m_config;
+        if (config == null) {
+          //not loaded yet
+          respond(exchange, 404, null);
+          return;
+        }
+        String releaseKey = params.get("releaseKey");
+        if (config.getReleaseKey().equals(releaseKey)) {
+          respond(exchange, 304, null);
+          return;
+        }
+        respond(exchange, 200, config);
+      } catch (Throwable ex) {
+        Tracer.logError(ex);
+        logger.warn("Serve config failed, reason: {}", ExceptionUtil.getDetailMessage(ex));
+        respond(exchange, 500, null);
+      } finally {
+        exchange.close();
+      }
+    }
+  }
+
+  private class NotificationHandler implements HttpHandler {
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+      try {
+        Map<String, String> params = parseQuery(exchange.getRequestURI().getRawQuery());
+        List<ApolloConfigNotification> notifications = null;
+        try {
+          notifications = GSON.fromJson(params.get("notifications"), NOTIFICATIONS_TYPE);
+        } catch (Throwable ex) {
+          Tracer.logError(ex);
+        }
+        if (notifications == null || notifications.isEmpty()) {
+          respond(exchange, 400, null);
+          return;
+        }
+        int rejectedStatusCode = checkRequest(exchange, params);
+        if (rejectedStatusCode != 0) {
+          respond(exchange, rejectedStatusCode, null);
+          return;
+        }
+        List<AgentNamespace> namespaces = Lists.newArrayListWithCapacity(notifications.size());
+        for (ApolloConfigNotification notification : notifications) {
+          AgentNamespace agentNamespace = getNamespace(notification.getNamespaceName());
+          if (agentNamespace == null) {
+            respond(exchange, 503, null);
+            return;
+          }
+          namespaces.add(agentNamespace);
+        }
+
+        List<ApolloConfigNotification> changes;
+        long deadline = System.currentTimeMillis() + NOTIFICATION_TIMEOUT_IN_MILLS;
+        synchronized (m_notificationLock) {
+          changes = findChanges(notifications, namespaces);
+          long remaining = deadline - System.currentTimeMillis();
+          while (changes.isEmpty() && remaining > 0) {
+            m_notificationLock.wait(remaining);
+            changes = findChanges(notifications, namespaces);
+            remaining = deadline - System.currentTimeMillis();
+          }
+        }
+        if (changes.isEmpty()) {
+          respond(exchange, 304, null);
+          return;
+        }
+        respond(exchange, 200, changes);
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+      } catch (Throwable ex) {
+        Tracer.logError(ex);
+        logger.warn("Serve notifications failed, reason: {}", ExceptionUtil.getDetailMessage(ex));
+        respond(exchange, 500, null);
+      } finally {
+        exchange.close();
+      }
+    }
+  }
+
+  private static void respond(HttpExchange exchange, int statusCode, Object body)
+      throws IOException {
+    if (body == null) {
+      exchange.sendResponseHeaders(statusCode, -1);
+      return;
+    }
+    byte[] content = GSON.toJson(body).getBytes(StandardCharsets.UTF_8);
+    exchange.getResponseHeaders().set("Content-Type", "application/json;charset=UTF-8");
+    exchange.sendResponseHeaders(statusCode, content.length);
+    try (OutputStream outputStream = exchange.getResponseBody()) {
+      outputStream.write(content);
+    }
+  }
+
+  private static Map<String, String> parseQuery(String rawQuery)
+      throws UnsupportedEncodingException {
+    Map<String, String> params = Maps.newHashMap();
+    if (Strings.isNullOrEmpty(rawQuery)) {
+      return params;
+    }
+    for (String param : rawQuery.split("&")) {
+      int index = param.indexOf('=');
+      if (index > 0) {
+        params.put(decode(param.substring(0, index)), decode(param.substring(index + 1)));
+      }
+    }
+    return params;
+  }
+
+  private static String decode(String value) throws UnsupportedEncodingException {
+    return URLDecoder.decode(value, StandardCharsets.UTF_8.name());
+  }
+
+  private class AgentNamespace implements RepositoryChangeListener {
+    private final String m_namespace;
+    private ConfigRepository m_repository;
+    private volatile ApolloConfig m_config;
+    private volatile long m_notificationId = ConfigConsts.NOTIFICATION_ID_PLACEHOLDER;
+    private volatile long m_lastAccessTime;
+
+    AgentNamespace(String namespace) {
+      m_namespace = namespace;
+    }
+
+    synchronized void initialize() {
+      if (m_repository != null) {
+        return;
+      }
+      m_repository = createConfigRepository(m_namespace);
+      m_repository.addChangeListener(this);
+      try {
+        update(m_repository.getConfig());
+      } catch (Throwable ex) {
+        //served once the repository is synced later
+        Tracer.logError(ex);
+        logger.warn("Load config for namespace {} failed, reason: {}", m_namespace,
+            ExceptionUtil.getDetailMessage(ex));
+      }
+    }
+
+    synchronized void close() {
+      if (m_repository == null) {
+        return;
+      }
+      m_repository.removeChangeListener(this);
+      AbstractConfigRepository.closeRepository(m_repository);
+    }
+
+    @Override
+    public void onRepositoryChange(String namespace, Properties newProperties) {
+      update(newProperties);
+    }
+
+    private void update(Properties properties) {
+      if (properties == null) {
+        return;
+      }
+      Map<String, String> configurations = Maps.newHashMap();
+      Hasher hasher = Hashing.sha256().newHasher();
+      for (String key : new TreeSet<>(properties.stringPropertyNames())) {
+        String value = properties.getProperty(key);
+        configurations.put(key, value);
+        hasher.putString(key, StandardCharsets.UTF_8).putByte((byte) 0)
+            .putString(value, StandardCharsets.UTF_8).putByte((byte) 0);
+      }
+      String releaseKey = hasher.hash().toString();
+      ApolloConfig previous = m_config;
+      if (previous != null && previous.getReleaseKey().equals(releaseKey)) {
+        return;
+      }
+      long notificationId = m_nextNotificationId.incrementAndGet();
+      ApolloConfig config = new ApolloConfig(m_configUtil.getAppId(), m_configUtil.getCluster(),
+          m_namespace, releaseKey);
+      config.setConfigurations(configurations);
+      synchronized (m_notificationLock) {
+        m_config = config;
+        this.m_notificationId = notificationId;
+        m_notificationLock.notifyAll();
+      }
+    }
+  }
+
+  /**
+   * Start the config agent on the port of {@code apollo.configAgent.port} or the first argument
+   */
+  public static void main(String[] args) throws Exception {
+    int port = args.length > 0 ? Integer.parseInt(args[0])
+        : ApolloInjector.getInstance(ConfigUtil.class).getConfigAgentPort();
+    if (port <= 0) {
+      throw new IllegalArgumentException("Config agent port is not specified, please set it with "
+          + "-Dapollo.configAgent.port or the first argument");
+    }
+    new ConfigAgent(port).start();
+    //keep running until killed
+    new CountDownLatch(1).await();
+  }
+}
@@ -0,0 +1,242 @@
+package com.ctrip.framework.apollo.internals;
+
+import com.ctrip.framework.apollo.build.ApolloInjector;
+import com.ctrip.framework.apollo.core.dto.ApolloConfig;
+import com.ctrip.framework.apollo.core.signature.Signature;
+import com.ctrip.framework.apollo.core.utils.StringUtils;
+import com.ctrip.framework.apollo.enums.ConfigSourceType;
+import com.ctrip.framework.apollo.tracer.Tracer;
+import com.ctrip.framework.apollo.tracer.spi.Transaction;
+import com.ctrip.framework.apollo.util.ConfigUtil;
+import com.ctrip.framework.apollo.util.ExceptionUtil;
+import com.ctrip.framework.apollo.util.http.HttpRequest;
+import com.ctrip.framework.apollo.util.http.HttpResponse;
+import com.ctrip.framework.apollo.util.http.HttpUtil;
+import com.google.common.escape.Escaper;
+import com.google.common.net.UrlEscapers;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicReference;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Loads the config from the {@link ConfigAgent} on the same host instead of the config service, and
+ * reloads it once the agent pushes the change notification.
+ *
+ * <p>The config is loaded from the config service instead while the agent is not available, until
+ * the agent is synced successfully again, e.g. once {@link ConfigAgentLongPollService} reaches the
+ * agent again.</p>
+ */
+public class ConfigAgentConfigRepository extends AbstractConfigRepository
+    implements RepositoryChangeListener {
+  private static final Logger logger = LoggerFactory.getLogger(ConfigAgentConfigRepository.class);
+  private static final Escaper pathEscaper = UrlEscapers.urlPathSegmentEscaper();
+  private static final Escaper queryParamEscaper = UrlEscapers.urlFormParameterEscaper();
+  private final String m_namespace;
+  private final ConfigUtil m_configUtil;
+  private final HttpUtil m_httpUtil;
+  private final ConfigAgentLongPollService m_longPollService;
+  private final AtomicReference<ApolloConfig> m_configCache;
+  //whether the agent is not available, so the config is loaded from the config service
+  private volatile boolean m_fallbackEnabled;
+  //created once the fallback is enabled, which might be done in background
+  private volatile ConfigRepository m_fallbackRepository;
+  //the config last notified to the listeners, guarded by itself rather than the repository, since
+  //the fallback repository notifies the change while holding its own lock
+  private final Object m_lastConfigLock = new Object();
+  private Properties m_lastConfig;
+  private volatile boolean m_closed;
+
+  /**
+   * Constructor.
+   *
+   * @param namespace the namespace
+   */
+  public ConfigAgentConfigRepository(String namespace) {
+    m_namespace = namespace;
+    m_configCache = new AtomicReference<>();
+    m_configUtil = ApolloInjector.getInstance(ConfigUtil.class);
+    m_httpUtil = ApolloInjector.getInstance(HttpUtil.class);
+    m_longPollService = ApolloInjector.getInstance(ConfigAgentLongPollService.class);
+    this.trySync();
+    m_longPollService.submit(m_namespace, this);
+  }
+
+  @Override
+  public Properties getConfig() {
+    if (m_configCache.get() == null && m_fallbackRepository == null) {
+      try {
+        this.sync();
+      } catch (RuntimeException ex) {
+        if (m_fallbackRepository == null) {
+          throw ex;
+        }
+      }
+    }
+    ConfigRepository fallbackRepository = m_fallbackRepository;
+    if (fallbackRepository != null) {
+      try {
+        return fallbackRepository.getConfig();
+      } catch (RuntimeException ex) {
+        if (m_configCache.get() == null) {
+          throw ex;
+        }
+        logger.debug("Load config of namespace {} failed, serving the one from the config agent, "
+            + "reason: {}", m_namespace, ExceptionUtil.getDetailMessage(ex));
+      }
+    }
+    return transformApolloConfigToProperties(m_configCache.get());
+  }
+
+  @Override
+  public void setUpstreamRepository(ConfigRepository upstreamConfigRepository) {
+    //the config agent is the upstream
+  }
+
+  @Override
+  public ConfigSourceType getSourceType() {
+    ConfigRepository fallbackRepository = m_fallbackRepository;
+    return fallbackRepository != null ? fallbackRepository.getSourceType() : ConfigSourceType.REMOTE;
+  }
+
+  @Override
+  protected synchronized void sync() {
+    if (m_closed) {
+      return;
+    }
+    Transaction transaction = Tracer.newTransaction("Apollo.ConfigAgent", "syncConfig");
+    try {
+      ApolloConfig previous = m_configCache.get();
+      String url = assembleConfigUrl(m_configUtil.getConfigAgentUrl(), m_namespace, previous);
+      logger.debug("Loading config from {}", url);
+      transaction.addData("Url", url);
+
+      HttpRequest request = new HttpRequest(url);
+      String secret = m_configUtil.getAccessKeySecret();
+      if (!StringUtils.isBlank(secret)) {
+        request.setHeaders(Signature.buildHttpHeaders(url, m_configUtil.getAppId(), secret));
+      }
+      HttpResponse<ApolloConfig> response = m_httpUtil.doGet(request, ApolloConfig.class);
+      ApolloConfig current = response.getBody();
+      boolean changed = response.getStatusCode() != 304 && current != null
+          && (previous == null || !Objects.equals(previous.getReleaseKey(), current.getReleaseKey()));
+      if (changed) {
+        m_configCache.set(current);
+      }
+      boolean fallbackDisabled = m_fallbackEnabled;
+      if (fallbackDisabled) {
+        logger.info("Config agent is available again for namespace {}", m_namespace);
+        disableFallback();
+      }
+      if (changed || fallbackDisabled) {
+        fireIfChanged(transformApolloConfigToProperties(m_configCache.get()));
+      }
+      transaction.setStatus(Transaction.SUCCESS);
+    } catch (Throwable ex) {
+      transaction.setStatus(ex);
+      enableFallback();
+      throw ex;
+    } finally {
+      transaction.complete();
+    }
+  }
+
+  private void enableFallback() {
+    if (m_fallbackEnabled) {
+      return;
+    }
+    logger.warn("Config agent is not available for namespace {}, loading from the config service "
+        + "instead", m_namespace);
+    m_fallbackEnabled = true;
+    if (m_configCache.get() == null) {
+      //nothing to serve yet, so the caller waits for the config service anyway
+      setFallbackRepository(createFallbackRepository(m_namespace));
+      return;
+    }
+    //in the bounded pool shared with the background syncs of the remote repositories
+    RemoteConfigRepository.getSyncExecutorService().submit(new Runnable() {
+      @Override
+      public void run() {
+        ConfigRepository fallbackRepository = createFallbackRepository(m_namespace);
+        if (!setFallbackRepository(fallbackRepository)) {
+          return;
+        }
+        try {
+          fireIfChanged(fallbackRepository.getConfig());
+        } catch (Throwable ex) {
+          //notified by the fallback repository once loaded
+          logger.warn("Load config of namespace {} from the config service failed, reason: {}",
+              m_namespace, ExceptionUtil.getDetailMessage(ex));
+        }
+      }
+    });
+  }
+
+  /**
+   * @return false if the fallback is disabled or set already meanwhile, then the repository is closed
+   */
+  private synchronized boolean setFallbackRepository(ConfigRepository fallbackRepository) {
+    if (m_closed || !m_fallbackEnabled || m_fallbackRepository != null) {
+      closeRepository(fallbackRepository);
+      return false;
+    }
+    fallbackRepository.addChangeListener(this);
+    m_fallbackRepository = fallbackRepository;
+    return true;
+  }
+
+  private synchronized void disableFallback() {
+    m_fallbackEnabled = false;
+    ConfigRepository fallbackRepository = m_fallbackRepository;
+    if (fallbackRepository != null) {
+      m_fallbackRepository = null;
+      fallbackRepository.removeChangeListener(this);
+      closeRepository(fallbackRepository);
+    }
+  }
+
+  @Override
+  public void onRepositoryChange(String namespace, Properties newProperties) {
+    if (m_fallbackEnabled) {
+      fireIfChanged(newProperties);
+    }
+  }
+
+  private void fireIfChanged(Properties config) {
+    synchronized (m_lastConfigLock) {
+      if (!config.equals(m_lastConfig)) {
+        m_lastConfig = config;
+        this.fireRepositoryChange(m_namespace, config);
+      }
+    }
+  }
+
+  private Properties transformApolloConfigToProperties(ApolloConfig apolloConfig) {
+    Properties result = propertiesFactory.getPropertiesInstance();
+    result.putAll(apolloConfig.getConfigurations());
+    return result;
+  }
+
+  ConfigRepository createFallbackRepository(String namespace) {
+    return new RemoteConfigRepository(namespace);
+  }
+
+  String assembleConfigUrl(String agentUrl, String namespace, ApolloConfig previousConfig) {
+    //the agent rejects the requests of the other app ids or clusters
+    String url = agentUrl + "/configs/" + pathEscaper.escape(namespace)
+        + "?appId=" + queryParamEscaper.escape(m_configUtil.getAppId())
+        + "&cluster=" + queryParamEscaper.escape(m_configUtil.getCluster());
+    if (previousConfig != null) {
+      url += "&releaseKey=" + queryParamEscaper.escape(previousConfig.getReleaseKey());
+    }
+    return url;
+  }
+
+  @Override
+  synchronized void close() {
+    m_closed = true;
+    m_longPollService.remove(m_namespace, this);
+    disableFallback();
+  }
+}
@@ -0,0 +1,197 @@
+package com.ctrip.framework.apollo.internals;
+
+import com.ctrip.framework.apollo.build.ApolloInjector;
+import com.ctrip.framework.apollo.core.ConfigConsts;
+import com.ctrip.framework.apollo.core.dto.ApolloConfigNotification;
+import com.ctrip.framework.apollo.core.schedule.ExponentialSchedulePolicy;
+import com.ctrip.framework.apollo.core.schedule.SchedulePolicy;
+import com.ctrip.framework.apollo.core.signature.Signature;
+import com.ctrip.framework.apollo.core.utils.ApolloThreadFactory;
+import com.ctrip.framework.apollo.core.utils.StringUtils;
+import com.ctrip.framework.apollo.tracer.Tracer;
+import com.ctrip.framework.apollo.util.ConfigUtil;
+import com.ctrip.framework.apollo.util.ExceptionUtil;
+import com.ctrip.framework.apollo.util.http.HttpRequest;
+import com.ctrip.framework.apollo.util.http.HttpResponse;
+import com.ctrip.framework.apollo.util.http.HttpUtil;
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Multimap;
+import com.google.common.collect.Multimaps;
+import com.google.common.escape.Escaper;
+import com.google.common.net.UrlEscapers;
+import com.google.common.reflect.TypeToken;
+import com.google.gson.Gson;
+import java.lang.reflect.Type;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Long polls the {@link ConfigAgent} on the same host for the changes of all the namespaces loaded
+ * from it, and notifies the repositories of the namespaces changed.
+ *
+ * <p>All the repositories are synced once the agent becomes unavailable or available again, so
+ * they switch to or back from loading the config service.</p>
+ */
+public class ConfigAgentLongPollService {
+  private static final Logger logger = LoggerFactory.getLogger(ConfigAgentLongPollService.class);
+  private static final Escaper queryParamEscaper = UrlEscapers.urlFormParameterEscaper();
+  private static final long INIT_NOTIFICATION_ID = ConfigConsts.NOTIFICATION_ID_PLACEHOLDER;
+  //90 seconds, should be longer than the agent's long polling timeout, which is 60 seconds
+  private static final int LONG_POLLING_READ_TIMEOUT = 90 * 1000;
+  private static final Gson GSON = new Gson();
+  private final ExecutorService m_longPollingService;
+  private final AtomicBoolean m_longPollStarted;
+  private final SchedulePolicy m_longPollFailSchedulePolicyInSecond;
+  private final Multimap<String, ConfigAgentConfigRepository> m_longPollNamespaces;
+  private final ConcurrentMap<String, Long> m_notifications;
+  private final Type m_responseType;
+  private final ConfigUtil m_configUtil;
+  private final HttpUtil m_httpUtil;
+  //only accessed by the long polling thread
+  private boolean m_agentAvailable = true;
+
+  /**
+   * Constructor.
+   */
+  public ConfigAgentLongPollService() {
+    m_longPollingService = Executors.newSingleThreadExecutor(
+        ApolloThreadFactory.create("ConfigAgentLongPollService", true));
+    m_longPollStarted = new AtomicBoolean(false);
+    m_longPollFailSchedulePolicyInSecond = new ExponentialSchedulePolicy(1, 120); //in second
+    m_longPollNamespaces = Multimaps.synchronizedSetMultimap(
+        HashMultimap.<String, ConfigAgentConfigRepository>create());
+    m_notifications = Maps.newConcurrentMap();
+    m_responseType = new TypeToken<List<ApolloConfigNotification>>() {
+    }.getType();
+    m_configUtil = ApolloInjector.getInstance(ConfigUtil.class);
+    m_httpUtil = ApolloInjector.getInstance(HttpUtil.class);
+  }
+
+  public boolean submit(String namespace, ConfigAgentConfigRepository repository) {
+    boolean added;
+    synchronized (m_longPollNamespaces) {
+      added = m_longPollNamespaces.put(namespace, repository);
+      m_notifications.putIfAbsent(namespace, INIT_NOTIFICATION_ID);
+    }
+    if (m_longPollStarted.compareAndSet(false, true)) {
+      m_longPollingService.submit(new Runnable() {
+        @Override
+        public void run() {
+          doLongPolling();
+        }
+      });
+    }
+    return added;
+  }
+
+  /**
+   * Stop notifying the repository
+   */
+  void remove(String namespace, ConfigAgentConfigRepository repository) {
+    synchronized (m_longPollNamespaces) {
+      m_longPollNamespaces.remove(namespace, repository);
+      if (!m_longPollNamespaces.containsKey(namespace)) {
+        m_notifications.remove(namespace);
+      }
+    }
+  }
+
+  private void doLongPolling() {
+    while (!Thread.currentThread().isInterrupted()) {
+      try {
+        if (m_notifications.isEmpty()) {
+          //all the namespaces are released, wait for new ones
+          TimeUnit.SECONDS.sleep(1);
+          continue;
+        }
+        String url = assembleNotificationsUrl(m_configUtil.getConfigAgentUrl(),
+            Maps.newHashMap(m_notifications));
+        logger.debug("Long polling from {}", url);
+        HttpRequest request = new HttpRequest(url);
+        request.setReadTimeout(LONG_POLLING_READ_TIMEOUT);
+        String secret = m_configUtil.getAccessKeySecret();
+        if (!StringUtils.isBlank(secret)) {
+          request.setHeaders(Signature.buildHttpHeaders(url, m_configUtil.getAppId(), secret));
+        }
+
+        HttpResponse<List<ApolloConfigNotification>> response =
+            m_httpUtil.doGet(request, m_responseType);
+        if (!m_agentAvailable) {
+          m_agentAvailable = true;
+          syncAll();
+        }
+        if (response.getStatusCode() == 200 && response.getBody() != null) {
+          notify(response.getBody());
+        }
+        m_longPollFailSchedulePolicyInSecond.success();
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+      } catch (Throwable ex) {
+        if (m_agentAvailable) {
+          m_agentAvailable = false;
+          syncAll();
+        }
+        long sleepTimeInSecond = m_longPollFailSchedulePolicyInSecond.fail();
+        logger.warn("Long polling config agent failed, will retry in {} seconds, reason: {}",
+            sleepTimeInSecond, ExceptionUtil.getDetailMessage(ex));
+        try {
+          TimeUnit.SECONDS.sleep(sleepTimeInSecond);
+        } catch (InterruptedException ie) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    }
+  }
+
+  /**
+   * Sync all the repositories, which load from the config service instead if the agent is not
+   * available, or stop doing so otherwise
+   */
+  private void syncAll() {
+    List<ConfigAgentConfigRepository> toBeSynced;
+    synchronized (m_longPollNamespaces) {
+      toBeSynced = Lists.newArrayList(m_longPollNamespaces.values());
+    }
+    for (ConfigAgentConfigRepository repository : toBeSynced) {
+      repository.trySync();
+    }
+  }
+
+  private void notify(List<ApolloConfigNotification> notifications) {
+    for (ApolloConfigNotification notification : notifications) {
+      String namespace = notification.getNamespaceName();
+      List<ConfigAgentConfigRepository> toBeNotified;
+      synchronized (m_longPollNamespaces) {
+        //replaced only if still polled, as the namespace might be removed meanwhile
+        m_notifications.replace(namespace, notification.getNotificationId());
+        toBeNotified = Lists.newArrayList(m_longPollNamespaces.get(namespace));
+      }
+      for (ConfigAgentConfigRepository repository : toBeNotified) {
+        try {
+          repository.trySync();
+        } catch (Throwable ex) {
+          Tracer.logError(ex);
+        }
+      }
+    }
+  }
+
+  String assembleNotificationsUrl(String agentUrl, Map<String, Long> notificationsMap) {
+    List<ApolloConfigNotification> notifications = Lists.newArrayList();
+    for (Map.Entry<String, Long> entry : notificationsMap.entrySet()) {
+      notifications.add(new ApolloConfigNotification(entry.getKey(), entry.getValue()));
+    }
+    return agentUrl + "/notifications?appId=" + queryParamEscaper.escape(m_configUtil.getAppId())
+        + "&cluster=" + queryParamEscaper.escape(m_configUtil.getCluster())
+        + "&notifications=" + queryParamEscaper.escape(GSON.toJson(notifications));
+  }
+}
@@ -0,0 +1,203 @@
+package com.ctrip.framework.apollo.internals;
+
+import com.ctrip.framework.apollo.build.ApolloInjector;
+import com.ctrip.framework.apollo.core.utils.ApolloThreadFactory;
+import com.ctrip.framework.apollo.monitor.ConfigMetrics;
+import com.ctrip.framework.apollo.monitor.Gauge;
+import com.ctrip.framework.apollo.tracer.Tracer;
+import com.ctrip.framework.apollo.util.ConfigUtil;
+import com.google.common.collect.Maps;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Dispatches the change events to the listeners on a bounded thread pool.
+ *
+ * <p>Each listener has its own queue, so the events are delivered to the same listener one by one
+ * in order, while different listeners are notified concurrently. When coalescing is enabled, the
+ * events still pending for a listener are merged into one event.</p>
+ */
+public class ConfigChangeDispatcher {
+  private static final Logger logger = LoggerFactory.getLogger(ConfigChangeDispatcher.class);
+  //give up the thread after delivering so many events to one listener, so that others could run
+  private static final int MAX_EVENTS_PER_DRAIN = 16;
+  private static final int PENDING_EVENTS_WARN_THRESHOLD = 100;
+
+  private final ThreadPoolExecutor m_executorService;
+  private final boolean m_coalescingEnabled;
+  private final ConcurrentMap<Object, ListenerQueue> m_listenerQueues = Maps.newConcurrentMap();
+  private final AtomicInteger m_pendingEventCount = new AtomicInteger();
+  private final AtomicInteger m_maxPendingEventCount = new AtomicInteger();
+
+  public ConfigChangeDispatcher() {
+    ConfigUtil configUtil = ApolloInjector.getInstance(ConfigUtil.class);
+    int threads = Math.max(1, configUtil.getConfigChangeListenerThreads());
+    m_executorService = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+        new LinkedBlockingQueue<Runnable>(), ApolloThreadFactory.create("Config", true));
+    m_executorService.allowCoreThreadTimeOut(true);
+    m_coalescingEnabled = configUtil.isConfigChangeEventCoalescingEnabled();
+    ApolloInjector.getInstance(ConfigMetrics.class).gauge(ConfigMetrics.GLOBAL,
+        ConfigMetrics.PENDING_CHANGE_EVENTS, new Gauge<Integer>() {
+          @Override
+          public Integer getValue() {
+            return getPendingEventCount();
+          }
+        });
+  }
+
+  /**
+   * Delivers the events to the listeners
+   *
+   * @param <L> the listener type
+   * @param <E> the event type
+   */
+  interface EventHandler<L, E> {
+
+    void handle(L listener, E event);
+
+    /**
+     * @return the event which has the same effect as the previous event followed by the next one,
+     * or null if they could not be merged
+     */
+    E merge(E previous, E next);
+  }
+
+  <L, E> void dispatch(L listener, E event, EventHandler<L, E> handler) {
+    while (true) {
+      ListenerQueue queue = m_listenerQueues.get(listener);
+      if (queue == null) {
+        ListenerQueue newQueue = new ListenerQueue(listener);
+        queue = m_listenerQueues.putIfAbsent(listener, newQueue);
+        if (queue == null) {
+          queue = newQueue;
+        }
+      }
+
+      boolean needSchedule;
+      synchronized (queue) {
+        if (queue.m_removed) {
+          //drained and removed concurrently, try again with a new queue
+          continue;
+        }
+        if (!queue.offer(event, handler)) {
+          return;
+        }
+        needSchedule = !queue.m_scheduled;
+        queue.m_scheduled = true;
+      }
+
+      if (needSchedule) {
+        m_executorService.execute(queue);
+      }
+      return;
+    }
+  }
+
+  /**
+   * @return the number of events not delivered yet
+   */
+  public int getPendingEventCount() {
+    return m_pendingEventCount.get();
+  }
+
+  /**
+   * @return the max number of events not delivered yet ever seen
+   */
+  public int getMaxPendingEventCount() {
+    return m_maxPendingEventCount.get();
+  }
+
+  /**
+   * @return the number of listeners which have events not delivered yet
+   */
+  public int getPendingListenerCount() {
+    return m_listenerQueues.size();
+  }
+
+  private void onEventQueued(Object listener, int queueDepth) {
+    int pending = m_pendingEventCount.incrementAndGet();
+    int max = m_maxPendingEventCount.get();
+    while (pending > max && !m_maxPendingEventCount.compareAndSet(max, pending)) {
+      max = m_maxPendingEventCount.get();
+    }
+    if (queueDepth == PENDING_EVENTS_WARN_THRESHOLD) {
+      String listenerName = listener.getClass().getName();
+      Tracer.logEvent("Apollo.ConfigChangeListener.Backlog", listenerName);
+      logger.warn("{} change events are pending for listener {}, please check whether it is too slow",
+          queueDepth, listenerName);
+    }
+  }
+
+  private static class PendingEvent {
+    private final EventHandler<Object, Object> m_handler;
+    private Object m_event;
+
+    PendingEvent(EventHandler<Object, Object> handler, Object event) {
+      m_handler = handler;
+      m_event = event;
+    }
+  }
+
+  private class ListenerQueue implements Runnable {
+    private final Object m_listener;
+    private final Deque<PendingEvent> m_events = new ArrayDeque<>();
+    //guarded by this
+    private boolean m_scheduled;
+    private boolean m_removed;
+
+    ListenerQueue(Object listener) {
+      m_listener = listener;
+    }
+
+    /**
+     * @return false if the event is merged into a pending one
+     */
+    @SuppressWarnings("unchecked")
+    boolean offer(Object event, EventHandler<?, ?> handler) {
+      EventHandler<Object, Object> eventHandler = (EventHandler<Object, Object>) handler;
+      PendingEvent last = m_events.peekLast();
+      if (m_coalescingEnabled && last != null && last.m_handler == eventHandler) {
+        Object merged = eventHandler.merge(last.m_event, event);
+        if (merged != null) {
+          last.m_event = merged;
+          return false;
+        }
+      }
+      m_events.offerLast(new PendingEvent(eventHandler, event));
+      onEventQueued(m_listener, m_events.size());
+      return true;
+    }
+
+    @Override
+    public void run() {
+      for (int i = 0; i < MAX_EVENTS_PER_DRAIN; i++) {
+        PendingEvent pendingEvent;
+        synchronized (this) {
+          pendingEvent = m_events.pollFirst();
+          if (pendingEvent == null) {
+            m_scheduled = false;
+            m_removed = true;
+            m_listenerQueues.remove(m_listener, this);
+            return;
+          }
+        }
+        m_pendingEventCount.decrementAndGet();
+        try {
+          pendingEvent.m_handler.handle(m_listener, pendingEvent.m_event);
+        } catch (Throwable ex) {
+          logger.error("Failed to dispatch change event to listener {}",
+              m_listener.getClass().getName(), ex);
+        }
+      }
+      //still scheduled, continue later
+      m_executorService.execute(this);
+    }
+  }
+}
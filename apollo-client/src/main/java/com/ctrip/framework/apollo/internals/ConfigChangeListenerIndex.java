@@ -0,0 +1,171 @@
+package com.ctrip.framework.apollo.internals;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * An index from the interested keys and key prefixes to the listeners, so that the listeners
+ * interested in a change event are found by walking the changed keys through a hash index and a
+ * prefix trie, instead of checking every listener's keys and prefixes.
+ *
+ * <p>Adding or removing a listener only touches the entries of its own keys and prefixes, each of
+ * which is replaced by a copy, so the lookups run concurrently without locking. The updates should
+ * be serialized by the caller.</p>
+ *
+ * @param <L> the listener type
+ */
+class ConfigChangeListenerIndex<L> {
+  private final Set<L> m_listenersInterestedInAll = Sets.newConcurrentHashSet();
+  private final ConcurrentMap<String, Set<L>> m_keyIndex = Maps.newConcurrentMap();
+  private final PrefixNode<L> m_prefixRoot = new PrefixNode<>();
+
+  /**
+   * @param listener              the listener
+   * @param interestedKeys        the interested keys of the listener, the listener is interested
+   *                              in all keys if both the keys and the key prefixes are empty
+   * @param interestedKeyPrefixes the interested key prefixes of the listener
+   */
+  void add(L listener, Set<String> interestedKeys, Set<String> interestedKeyPrefixes) {
+    if (isInterestedInAll(interestedKeys, interestedKeyPrefixes)) {
+      m_listenersInterestedInAll.add(listener);
+      return;
+    }
+    if (interestedKeys != null) {
+      for (String key : interestedKeys) {
+        Set<L> keyListeners = m_keyIndex.get(key);
+        m_keyIndex.put(key, keyListeners == null ? ImmutableSet.of(listener)
+            : ImmutableSet.<L>builder().addAll(keyListeners).add(listener).build());
+      }
+    }
+    if (interestedKeyPrefixes != null) {
+      for (String prefix : interestedKeyPrefixes) {
+        m_prefixRoot.add(prefix, 0, listener);
+      }
+    }
+  }
+
+  /**
+   * @param listener              the listener
+   * @param interestedKeys        the interested keys the listener was added with
+   * @param interestedKeyPrefixes the interested key prefixes the listener was added with
+   */
+  void remove(L listener, Set<String> interestedKeys, Set<String> interestedKeyPrefixes) {
+    if (isInterestedInAll(interestedKeys, interestedKeyPrefixes)) {
+      m_listenersInterestedInAll.remove(listener);
+      return;
+    }
+    if (interestedKeys != null) {
+      for (String key : interestedKeys) {
+        Set<L> keyListeners = m_keyIndex.get(key);
+        if (keyListeners == null || !keyListeners.contains(listener)) {
+          continue;
+        }
+        if (keyListeners.size() == 1) {
+          m_keyIndex.remove(key);
+        } else {
+          m_keyIndex.put(key, copyWithout(keyListeners, listener));
+        }
+      }
+    }
+    if (interestedKeyPrefixes != null) {
+      for (String prefix : interestedKeyPrefixes) {
+        m_prefixRoot.remove(prefix, 0, listener);
+      }
+    }
+  }
+
+  /**
+   * @return the listeners interested in the changed keys
+   */
+  Set<L> findInterestedListeners(Set<String> changedKeys) {
+    if (m_keyIndex.isEmpty() && m_prefixRoot.isEmpty()) {
+      return Collections.unmodifiableSet(m_listenersInterestedInAll);
+    }
+    Set<L> result = Sets.newHashSet(m_listenersInterestedInAll);
+    for (String changedKey : changedKeys) {
+      Set<L> keyListeners = m_keyIndex.get(changedKey);
+      if (keyListeners != null) {
+        result.addAll(keyListeners);
+      }
+      m_prefixRoot.collect(changedKey, result);
+    }
+    return result;
+  }
+
+  private boolean isInterestedInAll(Set<String> interestedKeys, Set<String> interestedKeyPrefixes) {
+    return (interestedKeys == null || interestedKeys.isEmpty())
+        && (interestedKeyPrefixes == null || interestedKeyPrefixes.isEmpty());
+  }
+
+  private static <L> Set<L> copyWithout(Set<L> listeners, L listener) {
+    ImmutableSet.Builder<L> builder = ImmutableSet.builder();
+    for (L each : listeners) {
+      if (!each.equals(listener)) {
+        builder.add(each);
+      }
+    }
+    return builder.build();
+  }
+
+  private static class PrefixNode<L> {
+    private final ConcurrentMap<Character, PrefixNode<L>> m_children = Maps.newConcurrentMap();
+    //listeners whose prefix ends at this node, replaced on change
+    private volatile Set<L> m_listeners = Collections.emptySet();
+
+    void add(String prefix, int index, L listener) {
+      if (index == prefix.length()) {
+        m_listeners = ImmutableSet.<L>builder().addAll(m_listeners).add(listener).build();
+        return;
+      }
+      Character c = prefix.charAt(index);
+      PrefixNode<L> child = m_children.get(c);
+      if (child == null) {
+        child = new PrefixNode<>();
+        m_children.put(c, child);
+      }
+      child.add(prefix, index + 1, listener);
+    }
+
+    void remove(String prefix, int index, L listener) {
+      if (index == prefix.length()) {
+        if (m_listeners.contains(listener)) {
+          m_listeners = copyWithout(m_listeners, listener);
+        }
+        return;
+      }
+      Character c = prefix.charAt(index);
+      PrefixNode<L> child = m_children.get(c);
+      if (child == null) {
+        return;
+      }
+      child.remove(prefix, index + 1, listener);
+      //prune the branch no listener is interested in any more
+      if (child.isEmpty()) {
+        m_children.remove(c, child);
+      }
+    }
+
+    /**
+     * Collect the listeners of all the prefixes of the key
+     */
+    void collect(String key, Set<L> result) {
+      PrefixNode<L> node = this;
+      int index = 0;
+      while (node != null) {
+        result.addAll(node.m_listeners);
+        if (index == key.length()) {
+          return;
+        }
+        node = node.m_children.get(key.charAt(index++));
+      }
+    }
+
+    boolean isEmpty() {
+      return m_children.isEmpty() && m_listeners.isEmpty();
+    }
+  }
+}
@@ -0,0 +1,141 @@
+package com.ctrip.framework.apollo.internals;
+
+import com.ctrip.framework.apollo.core.utils.ApolloThreadFactory;
+import com.ctrip.framework.apollo.monitor.Histogram;
+import com.ctrip.framework.apollo.tracer.Tracer;
+import com.google.common.base.Throwables;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hedges the config loads: if the first config service does not answer within the usual latency,
+ * the same request is sent to another config service and whichever answers first is used.
+ *
+ * <p>The hedged requests are limited by a budget, which is earned by a fraction of the requests,
+ * so they never add more than that fraction of load to the config services. Without the budget, or
+ * when all the hedging threads are busy, the load is executed in the caller thread as usual.</p>
+ */
+class ConfigLoadHedger {
+  //the percentile of the load latency to wait before hedging
+  private static final double HEDGE_DELAY_PERCENTILE = 95;
+  //not enough samples for the percentile, e.g. during startup
+  private static final long DEFAULT_HEDGE_DELAY_IN_MILLIS = 1000;
+  private static final long MIN_HEDGE_DELAY_IN_MILLIS = 10;
+  private static final long MIN_SAMPLES = 20;
+  //at most 1 hedged request per 10 requests in the long run
+  private static final double BUDGET_PER_REQUEST = 0.1;
+  private static final double MAX_BUDGET = 10;
+  //each hedged load takes 2 threads at most
+  private static final int MAX_THREADS = 16;
+
+  private final ExecutorService m_executorService;
+  //guarded by this
+  private double m_budget = MAX_BUDGET;
+
+  ConfigLoadHedger() {
+    m_executorService = new ThreadPoolExecutor(0, MAX_THREADS, 60L, TimeUnit.SECONDS,
+        new SynchronousQueue<Runnable>(), ApolloThreadFactory.create("ConfigLoadHedger", true));
+  }
+
+  /**
+   * @param latency  the latency of the previous loads, where the hedge delay is derived from
+   * @param maxDelay the max time to wait before hedging
+   * @return the result of the primary or the hedged request, whichever succeeds first
+   */
+  <T> T execute(Callable<T> primary, Callable<T> hedged, Histogram latency, long maxDelay) {
+    earnBudget();
+    if (!hasBudget()) {
+      //no hedge possible, so no need to fork
+      return call(primary);
+    }
+    CompletionService<T> completionService = new ExecutorCompletionService<>(m_executorService);
+    Future<T> primaryFuture;
+    try {
+      primaryFuture = completionService.submit(primary);
+    } catch (RejectedExecutionException ex) {
+      return call(primary);
+    }
+    Future<T> hedgedFuture = null;
+    try {
+      Future<T> completed = completionService.poll(hedgeDelay(latency, maxDelay),
+          TimeUnit.MILLISECONDS);
+      if (completed == null && tryAcquireBudget()) {
+        try {
+          hedgedFuture = completionService.submit(hedged);
+          Tracer.logEvent("Apollo.ConfigService", "hedgedQueryConfig");
+        } catch (RejectedExecutionException ex) {
+          //wait for the primary one
+        }
+      }
+      if (completed == null) {
+        completed = completionService.take();
+      }
+      if (hedgedFuture == null) {
+        return getResult(completed);
+      }
+      try {
+        return getResult(completed);
+      } catch (RuntimeException | Error ex) {
+        //the other one may still succeed
+        return getResult(completionService.take());
+      }
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while loading config", ex);
+    } finally {
+      primaryFuture.cancel(true);
+      if (hedgedFuture != null) {
+        hedgedFuture.cancel(true);
+      }
+    }
+  }
+
+  long hedgeDelay(Histogram latency, long maxDelay) {
+    long delay = latency.getCount() < MIN_SAMPLES ? DEFAULT_HEDGE_DELAY_IN_MILLIS
+        : latency.getPercentile(HEDGE_DELAY_PERCENTILE);
+    return Math.max(MIN_HEDGE_DELAY_IN_MILLIS, Math.min(delay, maxDelay));
+  }
+
+  synchronized void earnBudget() {
+    m_budget = Math.min(MAX_BUDGET, m_budget + BUDGET_PER_REQUEST);
+  }
+
+  synchronized boolean hasBudget() {
+    return m_budget >= 1;
+  }
+
+  synchronized boolean tryAcquireBudget() {
+    if (m_budget < 1) {
+      return false;
+    }
+    m_budget -= 1;
+    return true;
+  }
+
+  private <T> T call(Callable<T> callable) {
+    try {
+      return callable.call();
+    } catch (RuntimeException | Error ex) {
+      throw ex;
+    } catch (Exception ex) {
+      throw new RuntimeException(ex);
+    }
+  }
+
+  private <T> T getResult(Future<T> future) throws InterruptedException {
+    try {
+      return future.get();
+    } catch (ExecutionException ex) {
+      Throwables.throwIfUnchecked(ex.getCause());
+      throw new RuntimeException(ex.getCause());
+    }
+  }
+}
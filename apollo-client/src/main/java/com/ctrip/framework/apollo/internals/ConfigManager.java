@@ -22,4 +22,46 @@ public interface ConfigManager {
    * @return the config file instance for the namespace
    */
   ConfigFile getConfigFile(String namespace, ConfigFileFormat configFileFormat);
+
+  /**
+   * Acquire the config instance for the namespace specified, the same as
+   * {@link #getConfig(String)} except that the acquisition is counted and should be released by
+   * {@link #releaseConfig(String)} once the instance is not used any more.
+   * @param namespace the namespace
+   * @return the config instance for the namespace
+   */
+  Config acquireConfig(String namespace);
+
+  /**
+   * Acquire the config file instance for the namespace specified, the same as
+   * {@link #getConfigFile(String, ConfigFileFormat)} except that the acquisition is counted and
+   * should be released by {@link #releaseConfigFile(String, ConfigFileFormat)}.
+   * @param namespace the namespace
+   * @param configFileFormat the config file format
+   * @return the config file instance for the namespace
+   */
+  ConfigFile acquireConfigFile(String namespace, ConfigFileFormat configFileFormat);
+
+  /**
+   * Release the config instance acquired by {@link #acquireConfig(String)}, the instance stops
+   * syncing and is removed once all of its acquisitions are released, unless it is also got by
+   * {@link #getConfig(String)}.
+   * @param namespace the namespace
+   */
+  void releaseConfig(String namespace);
+
+  /**
+   * Release the config file instance acquired by
+   * {@link #acquireConfigFile(String, ConfigFileFormat)}, the same as
+   * {@link #releaseConfig(String)}.
+   * @param namespace the namespace
+   * @param configFileFormat the config file format
+   */
+  void releaseConfigFile(String namespace, ConfigFileFormat configFileFormat);
+
+  /**
+   * Rebuild the precomputed property views of all the config instances, which is needed when
+   * system properties are changed at runtime.
+   */
+  void refreshPropertyViews();
 }
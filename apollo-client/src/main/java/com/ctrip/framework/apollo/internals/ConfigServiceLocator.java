@@ -35,6 +35,7 @@ public class ConfigServiceLocator {
   private static final Logger logger = LoggerFactory.getLogger(ConfigServiceLocator.class);
   private HttpUtil m_httpUtil;
   private ConfigUtil m_configUtil;
+  private ConfigServiceSelector m_serviceSelector;
   private AtomicReference<List<ServiceDTO>> m_configServices;
   private Type m_responseType;
   private ScheduledExecutorService m_executorService;
@@ -51,6 +52,7 @@ public class ConfigServiceLocator {
     }.getType();
     m_httpUtil = ApolloInjector.getInstance(HttpUtil.class);
     m_configUtil = ApolloInjector.getInstance(ConfigUtil.class);
+    m_serviceSelector = ApolloInjector.getInstance(ConfigServiceSelector.class);
     this.m_executorService = Executors.newScheduledThreadPool(1,
         ApolloThreadFactory.create("ConfigServiceLocator", true));
     initConfigServices();
@@ -117,6 +119,15 @@ public class ConfigServiceLocator {
     return m_configServices.get();
   }
 
+  /**
+   * Get the selector which decides the config service to access by the latency and error rate
+   *
+   * @return the selector shared by the config loads and the long polls
+   */
+  public ConfigServiceSelector getConfigServiceSelector() {
+    return m_serviceSelector;
+  }
+
   private boolean tryUpdateConfigServices() {
     try {
       updateConfigServices();
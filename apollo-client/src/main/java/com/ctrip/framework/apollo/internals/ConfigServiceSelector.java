@@ -0,0 +1,250 @@
+package com.ctrip.framework.apollo.internals;
+
+import com.ctrip.framework.apollo.core.dto.ServiceDTO;
+import com.google.common.base.Ticker;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Selects the config service to access by the moving average of its latency and error rate.
+ *
+ * <ul>
+ *   <li>the power of two choices: two random config services are compared and the better one is
+ *   selected, so the load is balanced without herding to the best one</li>
+ *   <li>a config service failing continuously is ejected for a short time, during which it is only
+ *   tried after all the others</li>
+ * </ul>
+ *
+ * It is shared by the config loads and the long polls, while the health of the long polls is
+ * tracked separately, as a config service holding long polls well may still load configs slowly or
+ * fail to, and vice versa.
+ */
+public class ConfigServiceSelector {
+  //weight of the latest sample in the moving averages
+  private static final double DECAY = 0.3;
+  //a config service failing all the time looks this many times slower than its latency
+  private static final double ERROR_PENALTY = 10;
+  private static final int FAILURES_TO_EJECT = 2;
+  private static final long EJECTION_TIME_IN_MILLIS = TimeUnit.SECONDS.toMillis(10);
+
+  private final ConcurrentMap<String, ServiceStats> m_serviceStats = Maps.newConcurrentMap();
+  private final Random m_random = new Random();
+  private final Ticker m_ticker;
+
+  public ConfigServiceSelector() {
+    this(Ticker.systemTicker());
+  }
+
+  ConfigServiceSelector(Ticker ticker) {
+    m_ticker = ticker;
+  }
+
+  /**
+   * @return the config service to load configs from
+   */
+  public ServiceDTO select(List<ServiceDTO> services) {
+    return select(services, false);
+  }
+
+  /**
+   * @return the config service to long poll
+   */
+  public ServiceDTO selectForLongPoll(List<ServiceDTO> services) {
+    return select(services, true);
+  }
+
+  private ServiceDTO select(List<ServiceDTO> services, boolean longPoll) {
+    pruneStats(services);
+    List<ServiceDTO> available = Lists.newArrayList();
+    for (ServiceDTO service : services) {
+      if (!(longPoll ? isEjectedForLongPoll(service) : isEjected(service))) {
+        available.add(service);
+      }
+    }
+    //all ejected, try them anyway
+    return selectByTwoChoices(available.isEmpty() ? services : available);
+  }
+
+  /**
+   * @return the config services in the order to try, the selected one comes first, then the
+   * other available ones in random order and finally the ejected ones
+   */
+  public List<ServiceDTO> order(List<ServiceDTO> services) {
+    pruneStats(services);
+    List<ServiceDTO> available = Lists.newArrayList();
+    List<ServiceDTO> ejected = Lists.newArrayList();
+    for (ServiceDTO service : services) {
+      if (isEjected(service)) {
+        ejected.add(service);
+      } else {
+        available.add(service);
+      }
+    }
+
+    List<ServiceDTO> result = Lists.newArrayListWithCapacity(services.size());
+    if (!available.isEmpty()) {
+      ServiceDTO selected = selectByTwoChoices(available);
+      available.remove(selected);
+      Collections.shuffle(available, m_random);
+      result.add(selected);
+      result.addAll(available);
+    }
+    Collections.shuffle(ejected, m_random);
+    result.addAll(ejected);
+    return result;
+  }
+
+  /**
+   * @param latencyInMillis the latency of the config load
+   */
+  public void onSuccess(ServiceDTO service, long latencyInMillis) {
+    statsOf(service).onSuccess(latencyInMillis);
+  }
+
+  public void onFailure(ServiceDTO service) {
+    statsOf(service).onFailure(now());
+  }
+
+  /**
+   * The latency of long polling depends on the changes, so only the result is counted
+   */
+  public void onLongPollSuccess(ServiceDTO service) {
+    statsOf(service).onLongPollSuccess();
+  }
+
+  public void onLongPollFailure(ServiceDTO service) {
+    statsOf(service).onLongPollFailure(now());
+  }
+
+  boolean isEjected(ServiceDTO service) {
+    ServiceStats stats = m_serviceStats.get(service.getHomepageUrl());
+    return stats != null && stats.isEjected(now());
+  }
+
+  boolean isEjectedForLongPoll(ServiceDTO service) {
+    ServiceStats stats = m_serviceStats.get(service.getHomepageUrl());
+    return stats != null && stats.isEjectedForLongPoll(now());
+  }
+
+  /**
+   * Drop the stats of the config services no longer discovered, e.g. the ones scaled in or
+   * redeployed with new addresses, so that the stats do not pile up
+   */
+  private void pruneStats(List<ServiceDTO> services) {
+    if (m_serviceStats.size() <= services.size() && containsAll(services)) {
+      return;
+    }
+    Set<String> homepageUrls = Sets.newHashSetWithExpectedSize(services.size());
+    for (ServiceDTO service : services) {
+      homepageUrls.add(service.getHomepageUrl());
+    }
+    m_serviceStats.keySet().retainAll(homepageUrls);
+  }
+
+  private boolean containsAll(List<ServiceDTO> services) {
+    int found = 0;
+    for (ServiceDTO service : services) {
+      if (m_serviceStats.containsKey(service.getHomepageUrl())) {
+        found++;
+      }
+    }
+    return found == m_serviceStats.size();
+  }
+
+  private ServiceDTO selectByTwoChoices(List<ServiceDTO> services) {
+    int size = services.size();
+    if (size == 1) {
+      return services.get(0);
+    }
+    int first = m_random.nextInt(size);
+    int second = m_random.nextInt(size - 1);
+    if (second >= first) {
+      second++;
+    }
+    ServiceDTO firstService = services.get(first);
+    ServiceDTO secondService = services.get(second);
+    return score(firstService) <= score(secondService) ? firstService : secondService;
+  }
+
+  private double score(ServiceDTO service) {
+    ServiceStats stats = m_serviceStats.get(service.getHomepageUrl());
+    //never accessed, try it
+    return stats == null ? 0 : stats.score();
+  }
+
+  private ServiceStats statsOf(ServiceDTO service) {
+    ServiceStats stats = m_serviceStats.get(service.getHomepageUrl());
+    if (stats == null) {
+      ServiceStats newStats = new ServiceStats();
+      stats = m_serviceStats.putIfAbsent(service.getHomepageUrl(), newStats);
+      if (stats == null) {
+        stats = newStats;
+      }
+    }
+    return stats;
+  }
+
+  private long now() {
+    return TimeUnit.NANOSECONDS.toMillis(m_ticker.read());
+  }
+
+  private static class ServiceStats {
+    //guarded by this
+    private double m_latency = -1;
+    private double m_errorRate;
+    private int m_consecutiveFailures;
+    private long m_ejectedUntil = Long.MIN_VALUE;
+    private int m_longPollConsecutiveFailures;
+    private long m_longPollEjectedUntil = Long.MIN_VALUE;
+
+    synchronized void onSuccess(long latencyInMillis) {
+      latencyInMillis = Math.max(latencyInMillis, 0);
+      m_latency = m_latency < 0 ? latencyInMillis
+          : DECAY * latencyInMillis + (1 - DECAY) * m_latency;
+      m_errorRate = (1 - DECAY) * m_errorRate;
+      m_consecutiveFailures = 0;
+      m_ejectedUntil = Long.MIN_VALUE;
+    }
+
+    synchronized void onFailure(long now) {
+      m_errorRate = DECAY + (1 - DECAY) * m_errorRate;
+      if (++m_consecutiveFailures >= FAILURES_TO_EJECT) {
+        m_ejectedUntil = now + EJECTION_TIME_IN_MILLIS;
+      }
+    }
+
+    synchronized void onLongPollSuccess() {
+      m_longPollConsecutiveFailures = 0;
+      m_longPollEjectedUntil = Long.MIN_VALUE;
+    }
+
+    synchronized void onLongPollFailure(long now) {
+      if (++m_longPollConsecutiveFailures >= FAILURES_TO_EJECT) {
+        m_longPollEjectedUntil = now + EJECTION_TIME_IN_MILLIS;
+      }
+    }
+
+    synchronized boolean isEjected(long now) {
+      return now < m_ejectedUntil;
+    }
+
+    synchronized boolean isEjectedForLongPoll(long now) {
+      return now < m_longPollEjectedUntil;
+    }
+
+    synchronized double score() {
+      if (m_latency < 0 && m_errorRate == 0) {
+        //no config loaded from it yet, try it
+        return 0;
+      }
+      return (Math.max(m_latency, 0) + 1) * (1 + ERROR_PENALTY * m_errorRate);
+    }
+  }
+}
@@ -0,0 +1,250 @@
+package com.ctrip.framework.apollo.internals;
+
+import com.ctrip.framework.apollo.build.ApolloInjector;
+import com.ctrip.framework.apollo.core.utils.ApolloThreadFactory;
+import com.ctrip.framework.apollo.enums.ConfigSourceType;
+import com.ctrip.framework.apollo.exceptions.ApolloConfigException;
+import com.ctrip.framework.apollo.util.ConfigUtil;
+import com.ctrip.framework.apollo.util.ExceptionUtil;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reads the config from the shared snapshot file published by another process on the same host,
+ * e.g. the {@link LocalFileConfigRepository} of a process with the snapshot writer enabled, instead
+ * of loading from the config service.
+ *
+ * <p>The sequence of the snapshot is checked periodically, and the snapshot is only read and
+ * decoded when the sequence changes.</p>
+ *
+ * <p>The config is loaded from the config service instead while the snapshot is missing, or stale
+ * as its writer stops heartbeating, and the stale snapshot is served as the local config only if
+ * the config service is not available either. The fallback repository is created in background
+ * when the snapshot becomes unavailable while polling, and notifies its changes by itself, so the
+ * polling never waits for the config service.</p>
+ */
+public class ConfigSnapshotConfigRepository extends AbstractConfigRepository
+    implements RepositoryChangeListener {
+  private static final Logger logger = LoggerFactory.getLogger(ConfigSnapshotConfigRepository.class);
+  private static final ScheduledExecutorService m_executorService = Executors.newScheduledThreadPool(
+      1, ApolloThreadFactory.create("ConfigSnapshotConfigRepository", true));
+  private final String m_namespace;
+  private final long m_staleTimeInMills;
+  private final ConfigSnapshotFile m_snapshotFile;
+  private volatile ConfigSnapshotFile.Snapshot m_snapshot;
+  //whether the snapshot is missing or stale, so the config is loaded from the config service
+  private volatile boolean m_fallbackEnabled;
+  //created once the fallback is enabled, which might be done in background
+  private volatile ConfigRepository m_fallbackRepository;
+  //the config last notified to the listeners, guarded by itself rather than the repository, since
+  //the fallback repository notifies the change while holding its own lock
+  private final Object m_lastConfigLock = new Object();
+  private Properties m_lastConfig;
+  private volatile boolean m_closed;
+  private final ScheduledFuture<?> m_pollFuture;
+
+  /**
+   * Constructor.
+   *
+   * @param namespace the namespace
+   */
+  public ConfigSnapshotConfigRepository(String namespace) {
+    m_namespace = namespace;
+    ConfigUtil configUtil = ApolloInjector.getInstance(ConfigUtil.class);
+    m_staleTimeInMills = configUtil.getConfigSnapshotStaleTimeInMills();
+    m_snapshotFile = new ConfigSnapshotFile(
+        ConfigSnapshotFile.assembleSnapshotFile(configUtil, namespace));
+    this.trySync();
+    long pollInterval = Math.max(1, configUtil.getConfigSnapshotPollIntervalInMills());
+    m_pollFuture = m_executorService.scheduleWithFixedDelay(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          syncSnapshot(true);
+        } catch (Throwable ex) {
+          //not logged as warning, since it is checked so frequently
+          logger.debug("Check config snapshot of namespace {} failed, reason: {}", m_namespace,
+              ExceptionUtil.getDetailMessage(ex));
+        }
+      }
+    }, pollInterval, pollInterval, TimeUnit.MILLISECONDS);
+  }
+
+  @Override
+  public Properties getConfig() {
+    if (m_snapshot == null && m_fallbackRepository == null) {
+      this.sync();
+    }
+    ConfigRepository fallbackRepository = m_fallbackRepository;
+    if (fallbackRepository != null) {
+      try {
+        return fallbackRepository.getConfig();
+      } catch (RuntimeException ex) {
+        if (m_snapshot == null) {
+          throw ex;
+        }
+        logger.debug("Load config of namespace {} failed, serving the stale snapshot, reason: {}",
+            m_namespace, ExceptionUtil.getDetailMessage(ex));
+      }
+    }
+    ConfigSnapshotFile.Snapshot snapshot = m_snapshot;
+    if (snapshot == null) {
+      throw new ApolloConfigException(
+          String.format("Config of namespace %s is not loaded yet", m_namespace));
+    }
+    return copyOf(snapshot);
+  }
+
+  @Override
+  public void setUpstreamRepository(ConfigRepository upstreamConfigRepository) {
+    //the snapshot file is the upstream
+  }
+
+  @Override
+  public ConfigSourceType getSourceType() {
+    ConfigRepository fallbackRepository = m_fallbackRepository;
+    if (fallbackRepository != null && fallbackRepository.getSourceType() != ConfigSourceType.NONE) {
+      return fallbackRepository.getSourceType();
+    }
+    ConfigSnapshotFile.Snapshot snapshot = m_snapshot;
+    if (snapshot == null) {
+      return ConfigSourceType.NONE;
+    }
+    //the stale snapshot is no more than a local cache
+    return m_fallbackEnabled ? ConfigSourceType.LOCAL : snapshot.getSourceType();
+  }
+
+  @Override
+  protected void sync() {
+    //called by the repository users, who wait for the config anyway
+    syncSnapshot(false);
+  }
+
+  private synchronized void syncSnapshot(boolean fallbackInBackground) {
+    if (m_closed) {
+      return;
+    }
+    boolean available;
+    ConfigSnapshotFile.Snapshot changed = null;
+    try {
+      ConfigSnapshotFile.Snapshot previous = m_snapshot;
+      changed = m_snapshotFile.readIfChanged(previous == null ? -1 : previous.getSequence());
+      if (changed != null) {
+        logger.debug("Config snapshot {} of namespace {} is loaded", changed.getSequence(),
+            m_namespace);
+        m_snapshot = changed;
+      }
+      available = System.currentTimeMillis() - m_snapshotFile.getHeartbeat() <= m_staleTimeInMills;
+      if (!available) {
+        //mapped again on the next poll, in case the file is replaced
+        m_snapshotFile.remap();
+      }
+    } catch (ApolloConfigException ex) {
+      logger.debug("Config snapshot of namespace {} is not available, reason: {}", m_namespace,
+          ExceptionUtil.getDetailMessage(ex));
+      available = false;
+    }
+
+    if (available) {
+      boolean fallbackDisabled = m_fallbackEnabled;
+      if (fallbackDisabled) {
+        logger.info("Config snapshot of namespace {} is available again", m_namespace);
+        disableFallback();
+      }
+      //only decoded when changed, the snapshot is not compared on every poll
+      if (changed != null || fallbackDisabled) {
+        fireIfChanged(copyOf(m_snapshot));
+      }
+    } else if (!m_fallbackEnabled) {
+      logger.warn("Config snapshot of namespace {} is missing or stale, loading from the config "
+          + "service instead", m_namespace);
+      m_fallbackEnabled = true;
+      if (fallbackInBackground) {
+        enableFallbackInBackground();
+      } else {
+        setFallbackRepository(createFallbackRepository(m_namespace));
+      }
+    }
+  }
+
+  private void enableFallbackInBackground() {
+    //in the bounded pool shared with the background syncs of the remote repositories
+    RemoteConfigRepository.getSyncExecutorService().submit(new Runnable() {
+      @Override
+      public void run() {
+        ConfigRepository fallbackRepository = createFallbackRepository(m_namespace);
+        if (!setFallbackRepository(fallbackRepository)) {
+          return;
+        }
+        try {
+          fireIfChanged(fallbackRepository.getConfig());
+        } catch (Throwable ex) {
+          //notified by the fallback repository once loaded
+          logger.warn("Load config of namespace {} from the config service failed, reason: {}",
+              m_namespace, ExceptionUtil.getDetailMessage(ex));
+        }
+      }
+    });
+  }
+
+  /**
+   * @return false if the fallback is disabled or set already meanwhile, then the repository is closed
+   */
+  private synchronized boolean setFallbackRepository(ConfigRepository fallbackRepository) {
+    if (m_closed || !m_fallbackEnabled || m_fallbackRepository != null) {
+      closeRepository(fallbackRepository);
+      return false;
+    }
+    fallbackRepository.addChangeListener(this);
+    m_fallbackRepository = fallbackRepository;
+    return true;
+  }
+
+  private synchronized void disableFallback() {
+    m_fallbackEnabled = false;
+    ConfigRepository fallbackRepository = m_fallbackRepository;
+    if (fallbackRepository != null) {
+      m_fallbackRepository = null;
+      fallbackRepository.removeChangeListener(this);
+      closeRepository(fallbackRepository);
+    }
+  }
+
+  @Override
+  public void onRepositoryChange(String namespace, Properties newProperties) {
+    if (m_fallbackEnabled) {
+      fireIfChanged(newProperties);
+    }
+  }
+
+  private void fireIfChanged(Properties config) {
+    synchronized (m_lastConfigLock) {
+      if (!config.equals(m_lastConfig)) {
+        m_lastConfig = config;
+        this.fireRepositoryChange(m_namespace, config);
+      }
+    }
+  }
+
+  private Properties copyOf(ConfigSnapshotFile.Snapshot snapshot) {
+    Properties result = propertiesFactory.getPropertiesInstance();
+    result.putAll(snapshot.getProperties());
+    return result;
+  }
+
+  ConfigRepository createFallbackRepository(String namespace) {
+    return new RemoteConfigRepository(namespace);
+  }
+
+  @Override
+  synchronized void close() {
+    m_closed = true;
+    m_pollFuture.cancel(false);
+    disableFallback();
+  }
+}
@@ -0,0 +1,319 @@
+package com.ctrip.framework.apollo.internals;
+
+import com.ctrip.framework.apollo.core.ConfigConsts;
+import com.ctrip.framework.apollo.enums.ConfigSourceType;
+import com.ctrip.framework.apollo.exceptions.ApolloConfigException;
+import com.ctrip.framework.apollo.util.ConfigUtil;
+import com.google.common.base.Joiner;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+/**
+ * A memory mapped file holding the latest config snapshot of one namespace, which is written by one
+ * process and read by all the other processes on the same host.
+ *
+ * <p>The file starts with a header of the magic number, the sequence, the source type, the content
+ * length, the content checksum and the heartbeat, followed by the content. The writer makes the
+ * sequence odd before updating the content and even again afterwards, so a reader knows a new
+ * snapshot is available by comparing the sequence only, and retries if the snapshot is being
+ * written.</p>
+ *
+ * <p>The heartbeat is the last time the writer is known alive, which is refreshed periodically even
+ * if the content is not changed, so a reader knows the snapshot is stale once the writer exits.</p>
+ *
+ * <p>The file is remapped once it is replaced, e.g. deleted by a cache cleanup and created again by
+ * a new writer, which is detected by its identity and length.</p>
+ */
+class ConfigSnapshotFile {
+  private static final String SNAPSHOT_DIR = "config-snapshot";
+  //changed along with the header layout
+  private static final int MAGIC = 0x41504c54;
+  private static final int MAGIC_OFFSET = 0;
+  private static final int SEQUENCE_OFFSET = 4;
+  private static final int SOURCE_TYPE_OFFSET = 12;
+  private static final int LENGTH_OFFSET = 16;
+  private static final int CHECKSUM_OFFSET = 20;
+  private static final int HEARTBEAT_OFFSET = 24;
+  private static final int HEADER_SIZE = 32;
+  private static final int MIN_FILE_SIZE = 4096;
+  private static final int MAX_READ_ATTEMPTS = 10;
+
+  private final File m_file;
+  private MappedByteBuffer m_buffer;
+  //the identity of the file mapped
+  private Object m_mappedFileKey;
+  //whether the file is remapped since the last read, so the sequence known might be of another file
+  private boolean m_remapped;
+  //the last snapshot written, rewritten by the heartbeat if the file is replaced
+  private Properties m_lastProperties;
+  private ConfigSourceType m_lastSourceType;
+
+  ConfigSnapshotFile(File file) {
+    m_file = file;
+  }
+
+  static File assembleSnapshotFile(ConfigUtil configUtil, String namespace) {
+    String fileName = String.format("%s.snapshot", Joiner.on(ConfigConsts.CLUSTER_NAMESPACE_SEPARATOR)
+        .join(configUtil.getAppId(), configUtil.getCluster(), namespace));
+    return new File(new File(configUtil.getDefaultLocalCacheDir(), SNAPSHOT_DIR), fileName);
+  }
+
+  File getFile() {
+    return m_file;
+  }
+
+  /**
+   * Write the properties as the next snapshot, the writers of different processes are excluded by
+   * the file lock
+   */
+  synchronized void write(Properties properties, ConfigSourceType sourceType) throws IOException {
+    byte[] content = encode(properties);
+    int checksum = checksum(content, sourceType.ordinal());
+
+    File dir = m_file.getParentFile();
+    if (!dir.exists() && !dir.mkdirs() && !dir.exists()) {
+      throw new IOException("Create config snapshot directory failed: " + dir.getAbsolutePath());
+    }
+    try (RandomAccessFile file = new RandomAccessFile(m_file, "rw");
+        FileLock ignored = file.getChannel().lock()) {
+      int requiredSize = HEADER_SIZE + content.length;
+      if (file.length() < requiredSize) {
+        //grown ahead, so that the readers need not remap on every change
+        file.setLength(Math.max(MIN_FILE_SIZE, requiredSize * 2L));
+      }
+      if (!isMappingValid()) {
+        m_buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, file.length());
+        m_mappedFileKey = readFileKey();
+      }
+
+      long sequence = m_buffer.getInt(MAGIC_OFFSET) == MAGIC ? m_buffer.getLong(SEQUENCE_OFFSET) : 0;
+      //left odd by a writer crashed in the middle
+      sequence += sequence % 2 == 0 ? 1 : 0;
+      //the sequence is made odd before the magic, so a new file is never read before written
+      m_buffer.putLong(SEQUENCE_OFFSET, sequence);
+      m_buffer.putInt(MAGIC_OFFSET, MAGIC);
+      m_buffer.putInt(SOURCE_TYPE_OFFSET, sourceType.ordinal());
+      m_buffer.putInt(LENGTH_OFFSET, content.length);
+      m_buffer.putInt(CHECKSUM_OFFSET, checksum);
+      m_buffer.putLong(HEARTBEAT_OFFSET, System.currentTimeMillis());
+      ByteBuffer contentBuffer = m_buffer.duplicate();
+      contentBuffer.position(HEADER_SIZE);
+      contentBuffer.put(content);
+      m_buffer.putLong(SEQUENCE_OFFSET, sequence + 1);
+    }
+    m_lastProperties = properties;
+    m_lastSourceType = sourceType;
+  }
+
+  /**
+   * Mark the writer alive, it is skipped if no snapshot is written by this writer yet, the file lock
+   * is not needed since the heartbeat is not covered by the sequence or checksum
+   */
+  synchronized void heartbeat() throws IOException {
+    if (m_lastProperties == null) {
+      return;
+    }
+    if (!isMappingValid()) {
+      //replaced, the readers are served again once the last snapshot is written to the new file
+      write(m_lastProperties, m_lastSourceType);
+      return;
+    }
+    m_buffer.putLong(HEARTBEAT_OFFSET, System.currentTimeMillis());
+  }
+
+  /**
+   * Drop the current mapping, so the file is mapped again on the next read, e.g. when the heartbeat
+   * is stale, in case the file is replaced in a way not detected
+   */
+  synchronized void remap() {
+    m_buffer = null;
+  }
+
+  /**
+   * @return the last time the writer is known alive
+   * @throws ApolloConfigException if the snapshot is not available
+   */
+  synchronized long getHeartbeat() {
+    MappedByteBuffer buffer = getReadBuffer();
+    if (buffer.getInt(MAGIC_OFFSET) != MAGIC) {
+      throw new ApolloConfigException(
+          String.format("Config snapshot %s is not written yet", m_file.getAbsolutePath()));
+    }
+    return buffer.getLong(HEARTBEAT_OFFSET);
+  }
+
+  /**
+   * @return the snapshot if its sequence is different from the one specified, or null if not
+   * @throws ApolloConfigException if the snapshot is not available
+   */
+  synchronized Snapshot readIfChanged(long knownSequence) {
+    for (int attempt = 0; attempt < MAX_READ_ATTEMPTS; attempt++) {
+      MappedByteBuffer buffer = getReadBuffer();
+      if (buffer.getInt(MAGIC_OFFSET) != MAGIC) {
+        throw new ApolloConfigException(
+            String.format("Config snapshot %s is not written yet", m_file.getAbsolutePath()));
+      }
+      long sequence = buffer.getLong(SEQUENCE_OFFSET);
+      if (sequence == knownSequence && !m_remapped) {
+        return null;
+      }
+      if (sequence % 2 != 0) {
+        //being written
+        Thread.yield();
+        continue;
+      }
+      int sourceType = buffer.getInt(SOURCE_TYPE_OFFSET);
+      int length = buffer.getInt(LENGTH_OFFSET);
+      int checksum = buffer.getInt(CHECKSUM_OFFSET);
+      if (length < 0 || HEADER_SIZE + length > buffer.capacity()) {
+        //grown by the writer
+        m_buffer = null;
+        continue;
+      }
+      byte[] content = new byte[length];
+      ByteBuffer contentBuffer = buffer.duplicate();
+      contentBuffer.position(HEADER_SIZE);
+      contentBuffer.get(content);
+      if (buffer.getLong(SEQUENCE_OFFSET) != sequence || checksum(content, sourceType) != checksum
+          || sourceType < 0 || sourceType >= ConfigSourceType.values().length) {
+        //overwritten while reading
+        continue;
+      }
+      m_remapped = false;
+      return new Snapshot(sequence, decode(content), ConfigSourceType.values()[sourceType]);
+    }
+    throw new ApolloConfigException(
+        String.format("Read config snapshot %s failed, it keeps changing", m_file.getAbsolutePath()));
+  }
+
+  private MappedByteBuffer getReadBuffer() {
+    if (isMappingValid()) {
+      return m_buffer;
+    }
+    if (!m_file.isFile()) {
+      throw new ApolloConfigException(
+          String.format("Config snapshot %s does not exist", m_file.getAbsolutePath()));
+    }
+    //the mapping is still valid after the file is closed
+    try (RandomAccessFile file = new RandomAccessFile(m_file, "r")) {
+      if (file.length() < HEADER_SIZE) {
+        throw new ApolloConfigException(
+            String.format("Config snapshot %s is not written yet", m_file.getAbsolutePath()));
+      }
+      m_buffer = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length());
+      m_mappedFileKey = readFileKey();
+      m_remapped = true;
+      return m_buffer;
+    } catch (IOException ex) {
+      throw new ApolloConfigException(
+          String.format("Map config snapshot %s failed", m_file.getAbsolutePath()), ex);
+    }
+  }
+
+  /**
+   * @return whether the file mapped is still the current one at the path, with the same length
+   */
+  private boolean isMappingValid() {
+    if (m_buffer == null) {
+      return false;
+    }
+    try {
+      BasicFileAttributes attributes =
+          Files.readAttributes(m_file.toPath(), BasicFileAttributes.class);
+      return attributes.size() == m_buffer.capacity()
+          && Objects.equals(fileKeyOf(attributes), m_mappedFileKey);
+    } catch (IOException ex) {
+      //deleted
+      return false;
+    }
+  }
+
+  private Object readFileKey() throws IOException {
+    return fileKeyOf(Files.readAttributes(m_file.toPath(), BasicFileAttributes.class));
+  }
+
+  private static Object fileKeyOf(BasicFileAttributes attributes) {
+    //the file key is not available on some platforms, e.g. windows
+    return attributes.fileKey() != null ? attributes.fileKey() : attributes.creationTime();
+  }
+
+  private static int checksum(byte[] content, int sourceType) {
+    CRC32 checksum = new CRC32();
+    checksum.update(content);
+    checksum.update(sourceType);
+    return (int) checksum.getValue();
+  }
+
+  private static byte[] encode(Properties properties) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    Set<String> keys = properties.stringPropertyNames();
+    out.writeInt(keys.size());
+    for (String key : keys) {
+      writeString(out, key);
+      writeString(out, properties.getProperty(key));
+    }
+    out.flush();
+    return bytes.toByteArray();
+  }
+
+  private static void writeString(DataOutputStream out, String value) throws IOException {
+    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  private static Properties decode(byte[] content) {
+    ByteBuffer buffer = ByteBuffer.wrap(content);
+    int size = buffer.getInt();
+    Properties properties = new Properties();
+    for (int i = 0; i < size; i++) {
+      properties.setProperty(readString(buffer), readString(buffer));
+    }
+    return properties;
+  }
+
+  private static String readString(ByteBuffer buffer) {
+    byte[] bytes = new byte[buffer.getInt()];
+    buffer.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  static class Snapshot {
+    private final long m_sequence;
+    private final Properties m_properties;
+    private final ConfigSourceType m_sourceType;
+
+    Snapshot(long sequence, Properties properties, ConfigSourceType sourceType) {
+      m_sequence = sequence;
+      m_properties = properties;
+      m_sourceType = sourceType;
+    }
+
+    long getSequence() {
+      return m_sequence;
+    }
+
+    Properties getProperties() {
+      return m_properties;
+    }
+
+    ConfigSourceType getSourceType() {
+      return m_sourceType;
+    }
+  }
+}
@@ -4,6 +4,7 @@ import com.ctrip.framework.apollo.enums.ConfigSourceType;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -15,11 +16,13 @@ import java.util.concurrent.atomic.AtomicReference;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.ctrip.framework.apollo.build.ApolloInjector;
 import com.ctrip.framework.apollo.core.utils.ClassLoaderUtil;
 import com.ctrip.framework.apollo.enums.PropertyChangeType;
 import com.ctrip.framework.apollo.model.ConfigChange;
 import com.ctrip.framework.apollo.model.ConfigChangeEvent;
 import com.ctrip.framework.apollo.tracer.Tracer;
+import com.ctrip.framework.apollo.util.ConfigUtil;
 import com.ctrip.framework.apollo.util.ExceptionUtil;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.util.concurrent.RateLimiter;
@@ -35,6 +38,9 @@ public class DefaultConfig extends AbstractConfig implements RepositoryChangeLis
   private final AtomicReference<Properties> m_configProperties;
   private final ConfigRepository m_configRepository;
   private final RateLimiter m_warnLogRateLimiter;
+  private final boolean m_propertyViewEnabled;
+  //system properties, apollo configs, environment variables and classpath properties merged
+  private volatile Map<String, String> m_propertyView;
 
   private volatile ConfigSourceType m_sourceType = ConfigSourceType.NONE;
 
@@ -45,11 +51,14 @@ public class DefaultConfig extends AbstractConfig implements RepositoryChangeLis
    * @param configRepository the config repository for this config instance
    */
   public DefaultConfig(String namespace, ConfigRepository configRepository) {
+    super(namespace);
     m_namespace = namespace;
     m_resourceProperties = loadFromResource(m_namespace);
     m_configRepository = configRepository;
     m_configProperties = new AtomicReference<>();
     m_warnLogRateLimiter = RateLimiter.create(0.017); // 1 warning log output per minute
+    m_propertyViewEnabled = ApolloInjector.getInstance(ConfigUtil.class)
+        .isPrecomputedPropertyViewEnabled();
     initialize();
   }
 
@@ -61,6 +70,10 @@ public class DefaultConfig extends AbstractConfig implements RepositoryChangeLis
       logger.warn("Init Apollo Local Config failed - namespace: {}, reason: {}.",
           m_namespace, ExceptionUtil.getDetailMessage(ex));
     } finally {
+      if (m_propertyViewEnabled && m_propertyView == null) {
+        //the view is still needed when the config repository is not working
+        refreshPropertyView();
+      }
       //register the change listener no matter config repository is working or not
       //so that whenever config repository is recovered, config could get changed
       m_configRepository.addChangeListener(this);
@@ -69,6 +82,15 @@ public class DefaultConfig extends AbstractConfig implements RepositoryChangeLis
 
   @Override
   public String getProperty(String key, String defaultValue) {
+    Map<String, String> propertyView = m_propertyView;
+    if (propertyView != null) {
+      String value = propertyView.get(key);
+      if (value == null && m_configProperties.get() == null && m_warnLogRateLimiter.tryAcquire()) {
+        logger.warn("Could not load config for namespace {} from Apollo, please check whether the configs are released in Apollo! Return default value now!", m_namespace);
+      }
+      return value == null ? defaultValue : value;
+    }
+
     // step 1: check system properties, i.e. -Dkey=value
     String value = System.getProperty(key);
 
@@ -151,6 +173,47 @@ public class DefaultConfig extends AbstractConfig implements RepositoryChangeLis
   private void updateConfig(Properties newConfigProperties, ConfigSourceType sourceType) {
     m_configProperties.set(newConfigProperties);
     m_sourceType = sourceType;
+    if (m_propertyViewEnabled) {
+      m_propertyView = buildPropertyView(newConfigProperties);
+    }
+  }
+
+  /**
+   * Rebuild the precomputed property view, which is only needed when system properties are changed
+   * at runtime, as the view is rebuilt automatically when the configs change. Synchronized with
+   * {@link #onRepositoryChange}, so that a stale view never overwrites the one of a newer config
+   *
+   * @see com.ctrip.framework.apollo.ConfigService#refreshPropertyViews()
+   */
+  synchronized void refreshPropertyView() {
+    if (!m_propertyViewEnabled) {
+      return;
+    }
+    m_propertyView = buildPropertyView(m_configProperties.get());
+    clearConfigCache();
+  }
+
+  private Map<String, String> buildPropertyView(Properties configProperties) {
+    // merged in the reversed order of getProperty's lookup, so that the former ones win
+    Map<String, String> propertyView = new HashMap<>();
+    if (m_resourceProperties != null) {
+      putStringProperties(propertyView, m_resourceProperties);
+    }
+    propertyView.putAll(System.getenv());
+    if (configProperties != null) {
+      putStringProperties(propertyView, configProperties);
+    }
+    putStringProperties(propertyView, System.getProperties());
+    return ImmutableMap.copyOf(propertyView);
+  }
+
+  private void putStringProperties(Map<String, String> target, Properties properties) {
+    for (String key : properties.stringPropertyNames()) {
+      String value = properties.getProperty(key);
+      if (value != null) {
+        target.put(key, value);
+      }
+    }
   }
 
   private Map<String, ConfigChange> updateAndCalcConfigChanges(Properties newConfigProperties,
@@ -231,4 +294,11 @@ public class DefaultConfig extends AbstractConfig implements RepositoryChangeLis
 
     return properties;
   }
+
+  @Override
+  void close() {
+    m_configRepository.removeChangeListener(this);
+    AbstractConfigRepository.closeRepository(m_configRepository);
+    super.close();
+  }
 }
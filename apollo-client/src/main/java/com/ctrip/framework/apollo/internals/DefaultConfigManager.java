@@ -1,66 +1,272 @@
 package com.ctrip.framework.apollo.internals;
 
-import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import com.ctrip.framework.apollo.Config;
 import com.ctrip.framework.apollo.ConfigFile;
 import com.ctrip.framework.apollo.build.ApolloInjector;
 import com.ctrip.framework.apollo.core.enums.ConfigFileFormat;
+import com.ctrip.framework.apollo.core.utils.ApolloThreadFactory;
 import com.ctrip.framework.apollo.spi.ConfigFactory;
 import com.ctrip.framework.apollo.spi.ConfigFactoryManager;
+import com.ctrip.framework.apollo.tracer.Tracer;
+import com.ctrip.framework.apollo.util.ConfigUtil;
 import com.google.common.collect.Maps;
 
 /**
  * @author Jason Song(song_s@ctrip.com)
  */
 public class DefaultConfigManager implements ConfigManager {
+  private static final Logger logger = LoggerFactory.getLogger(DefaultConfigManager.class);
   private ConfigFactoryManager m_factoryManager;
 
-  private Map<String, Config> m_configs = Maps.newConcurrentMap();
-  private Map<String, ConfigFile> m_configFiles = Maps.newConcurrentMap();
+  private final ConcurrentMap<String, Reference<Config>> m_configs = Maps.newConcurrentMap();
+  private final ConcurrentMap<String, Reference<ConfigFile>> m_configFiles = Maps.newConcurrentMap();
+  //locks per namespace, so that different namespaces could be created concurrently, removed with
+  //the instances evicted
+  private final ConcurrentMap<String, Object> m_configLocks = Maps.newConcurrentMap();
+  private final ConcurrentMap<String, Object> m_configFileLocks = Maps.newConcurrentMap();
+  private final long m_idleEvictionDelayInMills;
+  private volatile ScheduledExecutorService m_evictionExecutorService;
 
   public DefaultConfigManager() {
     m_factoryManager = ApolloInjector.getInstance(ConfigFactoryManager.class);
+    m_idleEvictionDelayInMills = ApolloInjector.getInstance(ConfigUtil.class)
+        .getConfigIdleEvictionDelayInMills();
   }
 
   @Override
   public Config getConfig(String namespace) {
-    Config config = m_configs.get(namespace);
-
-    if (config == null) {
-      synchronized (this) {
-        config = m_configs.get(namespace);
+    Reference<Config> reference = m_configs.get(namespace);
+    if (reference != null && reference.pinned) {
+      return reference.instance;
+    }
 
-        if (config == null) {
-          ConfigFactory factory = m_factoryManager.getFactory(namespace);
+    while (true) {
+      Object lock = getLock(m_configLocks, namespace);
+      synchronized (lock) {
+        if (!isLockValid(m_configLocks, namespace, lock)) {
+          continue;
+        }
+        reference = getOrCreateConfig(namespace);
+        //not counted, so it is never released
+        reference.pinned = true;
+        return reference.instance;
+      }
+    }
+  }
 
-          config = factory.create(namespace);
-          m_configs.put(namespace, config);
+  @Override
+  public Config acquireConfig(String namespace) {
+    while (true) {
+      Object lock = getLock(m_configLocks, namespace);
+      synchronized (lock) {
+        if (!isLockValid(m_configLocks, namespace, lock)) {
+          continue;
         }
+        Reference<Config> reference = getOrCreateConfig(namespace);
+        reference.count++;
+        return reference.instance;
       }
     }
+  }
+
+  private Reference<Config> getOrCreateConfig(String namespace) {
+    Reference<Config> reference = m_configs.get(namespace);
+    if (reference == null) {
+      ConfigFactory factory = m_factoryManager.getFactory(namespace);
 
-    return config;
+      reference = new Reference<>(factory.create(namespace));
+      m_configs.put(namespace, reference);
+    }
+    return reference;
   }
 
   @Override
   public ConfigFile getConfigFile(String namespace, ConfigFileFormat configFileFormat) {
     String namespaceFileName = String.format("%s.%s", namespace, configFileFormat.getValue());
-    ConfigFile configFile = m_configFiles.get(namespaceFileName);
+    Reference<ConfigFile> reference = m_configFiles.get(namespaceFileName);
+    if (reference != null && reference.pinned) {
+      return reference.instance;
+    }
 
-    if (configFile == null) {
-      synchronized (this) {
-        configFile = m_configFiles.get(namespaceFileName);
+    while (true) {
+      Object lock = getLock(m_configFileLocks, namespaceFileName);
+      synchronized (lock) {
+        if (!isLockValid(m_configFileLocks, namespaceFileName, lock)) {
+          continue;
+        }
+        reference = getOrCreateConfigFile(namespaceFileName, configFileFormat);
+        //not counted, so it is never released
+        reference.pinned = true;
+        return reference.instance;
+      }
+    }
+  }
+
+  @Override
+  public ConfigFile acquireConfigFile(String namespace, ConfigFileFormat configFileFormat) {
+    String namespaceFileName = String.format("%s.%s", namespace, configFileFormat.getValue());
+    while (true) {
+      Object lock = getLock(m_configFileLocks, namespaceFileName);
+      synchronized (lock) {
+        if (!isLockValid(m_configFileLocks, namespaceFileName, lock)) {
+          continue;
+        }
+        Reference<ConfigFile> reference =
+            getOrCreateConfigFile(namespaceFileName, configFileFormat);
+        reference.count++;
+        return reference.instance;
+      }
+    }
+  }
 
-        if (configFile == null) {
-          ConfigFactory factory = m_factoryManager.getFactory(namespaceFileName);
+  private Reference<ConfigFile> getOrCreateConfigFile(String namespaceFileName,
+      ConfigFileFormat configFileFormat) {
+    Reference<ConfigFile> reference = m_configFiles.get(namespaceFileName);
+    if (reference == null) {
+      ConfigFactory factory = m_factoryManager.getFactory(namespaceFileName);
 
-          configFile = factory.createConfigFile(namespaceFileName, configFileFormat);
-          m_configFiles.put(namespaceFileName, configFile);
+      reference = new Reference<>(factory.createConfigFile(namespaceFileName, configFileFormat));
+      m_configFiles.put(namespaceFileName, reference);
+    }
+    return reference;
+  }
+
+  @Override
+  public void releaseConfig(String namespace) {
+    release(m_configs, m_configLocks, namespace);
+  }
+
+  @Override
+  public void releaseConfigFile(String namespace, ConfigFileFormat configFileFormat) {
+    release(m_configFiles, m_configFileLocks,
+        String.format("%s.%s", namespace, configFileFormat.getValue()));
+  }
+
+  @Override
+  public void refreshPropertyViews() {
+    for (Reference<Config> reference : m_configs.values()) {
+      if (reference.instance instanceof DefaultConfig) {
+        ((DefaultConfig) reference.instance).refreshPropertyView();
+      }
+    }
+  }
+
+  private <T> void release(final ConcurrentMap<String, Reference<T>> references,
+      final ConcurrentMap<String, Object> locks, final String key) {
+    Reference<T> current;
+    while (true) {
+      Object lock = getLock(locks, key);
+      synchronized (lock) {
+        if (!isLockValid(locks, key, lock)) {
+          continue;
+        }
+        current = references.get(key);
+        if (current == null) {
+          //released more than acquired, so the lock just created is not needed
+          locks.remove(key, lock);
+          return;
+        }
+        //released more than acquired, or still in use
+        if (current.count <= 0 || --current.count > 0 || current.pinned) {
+          return;
+        }
+        break;
+      }
+    }
+    final Reference<T> reference = current;
+    if (m_idleEvictionDelayInMills <= 0) {
+      evict(references, locks, key, reference);
+      return;
+    }
+    //kept for a while, so that it could be reused if acquired again soon
+    getEvictionExecutorService().schedule(new Runnable() {
+      @Override
+      public void run() {
+        evict(references, locks, key, reference);
+      }
+    }, m_idleEvictionDelayInMills, TimeUnit.MILLISECONDS);
+  }
+
+  private <T> void evict(ConcurrentMap<String, Reference<T>> references,
+      ConcurrentMap<String, Object> locks, String key, Reference<T> reference) {
+    Object lock = locks.get(key);
+    if (lock == null) {
+      //evicted already
+      return;
+    }
+    synchronized (lock) {
+      //acquired again meanwhile
+      if (!isLockValid(locks, key, lock) || reference.count > 0 || reference.pinned
+          || !references.remove(key, reference)) {
+        return;
+      }
+      //no instance of the key any more, the ones waiting for the lock would get a new one
+      locks.remove(key, lock);
+    }
+    try {
+      if (reference.instance instanceof AbstractConfig) {
+        ((AbstractConfig) reference.instance).close();
+      } else if (reference.instance instanceof AbstractConfigFile) {
+        ((AbstractConfigFile) reference.instance).close();
+      }
+      logger.debug("Released config {}", key);
+    } catch (Throwable ex) {
+      Tracer.logError(ex);
+      logger.warn("Failed to close config {}", key, ex);
+    }
+  }
+
+  private ScheduledExecutorService getEvictionExecutorService() {
+    if (m_evictionExecutorService == null) {
+      synchronized (this) {
+        if (m_evictionExecutorService == null) {
+          m_evictionExecutorService = Executors.newSingleThreadScheduledExecutor(
+              ApolloThreadFactory.create("ConfigManager", true));
         }
       }
     }
+    return m_evictionExecutorService;
+  }
+
+  private Object getLock(ConcurrentMap<String, Object> locks, String key) {
+    Object lock = locks.get(key);
+    if (lock == null) {
+      Object newLock = new Object();
+      lock = locks.putIfAbsent(key, newLock);
+      if (lock == null) {
+        lock = newLock;
+      }
+    }
+    return lock;
+  }
 
-    return configFile;
+  /**
+   * @return whether the lock got is still the lock of the key, as it is removed on eviction
+   */
+  private boolean isLockValid(ConcurrentMap<String, Object> locks, String key, Object lock) {
+    return locks.get(key) == lock;
+  }
+
+  /**
+   * The instance with the count of its acquisitions not released yet
+   */
+  private static class Reference<T> {
+    private final T instance;
+    //guarded by the lock of the namespace
+    private int count;
+    //whether it is got without being counted, it is never released then
+    private volatile boolean pinned;
+
+    Reference(T instance) {
+      this.instance = instance;
+    }
   }
 }
@@ -0,0 +1,200 @@
+package com.ctrip.framework.apollo.internals;
+
+import com.ctrip.framework.apollo.core.utils.ApolloThreadFactory;
+import com.ctrip.framework.apollo.exceptions.ApolloConfigException;
+import com.ctrip.framework.apollo.tracer.Tracer;
+import com.ctrip.framework.apollo.tracer.spi.Transaction;
+import com.ctrip.framework.apollo.util.ExceptionUtil;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Persists the local cache files in background.
+ *
+ * <ul>
+ *   <li>writes to the same file are coalesced, only the latest properties are written</li>
+ *   <li>the properties are written to a temp file first and then renamed atomically, so a crash
+ *   would never leave a truncated cache file</li>
+ *   <li>the write is skipped if the content is the same as the file's</li>
+ * </ul>
+ *
+ * The file format is still the one of {@link Properties#store(java.io.OutputStream, String)}.
+ */
+class LocalConfigCacheWriter {
+  private static final Logger logger = LoggerFactory.getLogger(LocalConfigCacheWriter.class);
+  private static final String TEMP_FILE_SUFFIX = ".tmp";
+
+  private final ConcurrentMap<File, Properties> m_pendingProperties = Maps.newConcurrentMap();
+  private final ConcurrentMap<File, PersistedContent> m_persistedContents = Maps.newConcurrentMap();
+  private final ExecutorService m_executorService;
+
+  LocalConfigCacheWriter() {
+    m_executorService = Executors.newSingleThreadExecutor(
+        ApolloThreadFactory.create("LocalConfigCacheWriter", true));
+    Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+      @Override
+      public void run() {
+        flushAll();
+      }
+    }, "LocalConfigCacheWriter-shutdown"));
+  }
+
+  /**
+   * Schedule the properties to be written to the file, the properties should not be modified
+   * afterwards
+   */
+  void write(final File file, Properties properties) {
+    if (m_pendingProperties.put(file, properties) != null) {
+      //coalesced with the pending one
+      return;
+    }
+    m_executorService.submit(new Runnable() {
+      @Override
+      public void run() {
+        flush(file);
+      }
+    });
+  }
+
+  /**
+   * Write the pending properties of the file immediately
+   */
+  synchronized void flush(File file) {
+    Properties properties = m_pendingProperties.remove(file);
+    if (properties == null) {
+      return;
+    }
+    byte[] content;
+    try {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      properties.store(out, "Persisted by DefaultConfig");
+      content = out.toByteArray();
+    } catch (IOException ex) {
+      //should not happen when writing to memory
+      logger.warn("Serialize local cache file {} failed, reason: {}.", file.getAbsolutePath(),
+          ExceptionUtil.getDetailMessage(ex));
+      return;
+    }
+    HashCode hash = hash(content);
+    if (hash.equals(persistedHash(file))) {
+      return;
+    }
+    if (persist(file, content)) {
+      m_persistedContents.put(file, new PersistedContent(file, hash));
+    } else {
+      m_persistedContents.remove(file);
+    }
+  }
+
+  void flushAll() {
+    for (File file : Sets.newHashSet(m_pendingProperties.keySet())) {
+      flush(file);
+    }
+  }
+
+  private boolean persist(File file, byte[] content) {
+    Transaction transaction = Tracer.newTransaction("Apollo.ConfigService", "persistLocalConfigFile");
+    transaction.addData("LocalConfigFile", file.getAbsolutePath());
+    File tempFile = null;
+    try {
+      tempFile = File.createTempFile(file.getName(), TEMP_FILE_SUFFIX, file.getParentFile());
+      try (FileOutputStream out = new FileOutputStream(tempFile)) {
+        out.write(content);
+        out.getFD().sync();
+      }
+      moveAtomically(tempFile, file);
+      transaction.setStatus(Transaction.SUCCESS);
+      return true;
+    } catch (IOException ex) {
+      ApolloConfigException exception =
+          new ApolloConfigException(
+              String.format("Persist local cache file %s failed", file.getAbsolutePath()), ex);
+      Tracer.logError(exception);
+      transaction.setStatus(exception);
+      logger.warn("Persist local cache file {} failed, reason: {}.", file.getAbsolutePath(),
+          ExceptionUtil.getDetailMessage(ex));
+      return false;
+    } finally {
+      if (tempFile != null && tempFile.exists() && !tempFile.delete()) {
+        tempFile.deleteOnExit();
+      }
+      transaction.complete();
+    }
+  }
+
+  private void moveAtomically(File source, File target) throws IOException {
+    try {
+      Files.move(source.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE,
+          StandardCopyOption.REPLACE_EXISTING);
+    } catch (AtomicMoveNotSupportedException ex) {
+      Files.move(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+  }
+
+  private HashCode persistedHash(File file) {
+    if (!file.isFile()) {
+      return null;
+    }
+    PersistedContent persistedContent = m_persistedContents.get(file);
+    if (persistedContent != null && persistedContent.isUpToDate(file)) {
+      return persistedContent.hash;
+    }
+    //the file is persisted by the previous run or modified by others
+    try {
+      HashCode hash = hash(Files.readAllBytes(file.toPath()));
+      m_persistedContents.put(file, new PersistedContent(file, hash));
+      return hash;
+    } catch (Throwable ex) {
+      return null;
+    }
+  }
+
+  /**
+   * Hash the content persisted except the comment lines, which contain the timestamp
+   */
+  private HashCode hash(byte[] content) {
+    Hasher hasher = Hashing.sha256().newHasher();
+    int lineStart = 0;
+    for (int i = 0; i <= content.length; i++) {
+      if (i == content.length || content[i] == '\n') {
+        if (i > lineStart && content[lineStart] != '#') {
+          hasher.putBytes(content, lineStart, i - lineStart).putByte((byte) '\n');
+        }
+        lineStart = i + 1;
+      }
+    }
+    return hasher.hash();
+  }
+
+  private static class PersistedContent {
+    private final HashCode hash;
+    private final long lastModified;
+    private final long length;
+
+    PersistedContent(File file, HashCode hash) {
+      this.hash = hash;
+      this.lastModified = file.lastModified();
+      this.length = file.length();
+    }
+
+    boolean isUpToDate(File file) {
+      return file.lastModified() == lastModified && file.length() == length;
+    }
+  }
+}
@@ -3,22 +3,30 @@ package com.ctrip.framework.apollo.internals;
 import com.ctrip.framework.apollo.enums.ConfigSourceType;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.ctrip.framework.apollo.build.ApolloInjector;
 import com.ctrip.framework.apollo.core.ConfigConsts;
+import com.ctrip.framework.apollo.core.utils.ApolloThreadFactory;
 import com.ctrip.framework.apollo.core.utils.ClassLoaderUtil;
 import com.ctrip.framework.apollo.exceptions.ApolloConfigException;
+import com.ctrip.framework.apollo.monitor.ConfigMetrics;
 import com.ctrip.framework.apollo.tracer.Tracer;
 import com.ctrip.framework.apollo.tracer.spi.Transaction;
 import com.ctrip.framework.apollo.util.ConfigUtil;
@@ -33,6 +41,9 @@ public class LocalFileConfigRepository extends AbstractConfigRepository
     implements RepositoryChangeListener {
   private static final Logger logger = LoggerFactory.getLogger(LocalFileConfigRepository.class);
   private static final String CONFIG_DIR = "/config-cache";
+  private static final LocalConfigCacheWriter s_cacheWriter = new LocalConfigCacheWriter();
+  private static final ScheduledExecutorService s_snapshotHeartbeatService =
+      Executors.newScheduledThreadPool(1, ApolloThreadFactory.create("ConfigSnapshotHeartbeat", true));
   private final String m_namespace;
   private File m_baseDir;
   private final ConfigUtil m_configUtil;
@@ -40,6 +51,11 @@ public class LocalFileConfigRepository extends AbstractConfigRepository
   private volatile ConfigRepository m_upstream;
 
   private volatile ConfigSourceType m_sourceType = ConfigSourceType.LOCAL;
+  //whether the local cache is served and the upstream is not synced yet in offline first startup
+  private final AtomicBoolean m_upstreamSyncPending = new AtomicBoolean(false);
+  //the shared snapshot published for the other processes on the same host, null if not enabled
+  private final ConfigSnapshotFile m_snapshotFile;
+  private final ScheduledFuture<?> m_snapshotHeartbeatFuture;
 
   /**
    * Constructor.
@@ -53,11 +69,100 @@ public class LocalFileConfigRepository extends AbstractConfigRepository
   public LocalFileConfigRepository(String namespace, ConfigRepository upstream) {
     m_namespace = namespace;
     m_configUtil = ApolloInjector.getInstance(ConfigUtil.class);
+    m_snapshotFile = m_configUtil.isConfigSnapshotWriterEnabled() ? new ConfigSnapshotFile(
+        ConfigSnapshotFile.assembleSnapshotFile(m_configUtil, namespace)) : null;
+    m_snapshotHeartbeatFuture = m_snapshotFile == null ? null : scheduleSnapshotHeartbeat();
     this.setLocalCacheDir(findLocalCacheDir(), false);
+    if (upstream != null && m_configUtil.isOfflineFirstStartupEnabled()
+        && this.tryServeLocalCacheFirst(upstream)) {
+      return;
+    }
     this.setUpstreamRepository(upstream);
     this.trySync();
   }
 
+  /**
+   * Serve the local cache file without waiting for the upstream, which is synced in background
+   * once the first change listener is registered, so that the fresh config is never missed by it.
+   *
+   * @return false if there is no local cache file to serve
+   */
+  private boolean tryServeLocalCacheFirst(ConfigRepository upstream) {
+    try {
+      m_fileProperties = this.loadFromLocalCacheFile(m_baseDir, m_namespace);
+    } catch (Throwable ex) {
+      logger.debug("No local cache to serve for namespace {}, will wait for the upstream, reason: {}",
+          m_namespace, ExceptionUtil.getDetailMessage(ex));
+      return false;
+    }
+    m_sourceType = ConfigSourceType.LOCAL;
+    m_upstream = upstream;
+    upstream.addChangeListener(this);
+    m_upstreamSyncPending.set(true);
+    return true;
+  }
+
+  private ScheduledFuture<?> scheduleSnapshotHeartbeat() {
+    long heartbeatInterval = Math.max(1, m_configUtil.getConfigSnapshotStaleTimeInMills() / 3);
+    return s_snapshotHeartbeatService.scheduleWithFixedDelay(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          m_snapshotFile.heartbeat();
+        } catch (Throwable ex) {
+          Tracer.logError(ex);
+        }
+      }
+    }, heartbeatInterval, heartbeatInterval, TimeUnit.MILLISECONDS);
+  }
+
+  @Override
+  public void addChangeListener(RepositoryChangeListener listener) {
+    super.addChangeListener(listener);
+    if (m_upstreamSyncPending.compareAndSet(true, false)) {
+      this.syncWithUpstreamInBackground();
+    }
+  }
+
+  private void syncWithUpstreamInBackground() {
+    final ConfigRepository upstream = m_upstream;
+    //synced in the same bounded pool as the background syncs of the remote repositories
+    Future<?> future = RemoteConfigRepository.getSyncExecutorService().submit(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          Properties upstreamConfig = upstream.getConfig();
+          if (upstreamConfig.equals(m_fileProperties)) {
+            //the local cache is up to date
+            m_sourceType = upstream.getSourceType();
+          } else {
+            onRepositoryChange(m_namespace, upstreamConfig);
+          }
+        } catch (Throwable ex) {
+          Tracer.logError(ex);
+          logger.warn(
+              "Sync config from upstream repository {} failed, will serve the local cache until it is recovered, reason: {}",
+              upstream.getClass(), ExceptionUtil.getDetailMessage(ex));
+        }
+      }
+    });
+
+    long waitInMills = m_configUtil.getOfflineFirstStartupWaitInMills();
+    if (waitInMills <= 0) {
+      return;
+    }
+    try {
+      future.get(waitInMills, TimeUnit.MILLISECONDS);
+    } catch (TimeoutException ex) {
+      logger.info("Fresh config of namespace {} is not loaded in {} ms, continue with the local cache",
+          m_namespace, waitInMills);
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    } catch (ExecutionException ex) {
+      //never happens, the failure is handled in the task
+    }
+  }
+
   void setLocalCacheDir(File baseDir, boolean syncImmediately) {
     m_baseDir = baseDir;
     this.checkLocalConfigCacheDir(m_baseDir);
@@ -112,6 +217,21 @@ public class LocalFileConfigRepository extends AbstractConfigRepository
     return m_sourceType;
   }
 
+  @Override
+  void close() {
+    ApolloInjector.getInstance(ConfigMetrics.class)
+        .remove(m_namespace, ConfigMetrics.LOCAL_CACHE_FALLBACKS);
+    if (m_snapshotHeartbeatFuture != null) {
+      //the readers fall back to the config service once the snapshot is stale
+      m_snapshotHeartbeatFuture.cancel(false);
+    }
+    ConfigRepository upstream = m_upstream;
+    if (upstream != null) {
+      upstream.removeChangeListener(this);
+      closeRepository(upstream);
+    }
+  }
+
   @Override
   public void onRepositoryChange(String namespace, Properties newProperties) {
     if (newProperties.equals(m_fileProperties)) {
@@ -138,6 +258,10 @@ public class LocalFileConfigRepository extends AbstractConfigRepository
       transaction.addData("Basedir", m_baseDir.getAbsolutePath());
       m_fileProperties = this.loadFromLocalCacheFile(m_baseDir, m_namespace);
       m_sourceType = ConfigSourceType.LOCAL;
+      if (m_upstream != null) {
+        ApolloInjector.getInstance(ConfigMetrics.class)
+            .counter(m_namespace, ConfigMetrics.LOCAL_CACHE_FALLBACKS).increment();
+      }
       transaction.setStatus(Transaction.SUCCESS);
     } catch (Throwable ex) {
       Tracer.logEvent("ApolloConfigException", ExceptionUtil.getDetailMessage(ex));
@@ -178,12 +302,28 @@ public class LocalFileConfigRepository extends AbstractConfigRepository
     }
     this.m_fileProperties = newProperties;
     persistLocalCacheFile(m_baseDir, m_namespace);
+    publishSnapshot(newProperties, sourceType);
+  }
+
+  private void publishSnapshot(Properties properties, ConfigSourceType sourceType) {
+    if (m_snapshotFile == null) {
+      return;
+    }
+    try {
+      m_snapshotFile.write(properties, sourceType);
+    } catch (Throwable ex) {
+      Tracer.logError(ex);
+      logger.warn("Publish config snapshot {} failed, reason: {}",
+          m_snapshotFile.getFile().getAbsolutePath(), ExceptionUtil.getDetailMessage(ex));
+    }
   }
 
   private Properties loadFromLocalCacheFile(File baseDir, String namespace) throws IOException {
     Preconditions.checkNotNull(baseDir, "Basedir cannot be null");
 
     File file = assembleLocalCacheFile(baseDir, namespace);
+    //make sure the latest properties scheduled are persisted
+    s_cacheWriter.flush(file);
     Properties properties = null;
 
     if (file.isFile() && file.canRead()) {
@@ -219,34 +359,8 @@ public class LocalFileConfigRepository extends AbstractConfigRepository
     if (baseDir == null) {
       return;
     }
-    File file = assembleLocalCacheFile(baseDir, namespace);
-
-    OutputStream out = null;
-
-    Transaction transaction = Tracer.newTransaction("Apollo.ConfigService", "persistLocalConfigFile");
-    transaction.addData("LocalConfigFile", file.getAbsolutePath());
-    try {
-      out = new FileOutputStream(file);
-      m_fileProperties.store(out, "Persisted by DefaultConfig");
-      transaction.setStatus(Transaction.SUCCESS);
-    } catch (IOException ex) {
-      ApolloConfigException exception =
-          new ApolloConfigException(
-              String.format("Persist local cache file %s failed", file.getAbsolutePath()), ex);
-      Tracer.logError(exception);
-      transaction.setStatus(exception);
-      logger.warn("Persist local cache file {} failed, reason: {}.", file.getAbsolutePath(),
-          ExceptionUtil.getDetailMessage(ex));
-    } finally {
-      if (out != null) {
-        try {
-          out.close();
-        } catch (IOException ex) {
-          //ignore
-        }
-      }
-      transaction.complete();
-    }
+    //persisted in background, so that the change notification is not blocked by the disk
+    s_cacheWriter.write(assembleLocalCacheFile(baseDir, namespace), m_fileProperties);
   }
 
   private void checkLocalConfigCacheDir(File baseDir) {
@@ -3,7 +3,9 @@ package com.ctrip.framework.apollo.internals;
 import java.util.Properties;
 
 import com.ctrip.framework.apollo.ConfigFileChangeListener;
+import com.ctrip.framework.apollo.ConfigService;
 import com.ctrip.framework.apollo.PropertiesCompatibleConfigFile;
+import com.ctrip.framework.apollo.core.enums.ConfigFileFormat;
 import com.ctrip.framework.apollo.enums.ConfigSourceType;
 import com.ctrip.framework.apollo.model.ConfigFileChangeEvent;
 import com.google.common.base.Preconditions;
@@ -49,6 +51,19 @@ public class PropertiesCompatibleFileConfigRepository extends AbstractConfigRepo
     return configFile.getSourceType();
   }
 
+  @Override
+  void close() {
+    configFile.removeChangeListener(this);
+    //the config file is acquired from the config service on creation, so release it as well
+    ConfigFileFormat format = configFile.getConfigFileFormat();
+    String namespace = configFile.getNamespace();
+    String extension = "." + format.getValue();
+    if (namespace.toLowerCase().endsWith(extension)) {
+      namespace = namespace.substring(0, namespace.length() - extension.length());
+    }
+    ConfigService.releaseConfigFile(namespace, format);
+  }
+
   @Override
   public void onChange(ConfigFileChangeEvent changeEvent) {
     this.trySync();
@@ -12,6 +12,10 @@ import com.ctrip.framework.apollo.core.signature.Signature;
 import com.ctrip.framework.apollo.core.utils.ApolloThreadFactory;
 import com.ctrip.framework.apollo.core.utils.StringUtils;
 import com.ctrip.framework.apollo.exceptions.ApolloConfigException;
+import com.ctrip.framework.apollo.exceptions.ApolloConfigStatusCodeException;
+import com.ctrip.framework.apollo.monitor.ConfigMetrics;
+import com.ctrip.framework.apollo.monitor.Counter;
+import com.ctrip.framework.apollo.monitor.Histogram;
 import com.ctrip.framework.apollo.tracer.Tracer;
 import com.ctrip.framework.apollo.tracer.spi.Transaction;
 import com.ctrip.framework.apollo.util.ConfigUtil;
@@ -34,6 +38,7 @@ import com.google.gson.Gson;
 import java.lang.reflect.Type;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Random;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutorService;
@@ -52,8 +57,13 @@ public class RemoteConfigLongPollService {
   private static final Joiner.MapJoiner MAP_JOINER = Joiner.on("&").withKeyValueSeparator("=");
   private static final Escaper queryParamEscaper = UrlEscapers.urlFormParameterEscaper();
   private static final long INIT_NOTIFICATION_ID = ConfigConsts.NOTIFICATION_ID_PLACEHOLDER;
-  //90 seconds, should be longer than server side's long polling timeout, which is now 60 seconds
-  private static final int LONG_POLLING_READ_TIMEOUT = 90 * 1000;
+  //90 seconds, should be longer than server side's long polling timeout, which is 60 seconds by default
+  //used until the config service advertises its long polling timeout
+  private static final int DEFAULT_LONG_POLLING_READ_TIMEOUT = 90 * 1000;
+  //30 seconds, the extra time waited beyond the advertised long polling timeout
+  private static final int LONG_POLLING_READ_TIMEOUT_MARGIN = 30 * 1000;
+  //10 minutes, guard against unreasonable advertised values
+  private static final int MAX_LONG_POLLING_READ_TIMEOUT = 10 * 60 * 1000;
   private final ExecutorService m_longPollingService;
   private final AtomicBoolean m_longPollingStopped;
   private SchedulePolicy m_longPollFailSchedulePolicyInSecond;
@@ -63,10 +73,17 @@ public class RemoteConfigLongPollService {
   private final ConcurrentMap<String, Long> m_notifications;
   private final Map<String, ApolloNotificationMessages> m_remoteNotificationMessages;//namespaceName -> watchedKey -> notificationId
   private Type m_responseType;
+  private volatile int m_longPollingReadTimeout;
+  //config service homepage url -> long polling session, only accessed by the long polling thread
+  private final Map<String, LongPollSession> m_longPollSessions;
   private static final Gson GSON = new Gson();
   private ConfigUtil m_configUtil;
   private HttpUtil m_httpUtil;
   private ConfigServiceLocator m_serviceLocator;
+  private ConfigServiceSelector m_serviceSelector;
+  private Histogram m_longPollLatency;
+  private Counter m_longPollFailures;
+  private Counter m_longPollNotifications;
 
   /**
    * Constructor.
@@ -83,15 +100,26 @@ public class RemoteConfigLongPollService {
     m_remoteNotificationMessages = Maps.newConcurrentMap();
     m_responseType = new TypeToken<List<ApolloConfigNotification>>() {
     }.getType();
+    m_longPollingReadTimeout = DEFAULT_LONG_POLLING_READ_TIMEOUT;
+    m_longPollSessions = Maps.newHashMap();
     m_configUtil = ApolloInjector.getInstance(ConfigUtil.class);
     m_httpUtil = ApolloInjector.getInstance(HttpUtil.class);
     m_serviceLocator = ApolloInjector.getInstance(ConfigServiceLocator.class);
+    m_serviceSelector = ApolloInjector.getInstance(ConfigServiceSelector.class);
     m_longPollRateLimiter = RateLimiter.create(m_configUtil.getLongPollQPS());
+    ConfigMetrics metrics = ApolloInjector.getInstance(ConfigMetrics.class);
+    m_longPollLatency = metrics.histogram(ConfigMetrics.GLOBAL, ConfigMetrics.LONG_POLL_LATENCY);
+    m_longPollFailures = metrics.counter(ConfigMetrics.GLOBAL, ConfigMetrics.LONG_POLL_FAILURES);
+    m_longPollNotifications = metrics.counter(ConfigMetrics.GLOBAL,
+        ConfigMetrics.LONG_POLL_NOTIFICATIONS);
   }
 
   public boolean submit(String namespace, RemoteConfigRepository remoteConfigRepository) {
-    boolean added = m_longPollNamespaces.put(namespace, remoteConfigRepository);
-    m_notifications.putIfAbsent(namespace, INIT_NOTIFICATION_ID);
+    boolean added;
+    synchronized (m_longPollNamespaces) {
+      added = m_longPollNamespaces.put(namespace, remoteConfigRepository);
+      m_notifications.putIfAbsent(namespace, INIT_NOTIFICATION_ID);
+    }
     if (!m_longPollStarted.get()) {
       startLongPolling();
     }
@@ -132,6 +160,20 @@ public class RemoteConfigLongPollService {
     }
   }
 
+  /**
+   * Stop notifying the repository, the namespace is not polled any more once no repository of it
+   * is left
+   */
+  void remove(String namespace, RemoteConfigRepository remoteConfigRepository) {
+    synchronized (m_longPollNamespaces) {
+      m_longPollNamespaces.remove(namespace, remoteConfigRepository);
+      if (!m_longPollNamespaces.containsKey(namespace)) {
+        m_notifications.remove(namespace);
+        m_remoteNotificationMessages.remove(namespace);
+      }
+    }
+  }
+
   void stopLongPollingRefresh() {
     this.m_longPollingStopped.compareAndSet(false, true);
   }
@@ -147,22 +189,40 @@ public class RemoteConfigLongPollService {
         } catch (InterruptedException e) {
         }
       }
+      if (m_notifications.isEmpty()) {
+        //all the namespaces are released, wait for new ones
+        try {
+          TimeUnit.SECONDS.sleep(1);
+        } catch (InterruptedException e) {
+        }
+        continue;
+      }
       Transaction transaction = Tracer.newTransaction("Apollo.ConfigService", "pollNotification");
       String url = null;
+      LongPollSession session = null;
       try {
         if (lastServiceDto == null) {
-          List<ServiceDTO> configServices = getConfigServices();
-          lastServiceDto = configServices.get(random.nextInt(configServices.size()));
+          lastServiceDto = m_serviceSelector.selectForLongPoll(getConfigServices());
         }
 
-        url =
-            assembleLongPollRefreshUrl(lastServiceDto.getHomepageUrl(), appId, cluster, dataCenter,
-                m_notifications);
+        //sessions are kept by each config service
+        String homepageUrl = lastServiceDto.getHomepageUrl();
+        Map<String, Long> notifications = Maps.newHashMap(m_notifications);
+        session = m_longPollSessions.get(homepageUrl);
+        if (session != null && notifications.keySet().equals(session.notifications.keySet())) {
+          url = assembleLongPollSessionUrl(homepageUrl, appId, session.token, notifications,
+              session.notifications);
+        } else {
+          //register all the namespaces again, e.g. new namespaces are submitted
+          session = null;
+          m_longPollSessions.remove(homepageUrl);
+          url = assembleLongPollRefreshUrl(homepageUrl, appId, cluster, dataCenter, notifications);
+        }
 
         logger.debug("Long polling from {}", url);
 
         HttpRequest request = new HttpRequest(url);
-        request.setReadTimeout(LONG_POLLING_READ_TIMEOUT);
+        request.setReadTimeout(m_longPollingReadTimeout);
         if (!StringUtils.isBlank(secret)) {
           Map<String, String> headers = Signature.buildHttpHeaders(url, appId, secret);
           request.setHeaders(headers);
@@ -170,18 +230,24 @@ public class RemoteConfigLongPollService {
 
         transaction.addData("Url", url);
 
+        long start = System.currentTimeMillis();
         final HttpResponse<List<ApolloConfigNotification>> response =
             m_httpUtil.doGet(request, m_responseType);
+        m_longPollLatency.record(System.currentTimeMillis() - start);
+        m_serviceSelector.onLongPollSuccess(lastServiceDto);
 
         logger.debug("Long polling response: {}, url: {}", response.getStatusCode(), url);
+        updateLongPollingReadTimeout(response);
+        updateLongPollSession(homepageUrl, response, notifications);
         if (response.getStatusCode() == 200 && response.getBody() != null) {
           updateNotifications(response.getBody());
           updateRemoteNotifications(response.getBody());
+          m_longPollNotifications.add(response.getBody().size());
           transaction.addData("Result", response.getBody().toString());
           notify(lastServiceDto, response.getBody());
         }
 
-        //try to load balance
+        //try to load balance, the next one is selected by the latency and error rate
         if (response.getStatusCode() == 304 && random.nextBoolean()) {
           lastServiceDto = null;
         }
@@ -190,7 +256,22 @@ public class RemoteConfigLongPollService {
         transaction.addData("StatusCode", response.getStatusCode());
         transaction.setStatus(Transaction.SUCCESS);
       } catch (Throwable ex) {
+        if (lastServiceDto != null) {
+          m_longPollSessions.remove(lastServiceDto.getHomepageUrl());
+        }
+        if (session != null && isLongPollSessionExpired(ex)) {
+          //register all the namespaces again right away
+          Tracer.logEvent("Apollo.LongPoll.SessionExpired", appId);
+          transaction.setStatus(Transaction.SUCCESS);
+          continue;
+        }
+        m_longPollFailures.increment();
+        if (lastServiceDto != null) {
+          m_serviceSelector.onLongPollFailure(lastServiceDto);
+        }
         lastServiceDto = null;
+        //the next config service may be configured differently
+        m_longPollingReadTimeout = DEFAULT_LONG_POLLING_READ_TIMEOUT;
         Tracer.logEvent("ApolloConfigException", ExceptionUtil.getDetailMessage(ex));
         transaction.setStatus(ex);
         long sleepTimeInSecond = m_longPollFailSchedulePolicyInSecond.fail();
@@ -208,6 +289,55 @@ public class RemoteConfigLongPollService {
     }
   }
 
+  /**
+   * The config service advertises the longest time it may hold the next long polling request, so the
+   * read timeout could follow the server side's long polling timeout instead of being hard coded
+   */
+  void updateLongPollingReadTimeout(HttpResponse<?> response) {
+    String advertisedTimeout = response.getHeader(ConfigConsts.LONG_POLLING_TIMEOUT_HEADER);
+    if (Strings.isNullOrEmpty(advertisedTimeout)) {
+      //old config services don't advertise it
+      m_longPollingReadTimeout = DEFAULT_LONG_POLLING_READ_TIMEOUT;
+      return;
+    }
+    try {
+      long timeout = Long.parseLong(advertisedTimeout.trim());
+      if (timeout <= 0) {
+        m_longPollingReadTimeout = DEFAULT_LONG_POLLING_READ_TIMEOUT;
+        return;
+      }
+      m_longPollingReadTimeout =
+          (int) Math.min(MAX_LONG_POLLING_READ_TIMEOUT, timeout + LONG_POLLING_READ_TIMEOUT_MARGIN);
+    } catch (NumberFormatException ex) {
+      logger.warn("Invalid long polling timeout advertised: {}", advertisedTimeout);
+      m_longPollingReadTimeout = DEFAULT_LONG_POLLING_READ_TIMEOUT;
+    }
+  }
+
+  int getLongPollingReadTimeout() {
+    return m_longPollingReadTimeout;
+  }
+
+  /**
+   * The config service returns a session token if the namespaces are registered, so the following long
+   * polling requests only need to carry the token and the changed notification ids
+   */
+  private void updateLongPollSession(String homepageUrl, HttpResponse<?> response,
+                                     Map<String, Long> notifications) {
+    String token = response.getHeader(ConfigConsts.LONG_POLLING_SESSION_HEADER);
+    if (Strings.isNullOrEmpty(token)) {
+      //old config services don't support long polling sessions
+      m_longPollSessions.remove(homepageUrl);
+      return;
+    }
+    m_longPollSessions.put(homepageUrl, new LongPollSession(token, notifications));
+  }
+
+  private boolean isLongPollSessionExpired(Throwable ex) {
+    return ex instanceof ApolloConfigStatusCodeException
+        && ((ApolloConfigStatusCodeException) ex).getStatusCode() == 410;
+  }
+
   private void notify(ServiceDTO lastServiceDto, List<ApolloConfigNotification> notifications) {
     if (notifications == null || notifications.isEmpty()) {
       return;
@@ -238,15 +368,12 @@ public class RemoteConfigLongPollService {
         continue;
       }
       String namespaceName = notification.getNamespaceName();
-      if (m_notifications.containsKey(namespaceName)) {
-        m_notifications.put(namespaceName, notification.getNotificationId());
-      }
+      //replaced only if still polled, as the namespace might be removed meanwhile
+      m_notifications.replace(namespaceName, notification.getNotificationId());
       //since .properties are filtered out by default, so we need to check if there is notification with .properties suffix
       String namespaceNameWithPropertiesSuffix =
           String.format("%s.%s", namespaceName, ConfigFileFormat.Properties.getValue());
-      if (m_notifications.containsKey(namespaceNameWithPropertiesSuffix)) {
-        m_notifications.put(namespaceNameWithPropertiesSuffix, notification.getNotificationId());
-      }
+      m_notifications.replace(namespaceNameWithPropertiesSuffix, notification.getNotificationId());
     }
   }
 
@@ -291,6 +418,9 @@ public class RemoteConfigLongPollService {
       queryParams.put("ip", queryParamEscaper.escape(localIp));
     }
 
+    //ask the config service to keep the registered namespaces as a session
+    queryParams.put("session", "true");
+
     String params = MAP_JOINER.join(queryParams);
     if (!uri.endsWith("/")) {
       uri += "/";
@@ -299,6 +429,33 @@ public class RemoteConfigLongPollService {
     return uri + "notifications/v2?" + params;
   }
 
+  String assembleLongPollSessionUrl(String uri, String appId, String token,
+                                    Map<String, Long> notificationsMap,
+                                    Map<String, Long> sessionNotificationsMap) {
+    Map<String, String> queryParams = Maps.newHashMap();
+    queryParams.put("appId", queryParamEscaper.escape(appId));
+    queryParams.put("session", queryParamEscaper.escape(token));
+
+    //only the notification ids changed since the session knows
+    Map<String, Long> changedNotifications = Maps.newHashMap();
+    for (Map.Entry<String, Long> entry : notificationsMap.entrySet()) {
+      if (!Objects.equals(entry.getValue(), sessionNotificationsMap.get(entry.getKey()))) {
+        changedNotifications.put(entry.getKey(), entry.getValue());
+      }
+    }
+    if (!changedNotifications.isEmpty()) {
+      queryParams.put("notifications",
+          queryParamEscaper.escape(assembleNotifications(changedNotifications)));
+    }
+
+    String params = MAP_JOINER.join(queryParams);
+    if (!uri.endsWith("/")) {
+      uri += "/";
+    }
+
+    return uri + "notifications/v2/session?" + params;
+  }
+
   String assembleNotifications(Map<String, Long> notificationsMap) {
     List<ApolloConfigNotification> notifications = Lists.newArrayList();
     for (Map.Entry<String, Long> entry : notificationsMap.entrySet()) {
@@ -316,4 +473,15 @@ public class RemoteConfigLongPollService {
 
     return services;
   }
+
+  private static class LongPollSession {
+    private final String token;
+    //the notifications the config service already knows in this session
+    private final Map<String, Long> notifications;
+
+    LongPollSession(String token, Map<String, Long> notifications) {
+      this.token = token;
+      this.notifications = notifications;
+    }
+  }
 }
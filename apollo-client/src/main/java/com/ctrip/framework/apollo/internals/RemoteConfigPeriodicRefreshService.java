@@ -0,0 +1,238 @@
+package com.ctrip.framework.apollo.internals;
+
+import com.ctrip.framework.apollo.Apollo;
+import com.ctrip.framework.apollo.build.ApolloInjector;
+import com.ctrip.framework.apollo.core.dto.ServiceDTO;
+import com.ctrip.framework.apollo.core.signature.Signature;
+import com.ctrip.framework.apollo.core.utils.ApolloThreadFactory;
+import com.ctrip.framework.apollo.core.utils.StringUtils;
+import com.ctrip.framework.apollo.exceptions.ApolloConfigException;
+import com.ctrip.framework.apollo.tracer.Tracer;
+import com.ctrip.framework.apollo.tracer.spi.Transaction;
+import com.ctrip.framework.apollo.util.ConfigUtil;
+import com.ctrip.framework.apollo.util.ExceptionUtil;
+import com.ctrip.framework.apollo.util.http.HttpRequest;
+import com.ctrip.framework.apollo.util.http.HttpResponse;
+import com.ctrip.framework.apollo.util.http.HttpUtil;
+import com.google.common.base.Joiner;
+import com.google.common.base.Strings;
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Multimap;
+import com.google.common.collect.Multimaps;
+import com.google.common.escape.Escaper;
+import com.google.common.net.UrlEscapers;
+import com.google.common.reflect.TypeToken;
+import com.google.gson.Gson;
+import java.lang.reflect.Type;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Refreshes the remote config repositories periodically with one request for all the namespaces.
+ *
+ * <p>The release keys of all the namespaces are posted to the config service to verify at once, and
+ * only the namespaces changed are loaded then. If the verification fails, another config service is
+ * tried, and if it fails too, e.g. the config services are too old to support it, all the
+ * namespaces are loaded one by one as before.</p>
+ */
+public class RemoteConfigPeriodicRefreshService {
+  private static final Logger logger = LoggerFactory.getLogger(RemoteConfigPeriodicRefreshService.class);
+  private static final Joiner.MapJoiner MAP_JOINER = Joiner.on("&").withKeyValueSeparator("=");
+  private static final Escaper pathEscaper = UrlEscapers.urlPathSegmentEscaper();
+  private static final Escaper queryParamEscaper = UrlEscapers.urlFormParameterEscaper();
+  private static final Gson GSON = new Gson();
+  private static final int MAX_VERIFY_ATTEMPTS = 2;
+  private final ScheduledExecutorService m_executorService;
+  private final AtomicBoolean m_refreshStarted;
+  private final Multimap<String, RemoteConfigRepository> m_namespaces;
+  private final Type m_responseType;
+  private final ConfigUtil m_configUtil;
+  private final HttpUtil m_httpUtil;
+  private final ConfigServiceLocator m_serviceLocator;
+  private final ConfigServiceSelector m_serviceSelector;
+
+  /**
+   * Constructor.
+   */
+  public RemoteConfigPeriodicRefreshService() {
+    m_executorService = Executors.newScheduledThreadPool(1,
+        ApolloThreadFactory.create("RemoteConfigPeriodicRefreshService", true));
+    m_refreshStarted = new AtomicBoolean(false);
+    m_namespaces =
+        Multimaps.synchronizedSetMultimap(HashMultimap.<String, RemoteConfigRepository>create());
+    m_responseType = new TypeToken<List<String>>() {
+    }.getType();
+    m_configUtil = ApolloInjector.getInstance(ConfigUtil.class);
+    m_httpUtil = ApolloInjector.getInstance(HttpUtil.class);
+    m_serviceLocator = ApolloInjector.getInstance(ConfigServiceLocator.class);
+    m_serviceSelector = ApolloInjector.getInstance(ConfigServiceSelector.class);
+  }
+
+  public boolean submit(String namespace, RemoteConfigRepository remoteConfigRepository) {
+    boolean added = m_namespaces.put(namespace, remoteConfigRepository);
+    if (!m_refreshStarted.get()) {
+      schedulePeriodicRefresh();
+    }
+    return added;
+  }
+
+  /**
+   * Stop refreshing the repository
+   */
+  void remove(String namespace, RemoteConfigRepository remoteConfigRepository) {
+    m_namespaces.remove(namespace, remoteConfigRepository);
+  }
+
+  private void schedulePeriodicRefresh() {
+    if (!m_refreshStarted.compareAndSet(false, true)) {
+      //already started
+      return;
+    }
+    logger.debug("Schedule batch periodic refresh with interval: {} {}",
+        m_configUtil.getRefreshInterval(), m_configUtil.getRefreshIntervalTimeUnit());
+    m_executorService.scheduleAtFixedRate(
+        new Runnable() {
+          @Override
+          public void run() {
+            refresh();
+            Tracer.logEvent("Apollo.Client.Version", Apollo.VERSION);
+          }
+        }, m_configUtil.getRefreshInterval(), m_configUtil.getRefreshInterval(),
+        m_configUtil.getRefreshIntervalTimeUnit());
+  }
+
+  void refresh() {
+    Map<String, String> releaseKeys = Maps.newHashMap();
+    List<RemoteConfigRepository> toBeSynced = Lists.newArrayList();
+    Multimap<String, RemoteConfigRepository> namespaces;
+    synchronized (m_namespaces) {
+      namespaces = HashMultimap.create(m_namespaces);
+    }
+    for (Map.Entry<String, RemoteConfigRepository> entry : namespaces.entries()) {
+      String namespace = entry.getKey();
+      String releaseKey = entry.getValue().getReleaseKey();
+      if (releaseKey == null
+          || (releaseKeys.containsKey(namespace) && !releaseKey.equals(releaseKeys.get(namespace)))) {
+        //not loaded yet or not agreed with others of the same namespace, so just load it
+        toBeSynced.add(entry.getValue());
+        continue;
+      }
+      releaseKeys.put(namespace, releaseKey);
+    }
+
+    if (!releaseKeys.isEmpty()) {
+      try {
+        for (String staleNamespace : findStaleNamespaces(releaseKeys)) {
+          Collection<RemoteConfigRepository> repositories = namespaces.get(staleNamespace);
+          for (RemoteConfigRepository repository : repositories) {
+            if (!toBeSynced.contains(repository)) {
+              toBeSynced.add(repository);
+            }
+          }
+        }
+      } catch (Throwable ex) {
+        logger.warn("Verify release keys failed, will refresh the namespaces one by one, reason: {}",
+            ExceptionUtil.getDetailMessage(ex));
+        toBeSynced = Lists.newArrayList(namespaces.values());
+      }
+    }
+
+    for (RemoteConfigRepository repository : toBeSynced) {
+      Tracer.logEvent("Apollo.ConfigService",
+          String.format("periodicRefresh: %s", repository.getNamespace()));
+      repository.scheduleSync();
+    }
+  }
+
+  private List<String> findStaleNamespaces(Map<String, String> releaseKeys) {
+    List<ServiceDTO> configServices = m_serviceSelector.order(getConfigServices());
+    String body = GSON.toJson(releaseKeys);
+    Throwable exception = null;
+
+    for (int i = 0; i < MAX_VERIFY_ATTEMPTS && i < configServices.size(); i++) {
+      try {
+        return findStaleNamespaces(configServices.get(i), body);
+      } catch (Throwable ex) {
+        exception = ex;
+      }
+    }
+
+    throw new ApolloConfigException("Verify release keys failed", exception);
+  }
+
+  private List<String> findStaleNamespaces(ServiceDTO configService, String body) {
+    String appId = m_configUtil.getAppId();
+    String cluster = m_configUtil.getCluster();
+    String dataCenter = m_configUtil.getDataCenter();
+    String secret = m_configUtil.getAccessKeySecret();
+
+    String url = assembleVerifyReleaseKeysUrl(configService.getHomepageUrl(), appId, cluster,
+        dataCenter);
+    logger.debug("Verifying release keys from {}", url);
+    HttpRequest request = new HttpRequest(url);
+    request.setBody(body);
+    if (!StringUtils.isBlank(secret)) {
+      Map<String, String> headers = Signature.buildHttpHeaders(url, appId, secret);
+      request.setHeaders(headers);
+    }
+
+    Transaction transaction = Tracer.newTransaction("Apollo.ConfigService", "verifyReleaseKeys");
+    transaction.addData("Url", url);
+    try {
+      long start = System.currentTimeMillis();
+      HttpResponse<List<String>> response = m_httpUtil.doPost(request, m_responseType);
+      m_serviceSelector.onSuccess(configService, System.currentTimeMillis() - start);
+      List<String> staleNamespaces = response.getBody();
+      transaction.addData("Result", staleNamespaces);
+      transaction.setStatus(Transaction.SUCCESS);
+      return staleNamespaces == null ? Lists.<String>newArrayList() : staleNamespaces;
+    } catch (Throwable ex) {
+      m_serviceSelector.onFailure(configService);
+      transaction.setStatus(ex);
+      throw ex;
+    } finally {
+      transaction.complete();
+    }
+  }
+
+  String assembleVerifyReleaseKeysUrl(String uri, String appId, String cluster, String dataCenter) {
+    String path = "configs/%s/%s";
+    List<String> pathParams =
+        Lists.newArrayList(pathEscaper.escape(appId), pathEscaper.escape(cluster));
+    Map<String, String> queryParams = Maps.newHashMap();
+    if (!Strings.isNullOrEmpty(dataCenter)) {
+      queryParams.put("dataCenter", queryParamEscaper.escape(dataCenter));
+    }
+    String localIp = m_configUtil.getLocalIp();
+    if (!Strings.isNullOrEmpty(localIp)) {
+      queryParams.put("ip", queryParamEscaper.escape(localIp));
+    }
+
+    String pathExpanded = String.format(path, pathParams.toArray());
+    if (!uri.endsWith("/")) {
+      uri += "/";
+    }
+
+    if (queryParams.isEmpty()) {
+      return uri + pathExpanded;
+    }
+    return uri + pathExpanded + "?" + MAP_JOINER.join(queryParams);
+  }
+
+  private List<ServiceDTO> getConfigServices() {
+    List<ServiceDTO> services = m_serviceLocator.getConfigServices();
+    if (services.size() == 0) {
+      throw new ApolloConfigException("No available config service");
+    }
+
+    return services;
+  }
+}
@@ -14,6 +14,9 @@ import com.ctrip.framework.apollo.core.utils.StringUtils;
 import com.ctrip.framework.apollo.enums.ConfigSourceType;
 import com.ctrip.framework.apollo.exceptions.ApolloConfigException;
 import com.ctrip.framework.apollo.exceptions.ApolloConfigStatusCodeException;
+import com.ctrip.framework.apollo.monitor.ConfigMetrics;
+import com.ctrip.framework.apollo.monitor.Counter;
+import com.ctrip.framework.apollo.monitor.Histogram;
 import com.ctrip.framework.apollo.tracer.Tracer;
 import com.ctrip.framework.apollo.tracer.spi.Transaction;
 import com.ctrip.framework.apollo.util.ConfigUtil;
@@ -29,14 +32,20 @@ import com.google.common.escape.Escaper;
 import com.google.common.net.UrlEscapers;
 import com.google.common.util.concurrent.RateLimiter;
 import com.google.gson.Gson;
-import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -52,22 +61,53 @@ public class RemoteConfigRepository extends AbstractConfigRepository {
   private static final Escaper queryParamEscaper = UrlEscapers.urlFormParameterEscaper();
 
   private final ConfigServiceLocator m_serviceLocator;
+  private final ConfigServiceSelector m_serviceSelector;
+  private final ConfigLoadHedger m_loadHedger;
   private final HttpUtil m_httpUtil;
   private final ConfigUtil m_configUtil;
   private final RemoteConfigLongPollService remoteConfigLongPollService;
+  private final RemoteConfigPeriodicRefreshService m_periodicRefreshService;
   private volatile AtomicReference<ApolloConfig> m_configCache;
   private final String m_namespace;
   private final static ScheduledExecutorService m_executorService;
+  //syncs the namespaces in parallel, while the syncs of the same namespace are serialized
+  private final static ThreadPoolExecutor m_syncExecutorService;
   private final AtomicReference<ServiceDTO> m_longPollServiceDto;
   private final AtomicReference<ApolloNotificationMessages> m_remoteMessages;
   private final RateLimiter m_loadConfigRateLimiter;
   private final AtomicBoolean m_configNeedForceRefresh;
   private final SchedulePolicy m_loadConfigFailSchedulePolicy;
+  private final Histogram m_loadConfigLatency;
+  private final Counter m_loadConfigFailures;
+  private volatile ScheduledFuture<?> m_periodicRefreshFuture;
+  private volatile boolean m_closed;
+  //the syncs requested but not started yet, all of them are coalesced into one sync
+  private final AtomicInteger m_pendingSyncs = new AtomicInteger();
+  private final Runnable m_syncTask = new Runnable() {
+    @Override
+    public void run() {
+      int requested = m_pendingSyncs.get();
+      if (m_closed) {
+        return;
+      }
+      trySync();
+      if (m_pendingSyncs.addAndGet(-requested) > 0) {
+        //requested again during the sync, so sync once more
+        m_syncExecutorService.execute(this);
+      }
+    }
+  };
   private static final Gson GSON = new Gson();
 
   static {
     m_executorService = Executors.newScheduledThreadPool(1,
         ApolloThreadFactory.create("RemoteConfigRepository", true));
+    int syncThreads = Math.max(1,
+        ApolloInjector.getInstance(ConfigUtil.class).getConfigSyncThreads());
+    m_syncExecutorService = new ThreadPoolExecutor(syncThreads, syncThreads, 60, TimeUnit.SECONDS,
+        new LinkedBlockingQueue<Runnable>(),
+        ApolloThreadFactory.create("RemoteConfigRepository-Sync", true));
+    m_syncExecutorService.allowCoreThreadTimeOut(true);
   }
 
   /**
@@ -81,14 +121,24 @@ public class RemoteConfigRepository extends AbstractConfigRepository {
     m_configUtil = ApolloInjector.getInstance(ConfigUtil.class);
     m_httpUtil = ApolloInjector.getInstance(HttpUtil.class);
     m_serviceLocator = ApolloInjector.getInstance(ConfigServiceLocator.class);
+    m_serviceSelector = ApolloInjector.getInstance(ConfigServiceSelector.class);
+    m_loadHedger = ApolloInjector.getInstance(ConfigLoadHedger.class);
     remoteConfigLongPollService = ApolloInjector.getInstance(RemoteConfigLongPollService.class);
+    m_periodicRefreshService = ApolloInjector.getInstance(RemoteConfigPeriodicRefreshService.class);
     m_longPollServiceDto = new AtomicReference<>();
     m_remoteMessages = new AtomicReference<>();
     m_loadConfigRateLimiter = RateLimiter.create(m_configUtil.getLoadConfigQPS());
     m_configNeedForceRefresh = new AtomicBoolean(true);
     m_loadConfigFailSchedulePolicy = new ExponentialSchedulePolicy(m_configUtil.getOnErrorRetryInterval(),
         m_configUtil.getOnErrorRetryInterval() * 8);
-    this.trySync();
+    ConfigMetrics metrics = ApolloInjector.getInstance(ConfigMetrics.class);
+    m_loadConfigLatency = metrics.histogram(m_namespace, ConfigMetrics.CONFIG_LOAD_LATENCY);
+    m_loadConfigFailures = metrics.counter(m_namespace, ConfigMetrics.CONFIG_LOAD_FAILURES);
+    if (!m_configUtil.isOfflineFirstStartupEnabled()) {
+      this.trySync();
+    }
+    //otherwise the first sync is deferred to the first getConfig call, which is made in background
+    //by the local file config repository after serving the local cache
     this.schedulePeriodicRefresh();
     this.scheduleLongPollingRefresh();
   }
@@ -111,16 +161,33 @@ public class RemoteConfigRepository extends AbstractConfigRepository {
     return ConfigSourceType.REMOTE;
   }
 
+  String getNamespace() {
+    return m_namespace;
+  }
+
+  /**
+   * @return the release key of the config loaded, or null if not loaded yet
+   */
+  String getReleaseKey() {
+    ApolloConfig config = m_configCache.get();
+    return config == null ? null : config.getReleaseKey();
+  }
+
   private void schedulePeriodicRefresh() {
+    if (m_configUtil.isBatchPeriodicRefreshEnabled()) {
+      //refreshed together with the other namespaces
+      m_periodicRefreshService.submit(m_namespace, this);
+      return;
+    }
     logger.debug("Schedule periodic refresh with interval: {} {}",
         m_configUtil.getRefreshInterval(), m_configUtil.getRefreshIntervalTimeUnit());
-    m_executorService.scheduleAtFixedRate(
+    m_periodicRefreshFuture = m_executorService.scheduleAtFixedRate(
         new Runnable() {
           @Override
           public void run() {
             Tracer.logEvent("Apollo.ConfigService", String.format("periodicRefresh: %s", m_namespace));
             logger.debug("refresh config for namespace: {}", m_namespace);
-            trySync();
+            scheduleSync();
             Tracer.logEvent("Apollo.Client.Version", Apollo.VERSION);
           }
         }, m_configUtil.getRefreshInterval(), m_configUtil.getRefreshInterval(),
@@ -180,17 +247,19 @@ public class RemoteConfigRepository extends AbstractConfigRepository {
     Throwable exception = null;
 
     List<ServiceDTO> configServices = getConfigServices();
+    boolean hedgingEnabled = m_configUtil.isHedgedConfigLoadEnabled() && configServices.size() > 1;
     String url = null;
     retryLoopLabel:
     for (int i = 0; i < maxRetries; i++) {
-      List<ServiceDTO> randomConfigServices = Lists.newLinkedList(configServices);
-      Collections.shuffle(randomConfigServices);
+      //the config service selected by latency and error rate comes first
+      List<ServiceDTO> orderedConfigServices = m_serviceSelector.order(configServices);
       //Access the server which notifies the client first
       if (m_longPollServiceDto.get() != null) {
-        randomConfigServices.add(0, m_longPollServiceDto.getAndSet(null));
+        orderedConfigServices.add(0, m_longPollServiceDto.getAndSet(null));
       }
 
-      for (ServiceDTO configService : randomConfigServices) {
+      for (int j = 0; j < orderedConfigServices.size(); j++) {
+        ServiceDTO configService = orderedConfigServices.get(j);
         if (onErrorSleepTime > 0) {
           logger.warn(
               "Load config failed, will retry in {} {}. appId: {}, cluster: {}, namespaces: {}",
@@ -203,22 +272,29 @@ public class RemoteConfigRepository extends AbstractConfigRepository {
           }
         }
 
-        url = assembleQueryConfigUrl(configService.getHomepageUrl(), appId, cluster, m_namespace,
-                dataCenter, m_remoteMessages.get(), m_configCache.get());
+        HttpRequest request = assembleQueryConfigRequest(configService, appId, cluster, dataCenter,
+            secret);
+        url = request.getUrl();
 
         logger.debug("Loading config from {}", url);
 
-        HttpRequest request = new HttpRequest(url);
-        if (!StringUtils.isBlank(secret)) {
-          Map<String, String> headers = Signature.buildHttpHeaders(url, appId, secret);
-          request.setHeaders(headers);
+        //only the first request of each load is hedged, the retries are not urgent
+        ServiceDTO hedgedConfigService = null;
+        if (hedgingEnabled && i == 0 && j == 0) {
+          hedgedConfigService = findHedgedConfigService(orderedConfigServices, configService);
         }
 
         Transaction transaction = Tracer.newTransaction("Apollo.ConfigService", "queryConfig");
         transaction.addData("Url", url);
         try {
 
-          HttpResponse<ApolloConfig> response = m_httpUtil.doGet(request, ApolloConfig.class);
+          HttpResponse<ApolloConfig> response;
+          if (hedgedConfigService == null) {
+            response = queryConfig(configService, request);
+          } else {
+            response = queryConfigWithHedging(configService, request, hedgedConfigService,
+                assembleQueryConfigRequest(hedgedConfigService, appId, cluster, dataCenter, secret));
+          }
           m_configNeedForceRefresh.set(false);
           m_loadConfigFailSchedulePolicy.success();
 
@@ -247,6 +323,7 @@ public class RemoteConfigRepository extends AbstractConfigRepository {
                 message);
           }
           Tracer.logEvent("ApolloConfigException", ExceptionUtil.getDetailMessage(statusCodeException));
+          m_loadConfigFailures.increment();
           transaction.setStatus(statusCodeException);
           exception = statusCodeException;
           if(ex.getStatusCode() == 404) {
@@ -254,6 +331,7 @@ public class RemoteConfigRepository extends AbstractConfigRepository {
           }
         } catch (Throwable ex) {
           Tracer.logEvent("ApolloConfigException", ExceptionUtil.getDetailMessage(ex));
+          m_loadConfigFailures.increment();
           transaction.setStatus(ex);
           exception = ex;
         } finally {
@@ -272,6 +350,66 @@ public class RemoteConfigRepository extends AbstractConfigRepository {
     throw new ApolloConfigException(message, exception);
   }
 
+  private HttpRequest assembleQueryConfigRequest(ServiceDTO configService, String appId,
+      String cluster, String dataCenter, String secret) {
+    String url = assembleQueryConfigUrl(configService.getHomepageUrl(), appId, cluster, m_namespace,
+        dataCenter, m_remoteMessages.get(), m_configCache.get());
+    HttpRequest request = new HttpRequest(url);
+    if (!StringUtils.isBlank(secret)) {
+      Map<String, String> headers = Signature.buildHttpHeaders(url, appId, secret);
+      request.setHeaders(headers);
+    }
+    return request;
+  }
+
+  private HttpResponse<ApolloConfig> queryConfig(ServiceDTO configService, HttpRequest request) {
+    long start = System.currentTimeMillis();
+    try {
+      HttpResponse<ApolloConfig> response = m_httpUtil.doGet(request, ApolloConfig.class);
+      long latency = System.currentTimeMillis() - start;
+      m_loadConfigLatency.record(latency);
+      m_serviceSelector.onSuccess(configService, latency);
+      return response;
+    } catch (ApolloConfigStatusCodeException ex) {
+      if (ex.getStatusCode() == 404) {
+        //answered by a healthy config service
+        m_serviceSelector.onSuccess(configService, System.currentTimeMillis() - start);
+      } else {
+        m_serviceSelector.onFailure(configService);
+      }
+      throw ex;
+    } catch (RuntimeException | Error ex) {
+      m_serviceSelector.onFailure(configService);
+      throw ex;
+    }
+  }
+
+  private HttpResponse<ApolloConfig> queryConfigWithHedging(final ServiceDTO configService,
+      final HttpRequest request, final ServiceDTO hedgedConfigService,
+      final HttpRequest hedgedRequest) {
+    return m_loadHedger.execute(new Callable<HttpResponse<ApolloConfig>>() {
+      @Override
+      public HttpResponse<ApolloConfig> call() {
+        return queryConfig(configService, request);
+      }
+    }, new Callable<HttpResponse<ApolloConfig>>() {
+      @Override
+      public HttpResponse<ApolloConfig> call() {
+        return queryConfig(hedgedConfigService, hedgedRequest);
+      }
+    }, m_loadConfigLatency, m_configUtil.getReadTimeout());
+  }
+
+  private ServiceDTO findHedgedConfigService(List<ServiceDTO> configServices,
+      ServiceDTO configService) {
+    for (ServiceDTO candidate : configServices) {
+      if (!Objects.equals(candidate.getHomepageUrl(), configService.getHomepageUrl())) {
+        return candidate;
+      }
+    }
+    return null;
+  }
+
   String assembleQueryConfigUrl(String uri, String appId, String cluster, String namespace,
                                 String dataCenter, ApolloNotificationMessages remoteMessages, ApolloConfig previousConfig) {
 
@@ -316,13 +454,40 @@ public class RemoteConfigRepository extends AbstractConfigRepository {
   public void onLongPollNotified(ServiceDTO longPollNotifiedServiceDto, ApolloNotificationMessages remoteMessages) {
     m_longPollServiceDto.set(longPollNotifiedServiceDto);
     m_remoteMessages.set(remoteMessages);
-    m_executorService.submit(new Runnable() {
-      @Override
-      public void run() {
-        m_configNeedForceRefresh.set(true);
-        trySync();
-      }
-    });
+    m_configNeedForceRefresh.set(true);
+    scheduleSync();
+  }
+
+  /**
+   * @return the pool where the namespaces are synced in background, shared by the other
+   * repositories which sync from the config service in background
+   */
+  static ExecutorService getSyncExecutorService() {
+    return m_syncExecutorService;
+  }
+
+  /**
+   * Sync in background, the syncs requested before the pending one starts are coalesced
+   */
+  void scheduleSync() {
+    if (m_pendingSyncs.getAndIncrement() == 0) {
+      m_syncExecutorService.execute(m_syncTask);
+    }
+  }
+
+  @Override
+  void close() {
+    m_closed = true;
+    ScheduledFuture<?> periodicRefreshFuture = m_periodicRefreshFuture;
+    if (periodicRefreshFuture != null) {
+      periodicRefreshFuture.cancel(false);
+    }
+    m_periodicRefreshService.remove(m_namespace, this);
+    remoteConfigLongPollService.remove(m_namespace, this);
+    ConfigMetrics metrics = ApolloInjector.getInstance(ConfigMetrics.class);
+    metrics.remove(m_namespace, ConfigMetrics.CONFIG_LOAD_LATENCY);
+    metrics.remove(m_namespace, ConfigMetrics.CONFIG_LOAD_FAILURES);
+    logger.debug("Stopped syncing config for namespace: {}", m_namespace);
   }
 
   private List<ServiceDTO> getConfigServices() {
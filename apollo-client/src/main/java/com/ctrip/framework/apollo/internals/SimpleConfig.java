@@ -34,6 +34,7 @@ public class SimpleConfig extends AbstractConfig implements RepositoryChangeList
    * @param configRepository the config repository for this config instance
    */
   public SimpleConfig(String namespace, ConfigRepository configRepository) {
+    super(namespace);
     m_namespace = namespace;
     m_configRepository = configRepository;
     this.initialize();
@@ -105,4 +106,11 @@ public class SimpleConfig extends AbstractConfig implements RepositoryChangeList
     m_configProperties = newConfigProperties;
     m_sourceType = sourceType;
   }
+
+  @Override
+  void close() {
+    m_configRepository.removeChangeListener(this);
+    AbstractConfigRepository.closeRepository(m_configRepository);
+    super.close();
+  }
 }
@@ -0,0 +1,145 @@
+package com.ctrip.framework.apollo.monitor;
+
+import com.ctrip.framework.apollo.build.ApolloInjector;
+import com.ctrip.framework.apollo.util.ConfigUtil;
+import com.ctrip.framework.foundation.internals.ServiceBootstrap;
+import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.collect.Maps;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.concurrent.ConcurrentMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * In-process registry of the client metrics, which are kept per namespace and exported by the
+ * {@link ConfigMetricsExporter}s.
+ */
+public class ConfigMetrics {
+  private static final Logger logger = LoggerFactory.getLogger(ConfigMetrics.class);
+
+  /**
+   * The namespace of the metrics not belonging to any namespace, e.g. the long polling ones
+   */
+  public static final String GLOBAL = "";
+
+  /**
+   * Latency in milliseconds of loading the config from the config service
+   */
+  public static final String CONFIG_LOAD_LATENCY = "configLoadLatency";
+  public static final String CONFIG_LOAD_FAILURES = "configLoadFailures";
+  /**
+   * Times the config is loaded from the local cache file as the upstream is not available
+   */
+  public static final String LOCAL_CACHE_FALLBACKS = "localCacheFallbacks";
+  public static final String CONFIG_SOURCE_TYPE = "configSourceType";
+  public static final String TYPED_VALUE_CACHE_HITS = "typedValueCacheHits";
+  public static final String TYPED_VALUE_CACHE_MISSES = "typedValueCacheMisses";
+  /**
+   * Execution time in milliseconds of the config change listeners
+   */
+  public static final String LISTENER_LATENCY = "listenerLatency";
+  public static final String LISTENER_FAILURES = "listenerFailures";
+  public static final String LONG_POLL_LATENCY = "longPollLatency";
+  public static final String LONG_POLL_FAILURES = "longPollFailures";
+  public static final String LONG_POLL_NOTIFICATIONS = "longPollNotifications";
+  public static final String PENDING_CHANGE_EVENTS = "pendingChangeEvents";
+
+  //namespace -> metric name -> metric
+  private final ConcurrentMap<String, ConcurrentMap<String, Metric>> m_metrics =
+      Maps.newConcurrentMap();
+
+  public ConfigMetrics() {
+    ConfigUtil configUtil = ApolloInjector.getInstance(ConfigUtil.class);
+    if (configUtil.isClientMonitorEnabled()) {
+      initExporters();
+    }
+  }
+
+  public Counter counter(String namespace, String name) {
+    Metric metric = metricsOf(namespace).get(name);
+    if (metric == null) {
+      Counter counter = new Counter();
+      metric = metricsOf(namespace).putIfAbsent(name, counter);
+      if (metric == null) {
+        return counter;
+      }
+    }
+    return (Counter) metric;
+  }
+
+  public Histogram histogram(String namespace, String name) {
+    Metric metric = metricsOf(namespace).get(name);
+    if (metric == null) {
+      Histogram histogram = new Histogram();
+      metric = metricsOf(namespace).putIfAbsent(name, histogram);
+      if (metric == null) {
+        return histogram;
+      }
+    }
+    return (Histogram) metric;
+  }
+
+  /**
+   * Register the gauge, the previous one with the same name is replaced
+   */
+  public void gauge(String namespace, String name, Gauge<?> gauge) {
+    metricsOf(namespace).put(name, gauge);
+  }
+
+  /**
+   * Remove the metric, e.g. when the config of the namespace is released
+   */
+  public void remove(String namespace, String name) {
+    ConcurrentMap<String, Metric> metrics = m_metrics.get(namespace);
+    if (metrics != null) {
+      metrics.remove(name);
+    }
+  }
+
+  /**
+   * @return the current metrics, namespace -> metric name -> metric
+   */
+  public SortedMap<String, SortedMap<String, Metric>> getMetrics() {
+    ImmutableSortedMap.Builder<String, SortedMap<String, Metric>> result =
+        ImmutableSortedMap.naturalOrder();
+    for (Map.Entry<String, ConcurrentMap<String, Metric>> entry : m_metrics.entrySet()) {
+      //all the metrics of the namespace are removed
+      if (entry.getValue().isEmpty()) {
+        continue;
+      }
+      result.put(entry.getKey(), ImmutableSortedMap.copyOf(entry.getValue()));
+    }
+    return result.build();
+  }
+
+  private ConcurrentMap<String, Metric> metricsOf(String namespace) {
+    ConcurrentMap<String, Metric> metrics = m_metrics.get(namespace);
+    if (metrics == null) {
+      ConcurrentMap<String, Metric> newMetrics = Maps.newConcurrentMap();
+      metrics = m_metrics.putIfAbsent(namespace, newMetrics);
+      if (metrics == null) {
+        metrics = newMetrics;
+      }
+    }
+    return metrics;
+  }
+
+  private void initExporters() {
+    List<ConfigMetricsExporter> exporters;
+    try {
+      exporters = ServiceBootstrap.loadAllOrdered(ConfigMetricsExporter.class);
+    } catch (Throwable ex) {
+      logger.warn("Load config metrics exporters failed", ex);
+      return;
+    }
+    for (ConfigMetricsExporter exporter : exporters) {
+      try {
+        exporter.init(this);
+      } catch (Throwable ex) {
+        logger.warn("Init config metrics exporter {} failed", exporter.getClass().getName(), ex);
+      }
+    }
+  }
+}
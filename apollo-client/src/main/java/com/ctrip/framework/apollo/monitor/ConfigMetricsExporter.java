@@ -0,0 +1,15 @@
+package com.ctrip.framework.apollo.monitor;
+
+import com.ctrip.framework.apollo.core.spi.Ordered;
+
+/**
+ * Exports the client metrics to a monitoring system, the implementations are loaded via
+ * {@link java.util.ServiceLoader} and all of them are initialized.
+ */
+public interface ConfigMetricsExporter extends Ordered {
+
+  /**
+   * Start exporting the metrics, the metrics registered afterwards should be exported as well
+   */
+  void init(ConfigMetrics metrics);
+}
@@ -0,0 +1,39 @@
+package com.ctrip.framework.apollo.monitor;
+
+import com.google.common.collect.ImmutableMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A monotonically increasing counter, which is striped by thread so that hot paths like config
+ * reads do not contend on one atomic value.
+ */
+public class Counter implements Metric {
+  private static final int STRIPES = 16;
+  //keep the stripes on different cache lines
+  private static final int PADDING = 8;
+
+  private final AtomicLongArray m_stripes = new AtomicLongArray(STRIPES * PADDING);
+
+  public void increment() {
+    add(1);
+  }
+
+  public void add(long delta) {
+    int stripe = (int) (Thread.currentThread().getId() & (STRIPES - 1));
+    m_stripes.addAndGet(stripe * PADDING, delta);
+  }
+
+  public long getCount() {
+    long count = 0;
+    for (int i = 0; i < STRIPES; i++) {
+      count += m_stripes.get(i * PADDING);
+    }
+    return count;
+  }
+
+  @Override
+  public Map<String, Object> getValues() {
+    return ImmutableMap.<String, Object>of("count", getCount());
+  }
+}
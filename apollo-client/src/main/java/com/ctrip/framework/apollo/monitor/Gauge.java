@@ -0,0 +1,22 @@
+package com.ctrip.framework.apollo.monitor;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * A metric whose value is read on demand
+ *
+ * @param <T> the value type
+ */
+public abstract class Gauge<T> implements Metric {
+
+  /**
+   * @return the current value, or null if it is not available
+   */
+  public abstract T getValue();
+
+  @Override
+  public Map<String, Object> getValues() {
+    return Collections.<String, Object>singletonMap("value", getValue());
+  }
+}
@@ -0,0 +1,84 @@
+package com.ctrip.framework.apollo.monitor;
+
+import com.google.common.collect.ImmutableMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Distribution of non-negative values, e.g. latencies in milliseconds. The values are counted in
+ * power of two buckets, so recording is lock free and takes constant memory, while the percentiles
+ * are approximated by the upper bound of the bucket.
+ */
+public class Histogram implements Metric {
+  //bucket 0 counts 0, bucket i counts the values in [2^(i-1), 2^i)
+  private static final int BUCKETS = 40;
+
+  private final AtomicLongArray m_buckets = new AtomicLongArray(BUCKETS);
+  private final AtomicLong m_count = new AtomicLong();
+  private final AtomicLong m_sum = new AtomicLong();
+  private final AtomicLong m_max = new AtomicLong();
+
+  public void record(long value) {
+    if (value < 0) {
+      value = 0;
+    }
+    int bucket = Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(value));
+    m_buckets.incrementAndGet(bucket);
+    m_count.incrementAndGet();
+    m_sum.addAndGet(value);
+    long max = m_max.get();
+    while (value > max && !m_max.compareAndSet(max, value)) {
+      max = m_max.get();
+    }
+  }
+
+  public long getCount() {
+    return m_count.get();
+  }
+
+  public double getMean() {
+    long count = m_count.get();
+    return count == 0 ? 0 : (double) m_sum.get() / count;
+  }
+
+  public long getMax() {
+    return m_max.get();
+  }
+
+  /**
+   * @param percentile in (0, 100]
+   * @return the approximate value at the percentile, or 0 if nothing is recorded
+   */
+  public long getPercentile(double percentile) {
+    long count = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      count += m_buckets.get(i);
+    }
+    if (count == 0) {
+      return 0;
+    }
+    long rank = (long) Math.ceil(count * percentile / 100);
+    long seen = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      seen += m_buckets.get(i);
+      if (seen >= rank) {
+        long upperBound = i == 0 ? 0 : (1L << i) - 1;
+        return Math.min(upperBound, getMax());
+      }
+    }
+    return getMax();
+  }
+
+  @Override
+  public Map<String, Object> getValues() {
+    return ImmutableMap.<String, Object>builder()
+        .put("count", getCount())
+        .put("mean", getMean())
+        .put("max", getMax())
+        .put("p50", getPercentile(50))
+        .put("p90", getPercentile(90))
+        .put("p99", getPercentile(99))
+        .build();
+  }
+}
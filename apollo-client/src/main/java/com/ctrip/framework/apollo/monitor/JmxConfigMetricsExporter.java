@@ -0,0 +1,135 @@
+package com.ctrip.framework.apollo.monitor;
+
+import com.google.common.collect.Lists;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanConstructorInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanNotificationInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.ObjectName;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Exports the client metrics as the attributes of the MBean
+ * {@value #OBJECT_NAME}, the attribute names are like
+ * {@code namespace:metricName.valueName}, e.g. {@code application:configLoadLatency.p99}, and the
+ * metrics not belonging to any namespace have no namespace part.
+ */
+public class JmxConfigMetricsExporter implements ConfigMetricsExporter {
+  private static final Logger logger = LoggerFactory.getLogger(JmxConfigMetricsExporter.class);
+  public static final String OBJECT_NAME = "com.ctrip.framework.apollo:type=ConfigMetrics";
+
+  @Override
+  public void init(ConfigMetrics metrics) {
+    try {
+      ManagementFactory.getPlatformMBeanServer()
+          .registerMBean(new ConfigMetricsMBean(metrics), new ObjectName(OBJECT_NAME));
+    } catch (InstanceAlreadyExistsException ex) {
+      //e.g. apollo client is loaded by more than one class loader
+      logger.info("Config metrics MBean {} is already registered", OBJECT_NAME);
+    } catch (Throwable ex) {
+      logger.warn("Register config metrics MBean {} failed", OBJECT_NAME, ex);
+    }
+  }
+
+  @Override
+  public int getOrder() {
+    return 0;
+  }
+
+  static String attributeName(String namespace, String metricName, String valueName) {
+    String name = metricName + "." + valueName;
+    return ConfigMetrics.GLOBAL.equals(namespace) ? name : namespace + ":" + name;
+  }
+
+  static class ConfigMetricsMBean implements DynamicMBean {
+    private final ConfigMetrics m_metrics;
+
+    ConfigMetricsMBean(ConfigMetrics metrics) {
+      m_metrics = metrics;
+    }
+
+    @Override
+    public Object getAttribute(String attribute) throws AttributeNotFoundException {
+      for (Map.Entry<String, SortedMap<String, Metric>> namespaceMetrics : m_metrics.getMetrics()
+          .entrySet()) {
+        for (Map.Entry<String, Metric> metric : namespaceMetrics.getValue().entrySet()) {
+          for (Map.Entry<String, Object> value : metric.getValue().getValues().entrySet()) {
+            if (attributeName(namespaceMetrics.getKey(), metric.getKey(), value.getKey())
+                .equals(attribute)) {
+              return toOpenValue(value.getValue());
+            }
+          }
+        }
+      }
+      throw new AttributeNotFoundException(attribute);
+    }
+
+    @Override
+    public void setAttribute(Attribute attribute) {
+      throw new UnsupportedOperationException("Config metrics are read only");
+    }
+
+    @Override
+    public AttributeList getAttributes(String[] attributes) {
+      AttributeList result = new AttributeList();
+      for (String attribute : attributes) {
+        try {
+          result.add(new Attribute(attribute, getAttribute(attribute)));
+        } catch (AttributeNotFoundException ex) {
+          //skip the missing ones as required by DynamicMBean
+        }
+      }
+      return result;
+    }
+
+    @Override
+    public AttributeList setAttributes(AttributeList attributes) {
+      return new AttributeList();
+    }
+
+    @Override
+    public Object invoke(String actionName, Object[] params, String[] signature) {
+      throw new UnsupportedOperationException("Config metrics have no operations");
+    }
+
+    @Override
+    public MBeanInfo getMBeanInfo() {
+      //built on demand, so the metrics registered later are visible
+      List<MBeanAttributeInfo> attributes = Lists.newArrayList();
+      for (Map.Entry<String, SortedMap<String, Metric>> namespaceMetrics : m_metrics.getMetrics()
+          .entrySet()) {
+        for (Map.Entry<String, Metric> metric : namespaceMetrics.getValue().entrySet()) {
+          for (Map.Entry<String, Object> value : metric.getValue().getValues().entrySet()) {
+            Object openValue = toOpenValue(value.getValue());
+            String type = openValue == null ? String.class.getName() : openValue.getClass().getName();
+            attributes.add(new MBeanAttributeInfo(
+                attributeName(namespaceMetrics.getKey(), metric.getKey(), value.getKey()), type,
+                metric.getKey(), true, false, false));
+          }
+        }
+      }
+      return new MBeanInfo(getClass().getName(), "Apollo client metrics",
+          attributes.toArray(new MBeanAttributeInfo[0]), new MBeanConstructorInfo[0],
+          new MBeanOperationInfo[0], new MBeanNotificationInfo[0]);
+    }
+
+    private Object toOpenValue(Object value) {
+      if (value == null || value instanceof Number || value instanceof Boolean
+          || value instanceof String) {
+        return value;
+      }
+      return value.toString();
+    }
+  }
+}
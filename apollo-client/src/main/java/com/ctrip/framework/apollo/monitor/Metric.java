@@ -0,0 +1,14 @@
+package com.ctrip.framework.apollo.monitor;
+
+import java.util.Map;
+
+/**
+ * A client side metric, e.g. a counter, a gauge or a histogram
+ */
+public interface Metric {
+
+  /**
+   * @return the current values of this metric, keyed by the value name, e.g. count, mean, p99
+   */
+  Map<String, Object> getValues();
+}
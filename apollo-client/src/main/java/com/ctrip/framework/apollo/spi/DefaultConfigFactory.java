@@ -11,7 +11,9 @@ import com.ctrip.framework.apollo.Config;
 import com.ctrip.framework.apollo.ConfigFile;
 import com.ctrip.framework.apollo.build.ApolloInjector;
 import com.ctrip.framework.apollo.core.enums.ConfigFileFormat;
+import com.ctrip.framework.apollo.internals.ConfigAgentConfigRepository;
 import com.ctrip.framework.apollo.internals.ConfigRepository;
+import com.ctrip.framework.apollo.internals.ConfigSnapshotConfigRepository;
 import com.ctrip.framework.apollo.internals.DefaultConfig;
 import com.ctrip.framework.apollo.internals.JsonConfigFile;
 import com.ctrip.framework.apollo.internals.LocalFileConfigRepository;
@@ -70,9 +72,25 @@ public class DefaultConfigFactory implements ConfigFactory {
           namespace);
       return new LocalFileConfigRepository(namespace);
     }
+    if (m_configUtil.isConfigSnapshotReaderEnabled()) {
+      //the local cache is still kept, in case neither the snapshot nor the config service is available
+      return new LocalFileConfigRepository(namespace, createConfigSnapshotConfigRepository(namespace));
+    }
+    if (m_configUtil.isConfigAgentEnabled()) {
+      //the local cache is still kept, in case the config agent is not available
+      return new LocalFileConfigRepository(namespace, createConfigAgentConfigRepository(namespace));
+    }
     return new LocalFileConfigRepository(namespace, createRemoteConfigRepository(namespace));
   }
 
+  ConfigSnapshotConfigRepository createConfigSnapshotConfigRepository(String namespace) {
+    return new ConfigSnapshotConfigRepository(namespace);
+  }
+
+  ConfigAgentConfigRepository createConfigAgentConfigRepository(String namespace) {
+    return new ConfigAgentConfigRepository(namespace);
+  }
+
   RemoteConfigRepository createRemoteConfigRepository(String namespace) {
     return new RemoteConfigRepository(namespace);
   }
@@ -80,8 +98,9 @@ public class DefaultConfigFactory implements ConfigFactory {
   PropertiesCompatibleFileConfigRepository createPropertiesCompatibleFileConfigRepository(String namespace,
       ConfigFileFormat format) {
     String actualNamespaceName = trimNamespaceFormat(namespace, format);
+    //released when the repository is closed
     PropertiesCompatibleConfigFile configFile = (PropertiesCompatibleConfigFile) ConfigService
-        .getConfigFile(actualNamespaceName, format);
+        .acquireConfigFile(actualNamespaceName, format);
 
     return new PropertiesCompatibleFileConfigRepository(configFile);
   }
@@ -1,10 +1,11 @@
 package com.ctrip.framework.apollo.spring.boot;
 
 import com.ctrip.framework.apollo.Config;
-import com.ctrip.framework.apollo.ConfigService;
 import com.ctrip.framework.apollo.core.ConfigConsts;
 import com.ctrip.framework.apollo.spring.config.ConfigPropertySourceFactory;
 import com.ctrip.framework.apollo.spring.config.PropertySourcesConstants;
+import com.ctrip.framework.apollo.spring.util.ConfigPrefetchUtil;
+import com.ctrip.framework.apollo.spring.util.ConfigPrefetchUtil.PrefetchedConfigs;
 import com.ctrip.framework.apollo.spring.util.SpringInjector;
 import com.ctrip.framework.apollo.util.factory.PropertiesFactory;
 import com.google.common.base.Splitter;
@@ -99,9 +100,12 @@ public class ApolloApplicationContextInitializer implements
     logger.debug("Apollo bootstrap namespaces: {}", namespaces);
     List<String> namespaceList = NAMESPACE_SPLITTER.splitToList(namespaces);
 
+    //load the namespaces concurrently, the property sources are still added in order
+    PrefetchedConfigs prefetchedConfigs = ConfigPrefetchUtil.prefetchConfigs(namespaceList);
+
     CompositePropertySource composite = new CompositePropertySource(PropertySourcesConstants.APOLLO_BOOTSTRAP_PROPERTY_SOURCE_NAME);
     for (String namespace : namespaceList) {
-      Config config = ConfigService.getConfig(namespace);
+      Config config = prefetchedConfigs.getConfig(namespace);
 
       composite.addPropertySource(configPropertySourceFactory.getConfigPropertySource(namespace, config));
     }
@@ -2,14 +2,16 @@ package com.ctrip.framework.apollo.spring.config;
 
 import com.ctrip.framework.apollo.build.ApolloInjector;
 import com.ctrip.framework.apollo.spring.property.AutoUpdateConfigChangeListener;
+import com.ctrip.framework.apollo.spring.util.ConfigPrefetchUtil;
+import com.ctrip.framework.apollo.spring.util.ConfigPrefetchUtil.PrefetchedConfigs;
 import com.ctrip.framework.apollo.spring.util.SpringInjector;
 import com.ctrip.framework.apollo.util.ConfigUtil;
 import com.google.common.collect.ImmutableSortedSet;
 import com.google.common.collect.LinkedHashMultimap;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Multimap;
 
 import com.ctrip.framework.apollo.Config;
-import com.ctrip.framework.apollo.ConfigService;
 
 import com.google.common.collect.Sets;
 import java.util.List;
@@ -68,12 +70,20 @@ public class PropertySourcesProcessor implements BeanFactoryPostProcessor, Envir
 
     //sort by order asc
     ImmutableSortedSet<Integer> orders = ImmutableSortedSet.copyOf(NAMESPACE_NAMES.keySet());
+
+    //load the namespaces concurrently, the property sources are still added in order
+    List<String> namespaces = Lists.newArrayList();
+    for (Integer order : orders) {
+      namespaces.addAll(NAMESPACE_NAMES.get(order));
+    }
+    PrefetchedConfigs prefetchedConfigs = ConfigPrefetchUtil.prefetchConfigs(namespaces);
+
     Iterator<Integer> iterator = orders.iterator();
 
     while (iterator.hasNext()) {
       int order = iterator.next();
       for (String namespace : NAMESPACE_NAMES.get(order)) {
-        Config config = ConfigService.getConfig(namespace);
+        Config config = prefetchedConfigs.getConfig(namespace);
 
         composite.addPropertySource(configPropertySourceFactory.getConfigPropertySource(namespace, config));
       }
@@ -3,14 +3,18 @@ package com.ctrip.framework.apollo.spring.property;
 import com.ctrip.framework.apollo.ConfigChangeListener;
 import com.ctrip.framework.apollo.model.ConfigChangeEvent;
 import com.ctrip.framework.apollo.spring.util.SpringInjector;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import com.google.gson.Gson;
 import java.lang.reflect.Field;
 import java.lang.reflect.Type;
 import java.util.Collection;
+import java.util.Map;
 import java.util.Set;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.TypeConverter;
+import org.springframework.beans.factory.config.BeanExpressionContext;
 import org.springframework.beans.factory.config.ConfigurableBeanFactory;
 import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
 import org.springframework.core.env.Environment;
@@ -46,23 +50,47 @@ public class AutoUpdateConfigChangeListener implements ConfigChangeListener{
     if (CollectionUtils.isEmpty(keys)) {
       return;
     }
+    // 1. collect the relevant values grouped by bean, each value is updated once even if it
+    // refers to more than one changed key
+    Map<String, Set<SpringValue>> beanSpringValues = Maps.newLinkedHashMap();
     for (String key : keys) {
-      // 1. check whether the changed key is relevant
       Collection<SpringValue> targetValues = springValueRegistry.get(beanFactory, key);
       if (targetValues == null || targetValues.isEmpty()) {
         continue;
       }
-
-      // 2. update the value
       for (SpringValue val : targetValues) {
-        updateSpringValue(val);
+        Set<SpringValue> springValues = beanSpringValues.get(val.getBeanName());
+        if (springValues == null) {
+          springValues = Sets.newLinkedHashSet();
+          beanSpringValues.put(val.getBeanName(), springValues);
+        }
+        springValues.add(val);
+      }
+    }
+    if (beanSpringValues.isEmpty()) {
+      return;
+    }
+
+    // 2. update the values bean by bean, the same placeholder is only resolved once
+    Map<String, String> resolvedPlaceholders = Maps.newHashMap();
+    for (Map.Entry<String, Set<SpringValue>> entry : beanSpringValues.entrySet()) {
+      BeanExpressionContext expressionContext;
+      try {
+        expressionContext = placeholderHelper.createBeanExpressionContext(beanFactory, entry.getKey());
+      } catch (Throwable ex) {
+        logger.error("Auto update apollo changed value failed, beanName: {}", entry.getKey(), ex);
+        continue;
+      }
+      for (SpringValue val : entry.getValue()) {
+        updateSpringValue(val, resolvedPlaceholders, expressionContext);
       }
     }
   }
 
-  private void updateSpringValue(SpringValue springValue) {
+  private void updateSpringValue(SpringValue springValue, Map<String, String> resolvedPlaceholders,
+      BeanExpressionContext expressionContext) {
     try {
-      Object value = resolvePropertyValue(springValue);
+      Object value = resolvePropertyValue(springValue, resolvedPlaceholders, expressionContext);
       springValue.update(value);
 
       logger.info("Auto update apollo changed value successfully, new value: {}, {}", value,
@@ -76,10 +104,17 @@ public class AutoUpdateConfigChangeListener implements ConfigChangeListener{
    * Logic transplanted from DefaultListableBeanFactory
    * @see org.springframework.beans.factory.support.DefaultListableBeanFactory#doResolveDependency(org.springframework.beans.factory.config.DependencyDescriptor, java.lang.String, java.util.Set, org.springframework.beans.TypeConverter)
    */
-  private Object resolvePropertyValue(SpringValue springValue) {
+  private Object resolvePropertyValue(SpringValue springValue,
+      Map<String, String> resolvedPlaceholders, BeanExpressionContext expressionContext) {
+    String placeholder = springValue.getPlaceholder();
+    String strVal = resolvedPlaceholders.get(placeholder);
+    if (strVal == null) {
+      strVal = beanFactory.resolveEmbeddedValue(placeholder);
+      resolvedPlaceholders.put(placeholder, strVal);
+    }
     // value will never be null, as @Value and @ApolloJsonValue will not allow that
     Object value = placeholderHelper
-        .resolvePropertyValue(beanFactory, springValue.getBeanName(), springValue.getPlaceholder());
+        .evaluateBeanDefinitionString(beanFactory, strVal, expressionContext);
 
     if (springValue.isJson()) {
       value = parseJsonValue((String)value, springValue.getGenericType());
@@ -32,22 +32,34 @@ public class PlaceholderHelper {
     // resolve string value
     String strVal = beanFactory.resolveEmbeddedValue(placeholder);
 
-    BeanDefinition bd = (beanFactory.containsBean(beanName) ? beanFactory
-        .getMergedBeanDefinition(beanName) : null);
-
     // resolve expressions like "#{systemProperties.myProp}"
-    return evaluateBeanDefinitionString(beanFactory, strVal, bd);
+    return evaluateBeanDefinitionString(beanFactory, strVal,
+        createBeanExpressionContext(beanFactory, beanName));
   }
 
-  private Object evaluateBeanDefinitionString(ConfigurableBeanFactory beanFactory, String value,
-      BeanDefinition beanDefinition) {
+  /**
+   * Create the context to evaluate the expressions of the bean, which could be shared by the
+   * placeholders of the same bean
+   *
+   * @return null if the bean factory has no expression resolver
+   */
+  BeanExpressionContext createBeanExpressionContext(ConfigurableBeanFactory beanFactory,
+      String beanName) {
     if (beanFactory.getBeanExpressionResolver() == null) {
+      return null;
+    }
+    BeanDefinition bd = (beanFactory.containsBean(beanName) ? beanFactory
+        .getMergedBeanDefinition(beanName) : null);
+    Scope scope = (bd != null ? beanFactory.getRegisteredScope(bd.getScope()) : null);
+    return new BeanExpressionContext(beanFactory, scope);
+  }
+
+  Object evaluateBeanDefinitionString(ConfigurableBeanFactory beanFactory, String value,
+      BeanExpressionContext expressionContext) {
+    if (expressionContext == null || beanFactory.getBeanExpressionResolver() == null) {
       return value;
     }
-    Scope scope = (beanDefinition != null ? beanFactory
-        .getRegisteredScope(beanDefinition.getScope()) : null);
-    return beanFactory.getBeanExpressionResolver()
-        .evaluate(value, new BeanExpressionContext(beanFactory, scope));
+    return beanFactory.getBeanExpressionResolver().evaluate(value, expressionContext);
   }
 
   /**
@@ -116,6 +116,10 @@ public class SpringValue {
     return beanRef.get() != null;
   }
 
+  Object getTargetBean() {
+    return beanRef.get();
+  }
+
   @Override
   public String toString() {
     Object bean = beanRef.get();
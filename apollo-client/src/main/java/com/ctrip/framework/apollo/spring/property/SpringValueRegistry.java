@@ -1,77 +1,87 @@
 package com.ctrip.framework.apollo.spring.property;
 
-import com.ctrip.framework.apollo.core.utils.ApolloThreadFactory;
-import com.google.common.collect.LinkedListMultimap;
 import com.google.common.collect.Maps;
-import com.google.common.collect.Multimap;
+import com.google.common.collect.Sets;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
 import java.util.Collection;
-import java.util.Iterator;
-import java.util.Map;
-import java.util.Map.Entry;
-import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicBoolean;
-
-import com.google.common.collect.Multimaps;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
 import org.springframework.beans.factory.BeanFactory;
 
+/**
+ * Registry of the spring values, the values are purged once their target beans are garbage
+ * collected, which are tracked with weak references and a reference queue.
+ */
 public class SpringValueRegistry {
-  private static final long CLEAN_INTERVAL_IN_SECONDS = 5;
-  private final Map<BeanFactory, Multimap<String, SpringValue>> registry = Maps.newConcurrentMap();
-  private final AtomicBoolean initialized = new AtomicBoolean(false);
-  private final Object LOCK = new Object();
+  private final ConcurrentMap<BeanFactory, ConcurrentMap<String, Set<SpringValue>>> registry =
+      Maps.newConcurrentMap();
+  private final ReferenceQueue<Object> collectedBeans = new ReferenceQueue<>();
+  // keep the references reachable until they are enqueued
+  private final Set<SpringValueReference> references = Sets.newConcurrentHashSet();
 
   public void register(BeanFactory beanFactory, String key, SpringValue springValue) {
-    if (!registry.containsKey(beanFactory)) {
-      synchronized (LOCK) {
-        if (!registry.containsKey(beanFactory)) {
-          registry.put(beanFactory, Multimaps.synchronizedListMultimap(LinkedListMultimap.<String, SpringValue>create()));
-        }
-      }
+    purgeCollectedValues();
+
+    Object bean = springValue.getTargetBean();
+    if (bean == null) {
+      return;
     }
 
-    registry.get(beanFactory).put(key, springValue);
+    ConcurrentMap<String, Set<SpringValue>> beanFactorySpringValues = registry.get(beanFactory);
+    if (beanFactorySpringValues == null) {
+      ConcurrentMap<String, Set<SpringValue>> newSpringValues = Maps.newConcurrentMap();
+      beanFactorySpringValues = registry.putIfAbsent(beanFactory, newSpringValues);
+      if (beanFactorySpringValues == null) {
+        beanFactorySpringValues = newSpringValues;
+      }
+    }
 
-    // lazy initialize
-    if (initialized.compareAndSet(false, true)) {
-      initialize();
+    Set<SpringValue> springValues = beanFactorySpringValues.get(key);
+    if (springValues == null) {
+      Set<SpringValue> newSpringValues = Sets.newConcurrentHashSet();
+      springValues = beanFactorySpringValues.putIfAbsent(key, newSpringValues);
+      if (springValues == null) {
+        springValues = newSpringValues;
+      }
     }
+
+    springValues.add(springValue);
+    references.add(new SpringValueReference(bean, collectedBeans, springValues, springValue));
   }
 
+  /**
+   * @return a live view of the spring values of the key, or null if there is none
+   */
   public Collection<SpringValue> get(BeanFactory beanFactory, String key) {
-    Multimap<String, SpringValue> beanFactorySpringValues = registry.get(beanFactory);
+    purgeCollectedValues();
+
+    ConcurrentMap<String, Set<SpringValue>> beanFactorySpringValues = registry.get(beanFactory);
     if (beanFactorySpringValues == null) {
       return null;
     }
     return beanFactorySpringValues.get(key);
   }
 
-  private void initialize() {
-    Executors.newSingleThreadScheduledExecutor(ApolloThreadFactory.create("SpringValueRegistry", true)).scheduleAtFixedRate(
-        new Runnable() {
-          @Override
-          public void run() {
-            try {
-              scanAndClean();
-            } catch (Throwable ex) {
-              ex.printStackTrace();
-            }
-          }
-        }, CLEAN_INTERVAL_IN_SECONDS, CLEAN_INTERVAL_IN_SECONDS, TimeUnit.SECONDS);
+  private void purgeCollectedValues() {
+    Reference<?> reference;
+    while ((reference = collectedBeans.poll()) != null) {
+      SpringValueReference springValueReference = (SpringValueReference) reference;
+      springValueReference.springValues.remove(springValueReference.springValue);
+      references.remove(springValueReference);
+    }
   }
 
-  private void scanAndClean() {
-    Iterator<Multimap<String, SpringValue>> iterator = registry.values().iterator();
-    while (!Thread.currentThread().isInterrupted() && iterator.hasNext()) {
-      Multimap<String, SpringValue> springValues = iterator.next();
-      Iterator<Entry<String, SpringValue>> springValueIterator = springValues.entries().iterator();
-      while (springValueIterator.hasNext()) {
-        Entry<String, SpringValue> springValue = springValueIterator.next();
-        if (!springValue.getValue().isTargetBeanValid()) {
-          // clear unused spring values
-          springValueIterator.remove();
-        }
-      }
+  private static class SpringValueReference extends WeakReference<Object> {
+    private final Set<SpringValue> springValues;
+    private final SpringValue springValue;
+
+    SpringValueReference(Object bean, ReferenceQueue<Object> queue, Set<SpringValue> springValues,
+        SpringValue springValue) {
+      super(bean, queue);
+      this.springValues = springValues;
+      this.springValue = springValue;
     }
   }
 }
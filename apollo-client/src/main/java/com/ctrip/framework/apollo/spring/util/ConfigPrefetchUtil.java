@@ -0,0 +1,107 @@
+package com.ctrip.framework.apollo.spring.util;
+
+import com.ctrip.framework.apollo.Config;
+import com.ctrip.framework.apollo.ConfigService;
+import com.ctrip.framework.apollo.build.ApolloInjector;
+import com.ctrip.framework.apollo.core.utils.ApolloThreadFactory;
+import com.ctrip.framework.apollo.exceptions.ApolloConfigException;
+import com.ctrip.framework.apollo.util.ConfigUtil;
+import com.google.common.base.Throwables;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loads the namespaces declared for the spring startup concurrently, so that the property sources,
+ * which are still assembled one after another in the declared order, get the configs as soon as
+ * they are loaded.
+ */
+public class ConfigPrefetchUtil {
+  private static final long KEEP_ALIVE_TIME_IN_SECONDS = 60;
+  //shared by all the spring contexts, the threads exit when idle as it is only used on startup
+  private static volatile ThreadPoolExecutor s_executorService;
+
+  /**
+   * Start loading the configs of the namespaces concurrently
+   *
+   * @return the configs being loaded, which should be got in the declared order then
+   */
+  public static PrefetchedConfigs prefetchConfigs(Collection<String> namespaces) {
+    Set<String> distinctNamespaces = Sets.newLinkedHashSet(namespaces);
+    int parallelism =
+        ApolloInjector.getInstance(ConfigUtil.class).getNamespaceBootstrapParallelism();
+    if (parallelism <= 1 || distinctNamespaces.size() <= 1) {
+      return new PrefetchedConfigs(Collections.<String, Future<Config>>emptyMap());
+    }
+
+    ThreadPoolExecutor executorService = getExecutorService(parallelism);
+    Map<String, Future<Config>> futures = Maps.newHashMap();
+    for (final String namespace : distinctNamespaces) {
+      futures.put(namespace, executorService.submit(new Callable<Config>() {
+        @Override
+        public Config call() {
+          return ConfigService.getConfig(namespace);
+        }
+      }));
+    }
+    return new PrefetchedConfigs(futures);
+  }
+
+  private static ThreadPoolExecutor getExecutorService(int parallelism) {
+    if (s_executorService == null) {
+      synchronized (ConfigPrefetchUtil.class) {
+        if (s_executorService == null) {
+          ThreadPoolExecutor executorService = new ThreadPoolExecutor(parallelism, parallelism,
+              KEEP_ALIVE_TIME_IN_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+              ApolloThreadFactory.create("ConfigPrefetchUtil", true));
+          executorService.allowCoreThreadTimeOut(true);
+          s_executorService = executorService;
+        }
+      }
+    }
+    return s_executorService;
+  }
+
+  /**
+   * The outcomes of the prefetch, so that a namespace failed during the prefetch is not loaded again
+   */
+  public static class PrefetchedConfigs {
+    private final Map<String, Future<Config>> m_futures;
+
+    PrefetchedConfigs(Map<String, Future<Config>> futures) {
+      m_futures = futures;
+    }
+
+    /**
+     * Wait for the config of the namespace to be prefetched, or load it if it is not prefetched
+     *
+     * @throws RuntimeException the same exception as the prefetch of the namespace failed with
+     */
+    public Config getConfig(String namespace) {
+      Future<Config> future = m_futures.get(namespace);
+      if (future == null) {
+        return ConfigService.getConfig(namespace);
+      }
+      try {
+        return future.get();
+      } catch (ExecutionException ex) {
+        Throwables.throwIfUnchecked(ex.getCause());
+        throw new ApolloConfigException(
+            String.format("Load config for namespace %s failed", namespace), ex.getCause());
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+        throw new ApolloConfigException(
+            String.format("Interrupted while loading config for namespace %s", namespace), ex);
+      }
+    }
+  }
+}
@@ -40,6 +40,23 @@ public class ConfigUtil {
   private boolean autoUpdateInjectedSpringProperties = true;
   private final RateLimiter warnLogRateLimiter;
   private boolean propertiesOrdered = false;
+  private boolean legacyHttpTransport = false;
+  private int namespaceBootstrapParallelism = 8;
+  private boolean precomputedPropertyView = false;
+  private int configChangeListenerThreads = 8;
+  private boolean configChangeEventCoalescing = false;
+  private boolean clientMonitorEnabled = true;
+  private boolean hedgedConfigLoad = false;
+  private boolean offlineFirstStartup = false;
+  private long offlineFirstStartupWaitInMills = 0;
+  private boolean batchPeriodicRefresh = false;
+  private int configSyncThreads = 4;
+  private long configIdleEvictionDelayInMills = 0;
+  private int configAgentPort = 0;
+  private boolean configSnapshotWriter = false;
+  private boolean configSnapshotReader = false;
+  private long configSnapshotPollIntervalInMills = 1000;
+  private long configSnapshotStaleTimeInMills = 30 * 1000;
 
   public ConfigUtil() {
     warnLogRateLimiter = RateLimiter.create(0.017); // 1 warning log output per minute
@@ -52,6 +69,19 @@ public class ConfigUtil {
     initLongPollingInitialDelayInMills();
     initAutoUpdateInjectedSpringProperties();
     initPropertiesOrdered();
+    initLegacyHttpTransport();
+    initNamespaceBootstrapParallelism();
+    initPrecomputedPropertyView();
+    initConfigChangeListenerThreads();
+    initConfigChangeEventCoalescing();
+    initClientMonitorEnabled();
+    initHedgedConfigLoad();
+    initOfflineFirstStartup();
+    initBatchPeriodicRefresh();
+    initConfigSyncThreads();
+    initConfigIdleEvictionDelayInMills();
+    initConfigAgentPort();
+    initConfigSnapshot();
   }
 
   /**
@@ -339,4 +369,356 @@ public class ConfigUtil {
   public boolean isPropertiesOrderEnabled() {
     return propertiesOrdered;
   }
+
+  private void initLegacyHttpTransport() {
+    // 1. Get from System Property
+    String enableLegacyHttpTransport = System.getProperty("apollo.legacyHttpTransport");
+    if (Strings.isNullOrEmpty(enableLegacyHttpTransport)) {
+      // 2. Get from app.properties
+      enableLegacyHttpTransport = Foundation.app()
+          .getProperty("apollo.legacyHttpTransport", null);
+    }
+    if (!Strings.isNullOrEmpty(enableLegacyHttpTransport)) {
+      legacyHttpTransport = Boolean.parseBoolean(enableLegacyHttpTransport.trim());
+    }
+  }
+
+  /**
+   * @return whether to fall back to the original HttpURLConnection implementation instead of the
+   * {@link com.ctrip.framework.apollo.util.http.HttpTransport} loaded
+   */
+  public boolean isLegacyHttpTransportEnabled() {
+    return legacyHttpTransport;
+  }
+
+  private void initNamespaceBootstrapParallelism() {
+    // 1. Get from System Property
+    String customizedParallelism = System.getProperty("apollo.namespaceBootstrapParallelism");
+    if (Strings.isNullOrEmpty(customizedParallelism)) {
+      // 2. Get from app.properties
+      customizedParallelism = Foundation.app()
+          .getProperty("apollo.namespaceBootstrapParallelism", null);
+    }
+    if (!Strings.isNullOrEmpty(customizedParallelism)) {
+      try {
+        namespaceBootstrapParallelism = Integer.parseInt(customizedParallelism.trim());
+      } catch (Throwable ex) {
+        logger.error("Config for apollo.namespaceBootstrapParallelism is invalid: {}",
+            customizedParallelism);
+      }
+    }
+  }
+
+  /**
+   * @return how many namespaces could be loaded concurrently during the spring startup, 1 or less
+   * means loading them one after another
+   */
+  public int getNamespaceBootstrapParallelism() {
+    return namespaceBootstrapParallelism;
+  }
+
+  private void initPrecomputedPropertyView() {
+    // 1. Get from System Property
+    String enablePrecomputedPropertyView = System.getProperty("apollo.precomputedPropertyView");
+    if (Strings.isNullOrEmpty(enablePrecomputedPropertyView)) {
+      // 2. Get from app.properties
+      enablePrecomputedPropertyView = Foundation.app()
+          .getProperty("apollo.precomputedPropertyView", null);
+    }
+    if (!Strings.isNullOrEmpty(enablePrecomputedPropertyView)) {
+      precomputedPropertyView = Boolean.parseBoolean(enablePrecomputedPropertyView.trim());
+    }
+  }
+
+  /**
+   * @return whether the configs merge system properties, apollo configs, environment variables and
+   * classpath properties into one precomputed view, which is rebuilt when the configs change
+   */
+  public boolean isPrecomputedPropertyViewEnabled() {
+    return precomputedPropertyView;
+  }
+
+  private void initConfigChangeListenerThreads() {
+    String customizedThreads = System.getProperty("apollo.configChangeListenerThreads");
+    if (!Strings.isNullOrEmpty(customizedThreads)) {
+      try {
+        configChangeListenerThreads = Integer.parseInt(customizedThreads);
+      } catch (Throwable ex) {
+        logger.error("Config for apollo.configChangeListenerThreads is invalid: {}",
+            customizedThreads);
+      }
+    }
+  }
+
+  /**
+   * @return the max number of threads used to notify the config change listeners
+   */
+  public int getConfigChangeListenerThreads() {
+    return configChangeListenerThreads;
+  }
+
+  private void initConfigChangeEventCoalescing() {
+    // 1. Get from System Property
+    String enableCoalescing = System.getProperty("apollo.coalesceConfigChangeEvents");
+    if (Strings.isNullOrEmpty(enableCoalescing)) {
+      // 2. Get from app.properties
+      enableCoalescing = Foundation.app().getProperty("apollo.coalesceConfigChangeEvents", null);
+    }
+    if (!Strings.isNullOrEmpty(enableCoalescing)) {
+      configChangeEventCoalescing = Boolean.parseBoolean(enableCoalescing.trim());
+    }
+  }
+
+  /**
+   * @return whether the change events pending for the same listener are merged into one
+   */
+  public boolean isConfigChangeEventCoalescingEnabled() {
+    return configChangeEventCoalescing;
+  }
+
+  private void initClientMonitorEnabled() {
+    // 1. Get from System Property
+    String enableClientMonitor = System.getProperty("apollo.client.monitor.enabled");
+    if (Strings.isNullOrEmpty(enableClientMonitor)) {
+      // 2. Get from app.properties
+      enableClientMonitor = Foundation.app().getProperty("apollo.client.monitor.enabled", null);
+    }
+    if (!Strings.isNullOrEmpty(enableClientMonitor)) {
+      clientMonitorEnabled = Boolean.parseBoolean(enableClientMonitor.trim());
+    }
+  }
+
+  /**
+   * @return whether the client metrics are exported, e.g. via JMX
+   */
+  public boolean isClientMonitorEnabled() {
+    return clientMonitorEnabled;
+  }
+
+  private void initHedgedConfigLoad() {
+    // 1. Get from System Property
+    String enableHedgedConfigLoad = System.getProperty("apollo.hedgedConfigLoad.enabled");
+    if (Strings.isNullOrEmpty(enableHedgedConfigLoad)) {
+      // 2. Get from app.properties
+      enableHedgedConfigLoad = Foundation.app().getProperty("apollo.hedgedConfigLoad.enabled", null);
+    }
+    if (!Strings.isNullOrEmpty(enableHedgedConfigLoad)) {
+      hedgedConfigLoad = Boolean.parseBoolean(enableHedgedConfigLoad.trim());
+    }
+  }
+
+  /**
+   * @return whether to send the config load request to another config service as well when the
+   * first one does not answer in time
+   */
+  public boolean isHedgedConfigLoadEnabled() {
+    return hedgedConfigLoad;
+  }
+
+  private void initOfflineFirstStartup() {
+    // 1. Get from System Property
+    String enableOfflineFirstStartup = System.getProperty("apollo.offlineFirstStartup.enabled");
+    if (Strings.isNullOrEmpty(enableOfflineFirstStartup)) {
+      // 2. Get from app.properties
+      enableOfflineFirstStartup = Foundation.app()
+          .getProperty("apollo.offlineFirstStartup.enabled", null);
+    }
+    if (!Strings.isNullOrEmpty(enableOfflineFirstStartup)) {
+      offlineFirstStartup = Boolean.parseBoolean(enableOfflineFirstStartup.trim());
+    }
+
+    // 1. Get from System Property
+    String customizedWaitInMills = System.getProperty("apollo.offlineFirstStartup.waitInMills");
+    if (Strings.isNullOrEmpty(customizedWaitInMills)) {
+      // 2. Get from app.properties
+      customizedWaitInMills = Foundation.app()
+          .getProperty("apollo.offlineFirstStartup.waitInMills", null);
+    }
+    if (!Strings.isNullOrEmpty(customizedWaitInMills)) {
+      try {
+        offlineFirstStartupWaitInMills = Long.parseLong(customizedWaitInMills.trim());
+      } catch (Throwable ex) {
+        logger.error("Config for apollo.offlineFirstStartup.waitInMills is invalid: {}",
+            customizedWaitInMills);
+      }
+    }
+  }
+
+  /**
+   * @return whether to start with the local cache file and sync with the config service in
+   * background, instead of waiting for the config service during startup
+   */
+  public boolean isOfflineFirstStartupEnabled() {
+    return offlineFirstStartup;
+  }
+
+  /**
+   * @return how long to wait for the fresh config from the config service during the offline first
+   * startup, 0 or less means not waiting at all
+   */
+  public long getOfflineFirstStartupWaitInMills() {
+    return offlineFirstStartupWaitInMills;
+  }
+
+  private void initBatchPeriodicRefresh() {
+    // 1. Get from System Property
+    String enableBatchPeriodicRefresh = System.getProperty("apollo.batchPeriodicRefresh.enabled");
+    if (Strings.isNullOrEmpty(enableBatchPeriodicRefresh)) {
+      // 2. Get from app.properties
+      enableBatchPeriodicRefresh = Foundation.app()
+          .getProperty("apollo.batchPeriodicRefresh.enabled", null);
+    }
+    if (!Strings.isNullOrEmpty(enableBatchPeriodicRefresh)) {
+      batchPeriodicRefresh = Boolean.parseBoolean(enableBatchPeriodicRefresh.trim());
+    }
+  }
+
+  /**
+   * @return whether to verify the release keys of all the namespaces in one request during the
+   * periodic refresh, so that only the changed namespaces are loaded
+   */
+  public boolean isBatchPeriodicRefreshEnabled() {
+    return batchPeriodicRefresh;
+  }
+
+  private void initConfigSyncThreads() {
+    String customizedThreads = System.getProperty("apollo.configSyncThreads");
+    if (!Strings.isNullOrEmpty(customizedThreads)) {
+      try {
+        configSyncThreads = Integer.parseInt(customizedThreads.trim());
+      } catch (Throwable ex) {
+        logger.error("Config for apollo.configSyncThreads is invalid: {}", customizedThreads);
+      }
+    }
+  }
+
+  /**
+   * @return how many namespaces could be synced with the config service concurrently in background
+   */
+  public int getConfigSyncThreads() {
+    return configSyncThreads;
+  }
+
+  private void initConfigIdleEvictionDelayInMills() {
+    String customizedDelayInMills = System.getProperty("apollo.configIdleEvictionDelayInMills");
+    if (!Strings.isNullOrEmpty(customizedDelayInMills)) {
+      try {
+        configIdleEvictionDelayInMills = Long.parseLong(customizedDelayInMills.trim());
+      } catch (Throwable ex) {
+        logger.error("Config for apollo.configIdleEvictionDelayInMills is invalid: {}",
+            customizedDelayInMills);
+      }
+    }
+  }
+
+  /**
+   * @return how long to keep the config released by all of its users before closing it, so that it
+   * could be reused if acquired again soon, 0 or less means closing it immediately
+   */
+  public long getConfigIdleEvictionDelayInMills() {
+    return configIdleEvictionDelayInMills;
+  }
+
+  private void initConfigAgentPort() {
+    String customizedPort = System.getProperty("apollo.configAgent.port");
+    if (!Strings.isNullOrEmpty(customizedPort)) {
+      try {
+        configAgentPort = Integer.parseInt(customizedPort.trim());
+      } catch (Throwable ex) {
+        logger.error("Config for apollo.configAgent.port is invalid: {}", customizedPort);
+      }
+    }
+  }
+
+  /**
+   * @return the localhost port of the config agent, which syncs the configs with the config service
+   * on behalf of all the applications on the host, 0 or less means not using the config agent
+   */
+  public int getConfigAgentPort() {
+    return configAgentPort;
+  }
+
+  public boolean isConfigAgentEnabled() {
+    return getConfigAgentPort() > 0;
+  }
+
+  public String getConfigAgentUrl() {
+    return "http://127.0.0.1:" + getConfigAgentPort();
+  }
+
+  private void initConfigSnapshot() {
+    // 1. Get from System Property
+    String enableWriter = System.getProperty("apollo.configSnapshot.writer.enabled");
+    if (Strings.isNullOrEmpty(enableWriter)) {
+      // 2. Get from app.properties
+      enableWriter = Foundation.app().getProperty("apollo.configSnapshot.writer.enabled", null);
+    }
+    if (!Strings.isNullOrEmpty(enableWriter)) {
+      configSnapshotWriter = Boolean.parseBoolean(enableWriter.trim());
+    }
+
+    String enableReader = System.getProperty("apollo.configSnapshot.reader.enabled");
+    if (Strings.isNullOrEmpty(enableReader)) {
+      enableReader = Foundation.app().getProperty("apollo.configSnapshot.reader.enabled", null);
+    }
+    if (!Strings.isNullOrEmpty(enableReader)) {
+      configSnapshotReader = Boolean.parseBoolean(enableReader.trim());
+    }
+
+    String customizedPollInterval = System.getProperty("apollo.configSnapshot.pollIntervalInMills");
+    if (!Strings.isNullOrEmpty(customizedPollInterval)) {
+      try {
+        configSnapshotPollIntervalInMills = Long.parseLong(customizedPollInterval.trim());
+      } catch (Throwable ex) {
+        logger.error("Config for apollo.configSnapshot.pollIntervalInMills is invalid: {}",
+            customizedPollInterval);
+      }
+    }
+
+    String customizedStaleTime = System.getProperty("apollo.configSnapshot.staleTimeInMills");
+    if (Strings.isNullOrEmpty(customizedStaleTime)) {
+      customizedStaleTime = Foundation.app().getProperty("apollo.configSnapshot.staleTimeInMills", null);
+    }
+    if (!Strings.isNullOrEmpty(customizedStaleTime)) {
+      try {
+        configSnapshotStaleTimeInMills = Long.parseLong(customizedStaleTime.trim());
+      } catch (Throwable ex) {
+        logger.error("Config for apollo.configSnapshot.staleTimeInMills is invalid: {}",
+            customizedStaleTime);
+      }
+    }
+  }
+
+  /**
+   * @return whether to publish the configs loaded to the shared snapshot files, so that the other
+   * processes on the same host could read them without loading from the config service, it is
+   * ignored if the snapshot reader is enabled
+   */
+  public boolean isConfigSnapshotWriterEnabled() {
+    return configSnapshotWriter && !configSnapshotReader;
+  }
+
+  /**
+   * @return whether to read the configs from the shared snapshot files published by another process
+   * on the same host, instead of loading from the config service
+   */
+  public boolean isConfigSnapshotReaderEnabled() {
+    return configSnapshotReader;
+  }
+
+  /**
+   * @return how often to check whether a new config snapshot is published
+   */
+  public long getConfigSnapshotPollIntervalInMills() {
+    return configSnapshotPollIntervalInMills;
+  }
+
+  /**
+   * @return how long a config snapshot is considered stale since the last heartbeat of its writer,
+   * the writer heartbeats several times within it, and the readers load from the config service
+   * instead when the snapshot is stale
+   */
+  public long getConfigSnapshotStaleTimeInMills() {
+    return configSnapshotStaleTimeInMills;
+  }
 }
@@ -0,0 +1,153 @@
+package com.ctrip.framework.apollo.util.http;
+
+import com.ctrip.framework.apollo.build.ApolloInjector;
+import com.ctrip.framework.apollo.exceptions.ApolloConfigException;
+import com.ctrip.framework.apollo.exceptions.ApolloConfigStatusCodeException;
+import com.ctrip.framework.apollo.util.ConfigUtil;
+import com.google.gson.Gson;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.lang.reflect.Type;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * The default transport, which
+ * <ul>
+ *   <li>keeps the connections alive, so they are pooled per config service by the jdk</li>
+ *   <li>negotiates gzip with the config service</li>
+ *   <li>decodes the response body straight from the socket without buffering it as a string</li>
+ * </ul>
+ */
+public class DefaultHttpTransport implements HttpTransport {
+
+  private static final Gson GSON = new Gson();
+  private static final String GZIP = "gzip";
+  private static final int DRAIN_BUFFER_SIZE = 4096;
+
+  private final ConfigUtil m_configUtil;
+
+  public DefaultHttpTransport() {
+    m_configUtil = ApolloInjector.getInstance(ConfigUtil.class);
+  }
+
+  @Override
+  public <T> HttpResponse<T> doGet(HttpRequest httpRequest, Type responseType) {
+    return execute("GET", httpRequest, responseType);
+  }
+
+  @Override
+  public <T> HttpResponse<T> doPost(HttpRequest httpRequest, Type responseType) {
+    return execute("POST", httpRequest, responseType);
+  }
+
+  private <T> HttpResponse<T> execute(String method, HttpRequest httpRequest, Type responseType) {
+    int statusCode;
+    try {
+      HttpURLConnection conn = (HttpURLConnection) new URL(httpRequest.getUrl()).openConnection();
+
+      conn.setRequestMethod(method);
+      conn.setRequestProperty("Connection", "keep-alive");
+      conn.setRequestProperty("Accept-Encoding", GZIP);
+
+      Map<String, String> headers = httpRequest.getHeaders();
+      if (headers != null && headers.size() > 0) {
+        for (Map.Entry<String, String> entry : headers.entrySet()) {
+          conn.setRequestProperty(entry.getKey(), entry.getValue());
+        }
+      }
+
+      int connectTimeout = httpRequest.getConnectTimeout();
+      if (connectTimeout < 0) {
+        connectTimeout = m_configUtil.getConnectTimeout();
+      }
+
+      int readTimeout = httpRequest.getReadTimeout();
+      if (readTimeout < 0) {
+        readTimeout = m_configUtil.getReadTimeout();
+      }
+
+      conn.setConnectTimeout(connectTimeout);
+      conn.setReadTimeout(readTimeout);
+
+      String requestBody = httpRequest.getBody();
+      if (requestBody != null) {
+        conn.setDoOutput(true);
+        conn.setRequestProperty("Content-Type", "application/json;charset=UTF-8");
+      }
+
+      conn.connect();
+
+      if (requestBody != null) {
+        try (OutputStream os = conn.getOutputStream()) {
+          os.write(requestBody.getBytes(StandardCharsets.UTF_8));
+        }
+      }
+
+      statusCode = conn.getResponseCode();
+
+      if (statusCode == 200) {
+        T body;
+        try (InputStream is = decode(conn, conn.getInputStream())) {
+          Reader reader = new InputStreamReader(is, StandardCharsets.UTF_8);
+          body = GSON.fromJson(reader, responseType);
+          // read to the end so that the connection could be reused
+          drain(is);
+        }
+        return new HttpResponse<>(statusCode, body, conn.getHeaderFields());
+      }
+
+      if (statusCode == 304) {
+        try (InputStream is = conn.getInputStream()) {
+          drain(is);
+        }
+        return new HttpResponse<>(statusCode, null, conn.getHeaderFields());
+      }
+
+      /**
+       * according to https://docs.oracle.com/javase/7/docs/technotes/guides/net/http-keepalive.html,
+       * we should clean up the connection by reading the response body so that the connection
+       * could be reused.
+       */
+      InputStream errorStream = conn.getErrorStream();
+      if (errorStream != null) {
+        try (InputStream es = errorStream) {
+          drain(es);
+        } catch (IOException ex) {
+          //ignore
+        }
+      }
+    } catch (Throwable ex) {
+      throw new ApolloConfigException(
+          String.format("Could not complete %s operation", method.toLowerCase()), ex);
+    }
+
+    throw new ApolloConfigStatusCodeException(statusCode,
+        String.format("%s operation failed for %s", method, httpRequest.getUrl()));
+  }
+
+  @Override
+  public int getOrder() {
+    return LOWEST_PRECEDENCE;
+  }
+
+  private InputStream decode(HttpURLConnection conn, InputStream is) throws IOException {
+    if (GZIP.equalsIgnoreCase(conn.getContentEncoding())) {
+      return new GZIPInputStream(is);
+    }
+    return is;
+  }
+
+  private void drain(InputStream is) throws IOException {
+    byte[] buffer = new byte[DRAIN_BUFFER_SIZE];
+    while (is.read(buffer) != -1) {
+      //discard
+    }
+  }
+}
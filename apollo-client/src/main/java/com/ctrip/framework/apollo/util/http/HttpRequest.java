@@ -10,6 +10,7 @@ public class HttpRequest {
   private Map<String, String> headers;
   private int m_connectTimeout;
   private int m_readTimeout;
+  private String m_body;
 
   /**
    * Create the request for the url.
@@ -48,4 +49,15 @@ public class HttpRequest {
   public void setReadTimeout(int readTimeout) {
     this.m_readTimeout = readTimeout;
   }
+
+  /**
+   * @return the json body of the post request
+   */
+  public String getBody() {
+    return m_body;
+  }
+
+  public void setBody(String body) {
+    this.m_body = body;
+  }
 }
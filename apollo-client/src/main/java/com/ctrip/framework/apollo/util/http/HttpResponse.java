@@ -1,15 +1,25 @@
 package com.ctrip.framework.apollo.util.http;
 
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
 /**
  * @author Jason Song(song_s@ctrip.com)
  */
 public class HttpResponse<T> {
   private final int m_statusCode;
   private final T m_body;
+  private final Map<String, List<String>> m_headers;
 
   public HttpResponse(int statusCode, T body) {
+    this(statusCode, body, Collections.<String, List<String>>emptyMap());
+  }
+
+  public HttpResponse(int statusCode, T body, Map<String, List<String>> headers) {
     this.m_statusCode = statusCode;
     this.m_body = body;
+    this.m_headers = headers == null ? Collections.<String, List<String>>emptyMap() : headers;
   }
 
   public int getStatusCode() {
@@ -19,4 +29,18 @@ public class HttpResponse<T> {
   public T getBody() {
     return m_body;
   }
+
+  /**
+   * @return the first value of the response header, or null if not present
+   */
+  public String getHeader(String name) {
+    for (Map.Entry<String, List<String>> entry : m_headers.entrySet()) {
+      //header names are case insensitive
+      if (name.equalsIgnoreCase(entry.getKey()) && entry.getValue() != null
+          && !entry.getValue().isEmpty()) {
+        return entry.getValue().get(0);
+      }
+    }
+    return null;
+  }
 }
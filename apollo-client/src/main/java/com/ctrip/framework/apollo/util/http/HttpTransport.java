@@ -0,0 +1,32 @@
+package com.ctrip.framework.apollo.util.http;
+
+import com.ctrip.framework.apollo.core.spi.Ordered;
+import com.ctrip.framework.apollo.exceptions.ApolloConfigException;
+import java.lang.reflect.Type;
+
+/**
+ * The transport used by {@link HttpUtil} to talk to the config services, the one with the smallest
+ * order among META-INF/services/com.ctrip.framework.apollo.util.http.HttpTransport is used
+ */
+public interface HttpTransport extends Ordered {
+
+  /**
+   * Do get operation for the http request.
+   *
+   * @param httpRequest  the request
+   * @param responseType the response type
+   * @return the response
+   * @throws ApolloConfigException if any error happened or response code is neither 200 nor 304
+   */
+  <T> HttpResponse<T> doGet(HttpRequest httpRequest, Type responseType);
+
+  /**
+   * Do post operation for the http request, with its body as json.
+   *
+   * @param httpRequest  the request
+   * @param responseType the response type
+   * @return the response
+   * @throws ApolloConfigException if any error happened or response code is neither 200 nor 304
+   */
+  <T> HttpResponse<T> doPost(HttpRequest httpRequest, Type responseType);
+}
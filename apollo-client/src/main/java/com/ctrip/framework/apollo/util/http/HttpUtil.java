@@ -4,23 +4,29 @@ import com.ctrip.framework.apollo.build.ApolloInjector;
 import com.ctrip.framework.apollo.exceptions.ApolloConfigException;
 import com.ctrip.framework.apollo.exceptions.ApolloConfigStatusCodeException;
 import com.ctrip.framework.apollo.util.ConfigUtil;
+import com.ctrip.framework.foundation.internals.ServiceBootstrap;
 import com.google.common.base.Function;
 import com.google.common.io.CharStreams;
 import com.google.gson.Gson;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.lang.reflect.Type;
 import java.net.HttpURLConnection;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
 import java.util.Map;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * @author Jason Song(song_s@ctrip.com)
  */
 public class HttpUtil {
+  private static final Logger logger = LoggerFactory.getLogger(HttpUtil.class);
   private ConfigUtil m_configUtil;
+  private final HttpTransport m_httpTransport;
   private static final Gson GSON = new Gson();
 
   /**
@@ -28,6 +34,19 @@ public class HttpUtil {
    */
   public HttpUtil() {
     m_configUtil = ApolloInjector.getInstance(ConfigUtil.class);
+    m_httpTransport = loadHttpTransport();
+  }
+
+  private HttpTransport loadHttpTransport() {
+    if (m_configUtil.isLegacyHttpTransportEnabled()) {
+      return null;
+    }
+    try {
+      return ServiceBootstrap.loadPrimary(HttpTransport.class);
+    } catch (Throwable ex) {
+      logger.warn("Load http transport failed, will fall back to the legacy implementation", ex);
+      return null;
+    }
   }
 
   /**
@@ -39,6 +58,10 @@ public class HttpUtil {
    * @throws ApolloConfigException if any error happened or response code is neither 200 nor 304
    */
   public <T> HttpResponse<T> doGet(HttpRequest httpRequest, final Class<T> responseType) {
+    if (m_httpTransport != null) {
+      return m_httpTransport.doGet(httpRequest, responseType);
+    }
+
     Function<String, T> convertResponse = new Function<String, T>() {
       @Override
       public T apply(String input) {
@@ -58,6 +81,10 @@ public class HttpUtil {
    * @throws ApolloConfigException if any error happened or response code is neither 200 nor 304
    */
   public <T> HttpResponse<T> doGet(HttpRequest httpRequest, final Type responseType) {
+    if (m_httpTransport != null) {
+      return m_httpTransport.doGet(httpRequest, responseType);
+    }
+
     Function<String, T> convertResponse = new Function<String, T>() {
       @Override
       public T apply(String input) {
@@ -68,15 +95,46 @@ public class HttpUtil {
     return doGetWithSerializeFunction(httpRequest, convertResponse);
   }
 
+  /**
+   * Do post operation for the http request, with its body as json.
+   *
+   * @param httpRequest  the request
+   * @param responseType the response type
+   * @return the response
+   * @throws ApolloConfigException if any error happened or response code is neither 200 nor 304
+   */
+  public <T> HttpResponse<T> doPost(HttpRequest httpRequest, final Type responseType) {
+    if (m_httpTransport != null) {
+      return m_httpTransport.doPost(httpRequest, responseType);
+    }
+
+    Function<String, T> convertResponse = new Function<String, T>() {
+      @Override
+      public T apply(String input) {
+        return GSON.fromJson(input, responseType);
+      }
+    };
+
+    return doRequestWithSerializeFunction("POST", httpRequest, convertResponse);
+  }
+
   private <T> HttpResponse<T> doGetWithSerializeFunction(HttpRequest httpRequest,
                                                          Function<String, T> serializeFunction) {
+    return doRequestWithSerializeFunction("GET", httpRequest, serializeFunction);
+  }
+
+  /**
+   * The legacy implementation, used when the http transport is disabled or could not be loaded
+   */
+  private <T> HttpResponse<T> doRequestWithSerializeFunction(String method, HttpRequest httpRequest,
+                                                             Function<String, T> serializeFunction) {
     InputStreamReader isr = null;
     InputStreamReader esr = null;
     int statusCode;
     try {
       HttpURLConnection conn = (HttpURLConnection) new URL(httpRequest.getUrl()).openConnection();
 
-      conn.setRequestMethod("GET");
+      conn.setRequestMethod(method);
 
       Map<String, String> headers = httpRequest.getHeaders();
       if (headers != null && headers.size() > 0) {
@@ -98,8 +156,20 @@ public class HttpUtil {
       conn.setConnectTimeout(connectTimeout);
       conn.setReadTimeout(readTimeout);
 
+      String requestBody = httpRequest.getBody();
+      if (requestBody != null) {
+        conn.setDoOutput(true);
+        conn.setRequestProperty("Content-Type", "application/json;charset=UTF-8");
+      }
+
       conn.connect();
 
+      if (requestBody != null) {
+        try (OutputStream os = conn.getOutputStream()) {
+          os.write(requestBody.getBytes(StandardCharsets.UTF_8));
+        }
+      }
+
       statusCode = conn.getResponseCode();
       String response;
 
@@ -132,16 +202,18 @@ public class HttpUtil {
       }
 
       if (statusCode == 200) {
-        return new HttpResponse<>(statusCode, serializeFunction.apply(response));
+        return new HttpResponse<>(statusCode, serializeFunction.apply(response),
+            conn.getHeaderFields());
       }
 
       if (statusCode == 304) {
-        return new HttpResponse<>(statusCode, null);
+        return new HttpResponse<>(statusCode, null, conn.getHeaderFields());
       }
     } catch (ApolloConfigStatusCodeException ex) {
       throw ex;
     } catch (Throwable ex) {
-      throw new ApolloConfigException("Could not complete get operation", ex);
+      throw new ApolloConfigException(
+          String.format("Could not complete %s operation", method.toLowerCase()), ex);
     } finally {
       if (isr != null) {
         try {
@@ -161,7 +233,7 @@ public class HttpUtil {
     }
 
     throw new ApolloConfigStatusCodeException(statusCode,
-        String.format("Get operation failed for %s", httpRequest.getUrl()));
+        String.format("%s operation failed for %s", method, httpRequest.getUrl()));
   }
 
 }
@@ -4,8 +4,6 @@ import com.ctrip.framework.apollo.build.ApolloInjector;
 import com.ctrip.framework.apollo.util.factory.PropertiesFactory;
 import java.util.AbstractMap;
 import java.util.Collection;
-import java.util.Collections;
-import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
@@ -28,19 +26,20 @@ public class YamlParser {
   private static final Logger logger = LoggerFactory.getLogger(YamlParser.class);
 
   private PropertiesFactory propertiesFactory = ApolloInjector.getInstance(PropertiesFactory.class);
+  //Yaml is not thread safe, so it is reused per thread
+  private final ThreadLocal<Yaml> yaml = new ThreadLocal<Yaml>() {
+    @Override
+    protected Yaml initialValue() {
+      return createYaml();
+    }
+  };
 
   /**
    * Transform yaml content to properties
    */
   public Properties yamlToProperties(String yamlContent) {
-    Yaml yaml = createYaml();
-    final Properties result = propertiesFactory.getPropertiesInstance();
-    process(new MatchCallback() {
-      @Override
-      public void process(Properties properties, Map<String, Object> map) {
-        result.putAll(properties);
-      }
-    }, yaml, yamlContent);
+    Properties result = propertiesFactory.getPropertiesInstance();
+    process(result, yaml.get(), yamlContent);
     return result;
   }
 
@@ -51,100 +50,66 @@ public class YamlParser {
     return new Yaml(new StrictMapAppenderConstructor());
   }
 
-  private boolean process(MatchCallback callback, Yaml yaml, String content) {
+  private boolean process(Properties result, Yaml yaml, String content) {
     int count = 0;
-    if (logger.isDebugEnabled()) {
-      logger.debug("Loading from YAML: " + content);
-    }
     for (Object object : yaml.loadAll(content)) {
-      if (object != null && process(asMap(object), callback)) {
+      if (object != null) {
+        process(result, object);
         count++;
       }
     }
     if (logger.isDebugEnabled()) {
-      logger.debug("Loaded " + count + " document" + (count > 1 ? "s" : "") + " from YAML resource: " + content);
+      logger.debug("Loaded " + count + " document" + (count > 1 ? "s" : "") + " from YAML content of "
+          + content.length() + " chars");
     }
     return (count > 0);
   }
 
+  /**
+   * Flatten the document straight into the result, later documents override the earlier ones
+   */
   @SuppressWarnings("unchecked")
-  private Map<String, Object> asMap(Object object) {
-    // YAML can have numbers as keys
-    Map<String, Object> result = new LinkedHashMap<>();
-    if (!(object instanceof Map)) {
+  private void process(Properties result, Object document) {
+    if (document instanceof Map) {
+      buildFlattenedMap(result, (Map<Object, Object>) document, null);
+    } else {
       // A document can be a text literal
-      result.put("document", object);
-      return result;
-    }
-
-    Map<Object, Object> map = (Map<Object, Object>) object;
-    for (Map.Entry<Object, Object> entry : map.entrySet()) {
-      Object value = entry.getValue();
-      if (value instanceof Map) {
-        value = asMap(value);
-      }
-      Object key = entry.getKey();
-      if (key instanceof CharSequence) {
-        result.put(key.toString(), value);
-      } else {
-        // It has to be a map key in this case
-        result.put("[" + key.toString() + "]", value);
-      }
+      buildFlattenedValue(result, document, "document");
     }
-    return result;
   }
 
-  private boolean process(Map<String, Object> map, MatchCallback callback) {
-    Properties properties = propertiesFactory.getPropertiesInstance();
-    properties.putAll(getFlattenedMap(map));
-
-    if (logger.isDebugEnabled()) {
-      logger.debug("Merging document (no matchers set): " + map);
+  private void buildFlattenedMap(Properties result, Map<Object, Object> source, String path) {
+    for (Map.Entry<Object, Object> entry : source.entrySet()) {
+      Object key = entry.getKey();
+      // YAML can have numbers as keys, it has to be a map key in this case
+      String name = key instanceof CharSequence ? key.toString() : "[" + key + "]";
+      buildFlattenedValue(result, entry.getValue(), compoundKey(path, name));
     }
-    callback.process(properties, map);
-    return true;
-  }
-
-  private Map<String, Object> getFlattenedMap(Map<String, Object> source) {
-    Map<String, Object> result = new LinkedHashMap<>();
-    buildFlattenedMap(result, source, null);
-    return result;
   }
 
-  private void buildFlattenedMap(Map<String, Object> result, Map<String, Object> source, String path) {
-    for (Map.Entry<String, Object> entry : source.entrySet()) {
-      String key = entry.getKey();
-      if (!StringUtils.isBlank(path)) {
-        if (key.startsWith("[")) {
-          key = path + key;
-        } else {
-          key = path + '.' + key;
-        }
-      }
-      Object value = entry.getValue();
-      if (value instanceof String) {
-        result.put(key, value);
-      } else if (value instanceof Map) {
-        // Need a compound key
-        @SuppressWarnings("unchecked")
-        Map<String, Object> map = (Map<String, Object>) value;
-        buildFlattenedMap(result, map, key);
-      } else if (value instanceof Collection) {
-        // Need a compound key
-        @SuppressWarnings("unchecked")
-        Collection<Object> collection = (Collection<Object>) value;
-        int count = 0;
-        for (Object object : collection) {
-          buildFlattenedMap(result, Collections.singletonMap("[" + (count++) + "]", object), key);
-        }
-      } else {
-        result.put(key, (value != null ? value.toString() : ""));
+  @SuppressWarnings("unchecked")
+  private void buildFlattenedValue(Properties result, Object value, String key) {
+    if (value instanceof String) {
+      result.put(key, value);
+    } else if (value instanceof Map) {
+      // Need a compound key
+      buildFlattenedMap(result, (Map<Object, Object>) value, key);
+    } else if (value instanceof Collection) {
+      // Need a compound key
+      int count = 0;
+      for (Object object : (Collection<Object>) value) {
+        buildFlattenedValue(result, object, compoundKey(key, "[" + (count++) + "]"));
       }
+    } else {
+      result.put(key, (value != null ? value.toString() : ""));
     }
   }
 
-  private interface MatchCallback {
-    void process(Properties properties, Map<String, Object> map);
+  private String compoundKey(String path, String key) {
+    if (StringUtils.isBlank(path)) {
+      return key;
+    }
+    return key.startsWith("[") ? path + key : path + '.' + key;
   }
 
   /**
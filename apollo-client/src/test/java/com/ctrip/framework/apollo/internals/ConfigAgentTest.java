@@ -0,0 +1,279 @@
+package com.ctrip.framework.apollo.internals;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.ctrip.framework.apollo.build.MockInjector;
+import com.ctrip.framework.apollo.core.dto.ApolloConfig;
+import com.ctrip.framework.apollo.enums.ConfigSourceType;
+import com.ctrip.framework.apollo.util.ConfigUtil;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.gson.Gson;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ConfigAgentTest {
+  private ConfigAgent configAgent;
+  private MockConfigUtil configUtil;
+  private MockConfigRepository agentRepository;
+  private MockConfigRepository fallbackRepository;
+  private String someNamespace;
+
+  @Before
+  public void setUp() throws Exception {
+    someNamespace = "someNamespace";
+    configUtil = new MockConfigUtil();
+    MockInjector.setInstance(ConfigUtil.class, configUtil);
+
+    agentRepository = new MockConfigRepository();
+    agentRepository.properties.setProperty("someKey", "someValue");
+    fallbackRepository = new MockConfigRepository();
+    configAgent = new ConfigAgent(0) {
+      @Override
+      ConfigRepository createConfigRepository(String namespace) {
+        return agentRepository;
+      }
+    };
+    configAgent.start();
+    configUtil.port = configAgent.getPort();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    configAgent.stop();
+    MockInjector.reset();
+  }
+
+  @Test
+  public void testReleaseKeyConsistentAcrossRestarts() throws Exception {
+    ApolloConfig config = loadConfig(configAgent, "someAppId", someNamespace);
+
+    configAgent.stop();
+    configAgent = new ConfigAgent(0) {
+      @Override
+      ConfigRepository createConfigRepository(String namespace) {
+        return agentRepository;
+      }
+    };
+    configAgent.start();
+
+    assertEquals(config.getReleaseKey(),
+        loadConfig(configAgent, "someAppId", someNamespace).getReleaseKey());
+  }
+
+  @Test
+  public void testRequestOfAnotherAppRejected() throws Exception {
+    assertEquals(400, requestConfig(configAgent, "anotherAppId", someNamespace).getResponseCode());
+  }
+
+  @Test
+  public void testNamespacesCapped() throws Exception {
+    configAgent.stop();
+    configAgent = new ConfigAgent(0, 1, TimeUnit.MINUTES.toMillis(10)) {
+      @Override
+      ConfigRepository createConfigRepository(String namespace) {
+        return agentRepository;
+      }
+    };
+    configAgent.start();
+
+    assertEquals(200, requestConfig(configAgent, "someAppId", someNamespace).getResponseCode());
+    assertEquals(503, requestConfig(configAgent, "someAppId", "anotherNamespace").getResponseCode());
+  }
+
+  @Test
+  public void testIdleNamespaceEvicted() throws Exception {
+    configAgent.stop();
+    configAgent = new ConfigAgent(0, 1, 1) {
+      @Override
+      ConfigRepository createConfigRepository(String namespace) {
+        return agentRepository;
+      }
+    };
+    configAgent.start();
+    assertEquals(200, requestConfig(configAgent, "someAppId", someNamespace).getResponseCode());
+
+    TimeUnit.MILLISECONDS.sleep(10);
+    configAgent.evictIdleNamespaces();
+
+    assertEquals(200, requestConfig(configAgent, "someAppId", "anotherNamespace").getResponseCode());
+    assertTrue(agentRepository.closed);
+  }
+
+  @Test
+  public void testLoadConfigFromAgent() throws Exception {
+    ConfigAgentConfigRepository repository = new ConfigAgentConfigRepository(someNamespace);
+
+    Properties config = repository.getConfig();
+
+    assertEquals("someValue", config.getProperty("someKey"));
+    assertEquals(ConfigSourceType.REMOTE, repository.getSourceType());
+  }
+
+  @Test
+  public void testChangePushedFromAgent() throws Exception {
+    ConfigAgentConfigRepository repository = new ConfigAgentConfigRepository(someNamespace);
+    final SettableFuture<Properties> changed = SettableFuture.create();
+    repository.addChangeListener(new RepositoryChangeListener() {
+      @Override
+      public void onRepositoryChange(String namespace, Properties newProperties) {
+        changed.set(newProperties);
+      }
+    });
+
+    Properties newProperties = new Properties();
+    newProperties.setProperty("someKey", "anotherValue");
+    agentRepository.change(newProperties);
+
+    assertEquals("anotherValue", changed.get(5, TimeUnit.SECONDS).getProperty("someKey"));
+    assertEquals("anotherValue", repository.getConfig().getProperty("someKey"));
+  }
+
+  @Test
+  public void testUnsignedRequestRejected() throws Exception {
+    configUtil.secret = "someSecret";
+
+    assertEquals(401, requestConfig(configAgent, "someAppId", someNamespace).getResponseCode());
+  }
+
+  @Test
+  public void testLoadSignedConfigFromAgent() throws Exception {
+    configUtil.secret = "someSecret";
+
+    ConfigAgentConfigRepository repository = createRepository();
+
+    assertEquals("someValue", repository.getConfig().getProperty("someKey"));
+    assertFalse(fallbackRepository.created);
+  }
+
+  @Test
+  public void testLoadFromFallbackWhenAgentNotAvailable() throws Exception {
+    configAgent.stop();
+    fallbackRepository.properties.setProperty("someKey", "anotherValue");
+
+    ConfigAgentConfigRepository repository = createRepository();
+
+    assertEquals("anotherValue", repository.getConfig().getProperty("someKey"));
+  }
+
+  @Test
+  public void testFallbackClosedWhenAgentAvailableAgain() throws Exception {
+    configAgent.stop();
+    fallbackRepository.properties.setProperty("someKey", "anotherValue");
+    ConfigAgentConfigRepository repository = createRepository();
+    final SettableFuture<Properties> changed = SettableFuture.create();
+    repository.addChangeListener(new RepositoryChangeListener() {
+      @Override
+      public void onRepositoryChange(String namespace, Properties newProperties) {
+        changed.set(newProperties);
+      }
+    });
+
+    configAgent = new ConfigAgent(0) {
+      @Override
+      ConfigRepository createConfigRepository(String namespace) {
+        return agentRepository;
+      }
+    };
+    configAgent.start();
+    configUtil.port = configAgent.getPort();
+    repository.trySync();
+
+    assertEquals("someValue", changed.get(5, TimeUnit.SECONDS).getProperty("someKey"));
+    assertEquals("someValue", repository.getConfig().getProperty("someKey"));
+    assertTrue(fallbackRepository.closed);
+  }
+
+  private ConfigAgentConfigRepository createRepository() {
+    return new ConfigAgentConfigRepository(someNamespace) {
+      @Override
+      ConfigRepository createFallbackRepository(String namespace) {
+        fallbackRepository.created = true;
+        return fallbackRepository;
+      }
+    };
+  }
+
+  private HttpURLConnection requestConfig(ConfigAgent agent, String appId, String namespace)
+      throws Exception {
+    URL url = new URL(String.format("http://localhost:%d/configs/%s?appId=%s&cluster=someCluster",
+        agent.getPort(), namespace, appId));
+    return (HttpURLConnection) url.openConnection();
+  }
+
+  private ApolloConfig loadConfig(ConfigAgent agent, String appId, String namespace)
+      throws Exception {
+    HttpURLConnection connection = requestConfig(agent, appId, namespace);
+    try (Reader reader = new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8)) {
+      return new Gson().fromJson(reader, ApolloConfig.class);
+    }
+  }
+
+  private static class MockConfigRepository extends AbstractConfigRepository {
+    private volatile Properties properties = new Properties();
+    private volatile boolean created;
+    private volatile boolean closed;
+
+    @Override
+    protected void sync() {
+    }
+
+    @Override
+    public Properties getConfig() {
+      return properties;
+    }
+
+    @Override
+    public void setUpstreamRepository(ConfigRepository upstreamConfigRepository) {
+    }
+
+    @Override
+    public ConfigSourceType getSourceType() {
+      return ConfigSourceType.REMOTE;
+    }
+
+    @Override
+    void close() {
+      closed = true;
+    }
+
+    void change(Properties newProperties) {
+      properties = newProperties;
+      fireRepositoryChange("someNamespace", newProperties);
+    }
+  }
+
+  public static class MockConfigUtil extends ConfigUtil {
+    private volatile int port;
+    private volatile String secret;
+
+    @Override
+    public String getAppId() {
+      return "someAppId";
+    }
+
+    @Override
+    public String getCluster() {
+      return "someCluster";
+    }
+
+    @Override
+    public int getConfigAgentPort() {
+      return port;
+    }
+
+    @Override
+    public String getAccessKeySecret() {
+      return secret;
+    }
+  }
+}
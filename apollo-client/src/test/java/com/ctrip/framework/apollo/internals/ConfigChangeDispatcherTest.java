@@ -0,0 +1,126 @@
+package com.ctrip.framework.apollo.internals;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.ctrip.framework.apollo.build.MockInjector;
+import com.ctrip.framework.apollo.util.ConfigUtil;
+import com.google.common.collect.Lists;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Test;
+
+public class ConfigChangeDispatcherTest {
+
+  @After
+  public void tearDown() throws Exception {
+    MockInjector.reset();
+  }
+
+  @Test
+  public void testDispatchInOrder() throws Exception {
+    MockInjector.setInstance(ConfigUtil.class, new MockConfigUtil(false));
+    ConfigChangeDispatcher dispatcher = new ConfigChangeDispatcher();
+
+    int someEventCount = 100;
+    final CountDownLatch delivered = new CountDownLatch(someEventCount);
+    final AtomicInteger running = new AtomicInteger();
+    final AtomicInteger maxRunning = new AtomicInteger();
+    final List<Integer> received = Collections.synchronizedList(Lists.<Integer>newArrayList());
+    Object someListener = new Object();
+
+    ConfigChangeDispatcher.EventHandler<Object, Integer> handler = new MockEventHandler() {
+      @Override
+      public void handle(Object listener, Integer event) {
+        maxRunning.set(Math.max(maxRunning.get(), running.incrementAndGet()));
+        received.add(event);
+        running.decrementAndGet();
+        delivered.countDown();
+      }
+    };
+
+    List<Integer> events = Lists.newArrayList();
+    for (int i = 0; i < someEventCount; i++) {
+      events.add(i);
+      dispatcher.dispatch(someListener, i, handler);
+    }
+
+    assertTrue(delivered.await(5, TimeUnit.SECONDS));
+    assertEquals(events, received);
+    assertEquals(1, maxRunning.get());
+  }
+
+  @Test
+  public void testDispatchWithCoalescing() throws Exception {
+    MockInjector.setInstance(ConfigUtil.class, new MockConfigUtil(true));
+    ConfigChangeDispatcher dispatcher = new ConfigChangeDispatcher();
+
+    final CountDownLatch started = new CountDownLatch(1);
+    final CountDownLatch released = new CountDownLatch(1);
+    final CountDownLatch delivered = new CountDownLatch(2);
+    final List<Integer> received = Collections.synchronizedList(Lists.<Integer>newArrayList());
+    Object someListener = new Object();
+
+    ConfigChangeDispatcher.EventHandler<Object, Integer> handler = new MockEventHandler() {
+      @Override
+      public void handle(Object listener, Integer event) {
+        started.countDown();
+        try {
+          released.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException ex) {
+          Thread.currentThread().interrupt();
+        }
+        received.add(event);
+        delivered.countDown();
+      }
+    };
+
+    dispatcher.dispatch(someListener, 1, handler);
+    assertTrue(started.await(5, TimeUnit.SECONDS));
+
+    //pending while the first one is being delivered
+    dispatcher.dispatch(someListener, 2, handler);
+    dispatcher.dispatch(someListener, 3, handler);
+
+    assertEquals(1, dispatcher.getPendingEventCount());
+    assertEquals(1, dispatcher.getPendingListenerCount());
+
+    released.countDown();
+
+    assertTrue(delivered.await(5, TimeUnit.SECONDS));
+    assertEquals(Lists.newArrayList(1, 5), received);
+    assertEquals(0, dispatcher.getPendingEventCount());
+    assertTrue(dispatcher.getMaxPendingEventCount() >= 1);
+  }
+
+  private abstract static class MockEventHandler implements
+      ConfigChangeDispatcher.EventHandler<Object, Integer> {
+
+    @Override
+    public Integer merge(Integer previous, Integer next) {
+      return previous + next;
+    }
+  }
+
+  private static class MockConfigUtil extends ConfigUtil {
+    private final boolean coalescingEnabled;
+
+    MockConfigUtil(boolean coalescingEnabled) {
+      this.coalescingEnabled = coalescingEnabled;
+    }
+
+    @Override
+    public int getConfigChangeListenerThreads() {
+      return 4;
+    }
+
+    @Override
+    public boolean isConfigChangeEventCoalescingEnabled() {
+      return coalescingEnabled;
+    }
+  }
+}
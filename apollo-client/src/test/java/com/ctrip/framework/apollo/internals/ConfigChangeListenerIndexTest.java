@@ -0,0 +1,68 @@
+package com.ctrip.framework.apollo.internals;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.collect.Sets;
+import java.util.Collections;
+import java.util.Set;
+import org.junit.Test;
+
+public class ConfigChangeListenerIndexTest {
+
+  @Test
+  public void testFindInterestedListeners() throws Exception {
+    String allListener = "all";
+    String keyListener = "key";
+    String prefixListener = "prefix";
+    String emptyPrefixListener = "emptyPrefix";
+
+    ConfigChangeListenerIndex<String> index = new ConfigChangeListenerIndex<>();
+    index.add(allListener, null, null);
+    index.add(keyListener, Sets.newHashSet("someKey", "anotherKey"), null);
+    index.add(prefixListener, null, Sets.newHashSet("some.prefix.", "other"));
+    index.add(emptyPrefixListener, null, Sets.newHashSet(""));
+
+    assertEquals(Sets.newHashSet(allListener, emptyPrefixListener),
+        index.findInterestedListeners(Sets.newHashSet("some.prefix")));
+    assertEquals(Sets.newHashSet(allListener, keyListener, emptyPrefixListener),
+        index.findInterestedListeners(Sets.newHashSet("someKey")));
+    assertEquals(Sets.newHashSet(allListener, prefixListener, emptyPrefixListener),
+        index.findInterestedListeners(Sets.newHashSet("some.prefix.key")));
+    assertEquals(Sets.newHashSet(allListener, keyListener, prefixListener, emptyPrefixListener),
+        index.findInterestedListeners(Sets.newHashSet("anotherKey", "otherKey")));
+    assertEquals(Collections.singleton(allListener),
+        index.findInterestedListeners(Collections.<String>emptySet()));
+  }
+
+  @Test
+  public void testFindInterestedListenersWithoutFilters() throws Exception {
+    ConfigChangeListenerIndex<String> index = new ConfigChangeListenerIndex<>();
+    index.add("someListener", Collections.<String>emptySet(), Collections.<String>emptySet());
+
+    assertTrue(index.findInterestedListeners(Sets.newHashSet("someKey")).contains("someListener"));
+  }
+
+  @Test
+  public void testRemoveListeners() throws Exception {
+    String someListener = "some";
+    String anotherListener = "another";
+    Set<String> someKeys = Sets.newHashSet("someKey");
+    Set<String> somePrefixes = Sets.newHashSet("some.prefix.", "some.");
+
+    ConfigChangeListenerIndex<String> index = new ConfigChangeListenerIndex<>();
+    index.add(someListener, someKeys, somePrefixes);
+    index.add(anotherListener, someKeys, Sets.newHashSet("some."));
+
+    index.remove(someListener, someKeys, somePrefixes);
+
+    assertEquals(Collections.singleton(anotherListener),
+        index.findInterestedListeners(Sets.newHashSet("someKey")));
+    assertEquals(Collections.singleton(anotherListener),
+        index.findInterestedListeners(Sets.newHashSet("some.prefix.key")));
+
+    index.remove(anotherListener, someKeys, Sets.newHashSet("some."));
+
+    assertTrue(index.findInterestedListeners(Sets.newHashSet("someKey", "some.key")).isEmpty());
+  }
+}
@@ -0,0 +1,122 @@
+package com.ctrip.framework.apollo.internals;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.ctrip.framework.apollo.monitor.Histogram;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ConfigLoadHedgerTest {
+  private ConfigLoadHedger configLoadHedger;
+  private Histogram someLatency;
+  private long someMaxDelay;
+
+  @Before
+  public void setUp() throws Exception {
+    configLoadHedger = new ConfigLoadHedger();
+    someLatency = new Histogram();
+    someMaxDelay = 50;
+  }
+
+  @Test
+  public void testPrimaryAnswersInTime() throws Exception {
+    String result = configLoadHedger.execute(answer("primary", 0), answer("hedged", 0),
+        someLatency, someMaxDelay);
+
+    assertEquals("primary", result);
+  }
+
+  @Test
+  public void testHedgedAnswersFirst() throws Exception {
+    String result = configLoadHedger.execute(answer("primary", 5000), answer("hedged", 0),
+        someLatency, someMaxDelay);
+
+    assertEquals("hedged", result);
+  }
+
+  @Test
+  public void testPrimaryFailsAfterHedged() throws Exception {
+    String result = configLoadHedger.execute(new Callable<String>() {
+      @Override
+      public String call() throws Exception {
+        TimeUnit.MILLISECONDS.sleep(100);
+        throw new IllegalStateException("primary failed");
+      }
+    }, answer("hedged", 200), someLatency, someMaxDelay);
+
+    assertEquals("hedged", result);
+  }
+
+  @Test
+  public void testNotHedgedWithoutBudget() throws Exception {
+    while (configLoadHedger.tryAcquireBudget()) {
+      //use up the budget
+    }
+
+    String result = configLoadHedger.execute(answer("primary", 200), answer("hedged", 0),
+        someLatency, someMaxDelay);
+
+    assertEquals("primary", result);
+  }
+
+  @Test
+  public void testNotForkedWithoutBudget() throws Exception {
+    while (configLoadHedger.tryAcquireBudget()) {
+      //use up the budget
+    }
+    final Thread caller = Thread.currentThread();
+
+    Boolean inCallerThread = configLoadHedger.execute(new Callable<Boolean>() {
+      @Override
+      public Boolean call() throws Exception {
+        return Thread.currentThread() == caller;
+      }
+    }, new Callable<Boolean>() {
+      @Override
+      public Boolean call() throws Exception {
+        return false;
+      }
+    }, someLatency, someMaxDelay);
+
+    assertTrue(inCallerThread);
+  }
+
+  @Test
+  public void testBudget() throws Exception {
+    while (configLoadHedger.tryAcquireBudget()) {
+      //use up the budget
+    }
+    for (int i = 0; i < 9; i++) {
+      configLoadHedger.earnBudget();
+    }
+    assertFalse(configLoadHedger.tryAcquireBudget());
+
+    configLoadHedger.earnBudget();
+    configLoadHedger.earnBudget();
+    assertTrue(configLoadHedger.tryAcquireBudget());
+  }
+
+  @Test
+  public void testHedgeDelay() throws Exception {
+    assertEquals(someMaxDelay, configLoadHedger.hedgeDelay(someLatency, someMaxDelay));
+
+    for (int i = 0; i < 100; i++) {
+      someLatency.record(20);
+    }
+    assertEquals(20, configLoadHedger.hedgeDelay(someLatency, 1000));
+  }
+
+  private Callable<String> answer(final String result, final long delayInMillis) {
+    return new Callable<String>() {
+      @Override
+      public String call() throws Exception {
+        TimeUnit.MILLISECONDS.sleep(delayInMillis);
+        return result;
+      }
+    };
+  }
+}
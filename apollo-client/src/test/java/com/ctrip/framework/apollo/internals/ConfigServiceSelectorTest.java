@@ -0,0 +1,142 @@
+package com.ctrip.framework.apollo.internals;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.ctrip.framework.apollo.core.dto.ServiceDTO;
+import com.google.common.base.Ticker;
+import com.google.common.collect.Lists;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ConfigServiceSelectorTest {
+  private MockTicker ticker;
+  private ConfigServiceSelector serviceSelector;
+  private ServiceDTO someService;
+  private ServiceDTO anotherService;
+
+  @Before
+  public void setUp() throws Exception {
+    ticker = new MockTicker();
+    serviceSelector = new ConfigServiceSelector(ticker);
+    someService = assembleService("http://someServer");
+    anotherService = assembleService("http://anotherServer");
+  }
+
+  @Test
+  public void testSelectFasterService() throws Exception {
+    serviceSelector.onSuccess(someService, 10);
+    serviceSelector.onSuccess(anotherService, 500);
+
+    List<ServiceDTO> services = Lists.newArrayList(someService, anotherService);
+    for (int i = 0; i < 10; i++) {
+      assertSame(someService, serviceSelector.select(services));
+    }
+  }
+
+  @Test
+  public void testEjectFailingService() throws Exception {
+    serviceSelector.onSuccess(someService, 500);
+    serviceSelector.onSuccess(anotherService, 10);
+    serviceSelector.onFailure(anotherService);
+    serviceSelector.onFailure(anotherService);
+
+    assertTrue(serviceSelector.isEjected(anotherService));
+
+    List<ServiceDTO> services = Lists.newArrayList(someService, anotherService);
+    for (int i = 0; i < 10; i++) {
+      assertEquals(Lists.newArrayList(someService, anotherService), serviceSelector.order(services));
+    }
+
+    ticker.advance(1, TimeUnit.MINUTES);
+
+    assertFalse(serviceSelector.isEjected(anotherService));
+
+    serviceSelector.onSuccess(anotherService, 10);
+    serviceSelector.onSuccess(anotherService, 10);
+
+    assertFalse(serviceSelector.isEjected(anotherService));
+  }
+
+  @Test
+  public void testLongPollHealthTrackedSeparately() throws Exception {
+    serviceSelector.onFailure(someService);
+    serviceSelector.onFailure(someService);
+    serviceSelector.onLongPollSuccess(someService);
+
+    assertTrue(serviceSelector.isEjected(someService));
+    assertFalse(serviceSelector.isEjectedForLongPoll(someService));
+
+    serviceSelector.onLongPollFailure(anotherService);
+    serviceSelector.onLongPollFailure(anotherService);
+
+    assertTrue(serviceSelector.isEjectedForLongPoll(anotherService));
+    assertFalse(serviceSelector.isEjected(anotherService));
+
+    List<ServiceDTO> services = Lists.newArrayList(someService, anotherService);
+    for (int i = 0; i < 10; i++) {
+      assertSame(anotherService, serviceSelector.select(services));
+      assertSame(someService, serviceSelector.selectForLongPoll(services));
+    }
+  }
+
+  @Test
+  public void testLongPollOnlyServiceNotScoredByLatency() throws Exception {
+    serviceSelector.onLongPollSuccess(someService);
+    serviceSelector.onSuccess(anotherService, 10);
+
+    List<ServiceDTO> services = Lists.newArrayList(someService, anotherService);
+    for (int i = 0; i < 10; i++) {
+      //no config loaded from it yet, so it is tried first to measure its latency
+      assertSame(someService, serviceSelector.select(services));
+    }
+  }
+
+  @Test
+  public void testSelectWhenAllEjected() throws Exception {
+    serviceSelector.onFailure(someService);
+    serviceSelector.onFailure(someService);
+
+    assertSame(someService, serviceSelector.select(Lists.newArrayList(someService)));
+    assertEquals(Lists.newArrayList(someService),
+        serviceSelector.order(Lists.newArrayList(someService)));
+  }
+
+  @Test
+  public void testStatsOfRemovedServicePruned() throws Exception {
+    serviceSelector.onFailure(someService);
+    serviceSelector.onFailure(someService);
+    serviceSelector.onSuccess(anotherService, 10);
+
+    assertTrue(serviceSelector.isEjected(someService));
+
+    assertSame(anotherService, serviceSelector.select(Lists.newArrayList(anotherService)));
+
+    assertFalse(serviceSelector.isEjected(someService));
+    assertEquals(Lists.newArrayList(anotherService),
+        serviceSelector.order(Lists.newArrayList(anotherService)));
+  }
+
+  private ServiceDTO assembleService(String homepageUrl) {
+    ServiceDTO serviceDTO = new ServiceDTO();
+    serviceDTO.setHomepageUrl(homepageUrl);
+    return serviceDTO;
+  }
+
+  private static class MockTicker extends Ticker {
+    private long nanos;
+
+    @Override
+    public long read() {
+      return nanos;
+    }
+
+    void advance(long duration, TimeUnit timeUnit) {
+      nanos += timeUnit.toNanos(duration);
+    }
+  }
+}
@@ -0,0 +1,295 @@
+package com.ctrip.framework.apollo.internals;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.ctrip.framework.apollo.build.MockInjector;
+import com.ctrip.framework.apollo.enums.ConfigSourceType;
+import com.ctrip.framework.apollo.exceptions.ApolloConfigException;
+import com.ctrip.framework.apollo.util.ConfigUtil;
+import com.google.common.base.Strings;
+import com.google.common.util.concurrent.SettableFuture;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ConfigSnapshotConfigRepositoryTest {
+  private File someCacheDir;
+  private String someNamespace;
+  private ConfigSnapshotFile snapshotWriter;
+  private MockConfigUtil configUtil;
+  private MockConfigRepository fallbackRepository;
+
+  @Before
+  public void setUp() throws Exception {
+    someCacheDir = Files.createTempDirectory("apollo-snapshot").toFile();
+    someNamespace = "someNamespace";
+    configUtil = new MockConfigUtil();
+    configUtil.staleTime = TimeUnit.SECONDS.toMillis(30);
+    configUtil.cacheDir = someCacheDir.getAbsolutePath();
+    MockInjector.setInstance(ConfigUtil.class, configUtil);
+
+    snapshotWriter = new ConfigSnapshotFile(
+        ConfigSnapshotFile.assembleSnapshotFile(configUtil, someNamespace));
+    fallbackRepository = new MockConfigRepository();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    MockInjector.reset();
+    File snapshotFile = snapshotWriter.getFile();
+    snapshotFile.delete();
+    snapshotFile.getParentFile().delete();
+    someCacheDir.delete();
+  }
+
+  @Test
+  public void testLoadConfigFromSnapshot() throws Exception {
+    snapshotWriter.write(someProperties("someKey", "someValue"), ConfigSourceType.REMOTE);
+
+    ConfigSnapshotConfigRepository repository = createRepository();
+
+    assertEquals("someValue", repository.getConfig().getProperty("someKey"));
+    assertEquals(ConfigSourceType.REMOTE, repository.getSourceType());
+  }
+
+  @Test
+  public void testNewSnapshotLoaded() throws Exception {
+    snapshotWriter.write(someProperties("someKey", "someValue"), ConfigSourceType.REMOTE);
+    ConfigSnapshotConfigRepository repository = createRepository();
+    final SettableFuture<Properties> changed = SettableFuture.create();
+    repository.addChangeListener(new RepositoryChangeListener() {
+      @Override
+      public void onRepositoryChange(String namespace, Properties newProperties) {
+        changed.set(newProperties);
+      }
+    });
+
+    //larger than the file mapped by the reader
+    String someLargeValue = Strings.repeat("x", 10000);
+    snapshotWriter.write(someProperties("someKey", someLargeValue), ConfigSourceType.LOCAL);
+
+    assertEquals(someLargeValue, changed.get(5, TimeUnit.SECONDS).getProperty("someKey"));
+    assertEquals(ConfigSourceType.LOCAL, repository.getSourceType());
+  }
+
+  @Test
+  public void testSnapshotReadOnlyWhenChanged() throws Exception {
+    snapshotWriter.write(someProperties("someKey", "someValue"), ConfigSourceType.REMOTE);
+    ConfigSnapshotFile snapshotReader = new ConfigSnapshotFile(snapshotWriter.getFile());
+
+    ConfigSnapshotFile.Snapshot snapshot = snapshotReader.readIfChanged(-1);
+
+    assertEquals("someValue", snapshot.getProperties().getProperty("someKey"));
+    assertNull(snapshotReader.readIfChanged(snapshot.getSequence()));
+
+    snapshotWriter.write(someProperties("someKey", "anotherValue"), ConfigSourceType.REMOTE);
+
+    assertEquals("anotherValue",
+        snapshotReader.readIfChanged(snapshot.getSequence()).getProperties().getProperty("someKey"));
+  }
+
+  @Test
+  public void testLoadFromFallbackWhenSnapshotNotPublished() throws Exception {
+    fallbackRepository.properties = someProperties("someKey", "someValue");
+
+    ConfigSnapshotConfigRepository repository = createRepository();
+
+    assertEquals("someValue", repository.getConfig().getProperty("someKey"));
+    assertEquals(ConfigSourceType.REMOTE, repository.getSourceType());
+  }
+
+  @Test(expected = ApolloConfigException.class)
+  public void testSnapshotNotPublishedAndFallbackNotAvailable() throws Exception {
+    ConfigSnapshotConfigRepository repository = createRepository();
+
+    repository.getConfig();
+  }
+
+  @Test
+  public void testFallbackNotLoadedByPolling() throws Exception {
+    ConfigSnapshotConfigRepository repository = createRepository();
+
+    TimeUnit.MILLISECONDS.sleep(100);
+
+    assertTrue(fallbackRepository.created);
+    assertEquals(0, fallbackRepository.loads.get());
+  }
+
+  @Test
+  public void testLoadFromFallbackWhenSnapshotStale() throws Exception {
+    configUtil.staleTime = 50;
+    snapshotWriter.write(someProperties("someKey", "someValue"), ConfigSourceType.REMOTE);
+    TimeUnit.MILLISECONDS.sleep(100);
+    fallbackRepository.properties = someProperties("someKey", "anotherValue");
+
+    ConfigSnapshotConfigRepository repository = createRepository();
+
+    assertEquals("anotherValue", repository.getConfig().getProperty("someKey"));
+    assertEquals(ConfigSourceType.REMOTE, repository.getSourceType());
+  }
+
+  @Test
+  public void testStaleSnapshotServedAsLocalWhenFallbackNotAvailable() throws Exception {
+    configUtil.staleTime = 50;
+    snapshotWriter.write(someProperties("someKey", "someValue"), ConfigSourceType.REMOTE);
+    TimeUnit.MILLISECONDS.sleep(100);
+
+    ConfigSnapshotConfigRepository repository = createRepository();
+
+    assertEquals("someValue", repository.getConfig().getProperty("someKey"));
+    assertEquals(ConfigSourceType.LOCAL, repository.getSourceType());
+  }
+
+  @Test
+  public void testSnapshotKeptAvailableByHeartbeat() throws Exception {
+    configUtil.staleTime = 200;
+    snapshotWriter.write(someProperties("someKey", "someValue"), ConfigSourceType.REMOTE);
+    ConfigSnapshotConfigRepository repository = createRepository();
+
+    for (int i = 0; i < 10; i++) {
+      TimeUnit.MILLISECONDS.sleep(50);
+      snapshotWriter.heartbeat();
+    }
+
+    assertEquals("someValue", repository.getConfig().getProperty("someKey"));
+    assertEquals(ConfigSourceType.REMOTE, repository.getSourceType());
+    assertFalse(fallbackRepository.created);
+  }
+
+  @Test
+  public void testFallbackClosedWhenSnapshotAvailableAgain() throws Exception {
+    fallbackRepository.properties = someProperties("someKey", "someValue");
+    ConfigSnapshotConfigRepository repository = createRepository();
+    final SettableFuture<Properties> changed = SettableFuture.create();
+    repository.addChangeListener(new RepositoryChangeListener() {
+      @Override
+      public void onRepositoryChange(String namespace, Properties newProperties) {
+        changed.set(newProperties);
+      }
+    });
+
+    snapshotWriter.write(someProperties("someKey", "anotherValue"), ConfigSourceType.REMOTE);
+
+    assertEquals("anotherValue", changed.get(5, TimeUnit.SECONDS).getProperty("someKey"));
+    assertTrue(fallbackRepository.closed);
+  }
+
+  @Test
+  public void testReplacedSnapshotFileRemapped() throws Exception {
+    snapshotWriter.write(someProperties("someKey", "someValue"), ConfigSourceType.REMOTE);
+    ConfigSnapshotConfigRepository repository = createRepository();
+    final SettableFuture<Properties> changed = SettableFuture.create();
+    repository.addChangeListener(new RepositoryChangeListener() {
+      @Override
+      public void onRepositoryChange(String namespace, Properties newProperties) {
+        changed.set(newProperties);
+      }
+    });
+
+    //a new writer starts over with the same sequence
+    assertTrue(snapshotWriter.getFile().delete());
+    new ConfigSnapshotFile(snapshotWriter.getFile())
+        .write(someProperties("someKey", "anotherValue"), ConfigSourceType.REMOTE);
+
+    assertEquals("anotherValue", changed.get(5, TimeUnit.SECONDS).getProperty("someKey"));
+  }
+
+  @Test
+  public void testDeletedSnapshotFileRewrittenByHeartbeat() throws Exception {
+    snapshotWriter.write(someProperties("someKey", "someValue"), ConfigSourceType.REMOTE);
+    assertTrue(snapshotWriter.getFile().delete());
+
+    snapshotWriter.heartbeat();
+
+    ConfigSnapshotFile snapshotReader = new ConfigSnapshotFile(snapshotWriter.getFile());
+    assertEquals("someValue", snapshotReader.readIfChanged(-1).getProperties().getProperty("someKey"));
+  }
+
+  private ConfigSnapshotConfigRepository createRepository() {
+    return new ConfigSnapshotConfigRepository(someNamespace) {
+      @Override
+      ConfigRepository createFallbackRepository(String namespace) {
+        fallbackRepository.created = true;
+        return fallbackRepository;
+      }
+    };
+  }
+
+  private Properties someProperties(String key, String value) {
+    Properties properties = new Properties();
+    properties.setProperty(key, value);
+    return properties;
+  }
+
+  private static class MockConfigRepository extends AbstractConfigRepository {
+    private volatile Properties properties;
+    private volatile boolean created;
+    private volatile boolean closed;
+    private final AtomicInteger loads = new AtomicInteger();
+
+    @Override
+    protected void sync() {
+    }
+
+    @Override
+    public Properties getConfig() {
+      loads.incrementAndGet();
+      if (properties == null) {
+        throw new ApolloConfigException("Config service not available");
+      }
+      return properties;
+    }
+
+    @Override
+    public void setUpstreamRepository(ConfigRepository upstreamConfigRepository) {
+    }
+
+    @Override
+    public ConfigSourceType getSourceType() {
+      return properties == null ? ConfigSourceType.NONE : ConfigSourceType.REMOTE;
+    }
+
+    @Override
+    void close() {
+      closed = true;
+    }
+  }
+
+  public static class MockConfigUtil extends ConfigUtil {
+    private String cacheDir;
+    private volatile long staleTime;
+
+    @Override
+    public String getAppId() {
+      return "someAppId";
+    }
+
+    @Override
+    public String getCluster() {
+      return "someCluster";
+    }
+
+    @Override
+    public String getDefaultLocalCacheDir() {
+      return cacheDir;
+    }
+
+    @Override
+    public long getConfigSnapshotPollIntervalInMills() {
+      return 10;
+    }
+
+    @Override
+    public long getConfigSnapshotStaleTimeInMills() {
+      return staleTime;
+    }
+  }
+}
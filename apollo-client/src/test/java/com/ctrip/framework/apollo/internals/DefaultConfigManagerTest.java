@@ -2,16 +2,27 @@ package com.ctrip.framework.apollo.internals;
 
 import static org.hamcrest.core.IsEqual.equalTo;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.mock;
 
 import com.ctrip.framework.apollo.enums.ConfigSourceType;
+import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
 
 import com.ctrip.framework.apollo.Config;
 import com.ctrip.framework.apollo.ConfigFile;
@@ -27,6 +38,9 @@ import com.ctrip.framework.apollo.util.ConfigUtil;
 public class DefaultConfigManagerTest {
   private DefaultConfigManager defaultConfigManager;
   private static String someConfigContent;
+  private static CountDownLatch someCreationStarted;
+  private static CountDownLatch someCreationLatch;
+  private static volatile boolean someCreationReleased;
 
   @Before
   public void setUp() throws Exception {
@@ -64,6 +78,37 @@ public class DefaultConfigManagerTest {
         config, equalTo(anotherConfig));
   }
 
+  @Test
+  public void testGetConfigWithDifferentNamespacesConcurrently() throws Exception {
+    final String someBlockingNamespace = "blockingName";
+    String anotherNamespace = "anotherName";
+    someCreationStarted = new CountDownLatch(1);
+    someCreationLatch = new CountDownLatch(1);
+    someCreationReleased = false;
+
+    ExecutorService executorService = Executors.newSingleThreadExecutor();
+    try {
+      Future<Config> future = executorService.submit(new Callable<Config>() {
+        @Override
+        public Config call() throws Exception {
+          return defaultConfigManager.getConfig(someBlockingNamespace);
+        }
+      });
+
+      assertTrue(someCreationStarted.await(5, TimeUnit.SECONDS));
+      //would be blocked until the blocking namespace's creation timed out if locked globally
+      Config anotherConfig = defaultConfigManager.getConfig(anotherNamespace);
+      someCreationLatch.countDown();
+
+      assertEquals(anotherNamespace + ":someKey", anotherConfig.getProperty("someKey", null));
+      assertEquals(someBlockingNamespace + ":someKey",
+          future.get(5, TimeUnit.SECONDS).getProperty("someKey", null));
+      assertTrue(someCreationReleased);
+    } finally {
+      executorService.shutdownNow();
+    }
+  }
+
   @Test
   public void testGetConfigFile() throws Exception {
     String someNamespace = "someName";
@@ -92,6 +137,91 @@ public class DefaultConfigManagerTest {
 
   }
 
+  @Test
+  public void testReleaseConfig() throws Exception {
+    String someNamespace = "someName";
+    Config config = defaultConfigManager.acquireConfig(someNamespace);
+    Config anotherConfig = defaultConfigManager.acquireConfig(someNamespace);
+
+    defaultConfigManager.releaseConfig(someNamespace);
+
+    assertSame(config, defaultConfigManager.acquireConfig(someNamespace));
+
+    defaultConfigManager.releaseConfig(someNamespace);
+    defaultConfigManager.releaseConfig(someNamespace);
+    defaultConfigManager.releaseConfig(someNamespace);
+
+    Config yetAnotherConfig = defaultConfigManager.acquireConfig(someNamespace);
+
+    assertSame(config, anotherConfig);
+    assertNotSame(config, yetAnotherConfig);
+  }
+
+  @Test
+  public void testReleaseConfigGotWithoutAcquisition() throws Exception {
+    String someNamespace = "someName";
+    Config config = defaultConfigManager.acquireConfig(someNamespace);
+    Config anotherConfig = defaultConfigManager.getConfig(someNamespace);
+
+    defaultConfigManager.releaseConfig(someNamespace);
+
+    assertSame(config, anotherConfig);
+    assertSame(config, defaultConfigManager.getConfig(someNamespace));
+    assertSame(config, defaultConfigManager.acquireConfig(someNamespace));
+  }
+
+  @Test
+  public void testReleaseConfigNotAcquired() throws Exception {
+    String someNamespace = "someName";
+
+    defaultConfigManager.releaseConfig(someNamespace);
+
+    Config config = defaultConfigManager.getConfig(someNamespace);
+
+    assertEquals(someNamespace + ":someKey", config.getProperty("someKey", null));
+  }
+
+  @Test
+  public void testLocksRemovedWithConfigsReleased() throws Exception {
+    String someNamespace = "someName";
+    ConfigFileFormat someConfigFileFormat = ConfigFileFormat.Properties;
+    Map<?, ?> configLocks =
+        (Map<?, ?>) ReflectionTestUtils.getField(defaultConfigManager, "m_configLocks");
+    Map<?, ?> configFileLocks =
+        (Map<?, ?>) ReflectionTestUtils.getField(defaultConfigManager, "m_configFileLocks");
+
+    defaultConfigManager.acquireConfig(someNamespace);
+    defaultConfigManager.acquireConfigFile(someNamespace, someConfigFileFormat);
+    defaultConfigManager.releaseConfig(someNamespace);
+    defaultConfigManager.releaseConfigFile(someNamespace, someConfigFileFormat);
+    defaultConfigManager.releaseConfig("anotherName");
+
+    assertTrue(configLocks.isEmpty());
+    assertTrue(configFileLocks.isEmpty());
+
+    Config config = defaultConfigManager.acquireConfig(someNamespace);
+
+    assertSame(config, defaultConfigManager.acquireConfig(someNamespace));
+    assertEquals(1, configLocks.size());
+  }
+
+  @Test
+  public void testReleaseConfigFile() throws Exception {
+    String someNamespace = "someName";
+    ConfigFileFormat someConfigFileFormat = ConfigFileFormat.Properties;
+
+    ConfigFile someConfigFile =
+        defaultConfigManager.acquireConfigFile(someNamespace, someConfigFileFormat);
+
+    defaultConfigManager.releaseConfigFile(someNamespace, someConfigFileFormat);
+
+    ConfigFile anotherConfigFile =
+        defaultConfigManager.acquireConfigFile(someNamespace, someConfigFileFormat);
+
+    assertNotSame(someConfigFile, anotherConfigFile);
+    assertEquals(someConfigContent, anotherConfigFile.getContent());
+  }
+
   public static class MockConfigFactoryManager implements ConfigFactoryManager {
 
     @Override
@@ -99,6 +229,14 @@ public class DefaultConfigManagerTest {
       return new ConfigFactory() {
         @Override
         public Config create(final String namespace) {
+          if (namespace.startsWith("blocking")) {
+            someCreationStarted.countDown();
+            try {
+              someCreationReleased = someCreationLatch.await(2, TimeUnit.SECONDS);
+            } catch (InterruptedException ex) {
+              Thread.currentThread().interrupt();
+            }
+          }
           return new AbstractConfig() {
             @Override
             public String getProperty(String key, String defaultValue) {
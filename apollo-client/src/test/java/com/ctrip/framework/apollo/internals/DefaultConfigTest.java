@@ -18,6 +18,7 @@ import java.io.File;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.Map;
+import java.util.Locale;
 import java.util.Properties;
 import java.util.Set;
 import java.util.Collections;
@@ -143,6 +144,61 @@ public class DefaultConfigTest {
     assertEquals(someSourceType, defaultConfig.getSourceType());
   }
 
+  @Test
+  public void testGetPropertyWithPrecomputedPropertyView() throws Exception {
+    String someKey = "someKey";
+    String someSystemPropertyValue = "system-property-value";
+    String anotherSystemPropertyValue = "another-system-property-value";
+
+    String anotherKey = "anotherKey";
+    String someLocalFileValue = "local-file-value";
+    String anotherLocalFileValue = "another-local-file-value";
+
+    String lastKey = "lastKey";
+    String someResourceValue = "resource-value";
+
+    MockInjector.setInstance(ConfigUtil.class, new MockConfigUtilWithPrecomputedPropertyView());
+
+    //set up system property
+    System.setProperty(someKey, someSystemPropertyValue);
+
+    //set up config repo
+    someProperties = new Properties();
+    someProperties.setProperty(someKey, someLocalFileValue);
+    someProperties.setProperty(anotherKey, someLocalFileValue);
+    when(configRepository.getConfig()).thenReturn(someProperties);
+
+    //set up resource file
+    File resourceFile = new File(someResourceDir, someNamespace + ".properties");
+    Files.write(anotherKey + "=" + someResourceValue, resourceFile, Charsets.UTF_8);
+    Files.append(System.getProperty("line.separator"), resourceFile, Charsets.UTF_8);
+    Files.append(lastKey + "=" + someResourceValue, resourceFile, Charsets.UTF_8);
+
+    DefaultConfig defaultConfig =
+        new DefaultConfig(someNamespace, configRepository);
+
+    try {
+      assertEquals(someSystemPropertyValue, defaultConfig.getProperty(someKey, null));
+      assertEquals(someLocalFileValue, defaultConfig.getProperty(anotherKey, null));
+      assertEquals(someResourceValue, defaultConfig.getProperty(lastKey, null));
+      assertEquals("default", defaultConfig.getProperty("unknownKey", "default"));
+
+      //system properties changed at runtime are only visible after refresh
+      System.setProperty(someKey, anotherSystemPropertyValue);
+      assertEquals(someSystemPropertyValue, defaultConfig.getProperty(someKey, null));
+      defaultConfig.refreshPropertyView();
+      assertEquals(anotherSystemPropertyValue, defaultConfig.getProperty(someKey, null));
+
+      //the view is rebuilt when configs change
+      Properties anotherProperties = new Properties();
+      anotherProperties.setProperty(anotherKey, anotherLocalFileValue);
+      defaultConfig.onRepositoryChange(someNamespace, anotherProperties);
+      assertEquals(anotherLocalFileValue, defaultConfig.getProperty(anotherKey, null));
+    } finally {
+      System.clearProperty(someKey);
+    }
+  }
+
   @Test
   public void testGetIntProperty() throws Exception {
     String someStringKey = "someStringKey";
@@ -188,6 +244,34 @@ public class DefaultConfigTest {
     verify(someProperties, times(1)).getProperty(someKey);
   }
 
+  @Test
+  public void testGetEnumAndFormattedDatePropertyMultipleTimesWithCache() throws Exception {
+    String someEnumKey = "someEnumKey";
+    String someDateKey = "someDateKey";
+    String someDateFormat = "yyyy-MM-dd";
+
+    //set up config repo
+    someProperties = mock(Properties.class);
+    when(someProperties.getProperty(someEnumKey)).thenReturn(SomeEnum.someValue.name());
+    when(someProperties.getProperty(someDateKey)).thenReturn("2016-09-28");
+    when(configRepository.getConfig()).thenReturn(someProperties);
+
+    DefaultConfig defaultConfig =
+        new DefaultConfig(someNamespace, configRepository);
+
+    for (int i = 0; i < 3; i++) {
+      assertEquals(SomeEnum.someValue,
+          defaultConfig.getEnumProperty(someEnumKey, SomeEnum.class, SomeEnum.defaultValue));
+      assertEquals(assembleDate(2016, 9, 28, 0, 0, 0, 0),
+          defaultConfig.getDateProperty(someDateKey, someDateFormat, null));
+      assertEquals(assembleDate(2016, 9, 28, 0, 0, 0, 0),
+          defaultConfig.getDateProperty(someDateKey, someDateFormat, Locale.US, null));
+    }
+
+    verify(someProperties, times(1)).getProperty(someEnumKey);
+    verify(someProperties, times(2)).getProperty(someDateKey);
+  }
+
   @Test
   public void testGetIntPropertyMultipleTimesWithPropertyChanges() throws Exception {
     String someKey = "someKey";
@@ -945,6 +1029,13 @@ public class DefaultConfigTest {
     }
   }
 
+  public static class MockConfigUtilWithPrecomputedPropertyView extends MockConfigUtil {
+    @Override
+    public boolean isPrecomputedPropertyViewEnabled() {
+      return true;
+    }
+  }
+
   public static class MockConfigUtilWithSmallCache extends MockConfigUtil {
     @Override
     public long getMaxConfigCacheSize() {
@@ -0,0 +1,91 @@
+package com.ctrip.framework.apollo.internals;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class LocalConfigCacheWriterTest {
+  private File someBaseDir;
+  private File someFile;
+  private LocalConfigCacheWriter cacheWriter;
+
+  @Before
+  public void setUp() throws Exception {
+    someBaseDir = new File("src/test/resources/config-cache-writer");
+    someBaseDir.mkdir();
+    someFile = new File(someBaseDir, "someApp+someCluster+someNamespace.properties");
+    cacheWriter = new LocalConfigCacheWriter();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    File[] files = someBaseDir.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        file.delete();
+      }
+    }
+    someBaseDir.delete();
+  }
+
+  @Test
+  public void testWriteAndFlush() throws Exception {
+    Properties someProperties = assembleProperties("someValue");
+
+    cacheWriter.write(someFile, someProperties);
+    cacheWriter.flush(someFile);
+
+    assertEquals(someProperties, load(someFile));
+    //no temp file left
+    assertEquals(1, someBaseDir.listFiles().length);
+  }
+
+  @Test
+  public void testWriteCoalesced() throws Exception {
+    cacheWriter.write(someFile, assembleProperties("someValue"));
+    cacheWriter.write(someFile, assembleProperties("anotherValue"));
+    cacheWriter.flush(someFile);
+
+    assertEquals(assembleProperties("anotherValue"), load(someFile));
+  }
+
+  @Test
+  public void testSkipUnchangedContent() throws Exception {
+    cacheWriter.write(someFile, assembleProperties("someValue"));
+    cacheWriter.flush(someFile);
+    long someLastModified = someFile.lastModified() - 10000;
+    assertTrue(someFile.setLastModified(someLastModified));
+
+    cacheWriter.write(someFile, assembleProperties("someValue"));
+    cacheWriter.flush(someFile);
+
+    assertEquals(someLastModified, someFile.lastModified());
+
+    cacheWriter.write(someFile, assembleProperties("anotherValue"));
+    cacheWriter.flush(someFile);
+
+    assertEquals(assembleProperties("anotherValue"), load(someFile));
+  }
+
+  private Properties assembleProperties(String value) {
+    Properties properties = new Properties();
+    properties.setProperty("someKey", value);
+    return properties;
+  }
+
+  private Properties load(File file) throws IOException {
+    Properties properties = new Properties();
+    try (InputStream in = new FileInputStream(file)) {
+      properties.load(in);
+    }
+    return properties;
+  }
+}
@@ -3,6 +3,7 @@ package com.ctrip.framework.apollo.internals;
 import static org.hamcrest.core.IsEqual.equalTo;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
@@ -15,6 +16,8 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.After;
 import org.junit.Before;
@@ -195,6 +198,103 @@ public class LocalFileConfigRepositoryTest {
     assertEquals(anotherSourceType, localFileConfigRepository.getSourceType());
   }
 
+  @Test
+  public void testOfflineFirstStartup() throws Exception {
+    MockInjector.setInstance(ConfigUtil.class, new OfflineFirstConfigUtil(0));
+    String someLocalValue = "someLocalValue";
+    Properties localProperties = new Properties();
+    localProperties.setProperty(defaultKey, someLocalValue);
+    createLocalCachePropertyFile(localProperties);
+
+    final CountDownLatch upstreamReleased = new CountDownLatch(1);
+    when(upstreamRepo.getConfig()).thenAnswer(new Answer<Properties>() {
+      @Override
+      public Properties answer(InvocationOnMock invocation) throws Throwable {
+        upstreamReleased.await(5, TimeUnit.SECONDS);
+        return someProperties;
+      }
+    });
+
+    LocalFileConfigRepository localRepo = new LocalFileConfigRepository(someNamespace, upstreamRepo);
+
+    //served from the local cache without waiting for the upstream
+    assertEquals(someLocalValue, localRepo.getConfig().getProperty(defaultKey));
+    assertEquals(ConfigSourceType.LOCAL, localRepo.getSourceType());
+    verify(upstreamRepo, times(1)).addChangeListener(localRepo);
+
+    MockRepositoryChangeListener someListener = new MockRepositoryChangeListener();
+    localRepo.addChangeListener(someListener);
+    upstreamReleased.countDown();
+
+    assertTrue(someListener.changed.await(5, TimeUnit.SECONDS));
+    assertEquals(someProperties, someListener.newProperties);
+    assertEquals(defaultValue, localRepo.getConfig().getProperty(defaultKey));
+    assertEquals(someSourceType, localRepo.getSourceType());
+  }
+
+  @Test
+  public void testOfflineFirstStartupWaitForFreshConfig() throws Exception {
+    MockInjector.setInstance(ConfigUtil.class, new OfflineFirstConfigUtil(5000));
+    Properties localProperties = new Properties();
+    localProperties.setProperty(defaultKey, "someLocalValue");
+    createLocalCachePropertyFile(localProperties);
+
+    LocalFileConfigRepository localRepo = new LocalFileConfigRepository(someNamespace, upstreamRepo);
+    MockRepositoryChangeListener someListener = new MockRepositoryChangeListener();
+    localRepo.addChangeListener(someListener);
+
+    //the fresh config is loaded before the listener registration returns
+    assertEquals(0, someListener.changed.getCount());
+    assertEquals(defaultValue, localRepo.getConfig().getProperty(defaultKey));
+    assertEquals(someSourceType, localRepo.getSourceType());
+  }
+
+  @Test
+  public void testOfflineFirstStartupWithNoLocalFile() throws Exception {
+    MockInjector.setInstance(ConfigUtil.class, new OfflineFirstConfigUtil(0));
+
+    LocalFileConfigRepository localRepo = new LocalFileConfigRepository(someNamespace, upstreamRepo);
+
+    //nothing to serve, so the upstream is synced immediately
+    assertEquals(defaultValue, localRepo.getConfig().getProperty(defaultKey));
+    assertEquals(someSourceType, localRepo.getSourceType());
+  }
+
+  private static class MockRepositoryChangeListener implements RepositoryChangeListener {
+    private final CountDownLatch changed = new CountDownLatch(1);
+    private volatile Properties newProperties;
+
+    @Override
+    public void onRepositoryChange(String namespace, Properties newProperties) {
+      this.newProperties = newProperties;
+      changed.countDown();
+    }
+  }
+
+  private static class OfflineFirstConfigUtil extends MockConfigUtil {
+    private final long waitInMills;
+
+    OfflineFirstConfigUtil(long waitInMills) {
+      this.waitInMills = waitInMills;
+    }
+
+    @Override
+    public String getDefaultLocalCacheDir() {
+      //the config-cache under it is the base dir
+      return "src/test/resources";
+    }
+
+    @Override
+    public boolean isOfflineFirstStartupEnabled() {
+      return true;
+    }
+
+    @Override
+    public long getOfflineFirstStartupWaitInMills() {
+      return waitInMills;
+    }
+  }
+
   public static class MockConfigUtil extends ConfigUtil {
     @Override
     public String getAppId() {
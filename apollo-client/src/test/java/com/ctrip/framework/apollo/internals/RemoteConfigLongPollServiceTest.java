@@ -1,6 +1,7 @@
 package com.ctrip.framework.apollo.internals;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
@@ -13,6 +14,7 @@ import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import com.ctrip.framework.apollo.build.MockInjector;
+import com.ctrip.framework.apollo.core.ConfigConsts;
 import com.ctrip.framework.apollo.core.dto.ApolloConfigNotification;
 import com.ctrip.framework.apollo.core.dto.ApolloNotificationMessages;
 import com.ctrip.framework.apollo.core.dto.ServiceDTO;
@@ -22,10 +24,12 @@ import com.ctrip.framework.apollo.util.http.HttpRequest;
 import com.ctrip.framework.apollo.util.http.HttpResponse;
 import com.ctrip.framework.apollo.util.http.HttpUtil;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Lists;
 import com.google.common.net.HttpHeaders;
 import com.google.common.util.concurrent.SettableFuture;
 import java.lang.reflect.Type;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
@@ -476,6 +480,105 @@ public class RemoteConfigLongPollServiceTest {
     assertEquals(anotherNotificationId, captured.get(anotherKey).longValue());
   }
 
+  @Test
+  public void testUpdateLongPollingReadTimeout() throws Exception {
+    int defaultReadTimeout = remoteConfigLongPollService.getLongPollingReadTimeout();
+    long someAdvertisedTimeout = 80000;
+    Map<String, List<String>> headers = Maps.newHashMap();
+    headers.put(ConfigConsts.LONG_POLLING_TIMEOUT_HEADER.toLowerCase(),
+        Collections.singletonList(String.valueOf(someAdvertisedTimeout)));
+
+    remoteConfigLongPollService.updateLongPollingReadTimeout(
+        new HttpResponse<>(HttpServletResponse.SC_NOT_MODIFIED, null, headers));
+
+    int readTimeout = remoteConfigLongPollService.getLongPollingReadTimeout();
+    assertTrue(readTimeout > someAdvertisedTimeout);
+    assertTrue(readTimeout != defaultReadTimeout);
+
+    headers.put(ConfigConsts.LONG_POLLING_TIMEOUT_HEADER.toLowerCase(),
+        Collections.singletonList("someInvalidValue"));
+
+    remoteConfigLongPollService.updateLongPollingReadTimeout(
+        new HttpResponse<>(HttpServletResponse.SC_NOT_MODIFIED, null, headers));
+
+    assertEquals(defaultReadTimeout, remoteConfigLongPollService.getLongPollingReadTimeout());
+
+    remoteConfigLongPollService.updateLongPollingReadTimeout(
+        new HttpResponse<>(HttpServletResponse.SC_NOT_MODIFIED, null));
+
+    assertEquals(defaultReadTimeout, remoteConfigLongPollService.getLongPollingReadTimeout());
+  }
+
+  @Test
+  public void testSubmitLongPollNamespaceWithSession() throws Exception {
+    RemoteConfigRepository someRepository = mock(RemoteConfigRepository.class);
+    final String someNamespace = "someNamespace";
+    final String someToken = "someToken";
+    Map<String, List<String>> headers = Maps.newHashMap();
+    headers.put(ConfigConsts.LONG_POLLING_SESSION_HEADER, Collections.singletonList(someToken));
+    final HttpResponse<List<ApolloConfigNotification>> sessionResponse =
+        new HttpResponse<>(HttpServletResponse.SC_NOT_MODIFIED, null, headers);
+    final List<String> urls = Lists.newCopyOnWriteArrayList();
+    final SettableFuture<Boolean> longPollFinished = SettableFuture.create();
+
+    doAnswer(new Answer<HttpResponse<List<ApolloConfigNotification>>>() {
+      @Override
+      public HttpResponse<List<ApolloConfigNotification>> answer(InvocationOnMock invocation)
+          throws Throwable {
+        try {
+          TimeUnit.MILLISECONDS.sleep(50);
+        } catch (InterruptedException e) {
+        }
+        HttpRequest request = invocation.getArgumentAt(0, HttpRequest.class);
+        urls.add(request.getUrl());
+        if (urls.size() == 2) {
+          longPollFinished.set(true);
+        }
+        return sessionResponse;
+      }
+    }).when(httpUtil).doGet(any(HttpRequest.class), eq(responseType));
+
+    remoteConfigLongPollService.submit(someNamespace, someRepository);
+
+    longPollFinished.get(5000, TimeUnit.MILLISECONDS);
+
+    remoteConfigLongPollService.stopLongPollingRefresh();
+
+    //register the namespaces first
+    assertTrue(urls.get(0).contains(someServerUrl + "/notifications/v2?"));
+    assertTrue(urls.get(0).contains("session=true"));
+    assertTrue(urls.get(0).contains(someNamespace));
+
+    //then only the session token as nothing changed
+    assertTrue(urls.get(1).contains(someServerUrl + "/notifications/v2/session?"));
+    assertTrue(urls.get(1).contains("session=" + someToken));
+    assertFalse(urls.get(1).contains("notifications="));
+  }
+
+  @Test
+  public void testAssembleLongPollSessionUrl() throws Exception {
+    String someToken = "someToken";
+    String someNamespace = "someName";
+    String anotherNamespace = "anotherName";
+    long someNotificationId = 1;
+    long anotherNotificationId = 2;
+    Map<String, Long> notificationsMap =
+        ImmutableMap.of(someNamespace, someNotificationId, anotherNamespace, anotherNotificationId);
+    Map<String, Long> sessionNotificationsMap =
+        ImmutableMap.of(someNamespace, someNotificationId, anotherNamespace, anotherNotificationId - 1);
+
+    String longPollSessionUrl = remoteConfigLongPollService
+        .assembleLongPollSessionUrl(someServerUrl, someAppId, someToken, notificationsMap,
+            sessionNotificationsMap);
+
+    assertTrue(longPollSessionUrl.contains(someServerUrl + "/notifications/v2/session?"));
+    assertTrue(longPollSessionUrl.contains("appId=" + someAppId));
+    assertTrue(longPollSessionUrl.contains("session=" + someToken));
+    assertTrue(longPollSessionUrl.contains(
+        "notifications=%5B%7B%22namespaceName%22%3A%22" + anotherNamespace
+            + "%22%2C%22notificationId%22%3A" + anotherNotificationId + "%7D%5D"));
+  }
+
   @Test
   public void testAssembleLongPollRefreshUrl() throws Exception {
     String someUri = someServerUrl;
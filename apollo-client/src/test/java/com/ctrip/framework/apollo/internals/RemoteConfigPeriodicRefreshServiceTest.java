@@ -0,0 +1,175 @@
+package com.ctrip.framework.apollo.internals;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.ctrip.framework.apollo.build.MockInjector;
+import com.ctrip.framework.apollo.core.dto.ServiceDTO;
+import com.ctrip.framework.apollo.exceptions.ApolloConfigException;
+import com.ctrip.framework.apollo.exceptions.ApolloConfigStatusCodeException;
+import com.ctrip.framework.apollo.util.ConfigUtil;
+import com.ctrip.framework.apollo.util.http.HttpRequest;
+import com.ctrip.framework.apollo.util.http.HttpResponse;
+import com.ctrip.framework.apollo.util.http.HttpUtil;
+import com.google.common.collect.Lists;
+import java.lang.reflect.Type;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+@RunWith(MockitoJUnitRunner.class)
+public class RemoteConfigPeriodicRefreshServiceTest {
+  private RemoteConfigPeriodicRefreshService periodicRefreshService;
+  @Mock
+  private HttpResponse<List<String>> verifyResponse;
+  @Mock
+  private HttpUtil httpUtil;
+  @Mock
+  private ConfigServiceLocator configServiceLocator;
+  private String someServerUrl;
+  private String someNamespace;
+  private String anotherNamespace;
+  private String yetAnotherNamespace;
+  private RemoteConfigRepository someRepository;
+  private RemoteConfigRepository anotherRepository;
+  private RemoteConfigRepository yetAnotherRepository;
+
+  @Before
+  public void setUp() throws Exception {
+    MockInjector.setInstance(HttpUtil.class, httpUtil);
+
+    someServerUrl = "http://someServer";
+    ServiceDTO serviceDTO = new ServiceDTO();
+    serviceDTO.setHomepageUrl(someServerUrl);
+    when(configServiceLocator.getConfigServices()).thenReturn(Lists.newArrayList(serviceDTO));
+    MockInjector.setInstance(ConfigServiceLocator.class, configServiceLocator);
+    MockInjector.setInstance(ConfigUtil.class, new MockConfigUtil());
+
+    periodicRefreshService = new RemoteConfigPeriodicRefreshService();
+
+    someNamespace = "someNamespace";
+    anotherNamespace = "anotherNamespace";
+    yetAnotherNamespace = "yetAnotherNamespace";
+    someRepository = mockRepository(someNamespace, "someReleaseKey");
+    anotherRepository = mockRepository(anotherNamespace, "anotherReleaseKey");
+    //not loaded yet
+    yetAnotherRepository = mockRepository(yetAnotherNamespace, null);
+
+    periodicRefreshService.submit(someNamespace, someRepository);
+    periodicRefreshService.submit(anotherNamespace, anotherRepository);
+    periodicRefreshService.submit(yetAnotherNamespace, yetAnotherRepository);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    MockInjector.reset();
+  }
+
+  @Test
+  public void testRefreshStaleNamespaces() throws Exception {
+    when(verifyResponse.getStatusCode()).thenReturn(200);
+    when(verifyResponse.getBody()).thenReturn(Lists.newArrayList(someNamespace));
+    when(httpUtil.<List<String>>doPost(any(HttpRequest.class), any(Type.class)))
+        .thenReturn(verifyResponse);
+
+    periodicRefreshService.refresh();
+
+    ArgumentCaptor<HttpRequest> requestCaptor = ArgumentCaptor.forClass(HttpRequest.class);
+    verify(httpUtil, times(1)).doPost(requestCaptor.capture(), any(Type.class));
+    verify(httpUtil, never()).doGet(any(HttpRequest.class), any(Type.class));
+    HttpRequest request = requestCaptor.getValue();
+    assertTrue(request.getUrl().startsWith(someServerUrl + "/configs/someAppId/someCluster"));
+    assertFalse(request.getUrl().contains("releaseKeys"));
+    assertTrue(request.getBody().contains(someNamespace));
+    assertTrue(request.getBody().contains(anotherNamespace));
+    assertFalse(request.getBody().contains(yetAnotherNamespace));
+
+    verify(someRepository, times(1)).scheduleSync();
+    verify(anotherRepository, never()).scheduleSync();
+    verify(yetAnotherRepository, times(1)).scheduleSync();
+  }
+
+  @Test
+  public void testVerifyWithAnotherConfigServiceWhenFailed() throws Exception {
+    ServiceDTO someService = new ServiceDTO();
+    someService.setHomepageUrl(someServerUrl);
+    ServiceDTO anotherService = new ServiceDTO();
+    anotherService.setHomepageUrl("http://anotherServer");
+    when(configServiceLocator.getConfigServices())
+        .thenReturn(Lists.newArrayList(someService, anotherService));
+    when(verifyResponse.getStatusCode()).thenReturn(200);
+    when(verifyResponse.getBody()).thenReturn(Lists.newArrayList(someNamespace));
+    when(httpUtil.<List<String>>doPost(any(HttpRequest.class), any(Type.class)))
+        .thenThrow(new ApolloConfigException("some exception"))
+        .thenReturn(verifyResponse);
+
+    periodicRefreshService.refresh();
+
+    ArgumentCaptor<HttpRequest> requestCaptor = ArgumentCaptor.forClass(HttpRequest.class);
+    verify(httpUtil, times(2)).doPost(requestCaptor.capture(), any(Type.class));
+    assertNotEquals(requestCaptor.getAllValues().get(0).getUrl(),
+        requestCaptor.getAllValues().get(1).getUrl());
+
+    verify(someRepository, times(1)).scheduleSync();
+    verify(anotherRepository, never()).scheduleSync();
+    verify(yetAnotherRepository, times(1)).scheduleSync();
+  }
+
+  @Test
+  public void testRefreshAllNamespacesWhenVerifyFailed() throws Exception {
+    when(httpUtil.<List<String>>doPost(any(HttpRequest.class), any(Type.class)))
+        .thenThrow(new ApolloConfigStatusCodeException(404, "not supported"));
+
+    periodicRefreshService.refresh();
+
+    verify(someRepository, times(1)).scheduleSync();
+    verify(anotherRepository, times(1)).scheduleSync();
+    verify(yetAnotherRepository, times(1)).scheduleSync();
+  }
+
+  @Test
+  public void testAssembleVerifyReleaseKeysUrl() throws Exception {
+    String url = periodicRefreshService.assembleVerifyReleaseKeysUrl(someServerUrl + "/",
+        "someAppId", "someCluster", "someDC");
+
+    assertTrue(url.startsWith(someServerUrl + "/configs/someAppId/someCluster?"));
+    assertTrue(url.contains("dataCenter=someDC"));
+    assertFalse(url.contains("releaseKeys"));
+  }
+
+  private RemoteConfigRepository mockRepository(String namespace, String releaseKey) {
+    RemoteConfigRepository repository = mock(RemoteConfigRepository.class);
+    when(repository.getNamespace()).thenReturn(namespace);
+    when(repository.getReleaseKey()).thenReturn(releaseKey);
+    return repository;
+  }
+
+  public static class MockConfigUtil extends ConfigUtil {
+    @Override
+    public String getAppId() {
+      return "someAppId";
+    }
+
+    @Override
+    public String getCluster() {
+      return "someCluster";
+    }
+
+    @Override
+    public String getDataCenter() {
+      return null;
+    }
+  }
+}
@@ -40,7 +40,9 @@ import java.lang.reflect.Type;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import javax.servlet.http.HttpServletResponse;
 import org.junit.After;
 import org.junit.Before;
@@ -311,6 +313,45 @@ public class RemoteConfigRepositoryTest {
     assertTrue(request.getUrl().contains("messages=%7B%22details%22%3A%7B%22someKey%22%3A1%7D%7D"));
   }
 
+  @Test
+  public void testScheduleSyncCoalesced() throws Exception {
+    ApolloConfig someApolloConfig = assembleApolloConfig(ImmutableMap.of("someKey", "someValue"));
+    when(someResponse.getStatusCode()).thenReturn(200);
+    when(someResponse.getBody()).thenReturn(someApolloConfig);
+
+    RemoteConfigRepository remoteConfigRepository = new RemoteConfigRepository(someNamespace);
+    remoteConfigLongPollService.stopLongPollingRefresh();
+
+    final CountDownLatch syncStarted = new CountDownLatch(1);
+    final CountDownLatch syncReleased = new CountDownLatch(1);
+    final AtomicInteger syncCount = new AtomicInteger();
+    doAnswer(new Answer<HttpResponse<ApolloConfig>>() {
+      @Override
+      public HttpResponse<ApolloConfig> answer(InvocationOnMock invocation) throws Throwable {
+        syncCount.incrementAndGet();
+        syncStarted.countDown();
+        syncReleased.await(5, TimeUnit.SECONDS);
+        return someResponse;
+      }
+    }).when(httpUtil).doGet(any(HttpRequest.class), eq(ApolloConfig.class));
+
+    remoteConfigRepository.scheduleSync();
+    assertTrue(syncStarted.await(5, TimeUnit.SECONDS));
+    //requested while the first one is running
+    for (int i = 0; i < 10; i++) {
+      remoteConfigRepository.scheduleSync();
+    }
+    syncReleased.countDown();
+
+    long deadline = System.currentTimeMillis() + 5000;
+    while (syncCount.get() < 2 && System.currentTimeMillis() < deadline) {
+      TimeUnit.MILLISECONDS.sleep(10);
+    }
+    TimeUnit.MILLISECONDS.sleep(100);
+
+    assertEquals(2, syncCount.get());
+  }
+
   @Test
   public void testAssembleQueryConfigUrl() throws Exception {
     Gson gson = new Gson();
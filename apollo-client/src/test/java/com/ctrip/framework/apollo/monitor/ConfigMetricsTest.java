@@ -0,0 +1,87 @@
+package com.ctrip.framework.apollo.monitor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.ctrip.framework.apollo.build.MockInjector;
+import com.ctrip.framework.apollo.util.ConfigUtil;
+import java.lang.management.ManagementFactory;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ConfigMetricsTest {
+  private String someNamespace;
+  private ConfigMetrics configMetrics;
+
+  @Before
+  public void setUp() throws Exception {
+    someNamespace = "someNamespace";
+    MockInjector.setInstance(ConfigUtil.class, new ConfigUtil());
+    configMetrics = new ConfigMetrics();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    MockInjector.reset();
+  }
+
+  @Test
+  public void testCounterAndGauge() throws Exception {
+    Counter counter = configMetrics.counter(someNamespace, ConfigMetrics.CONFIG_LOAD_FAILURES);
+    counter.increment();
+    counter.add(2);
+
+    configMetrics.gauge(someNamespace, ConfigMetrics.CONFIG_SOURCE_TYPE, new Gauge<String>() {
+      @Override
+      public String getValue() {
+        return "REMOTE";
+      }
+    });
+
+    assertSame(counter, configMetrics.counter(someNamespace, ConfigMetrics.CONFIG_LOAD_FAILURES));
+    assertEquals(3, counter.getCount());
+    assertEquals("REMOTE", configMetrics.getMetrics().get(someNamespace)
+        .get(ConfigMetrics.CONFIG_SOURCE_TYPE).getValues().get("value"));
+  }
+
+  @Test
+  public void testRemove() throws Exception {
+    configMetrics.counter(someNamespace, ConfigMetrics.CONFIG_LOAD_FAILURES).increment();
+    configMetrics.counter(someNamespace, ConfigMetrics.LOCAL_CACHE_FALLBACKS).increment();
+
+    configMetrics.remove(someNamespace, ConfigMetrics.CONFIG_LOAD_FAILURES);
+
+    assertEquals(1, configMetrics.getMetrics().get(someNamespace).size());
+
+    configMetrics.remove(someNamespace, ConfigMetrics.LOCAL_CACHE_FALLBACKS);
+
+    assertFalse(configMetrics.getMetrics().containsKey(someNamespace));
+    assertEquals(0,
+        configMetrics.counter(someNamespace, ConfigMetrics.CONFIG_LOAD_FAILURES).getCount());
+  }
+
+  @Test
+  public void testJmxConfigMetricsMBean() throws Exception {
+    JmxConfigMetricsExporter.ConfigMetricsMBean mBean =
+        new JmxConfigMetricsExporter.ConfigMetricsMBean(configMetrics);
+    configMetrics.histogram(ConfigMetrics.GLOBAL, ConfigMetrics.LONG_POLL_LATENCY).record(10);
+    configMetrics.counter(someNamespace, ConfigMetrics.TYPED_VALUE_CACHE_HITS).increment();
+
+    assertEquals(1L, mBean.getAttribute("longPollLatency.count"));
+    assertEquals(10L, mBean.getAttribute("longPollLatency.max"));
+    assertEquals(1L, mBean.getAttribute("someNamespace:typedValueCacheHits.count"));
+  }
+
+  @Test
+  public void testRegisterMBean() throws Exception {
+    MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+
+    //registered by the first config metrics
+    assertTrue(mBeanServer.isRegistered(new ObjectName(JmxConfigMetricsExporter.OBJECT_NAME)));
+  }
+}
@@ -0,0 +1,32 @@
+package com.ctrip.framework.apollo.monitor;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class HistogramTest {
+
+  @Test
+  public void testRecord() throws Exception {
+    Histogram histogram = new Histogram();
+    for (int i = 1; i <= 100; i++) {
+      histogram.record(i);
+    }
+
+    assertEquals(100, histogram.getCount());
+    assertEquals(50.5, histogram.getMean(), 0.001);
+    assertEquals(100, histogram.getMax());
+    //approximated by the upper bound of the power of two bucket
+    assertEquals(63, histogram.getPercentile(50));
+    assertEquals(100, histogram.getPercentile(99));
+  }
+
+  @Test
+  public void testEmpty() throws Exception {
+    Histogram histogram = new Histogram();
+
+    assertEquals(0, histogram.getCount());
+    assertEquals(0, histogram.getMean(), 0.001);
+    assertEquals(0, histogram.getPercentile(99));
+  }
+}
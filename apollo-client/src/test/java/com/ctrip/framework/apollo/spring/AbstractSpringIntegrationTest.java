@@ -181,6 +181,39 @@ public abstract class AbstractSpringIntegrationTest {
       }
       return delegate.getConfigFile(namespace, configFileFormat);
     }
+
+    @Override
+    public Config acquireConfig(String namespace) {
+      Config config = CONFIG_REGISTRY.get(namespace);
+      if (config != null) {
+        return config;
+      }
+      return delegate.acquireConfig(namespace);
+    }
+
+    @Override
+    public ConfigFile acquireConfigFile(String namespace, ConfigFileFormat configFileFormat) {
+      ConfigFile configFile = CONFIG_FILE_REGISTRY.get(String.format("%s.%s", namespace, configFileFormat.getValue()));
+      if (configFile != null) {
+        return configFile;
+      }
+      return delegate.acquireConfigFile(namespace, configFileFormat);
+    }
+
+    @Override
+    public void releaseConfig(String namespace) {
+      delegate.releaseConfig(namespace);
+    }
+
+    @Override
+    public void releaseConfigFile(String namespace, ConfigFileFormat configFileFormat) {
+      delegate.releaseConfigFile(namespace, configFileFormat);
+    }
+
+    @Override
+    public void refreshPropertyViews() {
+      delegate.refreshPropertyViews();
+    }
   }
 
   protected static class MockConfigUtil extends ConfigUtil {
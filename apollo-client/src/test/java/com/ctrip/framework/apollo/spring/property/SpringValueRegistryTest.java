@@ -0,0 +1,66 @@
+package com.ctrip.framework.apollo.spring.property;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Mockito.mock;
+
+import java.lang.reflect.Field;
+import java.util.Collection;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.beans.factory.BeanFactory;
+
+public class SpringValueRegistryTest {
+  private SpringValueRegistry springValueRegistry;
+  private BeanFactory someBeanFactory;
+  private Field someField;
+
+  @Before
+  public void setUp() throws Exception {
+    springValueRegistry = new SpringValueRegistry();
+    someBeanFactory = mock(BeanFactory.class);
+    someField = SomeBean.class.getDeclaredField("someValue");
+  }
+
+  @Test
+  public void testRegisterAndGet() throws Exception {
+    String someKey = "someKey";
+    SpringValue someSpringValue = assembleSpringValue(someKey, new SomeBean());
+
+    springValueRegistry.register(someBeanFactory, someKey, someSpringValue);
+
+    Collection<SpringValue> springValues = springValueRegistry.get(someBeanFactory, someKey);
+    assertEquals(1, springValues.size());
+    assertEquals(someSpringValue, springValues.iterator().next());
+    assertNull(springValueRegistry.get(someBeanFactory, "anotherKey"));
+    assertNull(springValueRegistry.get(mock(BeanFactory.class), someKey));
+  }
+
+  @Test
+  public void testPurgeCollectedValues() throws Exception {
+    String someKey = "someKey";
+    SomeBean someBean = new SomeBean();
+    springValueRegistry.register(someBeanFactory, someKey, assembleSpringValue(someKey, someBean));
+    for (int i = 0; i < 10; i++) {
+      springValueRegistry.register(someBeanFactory, someKey,
+          assembleSpringValue(someKey, new SomeBean()));
+    }
+
+    for (int i = 0; i < 100 && springValueRegistry.get(someBeanFactory, someKey).size() > 1; i++) {
+      System.gc();
+      Thread.sleep(50);
+    }
+
+    Collection<SpringValue> springValues = springValueRegistry.get(someBeanFactory, someKey);
+    assertEquals(1, springValues.size());
+    assertEquals(someBean, springValues.iterator().next().getTargetBean());
+  }
+
+  private SpringValue assembleSpringValue(String key, SomeBean bean) {
+    return new SpringValue(key, "${" + key + "}", bean, "someBean", someField, false);
+  }
+
+  private static class SomeBean {
+    private String someValue;
+  }
+}
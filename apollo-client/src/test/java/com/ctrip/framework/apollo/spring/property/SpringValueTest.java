@@ -0,0 +1,58 @@
+package com.ctrip.framework.apollo.spring.property;
+
+import static org.junit.Assert.assertEquals;
+
+import java.lang.reflect.InvocationTargetException;
+import org.junit.Test;
+
+public class SpringValueTest {
+
+  @Test
+  public void testUpdateField() throws Exception {
+    SomeBean someBean = new SomeBean();
+    SpringValue intValue = new SpringValue("intKey", "${intKey}", someBean, "someBean",
+        SomeBean.class.getDeclaredField("intValue"), false);
+    SpringValue stringValue = new SpringValue("stringKey", "${stringKey}", someBean, "someBean",
+        SomeBean.class.getDeclaredField("stringValue"), false);
+
+    intValue.update(1);
+    stringValue.update("someValue");
+
+    assertEquals(1, someBean.intValue);
+    assertEquals("someValue", someBean.stringValue);
+  }
+
+  @Test
+  public void testUpdateMethod() throws Exception {
+    SomeBean someBean = new SomeBean();
+    SpringValue longValue = new SpringValue("longKey", "${longKey}", someBean, "someBean",
+        SomeBean.class.getDeclaredMethod("setLongValue", long.class), false);
+
+    longValue.update(1L);
+
+    assertEquals(1L, someBean.longValue);
+  }
+
+  @Test(expected = InvocationTargetException.class)
+  public void testUpdateMethodWithException() throws Exception {
+    SomeBean someBean = new SomeBean();
+    SpringValue longValue = new SpringValue("longKey", "${longKey}", someBean, "someBean",
+        SomeBean.class.getDeclaredMethod("setLongValue", long.class), false);
+
+    longValue.update(-1L);
+  }
+
+  private static class SomeBean {
+    private int intValue;
+    private String stringValue;
+    private long longValue;
+
+    public SomeBean setLongValue(long longValue) {
+      if (longValue < 0) {
+        throw new IllegalArgumentException("negative value");
+      }
+      this.longValue = longValue;
+      return this;
+    }
+  }
+}
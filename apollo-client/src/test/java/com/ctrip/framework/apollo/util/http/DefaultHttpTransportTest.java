@@ -0,0 +1,112 @@
+package com.ctrip.framework.apollo.util.http;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import com.ctrip.framework.apollo.BaseIntegrationTest;
+import com.ctrip.framework.apollo.core.ConfigConsts;
+import com.ctrip.framework.apollo.exceptions.ApolloConfigStatusCodeException;
+import com.google.common.collect.ImmutableMap;
+import com.google.gson.reflect.TypeToken;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.GZIPOutputStream;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.eclipse.jetty.server.handler.ContextHandler;
+import org.junit.Before;
+import org.junit.Test;
+
+public class DefaultHttpTransportTest extends BaseIntegrationTest {
+
+  private static final Type RESPONSE_TYPE = new TypeToken<Map<String, String>>() {
+  }.getType();
+  private DefaultHttpTransport httpTransport;
+  private String serverUrl;
+
+  @Override
+  @Before
+  public void setUp() throws Exception {
+    super.setUp();
+    httpTransport = new DefaultHttpTransport();
+    serverUrl = System.getProperty(ConfigConsts.APOLLO_META_KEY);
+  }
+
+  @Test
+  public void testDoGetWithGzip() throws Exception {
+    final Map<String, String> someBody = ImmutableMap.of("someKey", "someValue");
+    final AtomicReference<String> acceptEncoding = new AtomicReference<>();
+    ContextHandler handler = new ContextHandler("/gzip");
+    handler.setHandler(new AbstractHandler() {
+      @Override
+      public void handle(String target, Request baseRequest, HttpServletRequest request,
+          HttpServletResponse response) throws IOException, ServletException {
+        acceptEncoding.set(request.getHeader("Accept-Encoding"));
+        response.setContentType("application/json;charset=UTF-8");
+        response.setHeader("Content-Encoding", "gzip");
+        response.setHeader("someHeader", "someHeaderValue");
+        response.setStatus(HttpServletResponse.SC_OK);
+        try (Writer writer = new OutputStreamWriter(
+            new GZIPOutputStream(response.getOutputStream()), StandardCharsets.UTF_8)) {
+          writer.write(gson.toJson(someBody));
+        }
+        baseRequest.setHandled(true);
+      }
+    });
+    startServerWithHandlers(handler);
+
+    HttpResponse<Map<String, String>> response = httpTransport
+        .doGet(new HttpRequest(serverUrl + "/gzip"), RESPONSE_TYPE);
+
+    assertEquals("gzip", acceptEncoding.get());
+    assertEquals(200, response.getStatusCode());
+    assertEquals(someBody, response.getBody());
+    assertEquals("someHeaderValue", response.getHeader("someheader"));
+  }
+
+  @Test
+  public void testDoGetWithNotModified() throws Exception {
+    startServerWithHandlers(mockStatusHandler("/notModified",
+        HttpServletResponse.SC_NOT_MODIFIED));
+
+    HttpResponse<Map<String, String>> response = httpTransport
+        .doGet(new HttpRequest(serverUrl + "/notModified"), RESPONSE_TYPE);
+
+    assertEquals(304, response.getStatusCode());
+    assertNull(response.getBody());
+  }
+
+  @Test
+  public void testDoGetWithNotFound() throws Exception {
+    startServerWithHandlers(mockStatusHandler("/notFound", HttpServletResponse.SC_NOT_FOUND));
+
+    try {
+      httpTransport.doGet(new HttpRequest(serverUrl + "/notFound"), RESPONSE_TYPE);
+    } catch (ApolloConfigStatusCodeException ex) {
+      assertEquals(404, ex.getStatusCode());
+      return;
+    }
+    throw new AssertionError("ApolloConfigStatusCodeException expected");
+  }
+
+  private ContextHandler mockStatusHandler(String contextPath, final int statusCode) {
+    ContextHandler handler = new ContextHandler(contextPath);
+    handler.setHandler(new AbstractHandler() {
+      @Override
+      public void handle(String target, Request baseRequest, HttpServletRequest request,
+          HttpServletResponse response) throws IOException, ServletException {
+        response.setStatus(statusCode);
+        baseRequest.setHandled(true);
+      }
+    });
+    return handler;
+  }
+}
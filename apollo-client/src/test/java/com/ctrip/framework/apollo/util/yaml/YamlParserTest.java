@@ -92,6 +92,15 @@ public class YamlParserTest {
     assertEquals("k1", propertyNames[2]);
   }
 
+  @Test
+  public void testMultipleDocuments() throws Exception {
+    Properties properties = parser.yamlToProperties("k1: v1\nk2:\n  - a\n  - b\n---\nk1: v2\n");
+
+    assertEquals("v2", properties.getProperty("k1"));
+    assertEquals("a", properties.getProperty("k2[0]"));
+    assertEquals("b", properties.getProperty("k2[1]"));
+  }
+
   private void test(String caseName) throws Exception {
     String yamlContent = loadYaml(caseName);
 
@@ -0,0 +1,32 @@
+package com.ctrip.framework.apollo.common.dto;
+
+public class ReleaseMessageDTO {
+
+  private long id;
+
+  private String message;
+
+  public ReleaseMessageDTO() {
+  }
+
+  public ReleaseMessageDTO(long id, String message) {
+    this.id = id;
+    this.message = message;
+  }
+
+  public long getId() {
+    return id;
+  }
+
+  public void setId(long id) {
+    this.id = id;
+  }
+
+  public String getMessage() {
+    return message;
+  }
+
+  public void setMessage(String message) {
+    this.message = message;
+  }
+}
@@ -0,0 +1,32 @@
+package com.ctrip.framework.apollo.common.dto;
+
+import java.util.List;
+
+/**
+ * Release messages relayed from a scanning config service node to its peers
+ */
+public class ReleaseMessageRelayDTO {
+
+  /**
+   * the largest message id the sender had scanned before these messages
+   */
+  private long startId;
+
+  private List<ReleaseMessageDTO> messages;
+
+  public long getStartId() {
+    return startId;
+  }
+
+  public void setStartId(long startId) {
+    this.startId = startId;
+  }
+
+  public List<ReleaseMessageDTO> getMessages() {
+    return messages;
+  }
+
+  public void setMessages(List<ReleaseMessageDTO> messages) {
+    this.messages = messages;
+  }
+}
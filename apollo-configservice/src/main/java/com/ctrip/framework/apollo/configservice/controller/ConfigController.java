@@ -1,6 +1,7 @@
 package com.ctrip.framework.apollo.configservice.controller;
 
 import com.ctrip.framework.apollo.biz.entity.Release;
+import com.ctrip.framework.apollo.common.exception.BadRequestException;
 import com.ctrip.framework.apollo.common.entity.AppNamespace;
 import com.ctrip.framework.apollo.configservice.service.AppNamespaceServiceWithCache;
 import com.ctrip.framework.apollo.configservice.service.config.ConfigService;
@@ -18,6 +19,8 @@ import com.google.gson.Gson;
 import com.google.gson.reflect.TypeToken;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
@@ -81,27 +84,13 @@ public class ConfigController {
 
     ApolloNotificationMessages clientMessages = transformMessages(messagesAsString);
 
-    List<Release> releases = Lists.newLinkedList();
+    List<Release> releases = findReleases(appId, clientIp, clusterName, namespace, dataCenter,
+        clientMessages);
 
     String appClusterNameLoaded = clusterName;
-    if (!ConfigConsts.NO_APPID_PLACEHOLDER.equalsIgnoreCase(appId)) {
-      Release currentAppRelease = configService.loadConfig(appId, clientIp, appId, clusterName, namespace,
-          dataCenter, clientMessages);
-
-      if (currentAppRelease != null) {
-        releases.add(currentAppRelease);
-        //we have cluster search process, so the cluster name might be overridden
-        appClusterNameLoaded = currentAppRelease.getClusterName();
-      }
-    }
-
-    //if namespace does not belong to this appId, should check if there is a public configuration
-    if (!namespaceBelongsToAppId(appId, namespace)) {
-      Release publicRelease = this.findPublicConfig(appId, clientIp, clusterName, namespace,
-          dataCenter, clientMessages);
-      if (!Objects.isNull(publicRelease)) {
-        releases.add(publicRelease);
-      }
+    if (!releases.isEmpty() && appId.equalsIgnoreCase(releases.get(0).getAppId())) {
+      //we have cluster search process, so the cluster name might be overridden
+      appClusterNameLoaded = releases.get(0).getClusterName();
     }
 
     if (releases.isEmpty()) {
@@ -136,6 +125,76 @@ public class ConfigController {
     return apolloConfig;
   }
 
+  /**
+   * Verify the release keys of many namespaces at once, so that the clients' periodic refresh only
+   * needs to load the namespaces changed. The release keys are posted in the body, as they would
+   * make the url too long for many namespaces.
+   *
+   * @param clientSideReleaseKeys the client side release keys, namespace -> release key
+   * @return the namespaces whose release keys are different from the server side's
+   */
+  @PostMapping(value = "/{appId}/{clusterName}")
+  public List<String> findStaleNamespaces(@PathVariable String appId, @PathVariable String clusterName,
+                                          @RequestBody(required = false) Map<String, String> clientSideReleaseKeys,
+                                          @RequestParam(value = "dataCenter", required = false) String dataCenter,
+                                          @RequestParam(value = "ip", required = false) String clientIp,
+                                          HttpServletRequest request) {
+    if (clientSideReleaseKeys == null) {
+      throw new BadRequestException("Release keys are required");
+    }
+
+    if (Strings.isNullOrEmpty(clientIp)) {
+      clientIp = tryToGetClientIp(request);
+    }
+
+    List<String> staleNamespaces = Lists.newArrayList();
+    for (Map.Entry<String, String> entry : clientSideReleaseKeys.entrySet()) {
+      String originalNamespace = entry.getKey();
+      String namespace = namespaceUtil.filterNamespaceName(originalNamespace);
+      namespace = namespaceUtil.normalizeNamespace(appId, namespace);
+
+      List<Release> releases = findReleases(appId, clientIp, clusterName, namespace, dataCenter,
+          null);
+      if (!releases.isEmpty()) {
+        auditReleases(appId, clusterName, dataCenter, clientIp, releases);
+      }
+
+      String mergedReleaseKey = releases.stream().map(Release::getReleaseKey)
+          .collect(Collectors.joining(ConfigConsts.CLUSTER_NAMESPACE_SEPARATOR));
+      if (!mergedReleaseKey.equals(entry.getValue())) {
+        staleNamespaces.add(originalNamespace);
+      }
+    }
+
+    return staleNamespaces;
+  }
+
+  /**
+   * @return the release of the app itself if any, followed by the public release if the namespace
+   * does not belong to the app
+   */
+  private List<Release> findReleases(String appId, String clientIp, String clusterName,
+                                     String namespace, String dataCenter,
+                                     ApolloNotificationMessages clientMessages) {
+    List<Release> releases = Lists.newLinkedList();
+    if (!ConfigConsts.NO_APPID_PLACEHOLDER.equalsIgnoreCase(appId)) {
+      Release currentAppRelease = configService.loadConfig(appId, clientIp, appId, clusterName,
+          namespace, dataCenter, clientMessages);
+      if (currentAppRelease != null) {
+        releases.add(currentAppRelease);
+      }
+    }
+    //if namespace does not belong to this appId, should check if there is a public configuration
+    if (!namespaceBelongsToAppId(appId, namespace)) {
+      Release publicRelease = this.findPublicConfig(appId, clientIp, clusterName, namespace,
+          dataCenter, clientMessages);
+      if (!Objects.isNull(publicRelease)) {
+        releases.add(publicRelease);
+      }
+    }
+    return releases;
+  }
+
   private boolean namespaceBelongsToAppId(String appId, String namespaceName) {
     //Every app has an 'application' namespace
     if (Objects.equals(ConfigConsts.NAMESPACE_APPLICATION, namespaceName)) {
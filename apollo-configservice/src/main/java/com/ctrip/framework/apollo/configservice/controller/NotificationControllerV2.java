@@ -6,7 +6,10 @@ import com.ctrip.framework.apollo.biz.message.ReleaseMessageListener;
 import com.ctrip.framework.apollo.biz.message.Topics;
 import com.ctrip.framework.apollo.biz.utils.EntityManagerUtil;
 import com.ctrip.framework.apollo.common.exception.BadRequestException;
+import com.ctrip.framework.apollo.configservice.service.LongPollingSessionService;
+import com.ctrip.framework.apollo.configservice.service.LongPollingSessionService.LongPollingSession;
 import com.ctrip.framework.apollo.configservice.service.ReleaseMessageServiceWithCache;
+import com.ctrip.framework.apollo.configservice.util.LongPollingTimeoutUtil;
 import com.ctrip.framework.apollo.configservice.util.NamespaceUtil;
 import com.ctrip.framework.apollo.configservice.util.WatchKeysUtil;
 import com.ctrip.framework.apollo.configservice.wrapper.DeferredResultWrapper;
@@ -28,6 +31,8 @@ import com.google.gson.reflect.TypeToken;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.util.CollectionUtils;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -45,6 +50,7 @@ import java.util.Set;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Function;
 
 /**
@@ -63,11 +69,14 @@ public class NotificationControllerV2 implements ReleaseMessageListener {
       }.getType();
 
   private final ExecutorService largeNotificationBatchExecutorService;
+  private final AtomicInteger pendingLongPollingCount = new AtomicInteger();
 
   private final WatchKeysUtil watchKeysUtil;
   private final ReleaseMessageServiceWithCache releaseMessageService;
   private final EntityManagerUtil entityManagerUtil;
   private final NamespaceUtil namespaceUtil;
+  private final LongPollingTimeoutUtil longPollingTimeoutUtil;
+  private final LongPollingSessionService longPollingSessionService;
   private final Gson gson;
   private final BizConfig bizConfig;
 
@@ -77,6 +86,8 @@ public class NotificationControllerV2 implements ReleaseMessageListener {
       final ReleaseMessageServiceWithCache releaseMessageService,
       final EntityManagerUtil entityManagerUtil,
       final NamespaceUtil namespaceUtil,
+      final LongPollingTimeoutUtil longPollingTimeoutUtil,
+      final LongPollingSessionService longPollingSessionService,
       final Gson gson,
       final BizConfig bizConfig) {
     largeNotificationBatchExecutorService = Executors.newSingleThreadExecutor(ApolloThreadFactory.create
@@ -85,6 +96,8 @@ public class NotificationControllerV2 implements ReleaseMessageListener {
     this.releaseMessageService = releaseMessageService;
     this.entityManagerUtil = entityManagerUtil;
     this.namespaceUtil = namespaceUtil;
+    this.longPollingTimeoutUtil = longPollingTimeoutUtil;
+    this.longPollingSessionService = longPollingSessionService;
     this.gson = gson;
     this.bizConfig = bizConfig;
   }
@@ -95,27 +108,87 @@ public class NotificationControllerV2 implements ReleaseMessageListener {
       @RequestParam(value = "cluster") String cluster,
       @RequestParam(value = "notifications") String notificationsAsString,
       @RequestParam(value = "dataCenter", required = false) String dataCenter,
-      @RequestParam(value = "ip", required = false) String clientIp) {
-    List<ApolloConfigNotification> notifications = null;
-
-    try {
-      notifications =
-          gson.fromJson(notificationsAsString, notificationsTypeReference);
-    } catch (Throwable ex) {
-      Tracer.logError(ex);
-    }
+      @RequestParam(value = "ip", required = false) String clientIp,
+      @RequestParam(value = "session", defaultValue = "false") boolean sessionRequired) {
+    List<ApolloConfigNotification> notifications = parseNotifications(notificationsAsString);
 
     if (CollectionUtils.isEmpty(notifications)) {
       throw new BadRequestException("Invalid format of notifications: " + notificationsAsString);
     }
-    
-    Map<String, ApolloConfigNotification> filteredNotifications = filterNotifications(appId, notifications);
+
+    LongPollingSession session = new LongPollingSession(appId, cluster, dataCenter);
+    for (ApolloConfigNotification notification : notifications) {
+      if (Strings.isNullOrEmpty(notification.getNamespaceName())) {
+        continue;
+      }
+      //strip out .properties suffix
+      String originalNamespace = namespaceUtil.filterNamespaceName(notification.getNamespaceName());
+      //fix the character case issue, such as FX.apollo <-> fx.apollo
+      String normalizedNamespace = namespaceUtil.normalizeNamespace(appId, originalNamespace);
+      session.addNamespace(notification.getNamespaceName(), originalNamespace, normalizedNamespace,
+          notification.getNotificationId());
+    }
+
+    Map<String, ApolloConfigNotification> filteredNotifications = session.filterNotifications();
 
     if (CollectionUtils.isEmpty(filteredNotifications)) {
       throw new BadRequestException("Invalid format of notifications: " + notificationsAsString);
     }
-    
-    DeferredResultWrapper deferredResultWrapper = new DeferredResultWrapper(bizConfig.longPollingTimeoutInMilli());
+
+    session.setWatchedKeysMap(
+        watchKeysUtil.assembleAllWatchKeys(appId, cluster, filteredNotifications.keySet(), dataCenter));
+
+    HttpHeaders responseHeaders = assembleResponseHeaders();
+    if (sessionRequired) {
+      //the following long polling requests could only carry the token and the changed notification ids
+      responseHeaders.set(ConfigConsts.LONG_POLLING_SESSION_HEADER,
+          longPollingSessionService.register(session));
+    }
+
+    return doPollNotification(session, filteredNotifications, responseHeaders);
+  }
+
+  /**
+   * Long polling with the session registered before, the client side notifications only contain the
+   * changed ones since the last request
+   */
+  @GetMapping("/session")
+  public DeferredResult<ResponseEntity<List<ApolloConfigNotification>>> pollNotificationWithSession(
+      @RequestParam(value = "appId") String appId,
+      @RequestParam(value = "session") String token,
+      @RequestParam(value = "notifications", required = false) String notificationsAsString) {
+    LongPollingSession session = longPollingSessionService.findSession(token);
+    if (session == null || !session.isRegisteredBy(appId)) {
+      Tracer.logEvent("Apollo.LongPoll.SessionExpired", appId);
+      return sessionGoneResult();
+    }
+
+    if (!Strings.isNullOrEmpty(notificationsAsString)) {
+      List<ApolloConfigNotification> changedNotifications = parseNotifications(notificationsAsString);
+      if (changedNotifications == null) {
+        throw new BadRequestException("Invalid format of notifications: " + notificationsAsString);
+      }
+      //namespaces changed in client side, so register again
+      if (!session.updateNotifications(changedNotifications)) {
+        return sessionGoneResult();
+      }
+    }
+
+    HttpHeaders responseHeaders = assembleResponseHeaders();
+    responseHeaders.set(ConfigConsts.LONG_POLLING_SESSION_HEADER, session.getToken());
+
+    return doPollNotification(session, session.filterNotifications(), responseHeaders);
+  }
+
+  private DeferredResult<ResponseEntity<List<ApolloConfigNotification>>> doPollNotification(
+      LongPollingSession session, Map<String, ApolloConfigNotification> filteredNotifications,
+      HttpHeaders responseHeaders) {
+    String appId = session.getAppId();
+    String cluster = session.getCluster();
+    String dataCenter = session.getDataCenter();
+
+    DeferredResultWrapper deferredResultWrapper = new DeferredResultWrapper(
+        longPollingTimeoutUtil.calculateTimeoutInMilli(pendingLongPollingCount.get()), responseHeaders);
     Set<String> namespaces = Sets.newHashSetWithExpectedSize(filteredNotifications.size());
     Map<String, Long> clientSideNotifications = Maps.newHashMapWithExpectedSize(filteredNotifications.size());
     
@@ -129,10 +202,12 @@ public class NotificationControllerV2 implements ReleaseMessageListener {
       }
     }
 
-    Multimap<String, String> watchedKeysMap =
-        watchKeysUtil.assembleAllWatchKeys(appId, cluster, namespaces, dataCenter);
+    Multimap<String, String> watchedKeysMap = session.getWatchedKeysMap();
 
-    Set<String> watchedKeys = Sets.newHashSet(watchedKeysMap.values());
+    Set<String> watchedKeys = session.getWatchedKeys();
+    //register by appId+cluster bundles instead of every watch key, the keys are resolved when messages arrive
+    Set<String> watchedBundles = session.getWatchedBundles();
+    deferredResultWrapper.recordWatchedKeys(watchedKeys);
 
     /**
      * 1、set deferredResult before the check, for avoid more waiting
@@ -143,16 +218,18 @@ public class NotificationControllerV2 implements ReleaseMessageListener {
           .onTimeout(() -> logWatchedKeys(watchedKeys, "Apollo.LongPoll.TimeOutKeys"));
 
     deferredResultWrapper.onCompletion(() -> {
-      //unregister all keys
-      for (String key : watchedKeys) {
-        deferredResults.remove(key, deferredResultWrapper);
+      pendingLongPollingCount.decrementAndGet();
+      //unregister all bundles
+      for (String bundle : watchedBundles) {
+        deferredResults.remove(bundle, deferredResultWrapper);
       }
       logWatchedKeys(watchedKeys, "Apollo.LongPoll.CompletedKeys");
     });
 
-    //register all keys
-    for (String key : watchedKeys) {
-      this.deferredResults.put(key, deferredResultWrapper);
+    //register all bundles
+    pendingLongPollingCount.incrementAndGet();
+    for (String bundle : watchedBundles) {
+      this.deferredResults.put(bundle, deferredResultWrapper);
     }
 
     logWatchedKeys(watchedKeys, "Apollo.LongPoll.RegisteredKeys");
@@ -184,30 +261,27 @@ public class NotificationControllerV2 implements ReleaseMessageListener {
     return deferredResultWrapper.getResult();
   }
 
-  private Map<String, ApolloConfigNotification> filterNotifications(String appId,
-                                                                    List<ApolloConfigNotification> notifications) {
-    Map<String, ApolloConfigNotification> filteredNotifications = Maps.newHashMap();
-    for (ApolloConfigNotification notification : notifications) {
-      if (Strings.isNullOrEmpty(notification.getNamespaceName())) {
-        continue;
-      }
-      //strip out .properties suffix
-      String originalNamespace = namespaceUtil.filterNamespaceName(notification.getNamespaceName());
-      notification.setNamespaceName(originalNamespace);
-      //fix the character case issue, such as FX.apollo <-> fx.apollo
-      String normalizedNamespace = namespaceUtil.normalizeNamespace(appId, originalNamespace);
+  private List<ApolloConfigNotification> parseNotifications(String notificationsAsString) {
+    try {
+      return gson.fromJson(notificationsAsString, notificationsTypeReference);
+    } catch (Throwable ex) {
+      Tracer.logError(ex);
+    }
+    return null;
+  }
 
-      // in case client side namespace name has character case issue and has difference notification ids
-      // such as FX.apollo = 1 but fx.apollo = 2, we should let FX.apollo have the chance to update its notification id
-      // which means we should record FX.apollo = 1 here and ignore fx.apollo = 2
-      if (filteredNotifications.containsKey(normalizedNamespace) &&
-          filteredNotifications.get(normalizedNamespace).getNotificationId() < notification.getNotificationId()) {
-        continue;
-      }
+  private HttpHeaders assembleResponseHeaders() {
+    //tell the client how long the next long polling request may be held, so it could adjust its read timeout
+    HttpHeaders responseHeaders = new HttpHeaders();
+    responseHeaders.set(ConfigConsts.LONG_POLLING_TIMEOUT_HEADER,
+        String.valueOf(longPollingTimeoutUtil.advertisedTimeoutInMilli()));
+    return responseHeaders;
+  }
 
-      filteredNotifications.put(normalizedNamespace, notification);
-    }
-    return filteredNotifications;
+  private DeferredResult<ResponseEntity<List<ApolloConfigNotification>>> sessionGoneResult() {
+    DeferredResult<ResponseEntity<List<ApolloConfigNotification>>> result = new DeferredResult<>();
+    result.setResult(new ResponseEntity<>(HttpStatus.GONE));
+    return result;
   }
 
   private List<ApolloConfigNotification> getApolloConfigNotifications(Set<String> namespaces,
@@ -260,12 +334,18 @@ public class NotificationControllerV2 implements ReleaseMessageListener {
       return;
     }
 
-    if (!deferredResults.containsKey(content)) {
+    String bundle = WatchKeysUtil.retrieveWatchKeyBundle(content);
+    if (!deferredResults.containsKey(bundle)) {
       return;
     }
 
     //create a new list to avoid ConcurrentModificationException
-    List<DeferredResultWrapper> results = Lists.newArrayList(deferredResults.get(content));
+    List<DeferredResultWrapper> results = Lists.newArrayList(deferredResults.get(bundle));
+    //only notify the clients watching the changed namespace of the bundle
+    results.removeIf(result -> !result.isWatching(content));
+    if (results.isEmpty()) {
+      return;
+    }
 
     ApolloConfigNotification configNotification = new ApolloConfigNotification(changedNamespace, message.getId());
     configNotification.addMessage(content, message.getId());
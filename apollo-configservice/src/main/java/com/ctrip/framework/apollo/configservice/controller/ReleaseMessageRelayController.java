@@ -0,0 +1,53 @@
+package com.ctrip.framework.apollo.configservice.controller;
+
+import com.ctrip.framework.apollo.biz.config.BizConfig;
+import com.ctrip.framework.apollo.biz.message.ReleaseMessageScanner;
+import com.ctrip.framework.apollo.common.dto.ReleaseMessageRelayDTO;
+import com.ctrip.framework.apollo.configservice.service.ReleaseMessageRelayService;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * Receives release messages relayed by the scanning config service nodes
+ */
+@RestController
+@RequestMapping("/release-messages")
+public class ReleaseMessageRelayController {
+
+  private final ReleaseMessageScanner releaseMessageScanner;
+  private final ReleaseMessageRelayService releaseMessageRelayService;
+  private final BizConfig bizConfig;
+
+  public ReleaseMessageRelayController(
+      final ReleaseMessageScanner releaseMessageScanner,
+      final ReleaseMessageRelayService releaseMessageRelayService,
+      final BizConfig bizConfig) {
+    this.releaseMessageScanner = releaseMessageScanner;
+    this.releaseMessageRelayService = releaseMessageRelayService;
+    this.bizConfig = bizConfig;
+  }
+
+  @PostMapping("/relay")
+  public ResponseEntity<Void> relay(
+      @RequestHeader(value = HttpHeaders.AUTHORIZATION, required = false) String accessToken,
+      @RequestBody ReleaseMessageRelayDTO relay) {
+    if (!bizConfig.isReleaseMessageRelayEnabled()) {
+      return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+    }
+    if (!releaseMessageRelayService.isRelayAuthorized(accessToken)) {
+      return new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
+    }
+
+    releaseMessageRelayService.onRelayReceived();
+    releaseMessageScanner.acceptRelayedMessages(relay.getStartId(),
+        ReleaseMessageRelayService.transformRelayedMessages(relay));
+
+    return new ResponseEntity<>(HttpStatus.OK);
+  }
+}
@@ -3,10 +3,15 @@ package com.ctrip.framework.apollo.configservice.filter;
 import com.ctrip.framework.apollo.configservice.util.AccessKeyUtil;
 import com.ctrip.framework.apollo.core.signature.Signature;
 import com.ctrip.framework.apollo.core.utils.StringUtils;
+import com.google.common.base.Joiner;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.net.HttpHeaders;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
 import java.util.List;
-import java.util.Objects;
+import java.util.concurrent.TimeUnit;
 import javax.servlet.Filter;
 import javax.servlet.FilterChain;
 import javax.servlet.FilterConfig;
@@ -27,11 +32,23 @@ public class ClientAuthenticationFilter implements Filter {
   private static final Logger logger = LoggerFactory.getLogger(ClientAuthenticationFilter.class);
 
   private static final Long TIMESTAMP_INTERVAL = 60 * 1000L;
+  private static final long VERIFIED_CACHE_MAX_SIZE = 10000;
+  private static final Joiner VERIFIED_KEY_JOINER = Joiner.on('\n').useForNull("");
 
   private final AccessKeyUtil accessKeyUtil;
 
+  /**
+   * verified (appId, timestamp, path with query, signature) tuples, mapped to the secret list they
+   * were verified against, so identical retries within the timestamp window skip the hmac
+   */
+  private final Cache<String, List<String>> verifiedSignatureCache;
+
   public ClientAuthenticationFilter(AccessKeyUtil accessKeyUtil) {
     this.accessKeyUtil = accessKeyUtil;
+    this.verifiedSignatureCache = CacheBuilder.newBuilder()
+        .maximumSize(VERIFIED_CACHE_MAX_SIZE)
+        .expireAfterWrite(TIMESTAMP_INTERVAL, TimeUnit.MILLISECONDS)
+        .build();
   }
 
   @Override
@@ -66,7 +83,7 @@ public class ClientAuthenticationFilter implements Filter {
       // check signature
       String uri = request.getRequestURI();
       String query = request.getQueryString();
-      if (!checkAuthorization(authorization, availableSecrets, timestamp, uri, query)) {
+      if (!checkAuthorization(appId, authorization, availableSecrets, timestamp, uri, query)) {
         logger.warn("Invalid authorization. appId={},authorization={}", appId, authorization);
         response.sendError(HttpServletResponse.SC_UNAUTHORIZED, "Unauthorized");
         return;
@@ -93,8 +110,8 @@ public class ClientAuthenticationFilter implements Filter {
     return x >= -TIMESTAMP_INTERVAL && x <= TIMESTAMP_INTERVAL;
   }
 
-  private boolean checkAuthorization(String authorization, List<String> availableSecrets,
-      String timestamp, String path, String query) {
+  private boolean checkAuthorization(String appId, String authorization,
+      List<String> availableSecrets, String timestamp, String path, String query) {
 
     String signature = null;
     if (authorization != null) {
@@ -103,10 +120,22 @@ public class ClientAuthenticationFilter implements Filter {
         signature = split[1];
       }
     }
+    if (signature == null) {
+      return false;
+    }
+
+    String verifiedKey = VERIFIED_KEY_JOINER.join(appId, timestamp, path, query, signature);
+    // secrets are replaced as a whole list when rotated, so a stale verification never matches
+    if (verifiedSignatureCache.getIfPresent(verifiedKey) == availableSecrets) {
+      return true;
+    }
 
+    byte[] signatureBytes = signature.getBytes(StandardCharsets.UTF_8);
     for (String secret : availableSecrets) {
       String availableSignature = accessKeyUtil.buildSignature(path, query, timestamp, secret);
-      if (Objects.equals(signature, availableSignature)) {
+      if (availableSignature != null && MessageDigest
+          .isEqual(signatureBytes, availableSignature.getBytes(StandardCharsets.UTF_8))) {
+        verifiedSignatureCache.put(verifiedKey, availableSecrets);
         return true;
       }
     }
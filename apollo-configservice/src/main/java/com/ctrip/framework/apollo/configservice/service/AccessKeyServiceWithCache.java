@@ -6,6 +6,7 @@ import com.ctrip.framework.apollo.biz.repository.AccessKeyRepository;
 import com.ctrip.framework.apollo.core.utils.ApolloThreadFactory;
 import com.ctrip.framework.apollo.tracer.Tracer;
 import com.ctrip.framework.apollo.tracer.spi.Transaction;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ListMultimap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
@@ -49,6 +50,11 @@ public class AccessKeyServiceWithCache implements InitializingBean {
 
   private ListMultimap<String, AccessKey> accessKeyCache;
   private ConcurrentMap<Long, AccessKey> accessKeyIdCache;
+  /**
+   * immutable snapshot of enabled secrets per app, replaced as a whole when keys change so that
+   * readers never see a half updated secret list
+   */
+  private ConcurrentMap<String, List<String>> availableSecretsCache;
 
   @Autowired
   public AccessKeyServiceWithCache(AccessKeyRepository accessKeyRepository, BizConfig bizConfig) {
@@ -67,18 +73,15 @@ public class AccessKeyServiceWithCache implements InitializingBean {
         .arrayListValues().build();
     accessKeyCache = Multimaps.synchronizedListMultimap(multimap);
     accessKeyIdCache = Maps.newConcurrentMap();
+    availableSecretsCache = Maps.newConcurrentMap();
   }
 
+  /**
+   * @return the enabled secrets of the app, the returned list is immutable and a new instance is
+   * returned once the secrets of the app are changed
+   */
   public List<String> getAvailableSecrets(String appId) {
-    List<AccessKey> accessKeys = accessKeyCache.get(appId);
-    if (CollectionUtils.isEmpty(accessKeys)) {
-      return Collections.emptyList();
-    }
-
-    return accessKeys.stream()
-        .filter(AccessKey::isEnabled)
-        .map(AccessKey::getSecret)
-        .collect(Collectors.toList());
+    return availableSecretsCache.getOrDefault(appId, Collections.emptyList());
   }
 
   @Override
@@ -148,7 +151,9 @@ public class AccessKeyServiceWithCache implements InitializingBean {
   }
 
   private void mergeAccessKeys(List<AccessKey> accessKeys) {
+    Set<String> changedAppIds = Sets.newHashSet();
     for (AccessKey accessKey : accessKeys) {
+      changedAppIds.add(accessKey.getAppId());
       AccessKey thatInCache = accessKeyIdCache.get(accessKey.getId());
 
       accessKeyIdCache.put(accessKey.getId(), accessKey);
@@ -160,6 +165,7 @@ public class AccessKeyServiceWithCache implements InitializingBean {
         logger.info("Found Accesskey changes, old: {}, new: {}", thatInCache, accessKey);
       }
     }
+    rebuildAvailableSecrets(changedAppIds);
   }
 
   private void deleteAccessKeyCache() {
@@ -187,6 +193,7 @@ public class AccessKeyServiceWithCache implements InitializingBean {
     if (CollectionUtils.isEmpty(deletedIds)) {
       return;
     }
+    Set<String> changedAppIds = Sets.newHashSet();
     for (Long deletedId : deletedIds) {
       AccessKey deleted = accessKeyIdCache.remove(deletedId);
       if (deleted == null) {
@@ -194,8 +201,28 @@ public class AccessKeyServiceWithCache implements InitializingBean {
       }
 
       accessKeyCache.remove(deleted.getAppId(), deleted);
+      changedAppIds.add(deleted.getAppId());
       logger.info("Found AccessKey deleted, {}", deleted);
     }
+    rebuildAvailableSecrets(changedAppIds);
+  }
+
+  private void rebuildAvailableSecrets(Set<String> appIds) {
+    for (String appId : appIds) {
+      List<String> availableSecrets;
+      synchronized (accessKeyCache) {
+        availableSecrets = accessKeyCache.get(appId).stream()
+            .filter(AccessKey::isEnabled)
+            .map(AccessKey::getSecret)
+            .collect(Collectors.toList());
+      }
+
+      if (availableSecrets.isEmpty()) {
+        availableSecretsCache.remove(appId);
+      } else {
+        availableSecretsCache.put(appId, ImmutableList.copyOf(availableSecrets));
+      }
+    }
   }
 
   private void populateDataBaseInterval() {
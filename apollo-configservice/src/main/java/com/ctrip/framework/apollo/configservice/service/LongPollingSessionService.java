@@ -0,0 +1,162 @@
+package com.ctrip.framework.apollo.configservice.service;
+
+import com.ctrip.framework.apollo.configservice.util.WatchKeysUtil;
+import com.ctrip.framework.apollo.core.dto.ApolloConfigNotification;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSetMultimap;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Multimap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import org.springframework.stereotype.Service;
+
+/**
+ * Keeps the long polling sessions, so that a client only registers its namespaces once and the
+ * following long polling requests only carry the session token and the changed notification ids.
+ *
+ * <p>Sessions expire some time after being created, then the client registers again, which also
+ * picks up the watch key changes, e.g. public namespaces associated later.</p>
+ */
+@Service
+public class LongPollingSessionService {
+  private static final long SESSION_EXPIRE_IN_MINUTES = 10;
+  private static final int SESSION_MAX_SIZE = 100000;
+
+  private final Cache<String, LongPollingSession> sessions;
+
+  public LongPollingSessionService() {
+    sessions = CacheBuilder.newBuilder()
+        .expireAfterWrite(SESSION_EXPIRE_IN_MINUTES, TimeUnit.MINUTES)
+        .maximumSize(SESSION_MAX_SIZE).build();
+  }
+
+  /**
+   * Register the session and assign a token to it
+   */
+  public String register(LongPollingSession session) {
+    String token = UUID.randomUUID().toString().replace("-", "");
+    session.token = token;
+    sessions.put(token, session);
+    return token;
+  }
+
+  /**
+   * @return the session, or null if not found or expired
+   */
+  public LongPollingSession findSession(String token) {
+    return sessions.getIfPresent(token);
+  }
+
+  /**
+   * A client's namespaces along with the precomputed watch keys
+   */
+  public static class LongPollingSession {
+    private final String appId;
+    private final String cluster;
+    private final String dataCenter;
+    //client side namespace -> namespace with the .properties suffix filtered
+    private final Map<String, String> originalNamespaces = Maps.newHashMap();
+    //client side namespace -> normalized namespace
+    private final Map<String, String> normalizedNamespaces = Maps.newHashMap();
+    //client side namespace -> notification id
+    private final ConcurrentMap<String, Long> notifications = Maps.newConcurrentMap();
+    private Multimap<String, String> watchedKeysMap;
+    private Set<String> watchedKeys;
+    private Set<String> watchedBundles;
+    private volatile String token;
+
+    public LongPollingSession(String appId, String cluster, String dataCenter) {
+      this.appId = appId;
+      this.cluster = cluster;
+      this.dataCenter = dataCenter;
+    }
+
+    public void addNamespace(String clientNamespace, String originalNamespace,
+        String normalizedNamespace, long notificationId) {
+      originalNamespaces.put(clientNamespace, originalNamespace);
+      normalizedNamespaces.put(clientNamespace, normalizedNamespace);
+      notifications.put(clientNamespace, notificationId);
+    }
+
+    /**
+     * Update the notification ids changed in client side
+     *
+     * @return false if any namespace is not registered in this session
+     */
+    public boolean updateNotifications(List<ApolloConfigNotification> changedNotifications) {
+      for (ApolloConfigNotification notification : changedNotifications) {
+        if (!notifications.containsKey(notification.getNamespaceName())) {
+          return false;
+        }
+      }
+      for (ApolloConfigNotification notification : changedNotifications) {
+        notifications.put(notification.getNamespaceName(), notification.getNotificationId());
+      }
+      return true;
+    }
+
+    /**
+     * @return the notifications with normalized namespace as the key and the original namespace in the
+     * value, for namespaces with character case issue, the one with smaller notification id is chosen,
+     * so that it has the chance to update its notification id
+     */
+    public Map<String, ApolloConfigNotification> filterNotifications() {
+      Map<String, ApolloConfigNotification> filteredNotifications = Maps.newHashMap();
+      for (Map.Entry<String, Long> entry : notifications.entrySet()) {
+        String normalizedNamespace = normalizedNamespaces.get(entry.getKey());
+        ApolloConfigNotification existing = filteredNotifications.get(normalizedNamespace);
+        if (existing != null && existing.getNotificationId() < entry.getValue()) {
+          continue;
+        }
+        filteredNotifications.put(normalizedNamespace,
+            new ApolloConfigNotification(originalNamespaces.get(entry.getKey()), entry.getValue()));
+      }
+      return filteredNotifications;
+    }
+
+    public void setWatchedKeysMap(Multimap<String, String> watchedKeysMap) {
+      this.watchedKeysMap = ImmutableSetMultimap.copyOf(watchedKeysMap);
+      this.watchedKeys = ImmutableSet.copyOf(watchedKeysMap.values());
+      this.watchedBundles = ImmutableSet.copyOf(WatchKeysUtil.assembleWatchKeyBundles(watchedKeys));
+    }
+
+    public boolean isRegisteredBy(String appId) {
+      return Objects.equals(this.appId, appId);
+    }
+
+    public String getAppId() {
+      return appId;
+    }
+
+    public String getCluster() {
+      return cluster;
+    }
+
+    public String getDataCenter() {
+      return dataCenter;
+    }
+
+    public Multimap<String, String> getWatchedKeysMap() {
+      return watchedKeysMap;
+    }
+
+    public Set<String> getWatchedKeys() {
+      return watchedKeys;
+    }
+
+    public Set<String> getWatchedBundles() {
+      return watchedBundles;
+    }
+
+    public String getToken() {
+      return token;
+    }
+  }
+}
@@ -0,0 +1,211 @@
+package com.ctrip.framework.apollo.configservice.service;
+
+import com.ctrip.framework.apollo.biz.config.BizConfig;
+import com.ctrip.framework.apollo.biz.entity.ReleaseMessage;
+import com.ctrip.framework.apollo.biz.message.ReleaseMessageRelay;
+import com.ctrip.framework.apollo.common.dto.ReleaseMessageDTO;
+import com.ctrip.framework.apollo.common.dto.ReleaseMessageRelayDTO;
+import com.ctrip.framework.apollo.core.ServiceNameConsts;
+import com.ctrip.framework.apollo.core.dto.ServiceDTO;
+import com.ctrip.framework.apollo.core.utils.ApolloThreadFactory;
+import com.ctrip.framework.apollo.metaservice.service.DiscoveryService;
+import com.ctrip.framework.apollo.tracer.Tracer;
+import com.google.common.base.Strings;
+import com.google.common.collect.Lists;
+import com.netflix.appinfo.ApplicationInfoManager;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.RestTemplate;
+
+/**
+ * Relays release messages among config service nodes.
+ *
+ * <p>When enabled, only the first few config service instances (ordered by homepage url) found
+ * through the meta service scan the database, and they push the messages scanned to the other
+ * instances. The other instances stop scanning the database as long as relayed messages or
+ * heartbeats keep arriving, and fall back to scan the database by themselves once they time out or
+ * a gap is found.</p>
+ *
+ * <p>Relayed messages are authenticated by the access token shared among the nodes, and nodes are
+ * identified by their eureka instance ids, so relay is disabled if either is not available.</p>
+ */
+@Service
+public class ReleaseMessageRelayService implements ReleaseMessageRelay {
+
+  private static final Logger logger = LoggerFactory.getLogger(ReleaseMessageRelayService.class);
+  private static final String RELAY_URL_PATH = "release-messages/relay";
+  private static final int RELAY_QUEUE_SIZE = 100;
+  private static final int RELAY_CONNECT_TIMEOUT = 1000; //1s
+  private static final int RELAY_READ_TIMEOUT = 5000; //5s
+
+  private final DiscoveryService discoveryService;
+  private final BizConfig bizConfig;
+  private final ObjectProvider<ApplicationInfoManager> applicationInfoManager;
+  private final ExecutorService relayExecutorService;
+  private final RestTemplate restTemplate;
+
+  private volatile long lastRelaySentTime;
+  private volatile long lastRelayReceivedTime;
+
+  public ReleaseMessageRelayService(
+      final DiscoveryService discoveryService,
+      final BizConfig bizConfig,
+      final ObjectProvider<ApplicationInfoManager> applicationInfoManager) {
+    this.discoveryService = discoveryService;
+    this.bizConfig = bizConfig;
+    this.applicationInfoManager = applicationInfoManager;
+    //relay in order, and drop the batches if peers are too slow, which would be found as gaps
+    this.relayExecutorService = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+        new ArrayBlockingQueue<>(RELAY_QUEUE_SIZE),
+        ApolloThreadFactory.create("ReleaseMessageRelayService", true),
+        new ThreadPoolExecutor.DiscardPolicy());
+
+    SimpleClientHttpRequestFactory requestFactory = new SimpleClientHttpRequestFactory();
+    requestFactory.setConnectTimeout(RELAY_CONNECT_TIMEOUT);
+    requestFactory.setReadTimeout(RELAY_READ_TIMEOUT);
+    this.restTemplate = new RestTemplate(requestFactory);
+  }
+
+  @Override
+  public boolean shouldScanDatabase() {
+    if (!isRelayEnabled() || isScanner()) {
+      return true;
+    }
+    return System.currentTimeMillis() - lastRelayReceivedTime
+        > bizConfig.releaseMessageRelayTimeoutInMilli();
+  }
+
+  @Override
+  public void relay(long startId, List<ReleaseMessage> messages) {
+    if (!isRelayEnabled() || !isScanner()) {
+      return;
+    }
+    long now = System.currentTimeMillis();
+    if (messages.isEmpty()
+        && now - lastRelaySentTime < bizConfig.releaseMessageRelayHeartbeatIntervalInMilli()) {
+      return;
+    }
+    lastRelaySentTime = now;
+
+    ReleaseMessageRelayDTO relay = new ReleaseMessageRelayDTO();
+    relay.setStartId(startId);
+    relay.setMessages(messages.stream()
+        .map(message -> new ReleaseMessageDTO(message.getId(), message.getMessage()))
+        .collect(Collectors.toList()));
+
+    List<String> peers = findPeers();
+    relayExecutorService.submit(() -> {
+      for (String peer : peers) {
+        try {
+          sendRelay(peer, relay);
+        } catch (Throwable ex) {
+          //the peer would fall back to scan the database by itself
+          Tracer.logEvent("Apollo.ReleaseMessageRelay.Failed", peer);
+          logger.warn("Relay release messages to {} failed: {}", peer, ex.getMessage());
+        }
+      }
+    });
+  }
+
+  /**
+   * Check whether relayed messages should be accepted, i.e. relay is enabled and the access token
+   * sent by the peer matches
+   */
+  public boolean isRelayAuthorized(String accessToken) {
+    if (!isRelayEnabled() || Strings.isNullOrEmpty(accessToken)) {
+      return false;
+    }
+    //constant time comparison
+    return MessageDigest.isEqual(
+        bizConfig.getReleaseMessageRelayAccessToken().getBytes(StandardCharsets.UTF_8),
+        accessToken.getBytes(StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Record relayed messages received from a scanner node
+   */
+  public void onRelayReceived() {
+    lastRelayReceivedTime = System.currentTimeMillis();
+  }
+
+  public static List<ReleaseMessage> transformRelayedMessages(ReleaseMessageRelayDTO relay) {
+    List<ReleaseMessage> messages = Lists.newArrayList();
+    if (relay.getMessages() == null) {
+      return messages;
+    }
+    for (ReleaseMessageDTO dto : relay.getMessages()) {
+      ReleaseMessage message = new ReleaseMessage(dto.getMessage());
+      message.setId(dto.getId());
+      messages.add(message);
+    }
+    messages.sort(Comparator.comparingLong(ReleaseMessage::getId));
+    return messages;
+  }
+
+  void sendRelay(String peerHomepageUrl, ReleaseMessageRelayDTO relay) {
+    HttpHeaders headers = new HttpHeaders();
+    headers.set(HttpHeaders.AUTHORIZATION, bizConfig.getReleaseMessageRelayAccessToken());
+    restTemplate.postForEntity(buildRelayUrl(peerHomepageUrl), new HttpEntity<>(relay, headers),
+        Void.class);
+  }
+
+  /**
+   * @return the eureka instance id of this node, or null if not registered to eureka
+   */
+  String getLocalInstanceId() {
+    ApplicationInfoManager manager = applicationInfoManager.getIfAvailable();
+    return manager == null || manager.getInfo() == null ? null : manager.getInfo().getInstanceId();
+  }
+
+  private boolean isRelayEnabled() {
+    return bizConfig.isReleaseMessageRelayEnabled()
+        && !Strings.isNullOrEmpty(bizConfig.getReleaseMessageRelayAccessToken())
+        && getLocalInstanceId() != null;
+  }
+
+  private boolean isScanner() {
+    String localInstanceId = getLocalInstanceId();
+    List<ServiceDTO> scanners = findConfigServices().stream()
+        .limit(bizConfig.releaseMessageRelayScannerCount())
+        .collect(Collectors.toList());
+    return scanners.stream()
+        .anyMatch(service -> Objects.equals(localInstanceId, service.getInstanceId()));
+  }
+
+  private List<String> findPeers() {
+    String localInstanceId = getLocalInstanceId();
+    return findConfigServices().stream()
+        .filter(service -> !Objects.equals(localInstanceId, service.getInstanceId()))
+        .map(ServiceDTO::getHomepageUrl)
+        .collect(Collectors.toList());
+  }
+
+  private List<ServiceDTO> findConfigServices() {
+    return discoveryService.getServiceInstances(ServiceNameConsts.APOLLO_CONFIGSERVICE).stream()
+        .filter(service -> !Strings.isNullOrEmpty(service.getHomepageUrl()))
+        .sorted(Comparator.comparing(ServiceDTO::getHomepageUrl))
+        .collect(Collectors.toList());
+  }
+
+  private String buildRelayUrl(String homepageUrl) {
+    if (!homepageUrl.endsWith("/")) {
+      homepageUrl += "/";
+    }
+    return homepageUrl + RELAY_URL_PATH;
+  }
+}
@@ -1,64 +1,51 @@
 package com.ctrip.framework.apollo.configservice.service;
 
-import com.ctrip.framework.apollo.biz.config.BizConfig;
 import com.ctrip.framework.apollo.biz.entity.ReleaseMessage;
-import com.ctrip.framework.apollo.biz.message.ReleaseMessageListener;
+import com.ctrip.framework.apollo.biz.message.ReleaseMessageHistoryListener;
 import com.ctrip.framework.apollo.biz.message.Topics;
 import com.ctrip.framework.apollo.biz.repository.ReleaseMessageRepository;
-import com.ctrip.framework.apollo.core.utils.ApolloThreadFactory;
+import com.ctrip.framework.apollo.configservice.util.WatchKeysUtil;
 import com.ctrip.framework.apollo.tracer.Tracer;
-import com.ctrip.framework.apollo.tracer.spi.Transaction;
 import com.google.common.base.Strings;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.beans.factory.InitializingBean;
 import org.springframework.stereotype.Service;
 import org.springframework.util.CollectionUtils;
 
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentMap;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
+ * Caches the latest release message of each message content, indexed by the appId+cluster bundle of
+ * the message, so that the messages of a bundle could be resolved together.
+ *
+ * <p>The cache does not scan the database by itself, the history messages and the new ones are both
+ * fed by the ReleaseMessageScanner, which owns the id watermark and the gap detection.</p>
+ *
  * @author Jason Song(song_s@ctrip.com)
  */
 @Service
-public class ReleaseMessageServiceWithCache implements ReleaseMessageListener, InitializingBean {
+public class ReleaseMessageServiceWithCache implements ReleaseMessageHistoryListener {
   private static final Logger logger = LoggerFactory.getLogger(ReleaseMessageServiceWithCache
       .class);
   private final ReleaseMessageRepository releaseMessageRepository;
-  private final BizConfig bizConfig;
 
-  private int scanInterval;
-  private TimeUnit scanIntervalTimeUnit;
-
-  private volatile long maxIdScanned;
-
-  private ConcurrentMap<String, ReleaseMessage> releaseMessageCache;
-
-  private AtomicBoolean doScan;
-  private ExecutorService executorService;
+  //bundle -> message -> latest release message
+  private ConcurrentMap<String, ConcurrentMap<String, ReleaseMessage>> releaseMessageCache;
 
   public ReleaseMessageServiceWithCache(
-      final ReleaseMessageRepository releaseMessageRepository,
-      final BizConfig bizConfig) {
+      final ReleaseMessageRepository releaseMessageRepository) {
     this.releaseMessageRepository = releaseMessageRepository;
-    this.bizConfig = bizConfig;
     initialize();
   }
 
   private void initialize() {
     releaseMessageCache = Maps.newConcurrentMap();
-    doScan = new AtomicBoolean(true);
-    executorService = Executors.newSingleThreadExecutor(ApolloThreadFactory
-        .create("ReleaseMessageServiceWithCache", true));
   }
 
   public ReleaseMessage findLatestReleaseMessageForMessages(Set<String> messages) {
@@ -68,9 +55,8 @@ public class ReleaseMessageServiceWithCache implements ReleaseMessageListener, I
 
     long maxReleaseMessageId = 0;
     ReleaseMessage result = null;
-    for (String message : messages) {
-      ReleaseMessage releaseMessage = releaseMessageCache.get(message);
-      if (releaseMessage != null && releaseMessage.getId() > maxReleaseMessageId) {
+    for (ReleaseMessage releaseMessage : findLatestReleaseMessagesGroupByMessages(messages)) {
+      if (releaseMessage.getId() > maxReleaseMessageId) {
         maxReleaseMessageId = releaseMessage.getId();
         result = releaseMessage;
       }
@@ -86,7 +72,13 @@ public class ReleaseMessageServiceWithCache implements ReleaseMessageListener, I
     List<ReleaseMessage> releaseMessages = Lists.newArrayList();
 
     for (String message : messages) {
-      ReleaseMessage releaseMessage = releaseMessageCache.get(message);
+      Map<String, ReleaseMessage> bundleMessages =
+          releaseMessageCache.get(WatchKeysUtil.retrieveWatchKeyBundle(message));
+      //many bundles, e.g. the data center ones, have no release message at all
+      if (bundleMessages == null) {
+        continue;
+      }
+      ReleaseMessage releaseMessage = bundleMessages.get(message);
       if (releaseMessage != null) {
         releaseMessages.add(releaseMessage);
       }
@@ -95,10 +87,16 @@ public class ReleaseMessageServiceWithCache implements ReleaseMessageListener, I
     return releaseMessages;
   }
 
+  @Override
+  public void handleHistoryMessage(ReleaseMessage message, String channel) {
+    if (!Topics.APOLLO_RELEASE_TOPIC.equals(channel) || Strings.isNullOrEmpty(message.getMessage())) {
+      return;
+    }
+    mergeReleaseMessage(message);
+  }
+
   @Override
   public void handleMessage(ReleaseMessage message, String channel) {
-    //Could stop once the ReleaseMessageScanner starts to work
-    doScan.set(false);
     logger.info("message received - channel: {}, message: {}", channel, message);
 
     String content = message.getMessage();
@@ -107,56 +105,23 @@ public class ReleaseMessageServiceWithCache implements ReleaseMessageListener, I
       return;
     }
 
-    long gap = message.getId() - maxIdScanned;
-    if (gap == 1) {
-      mergeReleaseMessage(message);
-    } else if (gap > 1) {
-      //gap found!
-      loadReleaseMessages(maxIdScanned);
-    }
-  }
-
-  @Override
-  public void afterPropertiesSet() throws Exception {
-    populateDataBaseInterval();
-    //block the startup process until load finished
-    //this should happen before ReleaseMessageScanner due to autowire
-    loadReleaseMessages(0);
-
-    executorService.submit(() -> {
-      while (doScan.get() && !Thread.currentThread().isInterrupted()) {
-        Transaction transaction = Tracer.newTransaction("Apollo.ReleaseMessageServiceWithCache",
-            "scanNewReleaseMessages");
-        try {
-          loadReleaseMessages(maxIdScanned);
-          transaction.setStatus(Transaction.SUCCESS);
-        } catch (Throwable ex) {
-          transaction.setStatus(ex);
-          logger.error("Scan new release messages failed", ex);
-        } finally {
-          transaction.complete();
-        }
-        try {
-          scanIntervalTimeUnit.sleep(scanInterval);
-        } catch (InterruptedException e) {
-          //ignore
-        }
-      }
-    });
+    mergeReleaseMessage(message);
   }
 
-  private synchronized void mergeReleaseMessage(ReleaseMessage releaseMessage) {
-    ReleaseMessage old = releaseMessageCache.get(releaseMessage.getMessage());
-    if (old == null || releaseMessage.getId() > old.getId()) {
-      releaseMessageCache.put(releaseMessage.getMessage(), releaseMessage);
-      maxIdScanned = releaseMessage.getId();
-    }
+  private void mergeReleaseMessage(ReleaseMessage releaseMessage) {
+    releaseMessageCache
+        .computeIfAbsent(WatchKeysUtil.retrieveWatchKeyBundle(releaseMessage.getMessage()),
+            key -> Maps.newConcurrentMap())
+        .merge(releaseMessage.getMessage(), releaseMessage,
+            (old, current) -> current.getId() > old.getId() ? current : old);
   }
 
-  private void loadReleaseMessages(long startId) {
+  //only for test use
+  private void reset() {
+    initialize();
+    long startId = 0;
     boolean hasMore = true;
     while (hasMore && !Thread.currentThread().isInterrupted()) {
-      //current batch is 500
       List<ReleaseMessage> releaseMessages = releaseMessageRepository
           .findFirst500ByIdGreaterThanOrderByIdAsc(startId);
       if (CollectionUtils.isEmpty(releaseMessages)) {
@@ -166,19 +131,6 @@ public class ReleaseMessageServiceWithCache implements ReleaseMessageListener, I
       int scanned = releaseMessages.size();
       startId = releaseMessages.get(scanned - 1).getId();
       hasMore = scanned == 500;
-      logger.info("Loaded {} release messages with startId {}", scanned, startId);
     }
   }
-
-  private void populateDataBaseInterval() {
-    scanInterval = bizConfig.releaseMessageCacheScanInterval();
-    scanIntervalTimeUnit = bizConfig.releaseMessageCacheScanIntervalTimeUnit();
-  }
-
-  //only for test use
-  private void reset() throws Exception {
-    executorService.shutdownNow();
-    initialize();
-    afterPropertiesSet();
-  }
 }
@@ -0,0 +1,52 @@
+package com.ctrip.framework.apollo.configservice.util;
+
+import com.ctrip.framework.apollo.biz.config.BizConfig;
+import java.util.concurrent.ThreadLocalRandom;
+import org.springframework.stereotype.Component;
+
+/**
+ * Decides how long each long polling request is held.
+ *
+ * <p>The timeout grows from long.polling.timeout towards long.polling.timeout.max as the number of
+ * pending long polling requests approaches long.polling.timeout.adaptive.threshold, so a busy node
+ * sees fewer reconnects. Each request's timeout is then shortened by a random jitter, so clients
+ * connected at the same time, e.g. after a deployment, don't keep reconnecting at the same time.</p>
+ */
+@Component
+public class LongPollingTimeoutUtil {
+  private static final long MIN_TIMEOUT_IN_MILLI = 1000; //1s
+
+  private final BizConfig bizConfig;
+
+  public LongPollingTimeoutUtil(final BizConfig bizConfig) {
+    this.bizConfig = bizConfig;
+  }
+
+  /**
+   * @param pendingLongPollingCount the number of long polling requests currently held by this node
+   * @return the timeout for the next long polling request
+   */
+  public long calculateTimeoutInMilli(int pendingLongPollingCount) {
+    long timeout = bizConfig.longPollingTimeoutInMilli();
+    long maxTimeout = advertisedTimeoutInMilli();
+
+    if (maxTimeout > timeout && pendingLongPollingCount > 0) {
+      double load = Math.min(1.0, (double) pendingLongPollingCount / bizConfig.longPollingAdaptiveThreshold());
+      timeout += (long) ((maxTimeout - timeout) * load);
+    }
+
+    long jitter = bizConfig.longPollingTimeoutJitterInMilli();
+    if (jitter > 0) {
+      timeout -= ThreadLocalRandom.current().nextLong(jitter + 1);
+    }
+
+    return Math.max(MIN_TIMEOUT_IN_MILLI, timeout);
+  }
+
+  /**
+   * @return the longest timeout a long polling request may get, which is advertised to the clients
+   */
+  public long advertisedTimeoutInMilli() {
+    return Math.max(bizConfig.longPollingTimeoutInMilli(), bizConfig.longPollingMaxTimeoutInMilli());
+  }
+}
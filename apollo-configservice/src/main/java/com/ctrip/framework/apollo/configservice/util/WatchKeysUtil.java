@@ -10,6 +10,7 @@ import com.google.common.collect.Multimap;
 import com.google.common.collect.Sets;
 import org.springframework.stereotype.Component;
 
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
@@ -86,6 +87,26 @@ public class WatchKeysUtil {
     return watchedKeysMap;
   }
 
+  /**
+   * Retrieve the bundle of the watch key, i.e. appId+cluster, which groups all the namespaces of the same
+   * app and cluster, so that a client only needs to register a few bundles instead of all its watch keys
+   */
+  public static String retrieveWatchKeyBundle(String watchKey) {
+    int index = watchKey.lastIndexOf(ConfigConsts.CLUSTER_NAMESPACE_SEPARATOR);
+    return index > 0 ? watchKey.substring(0, index) : watchKey;
+  }
+
+  /**
+   * Assemble the bundles of the watch keys
+   */
+  public static Set<String> assembleWatchKeyBundles(Collection<String> watchKeys) {
+    Set<String> bundles = Sets.newHashSet();
+    for (String watchKey : watchKeys) {
+      bundles.add(retrieveWatchKeyBundle(watchKey));
+    }
+    return bundles;
+  }
+
   private String assembleKey(String appId, String cluster, String namespace) {
     return STRING_JOINER.join(appId, cluster, namespace);
   }
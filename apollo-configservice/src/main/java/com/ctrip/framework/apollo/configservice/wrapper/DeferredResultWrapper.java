@@ -2,16 +2,20 @@ package com.ctrip.framework.apollo.configservice.wrapper;
 
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 
 import com.ctrip.framework.apollo.core.dto.ApolloConfigNotification;
 
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.lang.NonNull;
 import org.springframework.web.context.request.async.DeferredResult;
 
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * @author Jason Song(song_s@ctrip.com)
@@ -22,12 +26,23 @@ public class DeferredResultWrapper implements Comparable<DeferredResultWrapper>
 
   private Map<String, String> normalizedNamespaceNameToOriginalNamespaceName;
   private DeferredResult<ResponseEntity<List<ApolloConfigNotification>>> result;
+  private HttpHeaders responseHeaders;
+  private Set<String> watchedKeys = Collections.emptySet();
 
 
   public DeferredResultWrapper(long timeoutInMilli) {
     result = new DeferredResult<>(timeoutInMilli, NOT_MODIFIED_RESPONSE_LIST);
   }
 
+  /**
+   * @param responseHeaders the headers returned with both the timeout and the notification responses
+   */
+  public DeferredResultWrapper(long timeoutInMilli, HttpHeaders responseHeaders) {
+    this.responseHeaders = responseHeaders;
+    result = new DeferredResult<>(timeoutInMilli,
+        new ResponseEntity<List<ApolloConfigNotification>>(responseHeaders, HttpStatus.NOT_MODIFIED));
+  }
+
   public void recordNamespaceNameNormalizedResult(String originalNamespaceName, String normalizedNamespaceName) {
     if (normalizedNamespaceNameToOriginalNamespaceName == null) {
       normalizedNamespaceNameToOriginalNamespaceName = Maps.newHashMap();
@@ -36,6 +51,19 @@ public class DeferredResultWrapper implements Comparable<DeferredResultWrapper>
   }
 
 
+  /**
+   * Record the watch keys, as the wrapper is registered by watch key bundles which may contain more keys
+   */
+  public void recordWatchedKeys(Set<String> watchedKeys) {
+    Set<String> keys = Sets.newTreeSet(String.CASE_INSENSITIVE_ORDER);
+    keys.addAll(watchedKeys);
+    this.watchedKeys = keys;
+  }
+
+  public boolean isWatching(String watchKey) {
+    return watchedKeys.contains(watchKey);
+  }
+
   public void onTimeout(Runnable timeoutCallback) {
     result.onTimeout(timeoutCallback);
   }
@@ -59,7 +87,7 @@ public class DeferredResultWrapper implements Comparable<DeferredResultWrapper>
               normalizedNamespaceNameToOriginalNamespaceName.get(notification.getNamespaceName())));
     }
 
-    result.setResult(new ResponseEntity<>(notifications, HttpStatus.OK));
+    result.setResult(new ResponseEntity<>(notifications, responseHeaders, HttpStatus.OK));
   }
 
   public DeferredResult<ResponseEntity<List<ApolloConfigNotification>>> getResult() {
@@ -2,6 +2,7 @@ package com.ctrip.framework.apollo.configservice.controller;
 
 import com.ctrip.framework.apollo.biz.entity.Release;
 import com.ctrip.framework.apollo.common.entity.AppNamespace;
+import com.ctrip.framework.apollo.common.exception.BadRequestException;
 import com.ctrip.framework.apollo.configservice.service.AppNamespaceServiceWithCache;
 import com.ctrip.framework.apollo.configservice.service.config.ConfigService;
 import com.ctrip.framework.apollo.configservice.util.InstanceConfigAuditUtil;
@@ -22,6 +23,7 @@ import org.mockito.junit.MockitoJUnitRunner;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import java.util.List;
 import java.util.Map;
 
 import static org.junit.Assert.assertEquals;
@@ -449,6 +451,38 @@ public class ConfigControllerTest {
     assertNull(configController.transformMessages(someInvalidMessages));
   }
 
+  @Test
+  public void testFindStaleNamespaces() throws Exception {
+    String someServerSideReleaseKey = "2";
+    String somePublicAppId = "somePublicAppId";
+    String somePublicReleaseKey = "3";
+    AppNamespace somePublicAppNamespace =
+        assemblePublicAppNamespace(somePublicAppId, somePublicNamespaceName);
+
+    when(configService.loadConfig(someAppId, someClientIp, someAppId, someClusterName, defaultNamespaceName,
+        someDataCenter, null)).thenReturn(someRelease);
+    when(someRelease.getReleaseKey()).thenReturn(someServerSideReleaseKey);
+    when(appNamespaceService.findPublicNamespaceByName(somePublicNamespaceName))
+        .thenReturn(somePublicAppNamespace);
+    when(configService.loadConfig(someAppId, someClientIp, somePublicAppId, someClusterName,
+        somePublicNamespaceName, someDataCenter, null)).thenReturn(somePublicRelease);
+    when(somePublicRelease.getReleaseKey()).thenReturn(somePublicReleaseKey);
+
+    Map<String, String> someReleaseKeys = ImmutableMap.of(defaultNamespaceName, "1",
+        somePublicNamespaceName, somePublicReleaseKey);
+
+    List<String> result = configController.findStaleNamespaces(someAppId, someClusterName,
+        someReleaseKeys, someDataCenter, someClientIp, someRequest);
+
+    assertEquals(Lists.newArrayList(defaultNamespaceName), result);
+  }
+
+  @Test(expected = BadRequestException.class)
+  public void testFindStaleNamespacesWithoutReleaseKeys() throws Exception {
+    configController.findStaleNamespaces(someAppId, someClusterName, null,
+        someDataCenter, someClientIp, someRequest);
+  }
+
   private AppNamespace assemblePublicAppNamespace(String appId, String namespace) {
     return assembleAppNamespace(appId, namespace, true);
   }
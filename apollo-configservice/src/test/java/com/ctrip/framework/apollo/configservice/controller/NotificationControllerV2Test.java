@@ -4,7 +4,9 @@ import com.ctrip.framework.apollo.biz.config.BizConfig;
 import com.ctrip.framework.apollo.biz.entity.ReleaseMessage;
 import com.ctrip.framework.apollo.biz.message.Topics;
 import com.ctrip.framework.apollo.biz.utils.EntityManagerUtil;
+import com.ctrip.framework.apollo.configservice.service.LongPollingSessionService;
 import com.ctrip.framework.apollo.configservice.service.ReleaseMessageServiceWithCache;
+import com.ctrip.framework.apollo.configservice.util.LongPollingTimeoutUtil;
 import com.ctrip.framework.apollo.configservice.util.NamespaceUtil;
 import com.ctrip.framework.apollo.configservice.util.WatchKeysUtil;
 import com.ctrip.framework.apollo.configservice.wrapper.DeferredResultWrapper;
@@ -22,6 +24,7 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.test.util.ReflectionTestUtils;
@@ -59,8 +62,11 @@ public class NotificationControllerV2Test {
   @Mock
   private WatchKeysUtil watchKeysUtil;
   @Mock
+  private LongPollingTimeoutUtil longPollingTimeoutUtil;
+  @Mock
   private BizConfig bizConfig;
 
+  private LongPollingSessionService longPollingSessionService;
   private Gson gson;
 
   private Multimap<String, DeferredResultWrapper> deferredResults;
@@ -68,8 +74,10 @@ public class NotificationControllerV2Test {
   @Before
   public void setUp() throws Exception {
     gson = new Gson();
+    longPollingSessionService = new LongPollingSessionService();
     controller = new NotificationControllerV2(
-        watchKeysUtil, releaseMessageService, entityManagerUtil, namespaceUtil, gson, bizConfig
+        watchKeysUtil, releaseMessageService, entityManagerUtil, namespaceUtil, longPollingTimeoutUtil,
+        longPollingSessionService, gson, bizConfig
     );
 
     when(bizConfig.releaseMessageNotificationBatch()).thenReturn(100);
@@ -112,7 +120,7 @@ public class NotificationControllerV2Test {
     DeferredResult<ResponseEntity<List<ApolloConfigNotification>>>
         deferredResult = controller
         .pollNotification(someAppId, someCluster, notificationAsString, someDataCenter,
-            someClientIp);
+            someClientIp, false);
 
     assertEquals(watchKeysMap.size(), deferredResults.size());
 
@@ -141,7 +149,7 @@ public class NotificationControllerV2Test {
     DeferredResult<ResponseEntity<List<ApolloConfigNotification>>>
         deferredResult = controller
         .pollNotification(someAppId, someCluster, notificationAsString, someDataCenter,
-            someClientIp);
+            someClientIp, false);
 
     assertEquals(watchKeysMap.size(), deferredResults.size());
 
@@ -185,7 +193,7 @@ public class NotificationControllerV2Test {
     DeferredResult<ResponseEntity<List<ApolloConfigNotification>>>
         deferredResult = controller
         .pollNotification(someAppId, someCluster, notificationAsString, someDataCenter,
-            someClientIp);
+            someClientIp, false);
 
     assertEquals(watchKeysMap.size(), deferredResults.size());
 
@@ -234,7 +242,7 @@ public class NotificationControllerV2Test {
     DeferredResult<ResponseEntity<List<ApolloConfigNotification>>>
         deferredResult = controller
         .pollNotification(someAppId, someCluster, notificationAsString, someDataCenter,
-            someClientIp);
+            someClientIp, false);
 
     ResponseEntity<List<ApolloConfigNotification>> result =
         (ResponseEntity<List<ApolloConfigNotification>>) deferredResult.getResult();
@@ -250,6 +258,47 @@ public class NotificationControllerV2Test {
     assertEquals(yetAnotherNotificationId, notificationMessages.get(yetAnotherWatchKey).longValue());
   }
 
+  @Test
+  public void testPollNotificationWithAdvertisedTimeout() throws Exception {
+    String someWatchKey = "someKey";
+    long someTimeout = 55000;
+    long someAdvertisedTimeout = 80000;
+    long notificationId = someNotificationId + 1;
+
+    Multimap<String, String> watchKeysMap =
+        assembleMultiMap(defaultNamespace, Lists.newArrayList(someWatchKey));
+
+    when(watchKeysUtil
+        .assembleAllWatchKeys(someAppId, someCluster, Sets.newHashSet(defaultNamespace),
+            someDataCenter)).thenReturn(
+        watchKeysMap);
+    when(longPollingTimeoutUtil.calculateTimeoutInMilli(0)).thenReturn(someTimeout);
+    when(longPollingTimeoutUtil.advertisedTimeoutInMilli()).thenReturn(someAdvertisedTimeout);
+
+    ReleaseMessage someReleaseMessage = mock(ReleaseMessage.class);
+    when(someReleaseMessage.getId()).thenReturn(notificationId);
+    when(someReleaseMessage.getMessage()).thenReturn(someWatchKey);
+    when(releaseMessageService
+        .findLatestReleaseMessagesGroupByMessages(Sets.newHashSet(watchKeysMap.values())))
+        .thenReturn(Lists.newArrayList(someReleaseMessage));
+
+    String notificationAsString =
+        transformApolloConfigNotificationsToString(defaultNamespace, someNotificationId);
+
+    DeferredResult<ResponseEntity<List<ApolloConfigNotification>>>
+        deferredResult = controller
+        .pollNotification(someAppId, someCluster, notificationAsString, someDataCenter,
+            someClientIp, false);
+
+    ResponseEntity<List<ApolloConfigNotification>> result =
+        (ResponseEntity<List<ApolloConfigNotification>>) deferredResult.getResult();
+
+    assertEquals(HttpStatus.OK, result.getStatusCode());
+    assertEquals(String.valueOf(someAdvertisedTimeout),
+        result.getHeaders().getFirst(ConfigConsts.LONG_POLLING_TIMEOUT_HEADER));
+    assertEquals(someTimeout, ReflectionTestUtils.getField(deferredResult, "timeout"));
+  }
+
   @Test
   public void testPollNotificationWithMultipleNamespacesAndHandleMessage() throws Exception {
     String someWatchKey = "someKey";
@@ -273,7 +322,7 @@ public class NotificationControllerV2Test {
     DeferredResult<ResponseEntity<List<ApolloConfigNotification>>>
         deferredResult = controller
         .pollNotification(someAppId, someCluster, notificationAsString, someDataCenter,
-            someClientIp);
+            someClientIp, false);
 
     assertEquals(watchKeysMap.size(), deferredResults.size());
 
@@ -297,6 +346,134 @@ public class NotificationControllerV2Test {
     assertEquals(someId, notificationMessages.get(anotherWatchKey).longValue());
   }
 
+  @Test
+  public void testPollNotificationRegisteredByBundle() throws Exception {
+    String someNamespace = "someNamespace";
+    String someWatchKey = Joiner.on(ConfigConsts.CLUSTER_NAMESPACE_SEPARATOR)
+        .join(someAppId, someCluster, defaultNamespace);
+    String anotherWatchKey = Joiner.on(ConfigConsts.CLUSTER_NAMESPACE_SEPARATOR)
+        .join(someAppId, defaultCluster, defaultNamespace);
+    String yetAnotherWatchKey = Joiner.on(ConfigConsts.CLUSTER_NAMESPACE_SEPARATOR)
+        .join(someAppId, someCluster, somePublicNamespace);
+    String unwatchedKey = Joiner.on(ConfigConsts.CLUSTER_NAMESPACE_SEPARATOR)
+        .join(someAppId, someCluster, someNamespace);
+
+    Multimap<String, String> watchKeysMap =
+        assembleMultiMap(defaultNamespace, Lists.newArrayList(someWatchKey, anotherWatchKey));
+    watchKeysMap
+        .putAll(assembleMultiMap(somePublicNamespace, Lists.newArrayList(yetAnotherWatchKey)));
+
+    when(watchKeysUtil
+        .assembleAllWatchKeys(someAppId, someCluster,
+            Sets.newHashSet(defaultNamespace, somePublicNamespace), someDataCenter)).thenReturn(
+        watchKeysMap);
+
+    String notificationAsString =
+        transformApolloConfigNotificationsToString(defaultNamespace, someNotificationId,
+            somePublicNamespace, someNotificationId);
+
+    DeferredResult<ResponseEntity<List<ApolloConfigNotification>>>
+        deferredResult = controller
+        .pollNotification(someAppId, someCluster, notificationAsString, someDataCenter,
+            someClientIp, false);
+
+    //someAppId+someCluster and someAppId+default
+    assertEquals(2, deferredResults.size());
+    assertWatchKeys(watchKeysMap, deferredResult);
+
+    long someId = 1;
+    ReleaseMessage unwatchedReleaseMessage = new ReleaseMessage(unwatchedKey);
+    unwatchedReleaseMessage.setId(someId);
+
+    controller.handleMessage(unwatchedReleaseMessage, Topics.APOLLO_RELEASE_TOPIC);
+
+    assertFalse(deferredResult.hasResult());
+
+    ReleaseMessage someReleaseMessage = new ReleaseMessage(yetAnotherWatchKey);
+    someReleaseMessage.setId(someId + 1);
+
+    controller.handleMessage(someReleaseMessage, Topics.APOLLO_RELEASE_TOPIC);
+
+    ResponseEntity<List<ApolloConfigNotification>> response =
+        (ResponseEntity<List<ApolloConfigNotification>>) deferredResult.getResult();
+
+    assertEquals(1, response.getBody().size());
+    assertEquals(somePublicNamespace, response.getBody().get(0).getNamespaceName());
+    assertEquals(someId + 1, response.getBody().get(0).getNotificationId());
+  }
+
+  @Test
+  public void testPollNotificationWithSession() throws Exception {
+    String someWatchKey = Joiner.on(ConfigConsts.CLUSTER_NAMESPACE_SEPARATOR)
+        .join(someAppId, someCluster, defaultNamespace);
+    String anotherWatchKey = Joiner.on(ConfigConsts.CLUSTER_NAMESPACE_SEPARATOR)
+        .join(someAppId, someCluster, somePublicNamespace);
+
+    Multimap<String, String> watchKeysMap =
+        assembleMultiMap(defaultNamespace, Lists.newArrayList(someWatchKey));
+    watchKeysMap
+        .putAll(assembleMultiMap(somePublicNamespace, Lists.newArrayList(anotherWatchKey)));
+
+    when(watchKeysUtil
+        .assembleAllWatchKeys(someAppId, someCluster,
+            Sets.newHashSet(defaultNamespace, somePublicNamespace), someDataCenter)).thenReturn(
+        watchKeysMap);
+
+    String notificationAsString =
+        transformApolloConfigNotificationsToString(defaultNamespace, someNotificationId,
+            somePublicNamespace, someNotificationId);
+
+    controller.pollNotification(someAppId, someCluster, notificationAsString, someDataCenter,
+        someClientIp, true);
+
+    assertEquals(1, deferredResults.size());
+    DeferredResultWrapper registered = deferredResults.values().iterator().next();
+    String token = (String) ((HttpHeaders) ReflectionTestUtils.getField(registered, "responseHeaders"))
+        .getFirst(ConfigConsts.LONG_POLLING_SESSION_HEADER);
+    assertNotNull(token);
+
+    //the public namespace is updated in client side
+    long notificationId = someNotificationId + 1;
+    ReleaseMessage someReleaseMessage = new ReleaseMessage(anotherWatchKey);
+    someReleaseMessage.setId(notificationId);
+    when(releaseMessageService.findLatestReleaseMessagesGroupByMessages(Sets.newHashSet(watchKeysMap.values())))
+        .thenReturn(Lists.newArrayList(someReleaseMessage));
+
+    DeferredResult<ResponseEntity<List<ApolloConfigNotification>>> deferredResult = controller
+        .pollNotificationWithSession(someAppId, token,
+            transformApolloConfigNotificationsToString(somePublicNamespace, notificationId));
+
+    assertFalse(deferredResult.hasResult());
+    verify(watchKeysUtil, times(1)).assembleAllWatchKeys(someAppId, someCluster,
+        Sets.newHashSet(defaultNamespace, somePublicNamespace), someDataCenter);
+
+    //the default namespace is not updated in client side
+    deferredResult = controller.pollNotificationWithSession(someAppId, token, null);
+
+    assertFalse(deferredResult.hasResult());
+
+    ReleaseMessage anotherReleaseMessage = new ReleaseMessage(someWatchKey);
+    anotherReleaseMessage.setId(notificationId + 1);
+    controller.handleMessage(anotherReleaseMessage, Topics.APOLLO_RELEASE_TOPIC);
+
+    ResponseEntity<List<ApolloConfigNotification>> response =
+        (ResponseEntity<List<ApolloConfigNotification>>) deferredResult.getResult();
+    assertEquals(HttpStatus.OK, response.getStatusCode());
+    assertEquals(defaultNamespace, response.getBody().get(0).getNamespaceName());
+    assertEquals(token, response.getHeaders().getFirst(ConfigConsts.LONG_POLLING_SESSION_HEADER));
+  }
+
+  @Test
+  public void testPollNotificationWithExpiredSession() throws Exception {
+    DeferredResult<ResponseEntity<List<ApolloConfigNotification>>> deferredResult = controller
+        .pollNotificationWithSession(someAppId, "someExpiredToken", null);
+
+    ResponseEntity<List<ApolloConfigNotification>> response =
+        (ResponseEntity<List<ApolloConfigNotification>>) deferredResult.getResult();
+    assertEquals(HttpStatus.GONE, response.getStatusCode());
+    assertTrue(deferredResults.isEmpty());
+  }
+
   @Test
   public void testPollNotificationWithHandleMessageInBatch() throws Exception {
     String someWatchKey = Joiner.on(ConfigConsts.CLUSTER_NAMESPACE_SEPARATOR)
@@ -320,11 +497,11 @@ public class NotificationControllerV2Test {
     DeferredResult<ResponseEntity<List<ApolloConfigNotification>>>
         deferredResult = controller
         .pollNotification(someAppId, someCluster, notificationAsString, someDataCenter,
-            someClientIp);
+            someClientIp, false);
     DeferredResult<ResponseEntity<List<ApolloConfigNotification>>>
         anotherDeferredResult = controller
         .pollNotification(someAppId, someCluster, notificationAsString, someDataCenter,
-            someClientIp);
+            someClientIp, false);
 
     long someId = 1;
     ReleaseMessage someReleaseMessage = new ReleaseMessage(someWatchKey);
@@ -364,7 +541,7 @@ public class NotificationControllerV2Test {
     DeferredResult<ResponseEntity<List<ApolloConfigNotification>>>
         deferredResult = controller
         .pollNotification(appIdWithIncorrectCase, someCluster, notificationAsString, someDataCenter,
-            someClientIp);
+            someClientIp, false);
 
     long someId = 1;
     ReleaseMessage someReleaseMessage = new ReleaseMessage(someMessage);
@@ -431,10 +608,11 @@ public class NotificationControllerV2Test {
 
   private void assertWatchKeys(Multimap<String, String> watchKeysMap, DeferredResult deferredResult) {
     for (String watchKey : watchKeysMap.values()) {
-      Collection<DeferredResultWrapper> deferredResultWrappers = deferredResults.get(watchKey);
+      Collection<DeferredResultWrapper> deferredResultWrappers =
+          deferredResults.get(WatchKeysUtil.retrieveWatchKeyBundle(watchKey));
       boolean found = false;
       for (DeferredResultWrapper wrapper: deferredResultWrappers) {
-        if (Objects.equals(wrapper.getResult(), deferredResult)) {
+        if (Objects.equals(wrapper.getResult(), deferredResult) && wrapper.isWatching(watchKey)) {
           found = true;
         }
       }
@@ -125,4 +125,49 @@ public class ClientAuthenticationFilterTest {
     verify(response, never()).sendError(HttpServletResponse.SC_UNAUTHORIZED, "Unauthorized");
     verify(filterChain, times(1)).doFilter(request, response);
   }
-}
\ No newline at end of file
+
+  @Test
+  public void testIdenticalRetryVerifiedFromCache() throws Exception {
+    String appId = "someAppId";
+    String availableSignature = "someSignature";
+    List<String> secrets = Lists.newArrayList("someSecret");
+    String timestamp = Long.toString(System.currentTimeMillis());
+    String correctAuthorization = "Apollo someAppId:someSignature";
+
+    when(accessKeyUtil.extractAppIdFromRequest(any())).thenReturn(appId);
+    when(accessKeyUtil.findAvailableSecret(appId)).thenReturn(secrets);
+    when(accessKeyUtil.buildSignature(any(), any(), any(), any())).thenReturn(availableSignature);
+    when(request.getHeader(Signature.HTTP_HEADER_TIMESTAMP)).thenReturn(timestamp);
+    when(request.getHeader(HttpHeaders.AUTHORIZATION)).thenReturn(correctAuthorization);
+
+    clientAuthenticationFilter.doFilter(request, response, filterChain);
+    clientAuthenticationFilter.doFilter(request, response, filterChain);
+
+    verify(accessKeyUtil, times(1)).buildSignature(any(), any(), any(), any());
+    verify(filterChain, times(2)).doFilter(request, response);
+  }
+
+  @Test
+  public void testVerifiedCacheInvalidatedBySecretRotation() throws Exception {
+    String appId = "someAppId";
+    String availableSignature = "someSignature";
+    List<String> secrets = Lists.newArrayList("someSecret");
+    List<String> rotatedSecrets = Lists.newArrayList("anotherSecret");
+    String timestamp = Long.toString(System.currentTimeMillis());
+    String correctAuthorization = "Apollo someAppId:someSignature";
+
+    when(accessKeyUtil.extractAppIdFromRequest(any())).thenReturn(appId);
+    when(accessKeyUtil.findAvailableSecret(appId)).thenReturn(secrets, rotatedSecrets);
+    when(accessKeyUtil.buildSignature(any(), any(), any(), any()))
+        .thenReturn(availableSignature, "anotherSignature");
+    when(request.getHeader(Signature.HTTP_HEADER_TIMESTAMP)).thenReturn(timestamp);
+    when(request.getHeader(HttpHeaders.AUTHORIZATION)).thenReturn(correctAuthorization);
+
+    clientAuthenticationFilter.doFilter(request, response, filterChain);
+    clientAuthenticationFilter.doFilter(request, response, filterChain);
+
+    verify(accessKeyUtil, times(2)).buildSignature(any(), any(), any(), any());
+    verify(filterChain, times(1)).doFilter(request, response);
+    verify(response, times(1)).sendError(HttpServletResponse.SC_UNAUTHORIZED, "Unauthorized");
+  }
+}
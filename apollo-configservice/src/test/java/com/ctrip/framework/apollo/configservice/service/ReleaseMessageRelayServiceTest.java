@@ -0,0 +1,207 @@
+package com.ctrip.framework.apollo.configservice.service;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.ctrip.framework.apollo.biz.config.BizConfig;
+import com.ctrip.framework.apollo.biz.entity.ReleaseMessage;
+import com.ctrip.framework.apollo.biz.message.ReleaseMessageScanner;
+import com.ctrip.framework.apollo.biz.repository.ReleaseMessageRepository;
+import com.ctrip.framework.apollo.common.dto.ReleaseMessageRelayDTO;
+import com.ctrip.framework.apollo.core.ServiceNameConsts;
+import com.ctrip.framework.apollo.core.dto.ServiceDTO;
+import com.ctrip.framework.apollo.metaservice.service.DiscoveryService;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.test.util.ReflectionTestUtils;
+
+/**
+ * Runs several config service nodes in one JVM, each on its own localhost port
+ */
+@RunWith(MockitoJUnitRunner.Silent.class)
+public class ReleaseMessageRelayServiceTest {
+
+  private static final int[] PORTS = {8080, 8081, 8082};
+  private static final String SOME_ACCESS_TOKEN = "someAccessToken";
+
+  @Mock
+  private DiscoveryService discoveryService;
+  @Mock
+  private BizConfig bizConfig;
+
+  private List<ReleaseMessage> database;
+  private Map<Integer, Node> nodes;
+
+  @Before
+  public void setUp() throws Exception {
+    database = Collections.synchronizedList(Lists.newArrayList());
+    nodes = Maps.newHashMap();
+
+    when(bizConfig.releaseMessageScanIntervalInMilli()).thenReturn(50);
+    when(bizConfig.isReleaseMessageRelayEnabled()).thenReturn(true);
+    when(bizConfig.releaseMessageRelayScannerCount()).thenReturn(1);
+    when(bizConfig.releaseMessageRelayHeartbeatIntervalInMilli()).thenReturn(50);
+    when(bizConfig.releaseMessageRelayTimeoutInMilli()).thenReturn(10000);
+    when(bizConfig.getReleaseMessageRelayAccessToken()).thenReturn(SOME_ACCESS_TOKEN);
+
+    List<ServiceDTO> services = Lists.newArrayList();
+    for (int port : PORTS) {
+      ServiceDTO service = new ServiceDTO();
+      service.setAppName(ServiceNameConsts.APOLLO_CONFIGSERVICE);
+      service.setInstanceId("localhost:" + port);
+      service.setHomepageUrl("http://localhost:" + port + "/");
+      services.add(service);
+    }
+    when(discoveryService.getServiceInstances(ServiceNameConsts.APOLLO_CONFIGSERVICE))
+        .thenReturn(services);
+
+    for (int port : PORTS) {
+      nodes.put(port, new Node(port));
+    }
+  }
+
+  @Test
+  public void testRelayMessagesFromScanner() throws Exception {
+    for (Node node : nodes.values()) {
+      node.scanner.afterPropertiesSet();
+    }
+    Node scanner = nodes.get(8080);
+    List<Node> followers = Lists.newArrayList(nodes.get(8081), nodes.get(8082));
+
+    //followers stop scanning once heartbeats from the scanner arrive
+    await().atMost(5, TimeUnit.SECONDS).until(() -> followers.stream()
+        .noneMatch(follower -> follower.relayService.shouldScanDatabase()));
+    assertTrue(scanner.relayService.shouldScanDatabase());
+    for (Node follower : followers) {
+      clearInvocations(follower.repository);
+    }
+
+    database.add(assembleReleaseMessage(1, "someMessage"));
+    database.add(assembleReleaseMessage(2, "anotherMessage"));
+
+    for (Node node : nodes.values()) {
+      await().atMost(5, TimeUnit.SECONDS).until(() -> node.received.size() == 2);
+      assertEquals(Lists.newArrayList("someMessage", "anotherMessage"), node.received);
+    }
+    for (Node follower : followers) {
+      verify(follower.repository, never()).findFirst500ByIdGreaterThanOrderByIdAsc(anyLong());
+    }
+  }
+
+  @Test
+  public void testGapFallbackToDatabase() throws Exception {
+    Node follower = nodes.get(8081);
+    database.add(assembleReleaseMessage(1, "someMessage"));
+    database.add(assembleReleaseMessage(2, "anotherMessage"));
+
+    //message 1 is lost
+    boolean accepted = follower.scanner.acceptRelayedMessages(1,
+        Lists.newArrayList(assembleReleaseMessage(2, "anotherMessage")));
+
+    assertFalse(accepted);
+    verify(follower.repository, atLeastOnce()).findFirst500ByIdGreaterThanOrderByIdAsc(anyLong());
+    assertEquals(Lists.newArrayList("someMessage", "anotherMessage"), follower.received);
+  }
+
+  @Test
+  public void testRelayedMessagesBeyondDatabaseRejected() throws Exception {
+    Node follower = nodes.get(8081);
+    database.add(assembleReleaseMessage(1, "someMessage"));
+
+    boolean accepted = follower.scanner.acceptRelayedMessages(1,
+        Lists.newArrayList(assembleReleaseMessage(100, "anotherMessage")));
+
+    assertFalse(accepted);
+    assertTrue(follower.received.isEmpty());
+    verify(follower.repository, never()).findFirst500ByIdGreaterThanOrderByIdAsc(anyLong());
+  }
+
+  @Test
+  public void testRelayAuthorized() throws Exception {
+    Node follower = nodes.get(8081);
+
+    assertTrue(follower.relayService.isRelayAuthorized(SOME_ACCESS_TOKEN));
+    assertFalse(follower.relayService.isRelayAuthorized("anotherAccessToken"));
+    assertFalse(follower.relayService.isRelayAuthorized(null));
+
+    when(bizConfig.getReleaseMessageRelayAccessToken()).thenReturn(null);
+
+    assertFalse(follower.relayService.isRelayAuthorized(SOME_ACCESS_TOKEN));
+  }
+
+  private List<ReleaseMessage> findMessagesAfter(long id) {
+    synchronized (database) {
+      return database.stream().filter(message -> message.getId() > id)
+          .collect(Collectors.toList());
+    }
+  }
+
+  private ReleaseMessage findLastMessage() {
+    synchronized (database) {
+      return database.isEmpty() ? null : database.get(database.size() - 1);
+    }
+  }
+
+  private ReleaseMessage assembleReleaseMessage(long id, String message) {
+    ReleaseMessage releaseMessage = new ReleaseMessage(message);
+    releaseMessage.setId(id);
+    return releaseMessage;
+  }
+
+  private class Node {
+
+    private final ReleaseMessageRepository repository;
+    private final ReleaseMessageScanner scanner;
+    private final ReleaseMessageRelayService relayService;
+    private final List<String> received = Collections.synchronizedList(Lists.newArrayList());
+
+    Node(int port) {
+      repository = mock(ReleaseMessageRepository.class);
+      when(repository.findFirst500ByIdGreaterThanOrderByIdAsc(anyLong()))
+          .thenAnswer(invocation -> findMessagesAfter(invocation.getArgument(0)));
+      when(repository.findTopByOrderByIdDesc()).thenAnswer(invocation -> findLastMessage());
+
+      scanner = new ReleaseMessageScanner();
+      ReflectionTestUtils.setField(scanner, "releaseMessageRepository", repository);
+      ReflectionTestUtils.setField(scanner, "bizConfig", bizConfig);
+      scanner.addMessageListener((message, channel) -> received.add(message.getMessage()));
+
+      relayService = new ReleaseMessageRelayService(discoveryService, bizConfig, null) {
+        @Override
+        String getLocalInstanceId() {
+          return "localhost:" + port;
+        }
+
+        @Override
+        void sendRelay(String peerHomepageUrl, ReleaseMessageRelayDTO relay) {
+          Node peer = nodes.get(Integer.parseInt(peerHomepageUrl.replaceAll("\\D", "")));
+          assertTrue(peer.relayService.isRelayAuthorized(
+              bizConfig.getReleaseMessageRelayAccessToken()));
+          peer.relayService.onRelayReceived();
+          peer.scanner.acceptRelayedMessages(relay.getStartId(),
+              ReleaseMessageRelayService.transformRelayedMessages(relay));
+        }
+      };
+      scanner.setMessageRelay(relayService);
+    }
+  }
+}
@@ -2,6 +2,7 @@ package com.ctrip.framework.apollo.configservice.service;
 
 import com.ctrip.framework.apollo.biz.config.BizConfig;
 import com.ctrip.framework.apollo.biz.entity.ReleaseMessage;
+import com.ctrip.framework.apollo.biz.message.ReleaseMessageScanner;
 import com.ctrip.framework.apollo.biz.message.Topics;
 import com.ctrip.framework.apollo.biz.repository.ReleaseMessageRepository;
 import com.google.common.collect.Lists;
@@ -11,6 +12,7 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.test.util.ReflectionTestUtils;
 
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -31,6 +33,8 @@ public class ReleaseMessageServiceWithCacheTest {
 
   private ReleaseMessageServiceWithCache releaseMessageServiceWithCache;
 
+  private ReleaseMessageScanner releaseMessageScanner;
+
   @Mock
   private ReleaseMessageRepository releaseMessageRepository;
 
@@ -44,14 +48,17 @@ public class ReleaseMessageServiceWithCacheTest {
   @Before
 
   public void setUp() throws Exception {
-    releaseMessageServiceWithCache = new ReleaseMessageServiceWithCache(
-        releaseMessageRepository, bizConfig
-    );
+    releaseMessageServiceWithCache = new ReleaseMessageServiceWithCache(releaseMessageRepository);
+
+    releaseMessageScanner = new ReleaseMessageScanner();
+    ReflectionTestUtils
+        .setField(releaseMessageScanner, "releaseMessageRepository", releaseMessageRepository);
+    ReflectionTestUtils.setField(releaseMessageScanner, "bizConfig", bizConfig);
+    releaseMessageScanner.addMessageListener(releaseMessageServiceWithCache);
 
-    scanInterval = 10;
+    scanInterval = 100;
     scanIntervalTimeUnit = TimeUnit.MILLISECONDS;
-    when(bizConfig.releaseMessageCacheScanInterval()).thenReturn(scanInterval);
-    when(bizConfig.releaseMessageCacheScanIntervalTimeUnit()).thenReturn(scanIntervalTimeUnit);
+    when(bizConfig.releaseMessageScanIntervalInMilli()).thenReturn(scanInterval);
   }
 
   @Test
@@ -59,7 +66,7 @@ public class ReleaseMessageServiceWithCacheTest {
     when(releaseMessageRepository.findFirst500ByIdGreaterThanOrderByIdAsc(0L)).thenReturn
         (Collections.emptyList());
 
-    releaseMessageServiceWithCache.afterPropertiesSet();
+    releaseMessageScanner.afterPropertiesSet();
 
     String someMessage = "someMessage";
     String anotherMessage = "anotherMessage";
@@ -81,9 +88,7 @@ public class ReleaseMessageServiceWithCacheTest {
     when(releaseMessageRepository.findFirst500ByIdGreaterThanOrderByIdAsc(0L))
         .thenReturn(Arrays.asList(someMsg, anotherMsg, anotherRepeatMsg));
 
-    releaseMessageServiceWithCache.afterPropertiesSet();
-
-    verify(bizConfig).releaseMessageCacheScanInterval();
+    releaseMessageScanner.afterPropertiesSet();
 
     ReleaseMessage latestReleaseMsg =
         releaseMessageServiceWithCache
@@ -123,9 +128,9 @@ public class ReleaseMessageServiceWithCacheTest {
     when(releaseMessageRepository.findFirst500ByIdGreaterThanOrderByIdAsc(500L))
         .thenReturn(Collections.singletonList(antherMsg));
 
-    releaseMessageServiceWithCache.afterPropertiesSet();
+    releaseMessageScanner.afterPropertiesSet();
 
-    verify(releaseMessageRepository, times(1)).findFirst500ByIdGreaterThanOrderByIdAsc(500L);
+    verify(releaseMessageRepository, atLeastOnce()).findFirst500ByIdGreaterThanOrderByIdAsc(500L);
 
     ReleaseMessage latestReleaseMsg =
         releaseMessageServiceWithCache
@@ -145,7 +150,7 @@ public class ReleaseMessageServiceWithCacheTest {
   }
 
   @Test
-  public void testNewReleaseMessagesBeforeHandleMessage() throws Exception {
+  public void testNewReleaseMessagesScanned() throws Exception {
     String someMessageContent = "someMessage";
     long someMessageId = 1;
     ReleaseMessage someMessage = assembleReleaseMsg(someMessageId, someMessageContent);
@@ -153,7 +158,7 @@ public class ReleaseMessageServiceWithCacheTest {
     when(releaseMessageRepository.findFirst500ByIdGreaterThanOrderByIdAsc(0L)).thenReturn(Lists.newArrayList
         (someMessage));
 
-    releaseMessageServiceWithCache.afterPropertiesSet();
+    releaseMessageScanner.afterPropertiesSet();
 
     ReleaseMessage latestReleaseMsg =
         releaseMessageServiceWithCache
@@ -173,7 +178,7 @@ public class ReleaseMessageServiceWithCacheTest {
     when(releaseMessageRepository.findFirst500ByIdGreaterThanOrderByIdAsc(someMessageId)).thenReturn(Lists
         .newArrayList(newMessage));
 
-    await().atMost(scanInterval * 500, scanIntervalTimeUnit).untilAsserted(() -> {
+    await().atMost(scanInterval * 50, scanIntervalTimeUnit).untilAsserted(() -> {
       ReleaseMessage newLatestReleaseMsg =
           releaseMessageServiceWithCache
               .findLatestReleaseMessageForMessages(Sets.newHashSet(someMessageContent));
@@ -197,7 +202,7 @@ public class ReleaseMessageServiceWithCacheTest {
     when(releaseMessageRepository.findFirst500ByIdGreaterThanOrderByIdAsc(0L)).thenReturn(Lists.newArrayList
         (someMessage));
 
-    releaseMessageServiceWithCache.afterPropertiesSet();
+    releaseMessageScanner.afterPropertiesSet();
 
     ReleaseMessage latestReleaseMsg =
         releaseMessageServiceWithCache
@@ -0,0 +1,71 @@
+package com.ctrip.framework.apollo.configservice.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.when;
+
+import com.ctrip.framework.apollo.biz.config.BizConfig;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+@RunWith(MockitoJUnitRunner.Silent.class)
+public class LongPollingTimeoutUtilTest {
+  @Mock
+  private BizConfig bizConfig;
+
+  private LongPollingTimeoutUtil longPollingTimeoutUtil;
+  private long someTimeout;
+  private long someMaxTimeout;
+  private int someThreshold;
+
+  @Before
+  public void setUp() throws Exception {
+    longPollingTimeoutUtil = new LongPollingTimeoutUtil(bizConfig);
+
+    someTimeout = 60000;
+    someMaxTimeout = 80000;
+    someThreshold = 100;
+
+    when(bizConfig.longPollingTimeoutInMilli()).thenReturn(someTimeout);
+    when(bizConfig.longPollingMaxTimeoutInMilli()).thenReturn(someMaxTimeout);
+    when(bizConfig.longPollingAdaptiveThreshold()).thenReturn(someThreshold);
+  }
+
+  @Test
+  public void testCalculateTimeoutWithLoad() throws Exception {
+    when(bizConfig.longPollingTimeoutJitterInMilli()).thenReturn(0L);
+
+    assertEquals(someTimeout, longPollingTimeoutUtil.calculateTimeoutInMilli(0));
+    assertEquals((someTimeout + someMaxTimeout) / 2,
+        longPollingTimeoutUtil.calculateTimeoutInMilli(someThreshold / 2));
+    assertEquals(someMaxTimeout, longPollingTimeoutUtil.calculateTimeoutInMilli(someThreshold));
+    assertEquals(someMaxTimeout, longPollingTimeoutUtil.calculateTimeoutInMilli(someThreshold * 10));
+  }
+
+  @Test
+  public void testCalculateTimeoutWithJitter() throws Exception {
+    long someJitter = 10000;
+    when(bizConfig.longPollingTimeoutJitterInMilli()).thenReturn(someJitter);
+
+    boolean jittered = false;
+    for (int i = 0; i < 100; i++) {
+      long timeout = longPollingTimeoutUtil.calculateTimeoutInMilli(0);
+      assertTrue(timeout >= someTimeout - someJitter && timeout <= someTimeout);
+      jittered |= timeout != someTimeout;
+    }
+
+    assertTrue(jittered);
+  }
+
+  @Test
+  public void testAdvertisedTimeout() throws Exception {
+    assertEquals(someMaxTimeout, longPollingTimeoutUtil.advertisedTimeoutInMilli());
+
+    when(bizConfig.longPollingMaxTimeoutInMilli()).thenReturn(someTimeout - 1);
+
+    assertEquals(someTimeout, longPollingTimeoutUtil.advertisedTimeoutInMilli());
+  }
+}
@@ -9,4 +9,13 @@ public interface ConfigConsts {
   String CONFIG_FILE_CONTENT_KEY = "content";
   String NO_APPID_PLACEHOLDER = "ApolloNoAppIdPlaceHolder";
   long NOTIFICATION_ID_PLACEHOLDER = -1;
+  /**
+   * response header of long polling, the longest time in milliseconds the config service may hold the next long polling request
+   */
+  String LONG_POLLING_TIMEOUT_HEADER = "Apollo-Long-Polling-Timeout";
+  /**
+   * response header of long polling, the session token which the following long polling requests could carry
+   * instead of all the namespaces
+   */
+  String LONG_POLLING_SESSION_HEADER = "Apollo-Long-Polling-Session";
 }
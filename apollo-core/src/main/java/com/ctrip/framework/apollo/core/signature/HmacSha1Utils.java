@@ -1,9 +1,11 @@
 package com.ctrip.framework.apollo.core.signature;
 
 import com.google.common.io.BaseEncoding;
-import java.io.UnsupportedEncodingException;
+import java.nio.charset.StandardCharsets;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import javax.crypto.Mac;
 import javax.crypto.spec.SecretKeySpec;
 
@@ -13,19 +15,43 @@ import javax.crypto.spec.SecretKeySpec;
 public class HmacSha1Utils {
 
   private static final String ALGORITHM_NAME = "HmacSHA1";
-  private static final String ENCODING = "UTF-8";
+  private static final int MAX_CACHED_MAC_PER_THREAD = 16;
+
+  /**
+   * Mac instances are not thread safe, so each thread keeps its own initialized instances per
+   * secret, which saves the provider lookup and key setup on every signature
+   */
+  private static final ThreadLocal<Map<String, Mac>> MAC_CACHE = new ThreadLocal<Map<String, Mac>>() {
+    @Override
+    protected Map<String, Mac> initialValue() {
+      return new LinkedHashMap<String, Mac>(MAX_CACHED_MAC_PER_THREAD, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Mac> eldest) {
+          return size() > MAX_CACHED_MAC_PER_THREAD;
+        }
+      };
+    }
+  };
 
   public static String signString(String stringToSign, String accessKeySecret) {
     try {
-      Mac mac = Mac.getInstance(ALGORITHM_NAME);
-      mac.init(new SecretKeySpec(
-          accessKeySecret.getBytes(ENCODING),
-          ALGORITHM_NAME
-      ));
-      byte[] signData = mac.doFinal(stringToSign.getBytes(ENCODING));
+      Mac mac = getMac(accessKeySecret);
+      byte[] signData = mac.doFinal(stringToSign.getBytes(StandardCharsets.UTF_8));
       return BaseEncoding.base64().encode(signData);
-    } catch (NoSuchAlgorithmException | UnsupportedEncodingException | InvalidKeyException e) {
+    } catch (NoSuchAlgorithmException | InvalidKeyException e) {
       throw new IllegalArgumentException(e.toString());
     }
   }
+
+  private static Mac getMac(String accessKeySecret)
+      throws NoSuchAlgorithmException, InvalidKeyException {
+    Map<String, Mac> macs = MAC_CACHE.get();
+    Mac mac = macs.get(accessKeySecret);
+    if (mac == null) {
+      mac = Mac.getInstance(ALGORITHM_NAME);
+      mac.init(new SecretKeySpec(accessKeySecret.getBytes(StandardCharsets.UTF_8), ALGORITHM_NAME));
+      macs.put(accessKeySecret, mac);
+    }
+    return mac;
+  }
 }
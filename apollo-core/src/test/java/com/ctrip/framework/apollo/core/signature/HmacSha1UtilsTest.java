@@ -19,4 +19,19 @@ public class HmacSha1UtilsTest {
     String expectedSignature = "EoKyziXvKqzHgwx+ijDJwgVTDgE=";
     assertEquals(expectedSignature, actualSignature);
   }
-}
\ No newline at end of file
+
+  @Test
+  public void testSignStringWithReusedMac() {
+    String stringToSign = "1576478257344\n/configs/100004458/default/application?ip=10.0.0.1";
+    String accessKeySecret = "df23df3f59884980844ff3dada30fa97";
+    String anotherSecret = "anotherSecret";
+
+    String anotherSignature = HmacSha1Utils.signString(stringToSign, anotherSecret);
+
+    for (int i = 0; i < 3; i++) {
+      assertEquals("EoKyziXvKqzHgwx+ijDJwgVTDgE=",
+          HmacSha1Utils.signString(stringToSign, accessKeySecret));
+      assertEquals(anotherSignature, HmacSha1Utils.signString(stringToSign, anotherSecret));
+    }
+  }
+}